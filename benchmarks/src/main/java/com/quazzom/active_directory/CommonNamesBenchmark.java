@@ -0,0 +1,79 @@
+package com.quazzom.active_directory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The common names of the <b>memberOf</b> values of a user, as read by
+ * {@link ActiveDirectory#searchUserGroups(String)}.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommonNamesBenchmark {
+
+	@Param({ "10", "100", "1000", "10000" })
+	int values;
+
+	private SearchResult searchResult;
+	private Consumer<String> consumer;
+
+	@Setup
+	public void setUp(Blackhole blackhole) {
+		BasicAttribute memberOf = new BasicAttribute("memberOf", true);
+
+		for (int count = 0; count < values; count++) {
+			// mostly plain names, some with escapes and hex pairs as in real directories
+			if (count % 20 == 0)
+				memberOf.add("CN=Smith\\, John " + count + ",OU=Distribution Lists,OU=Sales,DC=LAB01,DC=ACME");
+			else if (count % 50 == 1)
+				memberOf.add("CN=Jos\\C3\\A9 " + count + ",OU=Projects,OU=Engineering,DC=LAB01,DC=ACME");
+			else
+				memberOf.add("CN=firewall-vpn-" + count + ",OU=Firewall Groups,OU=Security,DC=LAB01,DC=ACME");
+		}
+
+		searchResult = new SearchResult("CN=john", null, new BasicAttributes(true));
+		searchResult.getAttributes().put(memberOf);
+		consumer = blackhole::consume;
+	}
+
+	@Benchmark
+	public void getLastCommonNames() throws NamingException {
+		ActiveDirectory.getLastCommonNames(searchResult, "memberOf", consumer);
+	}
+
+	/**
+	 * The old substring(3, indexOf(",")) extraction, as a baseline. It is wrong
+	 * for the escaped names.
+	 */
+	@Benchmark
+	public void substringBaseline() throws NamingException {
+		javax.naming.directory.Attribute memberOf = searchResult.getAttributes().get("memberOf");
+		for (int count = 0; count < memberOf.size(); count++) {
+			String value = (String) memberOf.get(count);
+			consumer.accept(value.substring(3, value.indexOf(",")));
+		}
+	}
+}
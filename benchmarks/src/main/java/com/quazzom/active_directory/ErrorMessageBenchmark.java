@@ -0,0 +1,77 @@
+package com.quazzom.active_directory;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The translation of the error messages during an error storm, e.g.: many
+ * logins failing at the same time. Most messages are binds failing with the
+ * error 49, some are other errors and some are not LDAP messages (the slow path
+ * with an exception).
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ErrorMessageBenchmark {
+
+	private static final String[] SUB_CODES = { "525", "52e", "52f", "530", "531", "532", "533", "701", "773",
+			"775" };
+
+	private final String[] messages = new String[1024]; // a power of two, see next()
+	private int next;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+
+		for (int count = 0; count < messages.length; count++) {
+			int kind = random.nextInt(10);
+			if (kind < 7)
+				messages[count] = "[LDAP: error code 49 - 80090308: LdapErr: DSID-0C090439, comment: "
+						+ "AcceptSecurityContext error, data " + SUB_CODES[random.nextInt(SUB_CODES.length)] + ", v4563]";
+			else if (kind < 8)
+				messages[count] = "[LDAP: error code 53 - 0000052D: SvcErr: DSID-031A12D2, problem 5003 "
+						+ "(WILL_NOT_PERFORM), data 0, v3839]";
+			else
+				messages[count] = "localhost:389 connection refused";
+		}
+	}
+
+	private String next() {
+		return messages[next++ & (messages.length - 1)];
+	}
+
+	@Benchmark
+	public String getActiveDirectoryErrorMessage() {
+		try {
+			return ActiveDirectoryUtils.getActiveDirectoryErrorMessage(next());
+		} catch (ActiveDirectoryException e) {
+			return e.getMessage();
+		}
+	}
+
+	@Benchmark
+	public LdapError parseLdapError() {
+		return LdapError.parse(next());
+	}
+
+	@Benchmark
+	public AuthenticationStatus getAuthenticationStatus() {
+		return ActiveDirectoryUtils.getAuthenticationStatus(next());
+	}
+}
@@ -0,0 +1,247 @@
+package com.quazzom.active_directory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * A load and soak test of {@link ActiveDirectory} against a
+ * {@link SyntheticDirectory}.
+ * <p>
+ * N threads call the searches at a target rate (open loop: the latency is
+ * measured from the time the call should have started, so a slow server is
+ * not hidden by the threads waiting for it). The throughput and the p50, p99
+ * and p999 latencies are printed every report interval and at the end. A rate
+ * of 0 calls as fast as the threads can.
+ * <p>
+ * The in-memory server indexes the names and the memberships, but not the
+ * substrings, so <b>searchUserObjects</b> scans all the users and is much
+ * slower than in a real Active Directory.
+ * <p>
+ * Example, with the defaults written out (it needs about 4 GB of heap):
+ * <blockquote>
+ *
+ * <pre>
+ * java -Xmx4g -cp target/benchmarks.jar com.quazzom.active_directory.LoadTest \
+ *     --users 200000 --groups 20000 --groups-per-user 10 --nested-groups-every 10 \
+ *     --large-groups 2 --large-group-members 50000 \
+ *     --threads 16 --rate 2000 --warmup 10 --duration 60 --report-interval 10 \
+ *     --operations searchUserGroups,searchUsersGroup,searchUserObjects --page-size 1000
+ * </pre>
+ *
+ * </blockquote>
+ *
+ */
+public class LoadTest {
+
+	/**
+	 * A search made by the load test.
+	 */
+	enum Operation {
+		searchUserGroups {
+			@Override
+			void run(ActiveDirectory activeDirectory, SyntheticPopulation population) throws Exception {
+				activeDirectory.searchUserGroups(SyntheticDirectory.userName(random(population.getUsers())));
+			}
+		},
+		searchUsersGroup {
+			@Override
+			void run(ActiveDirectory activeDirectory, SyntheticPopulation population) throws Exception {
+				activeDirectory.searchUsersGroup(SyntheticDirectory.groupName(random(population.getGroups())));
+			}
+		},
+		searchUsersGroupTransitive {
+			@Override
+			void run(ActiveDirectory activeDirectory, SyntheticPopulation population) throws Exception {
+				activeDirectory.searchUsersGroup(SyntheticDirectory.groupName(random(population.getGroups())), true);
+			}
+		},
+		searchUserObjects {
+			@Override
+			void run(ActiveDirectory activeDirectory, SyntheticPopulation population) throws Exception {
+				// like a search box, user123 matches user123, user1230, user12300, ...
+				activeDirectory.searchUserObjects(SyntheticDirectory.userName(100 + random(900)));
+			}
+		};
+
+		abstract void run(ActiveDirectory activeDirectory, SyntheticPopulation population) throws Exception;
+
+		private static int random(int bound) {
+			return ThreadLocalRandom.current().nextInt(bound);
+		}
+	}
+
+	private final ActiveDirectory activeDirectory;
+	private final SyntheticPopulation population;
+	private final List<Operation> operations;
+	private final int threads;
+	private final long intervalNanos; // between two calls of a thread, zero for no pause
+
+	private final Recorder recorder = new Recorder(3); // microseconds
+	private final AtomicLong errors = new AtomicLong();
+
+	LoadTest(ActiveDirectory activeDirectory, SyntheticPopulation population, List<Operation> operations, int threads,
+			int rate) {
+		this.activeDirectory = activeDirectory;
+		this.population = population;
+		this.operations = operations;
+		this.threads = threads;
+		this.intervalNanos = rate > 0 ? TimeUnit.SECONDS.toNanos(threads) / rate : 0;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = parse(args);
+
+		SyntheticPopulation population = new SyntheticPopulation();
+		population.setUsers(intOption(options, "users", 200000));
+		population.setGroups(intOption(options, "groups", 20000));
+		population.setGroupsPerUser(intOption(options, "groups-per-user", 10));
+		population.setNestedGroupsEvery(intOption(options, "nested-groups-every", 10));
+		population.setLargeGroups(intOption(options, "large-groups", 2));
+		population.setLargeGroupMembers(intOption(options, "large-group-members", 50000));
+
+		int threads = intOption(options, "threads", 16);
+		int rate = intOption(options, "rate", 2000);
+		int warmupSeconds = intOption(options, "warmup", 10);
+		int durationSeconds = intOption(options, "duration", 60);
+		int reportIntervalSeconds = intOption(options, "report-interval", 10);
+
+		List<Operation> operations = new ArrayList<Operation>();
+		for (String operation : option(options, "operations", "searchUserGroups,searchUsersGroup,searchUserObjects")
+				.split(","))
+			operations.add(Operation.valueOf(operation.trim()));
+
+		ConnectionPoolConfig poolConfig = new ConnectionPoolConfig();
+		poolConfig.setMaxSize(intOption(options, "pool-size", threads));
+
+		long populateStart = System.nanoTime();
+		System.out.printf("populating %d users and %d groups...%n", population.getUsers(), population.getGroups());
+
+		try (SyntheticDirectory directory = SyntheticDirectory.start(population);
+				ActiveDirectory activeDirectory = directory.connect(poolConfig)) {
+
+			activeDirectory.setPageSize(intOption(options, "page-size", 1000));
+			System.out.printf("populated in %d s%n", TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - populateStart));
+
+			LoadTest loadTest = new LoadTest(activeDirectory, population, operations, threads, rate);
+
+			System.out.printf("warming up for %d s%n", warmupSeconds);
+			loadTest.run(warmupSeconds, 0);
+
+			System.out.printf("%d threads, target %s calls/s, %s%n", threads, rate > 0 ? rate : "unlimited", operations);
+			Histogram total = loadTest.run(durationSeconds, reportIntervalSeconds);
+			report("total", total, loadTest.errors.get(), durationSeconds);
+		}
+	}
+
+	/**
+	 * Run the load for a time, printing a report every interval.
+	 *
+	 * @return the latencies of the whole run, in microseconds
+	 */
+	Histogram run(int durationSeconds, int reportIntervalSeconds) throws InterruptedException {
+		long start = System.nanoTime();
+		long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+		recorder.reset();
+		errors.set(0);
+
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int index = 0; index < threads; index++) {
+			// the threads start spread over an interval, so the calls are evenly spaced
+			long firstCall = start + (intervalNanos * index) / threads;
+			Thread worker = new Thread(() -> work(firstCall, end), "load-test-" + index);
+			worker.setDaemon(true);
+			workers.add(worker);
+			worker.start();
+		}
+
+		Histogram total = new Histogram(3);
+		Histogram interval = null;
+		long reportNanos = TimeUnit.SECONDS.toNanos(reportIntervalSeconds > 0 ? reportIntervalSeconds : durationSeconds);
+		long nextReport = start + reportNanos;
+		long errorsReported = 0;
+
+		while (System.nanoTime() < end) {
+			long now = System.nanoTime();
+			LockSupport.parkNanos(Math.min(nextReport, end) - now);
+			if (System.nanoTime() < nextReport || reportIntervalSeconds <= 0)
+				continue;
+
+			interval = recorder.getIntervalHistogram(interval);
+			total.add(interval);
+			long intervalErrors = errors.get() - errorsReported;
+			errorsReported += intervalErrors;
+			report(String.format("%5d s", TimeUnit.NANOSECONDS.toSeconds(nextReport - start)), interval, intervalErrors,
+					reportIntervalSeconds);
+			nextReport += reportNanos;
+		}
+
+		for (Thread worker : workers)
+			worker.join();
+
+		total.add(recorder.getIntervalHistogram(interval));
+		return total;
+	}
+
+	private void work(long firstCall, long end) {
+		long nextCall = firstCall;
+		int next = ThreadLocalRandom.current().nextInt(operations.size());
+
+		while (nextCall < end) {
+			long now = System.nanoTime();
+			if (now >= end)
+				return;
+			if (intervalNanos > 0 && now < nextCall) {
+				LockSupport.parkNanos(nextCall - now);
+				continue;
+			}
+
+			long intendedStart = intervalNanos > 0 ? nextCall : now;
+			try {
+				operations.get(next++ % operations.size()).run(activeDirectory, population);
+			} catch (Exception e) {
+				errors.incrementAndGet();
+			}
+			recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart));
+
+			nextCall += intervalNanos;
+		}
+	}
+
+	private static void report(String label, Histogram histogram, long errors, int seconds) {
+		System.out.printf("%s: %8.1f calls/s, p50 %8.2f ms, p99 %8.2f ms, p999 %8.2f ms, max %8.2f ms, %d errors%n",
+				label, (double) histogram.getTotalCount() / seconds, histogram.getValueAtPercentile(50) / 1000.0,
+				histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+				histogram.getMaxValue() / 1000.0, errors);
+	}
+
+	// --name value pairs
+	private static Map<String, String> parse(String[] args) {
+		Map<String, String> options = new HashMap<String, String>();
+		for (int index = 0; index < args.length; index += 2) {
+			if (!args[index].startsWith("--") || index + 1 == args.length)
+				throw new IllegalArgumentException("expected --name value pairs: " + Arrays.toString(args));
+			options.put(args[index].substring(2), args[index + 1]);
+		}
+		return options;
+	}
+
+	private static String option(Map<String, String> options, String name, String defaultValue) {
+		String value = options.get(name);
+		return value == null ? defaultValue : value;
+	}
+
+	private static int intOption(Map<String, String> options, String name, int defaultValue) {
+		return Integer.parseInt(option(options, name, String.valueOf(defaultValue)));
+	}
+}
@@ -0,0 +1,77 @@
+package com.quazzom.active_directory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A full enumeration of users with one paged search (<b>SINGLE</b>) against
+ * the partitioned searches, on a {@link SyntheticDirectory} with people spread
+ * over organizational units.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PartitionBenchmark {
+
+	@Param({ "20000" })
+	int people;
+
+	@Param({ "8" })
+	int organizationalUnits;
+
+	@Param({ "SINGLE", "ORGANIZATIONAL_UNITS", "NAME_RANGES" })
+	String strategy;
+
+	@Param({ "4" })
+	int parallelism;
+
+	private SyntheticDirectory directory;
+	private ActiveDirectory activeDirectory;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		directory = SyntheticDirectory.start(100, 10, 1);
+		directory.addPeople(people, organizationalUnits);
+
+		activeDirectory = directory.connect(new ConnectionPoolConfig());
+		activeDirectory.setPageSize(1000);
+		if (!"SINGLE".equals(strategy)) {
+			PartitionConfig partitionConfig = new PartitionConfig();
+			partitionConfig.setStrategy(PartitionStrategy.valueOf(strategy));
+			partitionConfig.setParallelism(parallelism);
+			activeDirectory.setPartitionConfig(partitionConfig);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		activeDirectory.close();
+		directory.close();
+	}
+
+	@Benchmark
+	public List<String> searchUserObjects() throws Exception {
+		List<String> found = activeDirectory.searchUserObjects("person");
+		if (found.size() != people)
+			throw new IllegalStateException(found.size() + " people found instead of " + people);
+		return found;
+	}
+}
@@ -0,0 +1,85 @@
+package com.quazzom.active_directory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The searches end to end, over the connection pool, against a
+ * {@link SyntheticDirectory}. Run with <b>-t</b> to search from many threads.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+	@Param({ "10000" })
+	int users;
+
+	@Param({ "1000" })
+	int groups;
+
+	@Param({ "10" })
+	int groupsPerUser;
+
+	@Param({ "0", "500" })
+	int pageSize;
+
+	private SyntheticDirectory directory;
+	private ActiveDirectory activeDirectory;
+
+	/**
+	 * The next user and group of a thread, so the threads don't search always the
+	 * same names.
+	 */
+	@State(Scope.Thread)
+	public static class Names {
+		int next;
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		directory = SyntheticDirectory.start(users, groups, groupsPerUser);
+		activeDirectory = directory.connect(new ConnectionPoolConfig());
+		activeDirectory.setPageSize(pageSize);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		activeDirectory.close();
+		directory.close();
+	}
+
+	@Benchmark
+	public List<String> searchUserGroups(Names names) throws Exception {
+		return activeDirectory.searchUserGroups(SyntheticDirectory.userName(names.next++ % users));
+	}
+
+	@Benchmark
+	public List<String> searchUsersGroup(Names names) throws Exception {
+		return activeDirectory.searchUsersGroup(SyntheticDirectory.groupName(names.next++ % groups));
+	}
+
+	@Benchmark
+	public List<String> searchUserObjects(Names names) throws Exception {
+		// user12 matches user12, user120..user129, user1200.., like a search box
+		return activeDirectory.searchUserObjects(SyntheticDirectory.userName(names.next++ % 100));
+	}
+}
@@ -0,0 +1,352 @@
+package com.quazzom.active_directory;
+
+import java.io.File;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.listener.SelfSignedCertificateGenerator;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSimpleBindRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SimpleBindRequest;
+import com.unboundid.ldap.sdk.schema.Schema;
+import com.unboundid.util.ObjectPair;
+import com.unboundid.util.ssl.KeyStoreKeyManager;
+import com.unboundid.util.ssl.SSLUtil;
+import com.unboundid.util.ssl.cert.CertException;
+
+/**
+ * An in-process LDAP server with an Active Directory like tree, used in place of
+ * a domain controller by the benchmarks.
+ * <p>
+ * The users are under <b>CN=Users,DC=acme,DC=local</b> and the groups under
+ * <b>OU=Groups,DC=acme,DC=local</b>, with the <b>member</b> and
+ * <b>memberOf</b> attributes filled in both sides. The binds with a user
+ * principal name (<b>user1@acme.local</b>) are accepted as in Active Directory.
+ * <p>
+ * The server listens for LDAP (with StartTLS) and LDAPS, with a temporary
+ * self-signed certificate.
+ *
+ */
+public class SyntheticDirectory implements AutoCloseable {
+
+	public static final String DOMAIN = "acme.local";
+	public static final String BASE_DN = "DC=acme,DC=local";
+	public static final String USERS_DN = "CN=Users," + BASE_DN;
+	public static final String GROUPS_DN = "OU=Groups," + BASE_DN;
+
+	public static final String SERVICE_USER = "service";
+	public static final String PASSWORD = "secret"; // the password of every user
+
+	// the entries sent to the server at a time
+	private static final int ADD_BATCH = 10000;
+
+	private static final String KEY_STORE_TYPE = "PKCS12";
+
+	private final InMemoryDirectoryServer server;
+	private final ObjectPair<File, char[]> certificate; // the key store and its password
+
+	private SyntheticDirectory(InMemoryDirectoryServer server, ObjectPair<File, char[]> certificate) {
+		this.server = server;
+		this.certificate = certificate;
+	}
+
+	/**
+	 * Start a server on a free port with <b>users</b> users and <b>groups</b>
+	 * groups, each user member of <b>groupsPerUser</b> groups spread over all the
+	 * groups.
+	 *
+	 * @param users         the number of users, named user0, user1, ...
+	 * @param groups        the number of groups, named group0, group1, ...
+	 * @param groupsPerUser the number of groups of each user
+	 *
+	 * @return the started server
+	 *
+	 * @throws LDAPException if the server cannot start
+	 */
+	public static SyntheticDirectory start(int users, int groups, int groupsPerUser) throws LDAPException {
+		SyntheticPopulation population = new SyntheticPopulation();
+		population.setUsers(users);
+		population.setGroups(groups);
+		population.setGroupsPerUser(groupsPerUser);
+		return start(population);
+	}
+
+	/**
+	 * Start a server on a free port with a population of users and groups.
+	 *
+	 * @param population the size and shape of the tree
+	 *
+	 * @return the started server
+	 *
+	 * @throws LDAPException if the server cannot start
+	 */
+	public static SyntheticDirectory start(SyntheticPopulation population) throws LDAPException {
+		int users = population.getUsers();
+		int groups = population.getGroups();
+		int groupsPerUser = Math.min(population.getGroupsPerUser(), groups);
+
+		InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN);
+		config.setSchema(Schema.mergeSchemas(Schema.getDefaultStandardSchema(), activeDirectorySchema()));
+		// the searches by name and by membership don't scan the whole tree
+		config.setEqualityIndexAttributes("cn", "sAMAccountName", "memberOf");
+		ObjectPair<File, char[]> certificate;
+		try {
+			certificate = SelfSignedCertificateGenerator.generateTemporarySelfSignedCertificate("synthetic-directory",
+					KEY_STORE_TYPE);
+			SSLUtil serverSsl = new SSLUtil(new KeyStoreKeyManager(certificate.getFirst(), certificate.getSecond(),
+					KEY_STORE_TYPE, null), null);
+			config.setListenerConfigs(
+					InMemoryListenerConfig.createLDAPConfig("ldap", null, 0, serverSsl.createSSLSocketFactory()),
+					InMemoryListenerConfig.createLDAPSConfig("ldaps", null, 0, serverSsl.createSSLServerSocketFactory(),
+							null));
+		} catch (CertException | GeneralSecurityException e) {
+			throw new LDAPException(ResultCode.LOCAL_ERROR, "the certificate cannot be created: " + e.getMessage(), e);
+		}
+		config.addInMemoryOperationInterceptor(new UserPrincipalNameBinds());
+
+		InMemoryDirectoryServer server = new InMemoryDirectoryServer(config);
+
+		List<Entry> entries = new ArrayList<Entry>();
+		entries.add(new Entry(BASE_DN, new Attribute("objectClass", "top", "domain"), new Attribute("dc", "acme")));
+		entries.add(new Entry(USERS_DN, new Attribute("objectClass", "top", "container"), new Attribute("cn", "Users")));
+		entries.add(new Entry(GROUPS_DN, new Attribute("objectClass", "top", "organizationalUnit"),
+				new Attribute("ou", "Groups")));
+		entries.add(user(SERVICE_USER, new ArrayList<String>()));
+
+		// the members and the groups of the groups, filled from the users side
+		List<List<String>> members = new ArrayList<List<String>>(groups);
+		List<List<String>> memberOfGroups = new ArrayList<List<String>>(groups);
+		for (int group = 0; group < groups; group++) {
+			members.add(new ArrayList<String>());
+			memberOfGroups.add(new ArrayList<String>());
+		}
+
+		// group10 member of group1, group100 of group10, ...
+		int every = population.getNestedGroupsEvery();
+		if (every > 1) {
+			for (int group = every; group < groups; group += every) {
+				members.get(group / every).add(groupDn(group));
+				memberOfGroups.get(group).add(groupDn(group / every));
+			}
+		}
+
+		int largeGroups = Math.min(population.getLargeGroups(), groups);
+		int stride = Math.max(1, groups / Math.max(1, groupsPerUser));
+		for (int user = 0; user < users; user++) {
+			List<String> memberOf = new ArrayList<String>(groupsPerUser + largeGroups);
+			for (int count = 0; count < groupsPerUser; count++) {
+				int group = (user + count * stride) % groups;
+				if (group >= largeGroups)
+					addMembership(memberOf, members, user, group);
+			}
+
+			if (user < population.getLargeGroupMembers())
+				for (int group = 0; group < largeGroups; group++)
+					addMembership(memberOf, members, user, group);
+
+			entries.add(user(userName(user), memberOf));
+			entries = flush(server, entries);
+		}
+
+		for (int group = 0; group < groups; group++) {
+			entries.add(group(groupName(group), members.get(group), memberOfGroups.get(group)));
+			// the members are not needed anymore, let them be collected
+			members.set(group, null);
+			entries = flush(server, entries);
+		}
+
+		server.addEntries(entries);
+		server.startListening();
+		return new SyntheticDirectory(server, certificate);
+	}
+
+	/**
+	 * Create an {@link ActiveDirectory} of the service user and make its
+	 * handShake.
+	 *
+	 * @param poolConfig the connection pool settings
+	 *
+	 * @return an {@link ActiveDirectory} ready to search this server
+	 *
+	 * @throws Exception if the handShake fails
+	 */
+	public ActiveDirectory connect(ConnectionPoolConfig poolConfig) throws Exception {
+		return connect(poolConfig, null);
+	}
+
+	/**
+	 * Same as {@link #connect(ConnectionPoolConfig)} over TLS, trusting the
+	 * certificate of this server.
+	 *
+	 * @param poolConfig        the connection pool settings
+	 * @param transportSecurity LDAPS or StartTLS, null for plain LDAP
+	 *
+	 * @return an {@link ActiveDirectory} ready to search this server
+	 *
+	 * @throws Exception if the handShake fails
+	 */
+	public ActiveDirectory connect(ConnectionPoolConfig poolConfig, TransportSecurity transportSecurity)
+			throws Exception {
+		String listener = transportSecurity == TransportSecurity.LDAPS ? "ldaps" : "ldap";
+		ActiveDirectory activeDirectory = new ActiveDirectory("localhost",
+				String.valueOf(server.getListenPort(listener)), SERVICE_USER, PASSWORD, DOMAIN);
+		activeDirectory.setConnectionPoolConfig(poolConfig);
+
+		if (transportSecurity != null) {
+			TlsConfig tlsConfig = new TlsConfig();
+			tlsConfig.setTransportSecurity(transportSecurity);
+			tlsConfig.setTrustStore(certificate.getFirst().toPath());
+			tlsConfig.setTrustStorePassword(certificate.getSecond());
+			tlsConfig.setTrustStoreType(KEY_STORE_TYPE);
+			// the temporary certificate is issued to the name of the host, not to localhost
+			tlsConfig.setHostnameVerification(false);
+			activeDirectory.setTlsConfig(tlsConfig);
+		}
+
+		activeDirectory.handShake();
+		return activeDirectory;
+	}
+
+	/**
+	 * Add users without groups spread over organizational units
+	 * (<b>OU=People0,DC=acme,DC=local</b>, ...), named <b>aperson0</b>,
+	 * <b>bperson1</b>, ... so the names start with every letter, e.g.: to
+	 * enumerate them with searchUserObjects("person").
+	 *
+	 * @param people              the number of users
+	 * @param organizationalUnits the number of organizational units
+	 *
+	 * @throws LDAPException if the entries cannot be added
+	 */
+	public void addPeople(int people, int organizationalUnits) throws LDAPException {
+		List<Entry> entries = new ArrayList<Entry>();
+		for (int unit = 0; unit < organizationalUnits; unit++)
+			entries.add(new Entry("OU=People" + unit + "," + BASE_DN, new Attribute("objectClass", "top",
+					"organizationalUnit"), new Attribute("ou", "People" + unit)));
+
+		for (int person = 0; person < people; person++) {
+			String name = (char) ('a' + person % 26) + "person" + person;
+			entries.add(user("CN=" + name + ",OU=People" + person % organizationalUnits + "," + BASE_DN, name,
+					new ArrayList<String>()));
+			entries = flush(server, entries);
+		}
+		server.addEntries(entries);
+	}
+
+	public static String userName(int user) {
+		return "user" + user;
+	}
+
+	public static String groupName(int group) {
+		return "group" + group;
+	}
+
+	public static String userDn(String userName) {
+		return "CN=" + userName + "," + USERS_DN;
+	}
+
+	public static String groupDn(int group) {
+		return "CN=" + groupName(group) + "," + GROUPS_DN;
+	}
+
+	@Override
+	public void close() {
+		server.shutDown(true);
+		certificate.getFirst().delete();
+	}
+
+	private static Entry user(String userName, List<String> memberOf) {
+		return user(userDn(userName), userName, memberOf);
+	}
+
+	private static Entry user(String dn, String userName, List<String> memberOf) {
+		Entry entry = new Entry(dn, new Attribute("objectClass", "top", "person", "organizationalPerson",
+				"user"), new Attribute("objectCategory", "person"), new Attribute("cn", userName),
+				new Attribute("sn", userName), new Attribute("sAMAccountName", userName),
+				new Attribute("userPrincipalName", userName + "@" + DOMAIN),
+				new Attribute("userPassword", PASSWORD));
+
+		if (!memberOf.isEmpty())
+			entry.addAttribute(new Attribute("memberOf", memberOf));
+
+		return entry;
+	}
+
+	/**
+	 * The Active Directory attributes and classes used by the library, they are
+	 * not in the standard schema.
+	 */
+	private static Schema activeDirectorySchema() {
+		String string = "SYNTAX 1.3.6.1.4.1.1466.115.121.1.15";
+		String dn = "SYNTAX 1.3.6.1.4.1.1466.115.121.1.12";
+
+		return new Schema(new Entry("cn=schema",
+				new Attribute("attributeTypes",
+						"( 1.2.840.113556.1.4.221 NAME 'sAMAccountName' EQUALITY caseIgnoreMatch "
+								+ "ORDERING caseIgnoreOrderingMatch SUBSTR caseIgnoreSubstringsMatch " + string
+								+ " SINGLE-VALUE )",
+						"( 1.2.840.113556.1.4.656 NAME 'userPrincipalName' EQUALITY caseIgnoreMatch " + string
+								+ " SINGLE-VALUE )",
+						"( 1.2.840.113556.1.4.782 NAME 'objectCategory' EQUALITY caseIgnoreMatch " + string
+								+ " SINGLE-VALUE )",
+						"( 1.2.840.113556.1.2.102 NAME 'memberOf' EQUALITY distinguishedNameMatch " + dn + " )"),
+				new Attribute("objectClasses",
+						"( 1.2.840.113556.1.5.9 NAME 'user' SUP organizationalPerson STRUCTURAL "
+								+ "MAY ( sAMAccountName $ userPrincipalName $ objectCategory $ memberOf ) )",
+						"( 1.2.840.113556.1.5.8 NAME 'group' SUP top STRUCTURAL MUST cn "
+								+ "MAY ( member $ sAMAccountName $ objectCategory $ memberOf ) )",
+						"( 1.2.840.113556.1.3.23 NAME 'container' SUP top STRUCTURAL MUST cn )")));
+	}
+
+	private static void addMembership(List<String> memberOf, List<List<String>> members, int user, int group) {
+		memberOf.add(groupDn(group));
+		members.get(group).add(userDn(userName(user)));
+	}
+
+	private static Entry group(String groupName, List<String> members, List<String> memberOf) {
+		Entry entry = new Entry("CN=" + groupName + "," + GROUPS_DN, new Attribute("objectClass", "top", "group"),
+				new Attribute("objectCategory", "group"), new Attribute("cn", groupName),
+				new Attribute("sAMAccountName", groupName));
+
+		if (!members.isEmpty())
+			entry.addAttribute(new Attribute("member", members));
+		if (!memberOf.isEmpty())
+			entry.addAttribute(new Attribute("memberOf", memberOf));
+
+		return entry;
+	}
+
+	private static List<Entry> flush(InMemoryDirectoryServer server, List<Entry> entries) throws LDAPException {
+		if (entries.size() < ADD_BATCH)
+			return entries;
+
+		server.addEntries(entries);
+		return new ArrayList<Entry>();
+	}
+
+	/**
+	 * Active Directory accepts a user principal name as the bind DN, the
+	 * in-memory server only accepts DNs, so <b>user1@acme.local</b> is changed to
+	 * <b>CN=user1,CN=Users,DC=acme,DC=local</b>.
+	 */
+	private static final class UserPrincipalNameBinds extends InMemoryOperationInterceptor {
+		@Override
+		public void processSimpleBindRequest(InMemoryInterceptedSimpleBindRequest request) throws LDAPException {
+			SimpleBindRequest bind = request.getRequest();
+			String bindDn = bind.getBindDN();
+			int at = bindDn.indexOf('@');
+
+			if (at > 0)
+				request.setRequest(new SimpleBindRequest(userDn(bindDn.substring(0, at)), bind.getPassword().getValue(),
+						bind.getControls()));
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.quazzom.active_directory;
+
+/**
+ * The size and shape of the tree of a {@link SyntheticDirectory}.
+ * <p>
+ * The defaults are: users 10000, groups 1000, groupsPerUser 10,
+ * nestedGroupsEvery 0, largeGroups 0 and largeGroupMembers 0.
+ *
+ */
+public class SyntheticPopulation {
+
+	private int users = 10000;
+	private int groups = 1000;
+	private int groupsPerUser = 10;
+	private int nestedGroupsEvery;
+	private int largeGroups;
+	private int largeGroupMembers;
+
+	/**
+	 * @return the number of users, named user0, user1, ...
+	 */
+	public int getUsers() {
+		return users;
+	}
+
+	/**
+	 * @param users the number of users, named user0, user1, ...
+	 */
+	public void setUsers(int users) {
+		this.users = users;
+	}
+
+	/**
+	 * @return the number of groups, named group0, group1, ...
+	 */
+	public int getGroups() {
+		return groups;
+	}
+
+	/**
+	 * @param groups the number of groups, named group0, group1, ...
+	 */
+	public void setGroups(int groups) {
+		this.groups = groups;
+	}
+
+	/**
+	 * @return the number of groups of each user, spread over all the groups.
+	 */
+	public int getGroupsPerUser() {
+		return groupsPerUser;
+	}
+
+	/**
+	 * @param groupsPerUser the number of groups of each user, spread over all the
+	 *                      groups.
+	 */
+	public void setGroupsPerUser(int groupsPerUser) {
+		this.groupsPerUser = groupsPerUser;
+	}
+
+	/**
+	 * @return every how many groups one is nested, zero for no nested groups.
+	 */
+	public int getNestedGroupsEvery() {
+		return nestedGroupsEvery;
+	}
+
+	/**
+	 * @param nestedGroupsEvery every how many groups one is nested, zero for no
+	 *                          nested groups. E.g.: with 10, group10 is member of
+	 *                          group1, group100 of group10, group1000 of group100,
+	 *                          ... so the trees are log10(groups) levels deep.
+	 */
+	public void setNestedGroupsEvery(int nestedGroupsEvery) {
+		this.nestedGroupsEvery = nestedGroupsEvery;
+	}
+
+	/**
+	 * @return the number of large groups, the first groups (group0, group1, ...).
+	 */
+	public int getLargeGroups() {
+		return largeGroups;
+	}
+
+	/**
+	 * @param largeGroups the number of large groups, the first groups (group0,
+	 *                    group1, ...).
+	 */
+	public void setLargeGroups(int largeGroups) {
+		this.largeGroups = largeGroups;
+	}
+
+	/**
+	 * @return the number of users of each large group, the first users.
+	 */
+	public int getLargeGroupMembers() {
+		return largeGroupMembers;
+	}
+
+	/**
+	 * @param largeGroupMembers the number of users of each large group, the first
+	 *                          users.
+	 */
+	public void setLargeGroupMembers(int largeGroupMembers) {
+		this.largeGroupMembers = largeGroupMembers;
+	}
+}
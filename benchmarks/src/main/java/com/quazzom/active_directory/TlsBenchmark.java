@@ -0,0 +1,71 @@
+package com.quazzom.active_directory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of the encryption, plain LDAP against LDAPS and StartTLS on a
+ * {@link SyntheticDirectory}: <b>handShake</b> opens a new pool with one new
+ * connection (with TLS, a resumed session after the first one) and
+ * <b>searchUserGroups</b> searches over the pooled connections.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TlsBenchmark {
+
+	@Param({ "PLAIN", "LDAPS", "START_TLS" })
+	String transport;
+
+	private static final int USERS = 1000;
+
+	private SyntheticDirectory directory;
+	private ActiveDirectory activeDirectory;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		directory = SyntheticDirectory.start(USERS, 100, 10);
+		ConnectionPoolConfig poolConfig = new ConnectionPoolConfig();
+		poolConfig.setMinSize(1);
+		activeDirectory = directory.connect(poolConfig,
+				"PLAIN".equals(transport) ? null : TransportSecurity.valueOf(transport));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		TlsStats stats = activeDirectory.getTlsStats();
+		if (stats != null)
+			System.out.println(stats);
+		activeDirectory.close();
+		directory.close();
+	}
+
+	@Benchmark
+	public void handShake() throws Exception {
+		activeDirectory.handShake();
+	}
+
+	@Benchmark
+	public List<String> searchUserGroups() throws Exception {
+		return activeDirectory.searchUserGroups(SyntheticDirectory.userName(next++ % USERS));
+	}
+}
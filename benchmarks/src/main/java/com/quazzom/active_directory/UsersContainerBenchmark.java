@@ -0,0 +1,39 @@
+package com.quazzom.active_directory;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The base DN built from the domain by {@link ActiveDirectory#handShake()}.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UsersContainerBenchmark {
+
+	@Param({ "mydomain.global", "emea.corp.acme.com" })
+	String domain;
+
+	private final ActiveDirectory activeDirectory = new ActiveDirectory("localhost", "389", "service", "secret",
+			"mydomain.global");
+
+	@Benchmark
+	public ActiveDirectory createUsersContainer() {
+		activeDirectory.createUsersContainer(domain);
+		return activeDirectory;
+	}
+}
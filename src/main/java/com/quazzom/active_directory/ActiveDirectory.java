@@ -1,18 +1,47 @@
 package com.quazzom.active_directory;
 
+import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import javax.naming.AuthenticationException;
+import javax.naming.CommunicationException;
 import javax.naming.Context;
-import javax.naming.NamingEnumeration;
+import javax.naming.InterruptedNamingException;
 import javax.naming.NamingException;
+import javax.naming.OperationNotSupportedException;
+import javax.naming.TimeLimitExceededException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.DirContext;
-import javax.naming.directory.InitialDirContext;
+import javax.naming.directory.InvalidSearchFilterException;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.StartTlsRequest;
+import javax.naming.ldap.StartTlsResponse;
 
 /**
  * Class representing an Active Directory, used to create connections to Active
@@ -21,303 +50,2055 @@ import javax.naming.directory.SearchResult;
  * @author david
  *
  */
-public class ActiveDirectory {
+public class ActiveDirectory implements AutoCloseable {
+
+	// LDAP_CAP_ACTIVE_DIRECTORY_OID, in the supportedCapabilities of the rootDSE
+	private static final String ACTIVE_DIRECTORY_CAPABILITY = "1.2.840.113556.1.4.800";
+
+	// the memberOf values in one search of the nested groups expansion
+	private static final int NESTED_GROUPS_PER_SEARCH = 50;
 
 	private Properties properties;
-	private DirContext dirContext;
+	private volatile DirContextPool dirContextPool;
+	private ConnectionPoolConfig connectionPoolConfig;
+
+	// the connections of authenticate(), never used by the searches
+	private volatile DirContextPool bindContextPool;
+	private ConnectionPoolConfig bindPoolConfig;
+	private int pageSize; // zero or less means unpaged searches
+	private int batchSize = 100; // names per search of the batch searches
+	private long connectTimeoutMillis = 5000;
+	// the Active Directory MaxQueryDuration, no search allowed by the server is cut
+	private long readTimeoutMillis = 120000;
+
+	// null for plain LDAP
+	private TlsConfig tlsConfig;
+	private volatile TlsSocketFactory tlsSocketFactory; // created by the handShake
+
+	// null when the cache is disabled
+	private volatile LookupCache<String, List<String>> userGroupsCache;
+	private volatile LookupCache<String, List<String>> usersGroupCache;
+	private ThreadPoolExecutor cacheRefreshExecutor;
+
+	// null when the local indexes are disabled
+	private volatile LocalObjectIndex userObjectsIndex;
+	private volatile LocalObjectIndex groupObjectsIndex;
+	private ThreadPoolExecutor indexRefreshExecutor;
+
+	// null when there is no snapshot
+	private volatile LocalSnapshot snapshot;
+	private ThreadPoolExecutor snapshotRefreshExecutor;
+
+	// null when the user names are not filtered
+	private volatile LocalExistenceFilter existenceFilter;
+	private ThreadPoolExecutor existenceFilterRefreshExecutor;
+
+	// the identical searches made at the same time share one request, by base,
+	// filter and attributes
+	private final SingleFlight<String, List<String>> searchFlights = new SingleFlight<String, List<String>>(
+			ArrayList::new);
+
+	// runs the parallel searches, created on the first use
+	private ThreadPoolExecutor searchExecutor;
+
+	// null when the searches are not hedged
+	private volatile Hedger hedger;
+
+	// null when the searches are not split
+	private volatile PartitionConfig partitionConfig;
+
+	// the deadline of the requests of each thread, see withDeadline()
+	private final ThreadLocal<Deadline> deadline = new ThreadLocal<Deadline>();
+	private DeadlineTimer deadlineTimer; // created on the first use
+
+	// null when nothing is measured
+	private volatile ActiveDirectoryListener listener;
+
+	// null until the server is asked, see isMatchingRuleInChainSupported()
+	private volatile Boolean matchingRuleInChainSupported;
 
 	private String usersContainer;
 	private String server; // ip or ad hostname, e.g.: server001 or 192.165.50.60
+	private List<String> servers; // the domain controllers, with or without a port
 	private String port;
+	private LoadBalancingConfig loadBalancingConfig;
 	private String username; // user to create the connection and do the searches
 	private String password; // user password
 	private String domain; // domain e.g.: mydomain.com
 
-	private boolean isHandShakeMade;
+	private volatile boolean isHandShakeMade;
+
+	/**
+	 * Default Constructor
+	 *
+	 * @param server   the hostname or ip for the Active Directory server.
+	 * @param port     the port to connection.
+	 * @param username the username for the connection and for the searches.
+	 * @param password the password to username
+	 * @param domain   the domani e.g.: mydomain.global
+	 */
+	public ActiveDirectory(String server, String port, String username, String password, String domain) {
+		this(Collections.singletonList(server), port, username, password, domain);
+	}
+
+	/**
+	 * Constructor for many domain controllers of the same domain. The searches are
+	 * spread over the domain controllers, see
+	 * {@link ActiveDirectory#setLoadBalancingConfig(LoadBalancingConfig)}, and
+	 * each one has its own connection pool.
+	 *
+	 * @param servers  the hostnames or ips of the domain controllers, each one
+	 *                 with an optional port, e.g.: <b>dc01</b> or
+	 *                 <b>dc02.mydomain.global:3268</b>
+	 * @param port     the port of the servers without a port.
+	 * @param username the username for the connection and for the searches.
+	 * @param password the password to username
+	 * @param domain   the domani e.g.: mydomain.global
+	 */
+	public ActiveDirectory(List<String> servers, String port, String username, String password, String domain) {
+		if (servers == null || servers.isEmpty())
+			throw new IllegalArgumentException("servers cannot be null or empty.");
+
+		this.servers = new ArrayList<String>(servers);
+		this.server = String.join(",", servers);
+		this.port = port;
+		this.username = username;
+		this.password = password;
+		this.domain = domain;
+		this.isHandShakeMade = false;
+		this.connectionPoolConfig = new ConnectionPoolConfig();
+		this.bindPoolConfig = new ConnectionPoolConfig();
+		this.loadBalancingConfig = new LoadBalancingConfig();
+	}
+
+	/**
+	 * Set the connection pool settings, must be called before the
+	 * {@link ActiveDirectory#handShake()}.
+	 *
+	 * @param connectionPoolConfig the connection pool settings
+	 */
+	public void setConnectionPoolConfig(ConnectionPoolConfig connectionPoolConfig) {
+		this.connectionPoolConfig = connectionPoolConfig;
+	}
+
+	/**
+	 * Set the settings of the pool of connections used by
+	 * {@link ActiveDirectory#authenticate(String, String)}, must be called before
+	 * the {@link ActiveDirectory#handShake()}.
+	 *
+	 * @param bindPoolConfig the bind connection pool settings
+	 */
+	public void setBindPoolConfig(ConnectionPoolConfig bindPoolConfig) {
+		this.bindPoolConfig = bindPoolConfig;
+	}
+
+	/**
+	 * Set the load balancing settings of many domain controllers, must be called
+	 * before the {@link ActiveDirectory#handShake()}. The
+	 * {@link ConnectionPoolConfig} is the one of the pool of each domain
+	 * controller.
+	 *
+	 * @param loadBalancingConfig the load balancing settings
+	 */
+	public void setLoadBalancingConfig(LoadBalancingConfig loadBalancingConfig) {
+		if (loadBalancingConfig == null)
+			throw new IllegalArgumentException("loadBalancingConfig cannot be null.");
+		this.loadBalancingConfig = loadBalancingConfig;
+	}
+
+	/**
+	 * @return the state of each domain controller (healthy or ejected, requests
+	 *         in progress, latency), or an empty list with a single server or
+	 *         before the {@link ActiveDirectory#handShake()}.
+	 */
+	public List<DomainControllerStatus> getDomainControllers() {
+		DirContextPool pool = dirContextPool;
+		if (pool instanceof BalancedDirContextPool)
+			return ((BalancedDirContextPool) pool).status();
+		return Collections.emptyList();
+	}
+
+	/**
+	 * @return the connection pool settings
+	 */
+	ConnectionPoolConfig getConnectionPoolConfig() {
+		return connectionPoolConfig;
+	}
+
+	/**
+	 * Set the number of results per page for the searches. With a page size
+	 * greater than zero the searches use the paged results control (RFC 2696) and
+	 * return all the objects, even beyond the server size limit (MaxPageSize,
+	 * 1000 by default in Active Directory).
+	 *
+	 * @param pageSize the number of results per page, zero or less for unpaged
+	 *                 searches (the default)
+	 */
+	public void setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Set the number of names searched together by the batch searches, e.g.:
+	 * {@link ActiveDirectory#searchUserGroups(Collection)}. Each search has a
+	 * filter with <b>batchSize</b> names, so a larger batch makes fewer round
+	 * trips but longer filters.
+	 *
+	 * @param batchSize the number of names per search, 100 by default
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("batchSize must be greater than zero.");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Set how long the opening of a connection waits for the server, must be
+	 * called before the {@link ActiveDirectory#handShake()}. With many domain
+	 * controllers it is also how long an unreachable one delays the failover.
+	 *
+	 * @param connectTimeoutMillis the connect timeout, 5000 by default, zero waits
+	 *                             for the TCP timeout of the system
+	 */
+	public void setConnectTimeoutMillis(long connectTimeoutMillis) {
+		if (connectTimeoutMillis < 0)
+			throw new IllegalArgumentException("connectTimeoutMillis cannot be negative.");
+		this.connectTimeoutMillis = connectTimeoutMillis;
+	}
+
+	/**
+	 * Encrypt the connections with TLS, must be called before the
+	 * {@link ActiveDirectory#handShake()}. Without it the connections are plain
+	 * LDAP and the password of the bind crosses the network in clear text.
+	 * <p>
+	 * With {@link TransportSecurity#LDAPS} the connections are TLS from the start
+	 * (give the port 636 to the constructor), with
+	 * {@link TransportSecurity#START_TLS} they are upgraded before the bind (port
+	 * 389). All the connections share the TLS session cache, so a new connection
+	 * to a domain controller already seen resumes its session instead of a full
+	 * handshake, see {@link ActiveDirectory#getTlsStats()}; the pooled
+	 * connections make no handshake at all. The cache is kept by a new handShake
+	 * while the same TlsConfig is set, set it again after changing it.
+	 *
+	 * @param tlsConfig the TLS settings, null (the default) for plain LDAP
+	 */
+	public void setTlsConfig(TlsConfig tlsConfig) {
+		this.tlsConfig = tlsConfig;
+	}
+
+	/**
+	 * @return the statistics of the TLS handshakes or null without TLS or before
+	 *         the {@link ActiveDirectory#handShake()}.
+	 */
+	public TlsStats getTlsStats() {
+		TlsSocketFactory tls = tlsSocketFactory;
+		return tls == null ? null : tls.stats();
+	}
+
+	/**
+	 * Set how long a request waits for each reply of the server, must be called
+	 * before the {@link ActiveDirectory#handShake()}. When it ends the request
+	 * fails and its connection is discarded, so a hung server can't block the
+	 * threads. For a shorter bound on a single call use
+	 * {@link ActiveDirectory#withDeadline(Deadline, DirectoryCall)}.
+	 *
+	 * @param readTimeoutMillis the read timeout, 120000 by default (the
+	 *                          MaxQueryDuration of the Active Directory), zero
+	 *                          waits forever
+	 */
+	public void setReadTimeoutMillis(long readTimeoutMillis) {
+		if (readTimeoutMillis < 0)
+			throw new IllegalArgumentException("readTimeoutMillis cannot be negative.");
+		this.readTimeoutMillis = readTimeoutMillis;
+	}
+
+	/**
+	 * Enable the hedged searches: a search that returns a list (e.g.:
+	 * {@link ActiveDirectory#searchUserGroups(String)}) and has not answered after
+	 * the {@link HedgingConfig#getPercentile()} of its recent durations is sent
+	 * once more, to another domain controller when there are many or over another
+	 * connection, and the first answer is kept. The other search is abandoned.
+	 * <p>
+	 * It cuts the tail latency made by the stalls of a server (e.g.: a backup),
+	 * for at most {@link HedgingConfig#getMaxHedgeRatio()} more searches.
+	 *
+	 * @param hedgingConfig the hedging settings, null (the default) disables the
+	 *                      hedged searches
+	 */
+	public synchronized void setHedgingConfig(HedgingConfig hedgingConfig) {
+		Hedger old = hedger;
+		hedger = hedgingConfig == null ? null : new Hedger(hedgingConfig, connectionPoolConfig.getMaxSize());
+		if (old != null)
+			old.close();
+	}
+
+	/**
+	 * @return the statistics of the hedged searches or null if they are disabled.
+	 */
+	public HedgingStats getHedgingStats() {
+		Hedger current = hedger;
+		return current == null ? null : current.stats();
+	}
+
+	/**
+	 * Enable the partitioned searches: a search that returns a list of objects
+	 * (e.g.: {@link ActiveDirectory#searchUserObjects(String)}) is split into
+	 * searches of parts of the users container (see {@link PartitionStrategy}),
+	 * run in parallel over many connections. The common names are merged, each
+	 * object once.
+	 * <p>
+	 * A large enumeration is read many times faster, a small search makes more
+	 * requests for nothing.
+	 *
+	 * @param partitionConfig the partition settings, null (the default) for a
+	 *                        single search
+	 */
+	public void setPartitionConfig(PartitionConfig partitionConfig) {
+		this.partitionConfig = partitionConfig;
+	}
+
+	/**
+	 * Make requests that must end before a deadline. Each search of
+	 * <b>call</b> asks the server for a time limit of the time left, and when the
+	 * deadline expires the search in progress (or the wait for a free connection)
+	 * is abandoned on the client side.
+	 * <p>
+	 * Example:
+	 * <blockquote>
+	 *
+	 * <pre>
+	 * List&lt;String&gt; groups = ad.withDeadline(Deadline.after(200), () -&gt; ad.searchUserGroups("john"));
+	 * </pre>
+	 *
+	 * </blockquote>
+	 * <p>
+	 * The deadline is the one of the current thread, the searches given to other
+	 * threads (e.g.: by an {@link AsyncActiveDirectory}) don't have it. Inside
+	 * another call the earliest deadline is used. The streams opened by
+	 * <b>call</b> must be read before it returns.
+	 *
+	 * @param <T>      the type of the result
+	 * @param deadline the deadline of the requests
+	 * @param call     makes the requests
+	 *
+	 * @return the result of <b>call</b>
+	 *
+	 * @throws DeadlineExceededException if the deadline expires before the end of
+	 *                                   <b>call</b>
+	 * @throws NamingException           if a naming exception is encountered
+	 * @throws ActiveDirectoryException  if a request fails
+	 */
+	public <T> T withDeadline(Deadline deadline, DirectoryCall<T> call)
+			throws NamingException, ActiveDirectoryException {
+		Deadline outer = this.deadline.get();
+		Deadline current = outer == null ? deadline : outer.earliest(deadline);
+		if (current.isExpired())
+			throw new DeadlineExceededException("the deadline expired before the request.");
+
+		this.deadline.set(current);
+		DeadlineTimer.Scope scope = deadlineTimer().start(current);
+		try {
+			return call.call();
+		} catch (InterruptedNamingException | TimeLimitExceededException e) {
+			if (scope.close() || current.isExpired())
+				throw new DeadlineExceededException("the request did not end before the deadline.", e);
+			throw e;
+		} finally {
+			scope.close();
+			if (outer == null)
+				this.deadline.remove();
+			else
+				this.deadline.set(outer);
+		}
+	}
+
+	/**
+	 * Set a listener of the LDAP requests, e.g.: an {@link OperationMetrics}. The
+	 * listener receives the duration, the filter template, the entries and values
+	 * returned and the error code of each request. A cache hit makes no request.
+	 *
+	 * @param listener the listener, null (the default) measures nothing
+	 */
+	public void setListener(ActiveDirectoryListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Enable the caches of {@link ActiveDirectory#searchUserGroups(String)} and
+	 * {@link ActiveDirectory#searchUsersGroup(String)}. A cache hit returns
+	 * without a search in the Active Directory, so a change in the Active
+	 * Directory can take up to {@link CacheConfig#getTimeToLiveMillis()} to be
+	 * seen, unless the entry is invalidated.
+	 * <p>
+	 * The lists returned from the cache are unmodifiable and shared by the
+	 * callers. The user and group names are case insensitive keys.
+	 *
+	 * @param cacheConfig the cache settings, null disables the caches
+	 */
+	public synchronized void setCacheConfig(CacheConfig cacheConfig) {
+		if (cacheRefreshExecutor != null)
+			cacheRefreshExecutor.shutdownNow();
+
+		if (cacheConfig == null) {
+			cacheRefreshExecutor = null;
+			userGroupsCache = null;
+			usersGroupCache = null;
+			return;
+		}
+
+		// the refresh-ahead is best effort, the reloads above the queue capacity are
+		// skipped
+		cacheRefreshExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(1024), new DaemonThreadFactory("active-directory-cache-refresh"));
+		userGroupsCache = new LookupCache<String, List<String>>(cacheConfig, cacheRefreshExecutor);
+		usersGroupCache = new LookupCache<String, List<String>>(cacheConfig, cacheRefreshExecutor);
+	}
+
+	/**
+	 * Enable the local indexes of {@link ActiveDirectory#searchUserObjects(String)}
+	 * and {@link ActiveDirectory#searchGroupObjects(String)}. The Active
+	 * Directory can't use an index for their filters
+	 * (<b>sAMAccountName=*part*</b>) and reads all the objects, so with the local
+	 * indexes these searches are answered without a request.
+	 * <p>
+	 * The first search loads the <b>sAMAccountName</b> and the <b>cn</b> of all
+	 * the users (or groups) in a {@link SubstringIndex}, set a page size (see
+	 * {@link ActiveDirectory#setPageSize(int)}) if there are more objects than the
+	 * server size limit. After {@link SubstringIndexConfig#getRefreshIntervalMillis()}
+	 * the index is loaded again in background, so a new object can take that long
+	 * to be found. A directory above {@link SubstringIndexConfig#getMaxMemoryBytes()}
+	 * and a part with the characters of a filter (e.g.: <b>*</b>) are searched in
+	 * the Active Directory.
+	 *
+	 * @param substringIndexConfig the index settings, null (the default) disables
+	 *                             the indexes
+	 */
+	public synchronized void setSubstringIndexConfig(SubstringIndexConfig substringIndexConfig) {
+		if (indexRefreshExecutor != null)
+			indexRefreshExecutor.shutdownNow();
+
+		if (substringIndexConfig == null) {
+			indexRefreshExecutor = null;
+			userObjectsIndex = null;
+			groupObjectsIndex = null;
+			return;
+		}
+
+		indexRefreshExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(2), new DaemonThreadFactory("active-directory-index-refresh"));
+		userObjectsIndex = new LocalObjectIndex(substringIndexConfig,
+				maxMemoryBytes -> loadIndex(Operation.USER_OBJECTS_INDEX, maxMemoryBytes), indexRefreshExecutor);
+		groupObjectsIndex = new LocalObjectIndex(substringIndexConfig,
+				maxMemoryBytes -> loadIndex(Operation.GROUP_OBJECTS_INDEX, maxMemoryBytes), indexRefreshExecutor);
+	}
+
+	/**
+	 * Enable a snapshot of the groups of all the users and of the members of all
+	 * the groups, for a warm start: the snapshot file written by the last run is
+	 * mapped in memory and answers
+	 * {@link ActiveDirectory#searchUserGroups(String)} and
+	 * {@link ActiveDirectory#searchUsersGroup(String)} (and their batch searches)
+	 * at once, instead of a search per name after each restart.
+	 * <p>
+	 * The first search starts a load of the snapshot from the Active Directory in
+	 * background (two searches of all the users and all the groups, set a page
+	 * size with {@link ActiveDirectory#setPageSize(int)} if there are more
+	 * objects than the server size limit). The new snapshot then answers the
+	 * searches and is written to the file. It is loaded again after
+	 * {@link SnapshotConfig#getRefreshIntervalMillis()}, so a change in the Active
+	 * Directory can take that long to be seen, unless the name is invalidated.
+	 * A name not in the snapshot is searched in the Active Directory. When the
+	 * cache is enabled, the cache is filled from the snapshot.
+	 *
+	 * @param snapshotConfig the snapshot settings, null (the default) disables the
+	 *                       snapshot
+	 */
+	public synchronized void setSnapshotConfig(SnapshotConfig snapshotConfig) {
+		if (snapshotRefreshExecutor != null)
+			snapshotRefreshExecutor.shutdownNow();
+
+		if (snapshotConfig == null) {
+			snapshotRefreshExecutor = null;
+			snapshot = null;
+			return;
+		}
+
+		snapshotRefreshExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(1), new DaemonThreadFactory("active-directory-snapshot-refresh"));
+		snapshot = new LocalSnapshot(snapshotConfig, this::loadSnapshot, snapshotRefreshExecutor);
+	}
+
+	/**
+	 * Enable a filter of the user names: a Bloom filter of the
+	 * <b>sAMAccountName</b> of all the users, so
+	 * {@link ActiveDirectory#searchUserGroups(String)} (and its batch, consumer
+	 * and stream searches) answers at once with no groups for a user that surely
+	 * doesn't exist (e.g.: typos, credential stuffing), without a search.
+	 * <p>
+	 * The first search starts a load of the filter from the Active Directory in
+	 * background (a search of all the users, set a page size with
+	 * {@link ActiveDirectory#setPageSize(int)} if there are more users than the
+	 * server size limit). It is loaded again after
+	 * {@link ExistenceFilterConfig#getRefreshIntervalMillis()}, so a user created
+	 * in the Active Directory can be reported without groups that long, unless it
+	 * is invalidated with {@link ActiveDirectory#invalidateUserGroups(String)}.
+	 * About {@link ExistenceFilterConfig#getFalsePositiveRate()} of the absent
+	 * users are still searched.
+	 *
+	 * @param existenceFilterConfig the filter settings, null (the default)
+	 *                              disables the filter
+	 */
+	public synchronized void setExistenceFilterConfig(ExistenceFilterConfig existenceFilterConfig) {
+		if (existenceFilterRefreshExecutor != null)
+			existenceFilterRefreshExecutor.shutdownNow();
+
+		if (existenceFilterConfig == null) {
+			existenceFilterRefreshExecutor = null;
+			existenceFilter = null;
+			return;
+		}
+
+		existenceFilterRefreshExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(1), new DaemonThreadFactory("active-directory-existence-filter-refresh"));
+		existenceFilter = new LocalExistenceFilter(existenceFilterConfig, this::loadExistenceFilter,
+				existenceFilterRefreshExecutor);
+	}
+
+	/**
+	 * Remove the cached groups of a user, the next
+	 * {@link ActiveDirectory#searchUserGroups(String)} searches the Active
+	 * Directory.
+	 *
+	 * @param username the user name
+	 */
+	public void invalidateUserGroups(String username) {
+		LookupCache<String, List<String>> cache = userGroupsCache;
+		if (cache != null)
+			cache.invalidate(cacheKey(username));
+
+		LocalSnapshot local = snapshot;
+		if (local != null)
+			local.invalidateUser(username);
+
+		// e.g.: the user was just created
+		LocalExistenceFilter filter = existenceFilter;
+		if (filter != null)
+			filter.add(username);
+	}
+
+	/**
+	 * Remove the cached users of a group, the next
+	 * {@link ActiveDirectory#searchUsersGroup(String)} searches the Active
+	 * Directory.
+	 *
+	 * @param groupName the group name
+	 */
+	public void invalidateUsersGroup(String groupName) {
+		LookupCache<String, List<String>> cache = usersGroupCache;
+		if (cache != null)
+			cache.invalidate(cacheKey(groupName));
+
+		LocalSnapshot local = snapshot;
+		if (local != null)
+			local.invalidateGroup(groupName);
+	}
+
+	/**
+	 * Remove all the entries of the caches. With a snapshot or a filter of the
+	 * user names, the searches go to the Active Directory until they are loaded
+	 * again.
+	 */
+	public void invalidateCaches() {
+		LookupCache<String, List<String>> cache = userGroupsCache;
+		if (cache != null)
+			cache.invalidateAll();
+
+		cache = usersGroupCache;
+		if (cache != null)
+			cache.invalidateAll();
+
+		LocalSnapshot local = snapshot;
+		if (local != null)
+			local.invalidateAll();
+
+		LocalExistenceFilter filter = existenceFilter;
+		if (filter != null)
+			filter.invalidateAll();
+	}
+
+	/**
+	 * @return the statistics of the {@link ActiveDirectory#searchUserGroups(String)}
+	 *         cache or null if the caches are disabled.
+	 */
+	public CacheStats getUserGroupsCacheStats() {
+		LookupCache<String, List<String>> cache = userGroupsCache;
+		return cache == null ? null : cache.stats();
+	}
+
+	/**
+	 * @return the statistics of the {@link ActiveDirectory#searchUsersGroup(String)}
+	 *         cache or null if the caches are disabled.
+	 */
+	public CacheStats getUsersGroupCacheStats() {
+		LookupCache<String, List<String>> cache = usersGroupCache;
+		return cache == null ? null : cache.stats();
+	}
+
+	/**
+	 * The searches that return a list (e.g.:
+	 * {@link ActiveDirectory#searchUserGroups(String)} on a cache miss) are
+	 * coalesced: while a search is in flight, the same search (same base, filter
+	 * and attributes) made by other threads waits for it and gets a copy of its
+	 * result, so a burst of logins of the same user makes a single request.
+	 *
+	 * @return the statistics of the coalescing of the searches.
+	 */
+	public CoalescingStats getCoalescingStats() {
+		return searchFlights.stats();
+	}
+
+	/**
+	 * Create the connection pool with the Active Directory. The first
+	 * connections are opened here, so invalid credentials are reported by this
+	 * method.
+	 * <p>
+	 * After the handShake an instance can be shared by many threads, each search
+	 * borrows a connection from the pool.
+	 *
+	 * @throws ActiveDirectoryException if the username is a null or empty string
+	 * @throws NamingException          if a naming exception is encountered
+	 */
+	public void handShake() throws NamingException, ActiveDirectoryException {
+
+		if (username == null || username.equals(""))
+			throw new ActiveDirectoryException("the username cannot be null or empty.");
+
+		createUsersContainer(domain);
+
+		List<String> endpoints = new ArrayList<String>();
+		for (String dc : servers) {
+			String endpoint = endpoint(dc);
+			if (!endpoints.contains(endpoint))
+				endpoints.add(endpoint);
+		}
+
+		// a new handShake with the same settings keeps the TLS sessions
+		TlsSocketFactory tls = tlsSocketFactory;
+		if (tlsConfig == null) {
+			tls = null;
+		} else if (tls == null || tls.config() != tlsConfig) {
+			try {
+				tls = new TlsSocketFactory(tlsConfig);
+			} catch (GeneralSecurityException | IOException e) {
+				throw new ActiveDirectoryException("the TLS settings cannot be used: " + e.getMessage(), e);
+			}
+		}
+		boolean ldaps = tls != null && tls.config().getTransportSecurity() == TransportSecurity.LDAPS;
+
+		properties = new Properties();
+		properties.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+		// a list of URLs is tried in order, the failover of the bind pool
+		properties.put(Context.PROVIDER_URL, urls(endpoints, ldaps));
+		// with StartTLS too, so that JNDI can't open a plain connection again
+		if (tls != null)
+			properties.put("java.naming.ldap.factory.socket", TlsSocketFactory.class.getName());
+		properties.put(Context.SECURITY_AUTHENTICATION, "simple");
+		properties.put(Context.SECURITY_PRINCIPAL, (username + "@" + domain));
+		properties.put(Context.SECURITY_CREDENTIALS, password);
+		if (connectTimeoutMillis > 0)
+			properties.put("com.sun.jndi.ldap.connect.timeout", String.valueOf(connectTimeoutMillis));
+		if (readTimeoutMillis > 0)
+			properties.put("com.sun.jndi.ldap.read.timeout", String.valueOf(readTimeoutMillis));
+		// the GUIDs read by DirectorySync
+		properties.put("java.naming.ldap.attributes.binary", "objectGUID invocationId");
+
+		tlsSocketFactory = tls;
+
+		final Properties environment = properties;
+		DirContextPool newPool;
+		if (endpoints.size() == 1) {
+			newPool = new DirContextPool(contextFactory(environment), connectionPoolConfig);
+		} else {
+			Map<String, DirContextFactory> factories = new LinkedHashMap<String, DirContextFactory>();
+			for (String endpoint : endpoints) {
+				Properties dcEnvironment = new Properties();
+				dcEnvironment.putAll(environment);
+				dcEnvironment.put(Context.PROVIDER_URL, urls(Collections.singletonList(endpoint), ldaps));
+				factories.put(endpoint, contextFactory(dcEnvironment));
+			}
+			newPool = new BalancedDirContextPool(factories, connectionPoolConfig, loadBalancingConfig);
+		}
+		newPool.start();
+
+		DirContextPool oldPool = dirContextPool;
+		dirContextPool = newPool;
+		matchingRuleInChainSupported = null;
+		isHandShakeMade = true;
+
+		if (oldPool != null)
+			oldPool.close();
+
+		// the bind pool of the old settings is created again on the next authenticate
+		synchronized (this) {
+			oldPool = bindContextPool;
+			bindContextPool = null;
+		}
+
+		if (oldPool != null)
+			oldPool.close();
+	}
+
+	/**
+	 * Close all the connections with the Active Directory. A new
+	 * {@link ActiveDirectory#handShake()} is needed before a new search.
+	 */
+	@Override
+	public void close() {
+		isHandShakeMade = false;
+
+		DirContextPool pool = dirContextPool;
+		dirContextPool = null;
+
+		if (pool != null)
+			pool.close();
+
+		synchronized (this) {
+			if (bindContextPool != null)
+				bindContextPool.close();
+			bindContextPool = null;
+
+			if (cacheRefreshExecutor != null)
+				cacheRefreshExecutor.shutdownNow();
+			if (indexRefreshExecutor != null)
+				indexRefreshExecutor.shutdownNow();
+			if (snapshotRefreshExecutor != null)
+				snapshotRefreshExecutor.shutdownNow();
+			if (existenceFilterRefreshExecutor != null)
+				existenceFilterRefreshExecutor.shutdownNow();
+			if (searchExecutor != null)
+				searchExecutor.shutdownNow();
+			if (deadlineTimer != null)
+				deadlineTimer.close();
+			deadlineTimer = null;
+			if (hedger != null)
+				hedger.close();
+			searchExecutor = null;
+		}
+	}
+
+	/**
+	 * Check the password of a user, e.g.: in a login.
+	 * <p>
+	 * The check is a bind with the user credentials over a connection of a pool of
+	 * connections only used for it (see
+	 * {@link ActiveDirectory#setBindPoolConfig(ConnectionPoolConfig)}), so no new
+	 * connection is opened per login. The connections of the searches are never
+	 * bound as the user. The bind pool is created on the first call.
+	 * <p>
+	 * An empty password is never sent to the server, a bind with an empty password
+	 * is an unauthenticated bind and always succeeds.
+	 *
+	 * @param username the user name, e.g.: <b>john</b>, the domain is added as in
+	 *                 the {@link ActiveDirectory#handShake()}
+	 * @param password the user password
+	 *
+	 * @return the result of the check, with the reason of a failure
+	 *
+	 * @throws NamingException          if a naming exception other than a bind
+	 *                                  failure is encountered, e.g.: the server is
+	 *                                  down
+	 * @throws ActiveDirectoryException if the username is a null or empty string,
+	 *                                  if the handShake method is not called before
+	 *                                  this method or if no connection got free in
+	 *                                  time
+	 */
+	public AuthenticationResult authenticate(String username, String password)
+			throws NamingException, ActiveDirectoryException {
+
+		if (username == null || username.equals(""))
+			throw new ActiveDirectoryException("the username cannot be null or empty.");
+
+		if (password == null || password.equals(""))
+			return new AuthenticationResult(AuthenticationStatus.EMPTY_PASSWORD, -1, null,
+					"the password cannot be null or empty.");
+
+		DirContextPool pool = bindPool();
+		String principal = username.contains("@") ? username : username + "@" + domain;
+		OperationTrace trace = trace(Operation.AUTHENTICATE);
+
+		for (int attempt = 1;; attempt++) {
+			PooledDirContext pooled = OperationTrace.borrow(pool, trace);
+			boolean broken = false;
+			try {
+				AuthenticationResult result = bind(pooled.getContext(), principal, password);
+				if (trace != null) {
+					if (!result.isAuthenticated())
+						trace.failed(result.getErrorCode());
+					trace.finish(null);
+				}
+				return result;
+			} catch (NamingException e) {
+				// a connection closed by the server while idle, try once more with a new one
+				broken = DirContextPool.isBrokenConnection(e);
+				if (!broken || attempt > 1 || DirContextPool.isReadTimeout(e)) {
+					if (trace != null)
+						trace.finish(e);
+					throw e;
+				}
+			} catch (RuntimeException e) {
+				if (trace != null)
+					trace.finish(e);
+				throw e;
+			} finally {
+				if (broken)
+					pool.invalidate(pooled);
+				else
+					pool.release(pooled);
+			}
+		}
+	}
+
+	/**
+	 * Returns a list containing the common name of the user's groups.
+	 *
+	 * @param username a string with the user name that will have its groups listed.
+	 *
+	 * @return a list with common names or an empty list if the user has not groups
+	 *         or if the user is not found. The list comes from the cache when it
+	 *         is enabled, see {@link ActiveDirectory#setCacheConfig(CacheConfig)}.
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	public List<String> searchUserGroups(String username) throws NamingException, ActiveDirectoryException {
+		LookupCache<String, List<String>> cache = userGroupsCache;
+		if (cache != null)
+			return cache.get(cacheKey(username), key -> Collections.unmodifiableList(userGroups(username)));
+
+		return userGroups(username);
+	}
+
+	private List<String> userGroups(String username) throws NamingException, ActiveDirectoryException {
+		List<String> groups = localUserGroups(username);
+		if (groups != null)
+			return groups;
+
+		return searchToObjectAttributes(Operation.USER_GROUPS, userGroupsFilter(username), "memberOf");
+	}
+
+	/**
+	 * @param username the user name
+	 *
+	 * @return the groups of the user from the filter of the user names or the
+	 *         snapshot, or null if the user must be searched in the Active
+	 *         Directory
+	 */
+	private List<String> localUserGroups(String username) {
+		if (isAbsentUser(username))
+			return new ArrayList<String>();
+
+		LocalSnapshot local = snapshot;
+		return local == null ? null : local.userGroups(username);
+	}
+
+	private boolean isAbsentUser(String username) {
+		LocalExistenceFilter filter = existenceFilter;
+		return filter != null && filter.isAbsent(username);
+	}
+
+	/**
+	 * Same as {@link ActiveDirectory#searchUserGroups(String)} for many users. The
+	 * users are searched {@link ActiveDirectory#setBatchSize(int)} at a time, with
+	 * a filter like <b>(|(sAMAccountName=john)(sAMAccountName=paul)...)</b>, so
+	 * thousands of users need only a few searches. When the cache is enabled only
+	 * the users not in the cache are searched.
+	 *
+	 * @param usernames the user names that will have their groups listed.
+	 *
+	 * @return a map, in the order of <b>usernames</b>, from each user name to the
+	 *         common names of its groups. A user without groups or not found has
+	 *         an empty list.
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	public Map<String, List<String>> searchUserGroups(Collection<String> usernames)
+			throws NamingException, ActiveDirectoryException {
+		return searchBatch(Operation.USER_GROUPS_BATCH, usernames, userGroupsCache, this::localUserGroups,
+				"sAMAccountName", "memberOf", keys -> "(&(objectclass=user)" + LdapFilter.anyOf("sAMAccountName", keys) + ")");
+	}
+
+	/**
+	 * Same as {@link ActiveDirectory#searchUserGroups(String)}, but each common
+	 * name is given to <b>action</b> as soon as it is read, without building a
+	 * list. If <b>action</b> throws an exception the search is abandoned.
+	 *
+	 * @param username a string with the user name that will have its groups listed.
+	 * @param action   receives each common name
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	public void searchUserGroups(String username, Consumer<? super String> action)
+			throws NamingException, ActiveDirectoryException {
+		if (isAbsentUser(username))
+			return;
+
+		forEachObjectAttribute(Operation.USER_GROUPS, userGroupsFilter(username), "memberOf", action);
+	}
+
+	/**
+	 * Same as {@link ActiveDirectory#searchUserGroups(String)}, but the common
+	 * names are read from the server while the stream is consumed.
+	 * <p>
+	 * The stream holds a connection of the pool until it is consumed to the end or
+	 * closed, so use it in a try-with-resources. Closing it before the end (e.g.:
+	 * after a <b>findFirst</b>) abandons the search in the server.
+	 *
+	 * @param username a string with the user name that will have its groups listed.
+	 *
+	 * @return a lazy stream of common names, empty if the user has not groups or if
+	 *         the user is not found.
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	public Stream<String> streamUserGroups(String username) throws NamingException, ActiveDirectoryException {
+		if (isAbsentUser(username))
+			return Stream.empty();
+
+		return streamObjectAttributes(Operation.USER_GROUPS, userGroupsFilter(username), "memberOf");
+	}
+
+	/**
+	 * Returns a list containing the common name of users in a group.
+	 * <p>
+	 * Groups with more than 1500 members are read with the incremental range
+	 * retrieval (<b>member;range=0-1499</b>, <b>member;range=1500-2999</b>, ...),
+	 * so the list is never truncated.
+	 *
+	 * @param groupName a string with the group name that will have its users
+	 *                  listed.
+	 *
+	 * @return a list with common names or an empty list if the group has not
+	 *         members or if the group is not found. The list comes from the cache
+	 *         when it is enabled, see
+	 *         {@link ActiveDirectory#setCacheConfig(CacheConfig)}.
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	public List<String> searchUsersGroup(String groupName) throws NamingException, ActiveDirectoryException {
+		LookupCache<String, List<String>> cache = usersGroupCache;
+		if (cache != null)
+			return cache.get(cacheKey(groupName), key -> Collections.unmodifiableList(usersGroup(groupName)));
+
+		return usersGroup(groupName);
+	}
+
+	private List<String> usersGroup(String groupName) throws NamingException, ActiveDirectoryException {
+		LocalSnapshot local = snapshot;
+		List<String> members = local == null ? null : local.groupMembers(groupName);
+		if (members != null)
+			return members;
+
+		return searchToObjectAttributes(Operation.USERS_GROUP, usersGroupFilter(groupName), "member");
+	}
+
+	/**
+	 * Same as {@link ActiveDirectory#searchUsersGroup(String)} for many groups. The
+	 * groups are searched {@link ActiveDirectory#setBatchSize(int)} at a time, with
+	 * a filter like <b>(|(cn=sales)(cn=inf)...)</b>. When the cache is enabled
+	 * only the groups not in the cache are searched.
+	 *
+	 * @param groupNames the group names that will have their users listed.
+	 *
+	 * @return a map, in the order of <b>groupNames</b>, from each group name to the
+	 *         common names of its users. A group without members or not found has
+	 *         an empty list.
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	public Map<String, List<String>> searchUsersGroup(Collection<String> groupNames)
+			throws NamingException, ActiveDirectoryException {
+		LocalSnapshot local = snapshot;
+		return searchBatch(Operation.USERS_GROUP_BATCH, groupNames, usersGroupCache,
+				local == null ? null : local::groupMembers, "cn", "member", keys -> LdapFilter.anyOf("cn", keys));
+	}
+
+	/**
+	 * Same as {@link ActiveDirectory#searchUsersGroup(String)}, but each common
+	 * name is given to <b>action</b> as soon as it is read, without building a
+	 * list. If <b>action</b> throws an exception the search is abandoned.
+	 *
+	 * @param groupName a string with the group name that will have its users
+	 *                  listed.
+	 * @param action    receives each common name
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	public void searchUsersGroup(String groupName, Consumer<? super String> action)
+			throws NamingException, ActiveDirectoryException {
+		forEachObjectAttribute(Operation.USERS_GROUP, usersGroupFilter(groupName), "member", action);
+	}
+
+	/**
+	 * Same as {@link ActiveDirectory#searchUsersGroup(String)}, but the common
+	 * names are read from the server while the stream is consumed.
+	 * <p>
+	 * The stream holds a connection of the pool until it is consumed to the end or
+	 * closed, so use it in a try-with-resources. Closing it before the end abandons
+	 * the search in the server.
+	 *
+	 * @param groupName a string with the group name that will have its users
+	 *                  listed.
+	 *
+	 * @return a lazy stream of common names, empty if the group has not members or
+	 *         if the group is not found.
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	public Stream<String> streamUsersGroup(String groupName) throws NamingException, ActiveDirectoryException {
+		return streamObjectAttributes(Operation.USERS_GROUP, usersGroupFilter(groupName), "member");
+	}
+
+	/**
+	 * Returns a list containing the common name of users in a group. With
+	 * <b>transitive</b> the users of the nested groups are listed too, and the
+	 * nested groups are not in the list.
+	 * <p>
+	 * In Active Directory the transitive search is a single search with the
+	 * LDAP_MATCHING_RULE_IN_CHAIN (<b>1.2.840.113556.1.4.1941</b>), the server
+	 * walks the nested groups. On other servers the nested groups are expanded by
+	 * this library, a nesting level at a time, with the searches of a level made
+	 * in parallel, see {@link NestedGroupExpander}. The transitive results are
+	 * never cached.
+	 *
+	 * @param groupName  a string with the group name that will have its users
+	 *                   listed.
+	 * @param transitive true to list the users of the nested groups too, false is
+	 *                   the same as {@link ActiveDirectory#searchUsersGroup(String)}
+	 *
+	 * @return a list with common names, each user once, or an empty list if the
+	 *         group has not members or if the group is not found.
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	public List<String> searchUsersGroup(String groupName, boolean transitive)
+			throws NamingException, ActiveDirectoryException {
+		if (!transitive)
+			return searchUsersGroup(groupName);
+
+		List<String> groupDistinguishedNames = new ArrayList<String>();
+		forEachSearchResult(Operation.TRANSITIVE_GROUP, groupFilter(groupName), new String[] { "cn" },
+				searchResult -> groupDistinguishedNames.add(searchResult.getNameInNamespace()));
+
+		if (groupDistinguishedNames.isEmpty())
+			return new ArrayList<String>();
+
+		if (isMatchingRuleInChainSupported()) {
+			try {
+				return searchForObjects(Operation.TRANSITIVE_MEMBERS, nestedMembersFilter(groupDistinguishedNames));
+			} catch (InvalidSearchFilterException | OperationNotSupportedException e) {
+				// the server does not know the matching rule, don't try it again
+				matchingRuleInChainSupported = Boolean.FALSE;
+			}
+		}
+
+		// the searches of the other threads keep the deadline of the call
+		Deadline callDeadline = deadline.get();
+		return new NestedGroupExpander((filter, action) -> {
+			Deadline outer = deadline.get();
+			deadline.set(callDeadline);
+			try {
+				forEachSearchResult(Operation.NESTED_GROUP_EXPANSION, filter, new String[] { "cn", "objectClass" },
+						action);
+			} finally {
+				if (outer == null)
+					deadline.remove();
+				else
+					deadline.set(outer);
+			}
+		}, searchExecutor(), NESTED_GROUPS_PER_SEARCH).expand(groupDistinguishedNames);
+	}
+
+	/**
+	 * Search for common names of user objects where their common names contain
+	 * parts of partOfUsername <br>
+	 * and returns a list of those common names.
+	 * <p>
+	 * Example:
+	 * <blockquote>
+	 *
+	 * <pre>
+	 * For the user names in Active Directory: [arthur, paul, john, marie, oscar]
+	 *
+	 * If partOfUsername is: "ar"
+	 *
+	 * The list returned is: [arthur, marie, oscar]
+	 * </pre>
+	 *
+	 * </blockquote>
+	 *
+	 * @param partOfUsername a string containing part of the objects common name
+	 *
+	 * @return a list with common names or an empty list if partOfUsername does not
+	 *         match any common name of some user.
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	public List<String> searchUserObjects(String partOfUsername) throws NamingException, ActiveDirectoryException {
+		List<String> found = searchIndex(userObjectsIndex, partOfUsername);
+		if (found != null)
+			return found;
+
+		return searchForObjects(Operation.USER_OBJECTS, userObjectsFilter(partOfUsername));
+	}
+
+	/**
+	 * Same as {@link ActiveDirectory#searchUserObjects(String)}, but each common
+	 * name is given to <b>action</b> as soon as it is read, without building a
+	 * list. If <b>action</b> throws an exception the search is abandoned.
+	 *
+	 * @param partOfUsername a string containing part of the objects common name
+	 * @param action         receives each common name
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	public void searchUserObjects(String partOfUsername, Consumer<? super String> action)
+			throws NamingException, ActiveDirectoryException {
+		List<String> found = searchIndex(userObjectsIndex, partOfUsername);
+		if (found != null)
+			found.forEach(action);
+		else
+			forEachObject(Operation.USER_OBJECTS, userObjectsFilter(partOfUsername), action);
+	}
+
+	/**
+	 * Same as {@link ActiveDirectory#searchUserObjects(String)}, but the common
+	 * names are read from the server while the stream is consumed.
+	 * <p>
+	 * The stream holds a connection of the pool until it is consumed to the end or
+	 * closed, so use it in a try-with-resources. Closing it before the end abandons
+	 * the search in the server.
+	 *
+	 * @param partOfUsername a string containing part of the objects common name
+	 *
+	 * @return a lazy stream of common names, empty if partOfUsername does not match
+	 *         any common name of some user.
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	public Stream<String> streamUserObjects(String partOfUsername) throws NamingException, ActiveDirectoryException {
+		List<String> found = searchIndex(userObjectsIndex, partOfUsername);
+		if (found != null)
+			return found.stream();
+
+		return streamObjects(Operation.USER_OBJECTS, userObjectsFilter(partOfUsername));
+	}
+
+	/**
+	 * Search for common names of group objects where their common names contain
+	 * parts of partOfTheCommonName <br>
+	 * and returns a list of those common names.
+	 * <p>
+	 * Example:
+	 * <blockquote>
+	 *
+	 * <pre>
+	 * For the group names in Active Directory: [records, info, sales, financial, inventory, directory, check-in]
+	 *
+	 * If partOfGroupName is: "in"
+	 *
+	 * The list returned is: [info, financial, inventory, check-in]
+	 * </pre>
+	 *
+	 * </blockquote>
+	 *
+	 * @param partOfGroupName a string containing part of the objects common name
+	 *
+	 * @return a list with common names or an empty list if partOfGroupName does not
+	 *         match any common name of some group.
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	public List<String> searchGroupObjects(String partOfGroupName) throws NamingException, ActiveDirectoryException {
+		List<String> found = searchIndex(groupObjectsIndex, partOfGroupName);
+		if (found != null)
+			return found;
+
+		return searchForObjects(Operation.GROUP_OBJECTS, groupObjectsFilter(partOfGroupName));
+	}
+
+	/**
+	 * Same as {@link ActiveDirectory#searchGroupObjects(String)}, but each common
+	 * name is given to <b>action</b> as soon as it is read, without building a
+	 * list. If <b>action</b> throws an exception the search is abandoned.
+	 *
+	 * @param partOfGroupName a string containing part of the objects common name
+	 * @param action          receives each common name
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	public void searchGroupObjects(String partOfGroupName, Consumer<? super String> action)
+			throws NamingException, ActiveDirectoryException {
+		List<String> found = searchIndex(groupObjectsIndex, partOfGroupName);
+		if (found != null)
+			found.forEach(action);
+		else
+			forEachObject(Operation.GROUP_OBJECTS, groupObjectsFilter(partOfGroupName), action);
+	}
+
+	/**
+	 * Same as {@link ActiveDirectory#searchGroupObjects(String)}, but the common
+	 * names are read from the server while the stream is consumed.
+	 * <p>
+	 * The stream holds a connection of the pool until it is consumed to the end or
+	 * closed, so use it in a try-with-resources. Closing it before the end abandons
+	 * the search in the server.
+	 *
+	 * @param partOfGroupName a string containing part of the objects common name
+	 *
+	 * @return a lazy stream of common names, empty if partOfGroupName does not match
+	 *         any common name of some group.
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	public Stream<String> streamGroupObjects(String partOfGroupName) throws NamingException, ActiveDirectoryException {
+		List<String> found = searchIndex(groupObjectsIndex, partOfGroupName);
+		if (found != null)
+			return found.stream();
+
+		return streamObjects(Operation.GROUP_OBJECTS, groupObjectsFilter(partOfGroupName));
+	}
+
+	/**
+	 * Search a local index, see
+	 * {@link ActiveDirectory#setSubstringIndexConfig(SubstringIndexConfig)}.
+	 *
+	 * @return the common names found or null if the search must go to the Active
+	 *         Directory
+	 */
+	private static List<String> searchIndex(LocalObjectIndex index, String part) {
+		return index == null ? null : index.search(part);
+	}
+
+	/**
+	 * Read the <b>sAMAccountName</b> and the <b>cn</b> of all the objects of a
+	 * local index. The search is abandoned as soon as the index goes above the
+	 * memory budget.
+	 *
+	 * @param operation      the objects to index, with their filter
+	 * @param maxMemoryBytes the memory budget
+	 *
+	 * @return the index or null if it goes above the memory budget
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	private SubstringIndex loadIndex(Operation operation, long maxMemoryBytes)
+			throws NamingException, ActiveDirectoryException {
+		SubstringIndex.Builder builder = new SubstringIndex.Builder();
+
+		// the filter of a load has no values, it is its own template
+		try (SearchCursor cursor = openCursor(operation, operation.getFilterTemplate(), "sAMAccountName", "cn")) {
+			while (cursor.hasMore()) {
+				Attributes attributes = cursor.next().getAttributes();
+				Attribute name = attributes.get("sAMAccountName");
+				Attribute commonName = attributes.get("cn");
+				if (name == null || commonName == null)
+					continue;
+
+				builder.add((String) name.get(), (String) commonName.get());
+				if (builder.getEstimatedBytes() > maxMemoryBytes)
+					return null;
+			}
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * Read the <b>sAMAccountName</b> of all the users, see
+	 * {@link ActiveDirectory#setExistenceFilterConfig(ExistenceFilterConfig)}.
+	 *
+	 * @param names receives the names
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	private void loadExistenceFilter(Consumer<String> names) throws NamingException, ActiveDirectoryException {
+		Operation operation = Operation.USER_EXISTENCE_FILTER;
+
+		// the filter of a load has no values, it is its own template
+		try (SearchCursor cursor = openCursor(operation, operation.getFilterTemplate(), "sAMAccountName")) {
+			while (cursor.hasMore()) {
+				Attribute name = cursor.next().getAttributes().get("sAMAccountName");
+				if (name != null)
+					names.accept((String) name.get());
+			}
+		}
+	}
+
+	/**
+	 * Load a snapshot of the groups of all the users and of the members of all the
+	 * groups, see {@link ActiveDirectory#setSnapshotConfig(SnapshotConfig)}.
+	 *
+	 * @return the snapshot
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	private DirectorySnapshot loadSnapshot() throws NamingException, ActiveDirectoryException {
+		DirectorySnapshot.Builder builder = new DirectorySnapshot.Builder();
+		loadSnapshot(Operation.USER_GROUPS_SNAPSHOT, "sAMAccountName", "memberOf", builder::addUser);
+		loadSnapshot(Operation.USERS_GROUP_SNAPSHOT, "cn", "member", builder::addGroup);
+		return builder.build();
+	}
+
+	private void loadSnapshot(Operation operation, String nameAttribute, String valuesAttribute,
+			BiConsumer<String, List<String>> add) throws NamingException, ActiveDirectoryException {
+		// the filter of a load has no values, it is its own template
+		SearchResultEnumeration cursor = new RangedAttributeEnumeration(
+				openCursor(operation, operation.getFilterTemplate(), nameAttribute, valuesAttribute), valuesAttribute);
+
+		try {
+			while (cursor.hasMore()) {
+				SearchResult searchResult = cursor.next();
+				Attribute name = searchResult.getAttributes().get(nameAttribute);
+				if (name == null)
+					continue;
+
+				// each range of a large group is added to the same name
+				List<String> values = new ArrayList<String>();
+				getLastCommonNames(searchResult, valuesAttribute, values::add);
+				add.accept((String) name.get(), values);
+			}
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Search for objects using a filter and returns a list with the common name of
+	 * those objects.
+	 *
+	 * @param operation the request, for the {@link ActiveDirectoryListener}
+	 * @param filter    a string with the filter for the search
+	 *
+	 * @return a list common names {@link String}.
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	private List<String> searchForObjects(Operation operation, String filter)
+			throws NamingException, ActiveDirectoryException {
+		return coalesce(operation, filter, "cn", () -> {
+			PartitionConfig partitions = partitionConfig;
+			if (partitions != null)
+				return searchPartitions(operation, filter, partitions);
+
+			List<String> listActiveDirectoryObjects = new ArrayList<String>();
+			forEachObject(operation, filter, listActiveDirectoryObjects::add);
+			return listActiveDirectoryObjects;
+		});
+	}
+
+	/**
+	 * Search for objects with a {@link PartitionedSearch}, see
+	 * {@link ActiveDirectory#setPartitionConfig(PartitionConfig)}.
+	 *
+	 * @param operation  the request, for the {@link ActiveDirectoryListener}
+	 * @param filter     a string with the filter for the search
+	 * @param partitions the partition settings
+	 *
+	 * @return a list of common names, each object once
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	private List<String> searchPartitions(Operation operation, String filter, PartitionConfig partitions)
+			throws NamingException, ActiveDirectoryException {
+		List<PartitionedSearch.Partition> parts;
+		if (partitions.getStrategy() == PartitionStrategy.ORGANIZATIONAL_UNITS) {
+			// every child, e.g.: the LostAndFound container holds users too
+			List<String> children = new ArrayList<String>();
+			try (SearchCursor cursor = openCursor(Operation.PARTITIONS, usersContainer, SearchControls.ONELEVEL_SCOPE,
+					Operation.PARTITIONS.getFilterTemplate(), pageSize, new Control[0])) {
+				while (cursor.hasMore())
+					children.add(cursor.next().getNameInNamespace());
+			}
+			parts = PartitionedSearch.children(usersContainer, children);
+		} else {
+			parts = PartitionedSearch.nameRanges(usersContainer, partitions.getNameRanges());
+		}
+
+		// the searches of the other threads keep the deadline of the call
+		Deadline callDeadline = deadline.get();
+		return new PartitionedSearch((partition, action) -> {
+			Deadline outer = deadline.get();
+			deadline.set(callDeadline);
+			try (SearchCursor cursor = openCursor(operation, partition.base, partition.scope,
+					partition.filter(filter), pageSize, new Control[0], "cn")) {
+				while (cursor.hasMore())
+					action.accept(cursor.next());
+			} finally {
+				if (outer == null)
+					deadline.remove();
+				else
+					deadline.set(outer);
+			}
+		}, searchExecutor(), partitions.getParallelism(), partitions.isOrdered()).search(parts);
+	}
+
+	/**
+	 * Search for objects using a filter and gives the common name of those objects
+	 * to <b>action</b>.
+	 *
+	 * @param operation the request, for the {@link ActiveDirectoryListener}
+	 * @param filter    a string with the filter for the search
+	 * @param action    receives each common name
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	private void forEachObject(Operation operation, String filter, Consumer<? super String> action)
+			throws NamingException, ActiveDirectoryException {
+		forEach(openCursor(operation, filter, "cn"), ActiveDirectory::getCommonName, action);
+	}
+
+	/**
+	 * Search for objects using a filter and returns a lazy stream with the common
+	 * name of those objects.
+	 *
+	 * @param operation the request, for the {@link ActiveDirectoryListener}
+	 * @param filter    a string with the filter for the search
+	 *
+	 * @return a lazy stream of common names, it must be closed
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	private Stream<String> streamObjects(Operation operation, String filter)
+			throws NamingException, ActiveDirectoryException {
+		return stream(openCursor(operation, filter, "cn"), ActiveDirectory::getCommonName);
+	}
 
 	/**
-	 * Default Constructor
+	 * Search by the object attributes. For example: search the members of a group.
+	 * <p>
+	 * Multi-valued attributes larger than the Active Directory MaxValRange (1500
+	 * values) are read a range at a time, see {@link RangedAttributeEnumeration}.
 	 *
-	 * @param server   the hostname or ip for the Active Directory server.
-	 * @param port     the port to connection.
-	 * @param username the username for the connection and for the searches.
-	 * @param password the password to username
-	 * @param domain   the domani e.g.: mydomain.global
+	 * @param operation    the request, for the {@link ActiveDirectoryListener}
+	 * @param searchFilter a string with ldpa syntax to filter.
+	 * @param attribute    the object attribute
+	 *
+	 * @return a list with common names
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
 	 */
-	public ActiveDirectory(String server, String port, String username, String password, String domain) {
-		this.server = server;
-		this.port = port;
-		this.username = username;
-		this.password = password;
-		this.domain = domain;
-		this.isHandShakeMade = false;
+	private List<String> searchToObjectAttributes(Operation operation, String searchFilter, String attribute)
+			throws NamingException, ActiveDirectoryException {
+		return coalesce(operation, searchFilter, attribute, () -> {
+			List<String> commonNames = new ArrayList<String>();
+			forEachObjectAttribute(operation, searchFilter, attribute, commonNames::add);
+			return commonNames;
+		});
 	}
 
 	/**
-	 * Create the connection with the Active Directory
-	 *
-	 * @throws ActiveDirectoryException if the username is a null or empty string
-	 * @throws NamingException          if a naming exception is encountered
+	 * Make a search or wait for the same search in flight, see
+	 * {@link ActiveDirectory#getCoalescingStats()}. A search under a deadline
+	 * only waits for the others, it can end early and its failure is its own.
 	 */
-	public void handShake() throws NamingException, ActiveDirectoryException {
+	private List<String> coalesce(Operation operation, String filter, String attribute,
+			SingleFlight.Call<List<String>> search) throws NamingException, ActiveDirectoryException {
+		// the NUL character can't be in a filter or in a DN
+		String key = usersContainer + '\0' + filter + '\0' + attribute;
+		return searchFlights.execute(key, () -> hedge(operation, search), deadline.get() == null);
+	}
 
-		if (username == null || username.equals(""))
-			throw new ActiveDirectoryException("the username cannot be null or empty.");
+	/**
+	 * Make a search, with a copy on another domain controller (or connection) if
+	 * it is slow, see {@link ActiveDirectory#setHedgingConfig(HedgingConfig)}.
+	 */
+	private List<String> hedge(Operation operation, SingleFlight.Call<List<String>> search)
+			throws NamingException, ActiveDirectoryException {
+		Hedger current = hedger;
+		if (current == null)
+			return search.call();
 
-		createUsersContainer(domain);
+		// the domain controller of the search is left to the copy; a thread kept on
+		// a domain controller stays there
+		DirContextPool pool = dirContextPool;
+		BalancedDirContextPool balanced = pool instanceof BalancedDirContextPool
+				&& !((BalancedDirContextPool) pool).isPinned() ? (BalancedDirContextPool) pool : null;
+		AtomicReference<String> used = new AtomicReference<String>();
+		Deadline callDeadline = deadline.get();
 
-		properties = new Properties();
-		properties.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
-		properties.put(Context.PROVIDER_URL, ("LDAP://" + server + ":" + port));
-		properties.put(Context.SECURITY_AUTHENTICATION, "simple");
-		properties.put(Context.SECURITY_PRINCIPAL, (username + "@" + domain));
-		properties.put(Context.SECURITY_CREDENTIALS, password);
+		return current.execute(operation, () -> {
+			if (balanced == null)
+				return search.call();
 
-		dirContext = new InitialDirContext(properties);
-		isHandShakeMade = true;
+			balanced.pin(used);
+			try {
+				return search.call();
+			} finally {
+				balanced.unpin();
+			}
+		}, () -> {
+			if (balanced != null)
+				balanced.avoid(used.get());
+			try {
+				return callDeadline == null ? search.call() : withDeadline(callDeadline, search::call);
+			} finally {
+				if (balanced != null)
+					balanced.avoid(null);
+			}
+		});
 	}
 
 	/**
-	 * Returns a list containing the common name of the user's groups.
-	 *
-	 * @param username a string with the user name that will have its groups listed.
+	 * Search by the object attributes and gives the common names found to
+	 * <b>action</b>.
 	 *
-	 * @return a list with common names or an empty list if the user has not groups
-	 *         or if the user is not found.
+	 * @param operation    the request, for the {@link ActiveDirectoryListener}
+	 * @param searchFilter a string with ldpa syntax to filter.
+	 * @param attribute    the object attribute
+	 * @param action       receives each common name
 	 *
 	 * @throws NamingException          if a naming exception is encountered
 	 * @throws ActiveDirectoryException if the handShake method is not called before
 	 *                                  this method
 	 */
-	public List<String> searchUserGroups(String username) throws NamingException, ActiveDirectoryException {
-		return searchToObjectAttributes("(&(objectclass=user)(sAMAccountName=" + username + "))", "memberOf");
+	private void forEachObjectAttribute(Operation operation, String searchFilter, String attribute,
+			Consumer<? super String> action) throws NamingException, ActiveDirectoryException {
+		forEach(new RangedAttributeEnumeration(openCursor(operation, searchFilter, attribute), attribute),
+				(searchResult, commonNames) -> getLastCommonNames(searchResult, attribute, commonNames), action);
 	}
 
 	/**
-	 * Returns a list containing the common name of users in a group.
+	 * Search by the object attributes and returns a lazy stream with the common
+	 * names found.
 	 *
-	 * @param groupName a string with the group name that will have its users
-	 *                  listed.
+	 * @param operation    the request, for the {@link ActiveDirectoryListener}
+	 * @param searchFilter a string with ldpa syntax to filter.
+	 * @param attribute    the object attribute
 	 *
-	 * @return a list with common names or an empty list if the group has not
-	 *         members or if the group is not found.
+	 * @return a lazy stream of common names, it must be closed
 	 *
 	 * @throws NamingException          if a naming exception is encountered
 	 * @throws ActiveDirectoryException if the handShake method is not called before
 	 *                                  this method
 	 */
-	public List<String> searchUsersGroup(String groupName) throws NamingException, ActiveDirectoryException {
-		return searchToObjectAttributes("CN=" + groupName, "member");
+	private Stream<String> streamObjectAttributes(Operation operation, String searchFilter, String attribute)
+			throws NamingException, ActiveDirectoryException {
+		return stream(new RangedAttributeEnumeration(openCursor(operation, searchFilter, attribute), attribute),
+				(searchResult, commonNames) -> getLastCommonNames(searchResult, attribute, commonNames));
 	}
 
 	/**
-	 * Search for common names of user objects where their common names contain
-	 * parts of partOfUsername <br>
-	 * and returns a list of those common names.
-	 * <p>
-	 * Example:
-	 * <blockquote>
-	 *
-	 * <pre>
-	 * For the user names in Active Directory: [arthur, paul, john, marie, oscar]
-	 *
-	 * If partOfUsername is: "ar"
+	 * Search the values of an attribute for many objects, a batch of names per
+	 * search, and de-multiplex the results by the attribute with the name.
 	 *
-	 * The list returned is: [arthur, marie, oscar]
-	 * </pre>
+	 * @param operation       the request, for the {@link ActiveDirectoryListener}
+	 * @param names           the names of the objects
+	 * @param cache           the cache of the single search or null
+	 * @param snapshot        the local lookup (e.g.: in the snapshot) or null
+	 * @param nameAttribute   the attribute with the name, e.g.: <b>sAMAccountName</b>
+	 * @param valuesAttribute the attribute with the DNs, e.g.: <b>memberOf</b>
+	 * @param filter          builds the filter for a batch of names
 	 *
-	 * </blockquote>
+	 * @return a map from each name to the common names of its values
 	 *
-	 * @param partOfUsername a string containing part of the objects common name
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method
+	 */
+	private Map<String, List<String>> searchBatch(Operation operation, Collection<String> names,
+			LookupCache<String, List<String>> cache, Function<String, List<String>> snapshot, String nameAttribute,
+			String valuesAttribute, Function<List<String>, String> filter) throws NamingException, ActiveDirectoryException {
+
+		Map<String, List<String>> found = new LinkedHashMap<String, List<String>>();
+		Map<String, List<String>> toSearch = new LinkedHashMap<String, List<String>>();
+
+		for (String name : names) {
+			String key = cacheKey(name);
+			if (found.containsKey(key) || toSearch.containsKey(key))
+				continue;
+
+			List<String> cached = cache == null ? null : cache.getIfPresent(key);
+			if (cached == null && snapshot != null)
+				cached = snapshot.apply(name);
+			if (cached != null)
+				found.put(key, cached);
+			else
+				toSearch.put(key, new ArrayList<String>());
+		}
+
+		long generation = cache == null ? 0 : cache.generation();
+		List<String> keys = new ArrayList<String>(toSearch.keySet());
+		for (int from = 0; from < keys.size(); from += batchSize) {
+			String batchFilter = filter.apply(keys.subList(from, Math.min(from + batchSize, keys.size())));
+			SearchResultEnumeration cursor = new RangedAttributeEnumeration(
+					openCursor(operation, batchFilter, nameAttribute, valuesAttribute), valuesAttribute);
+
+			try {
+				while (cursor.hasMore()) {
+					SearchResult searchResult = cursor.next();
+					Attribute name = searchResult.getAttributes().get(nameAttribute);
+					List<String> values = name == null ? null : toSearch.get(cacheKey((String) name.get()));
+					if (values != null)
+						getLastCommonNames(searchResult, valuesAttribute, values::add);
+				}
+			} finally {
+				cursor.close();
+			}
+		}
+
+		for (Map.Entry<String, List<String>> searched : toSearch.entrySet()) {
+			List<String> values = searched.getValue();
+			if (cache != null) {
+				values = Collections.unmodifiableList(values);
+				cache.put(searched.getKey(), values, generation);
+			}
+			found.put(searched.getKey(), values);
+		}
+
+		Map<String, List<String>> result = new LinkedHashMap<String, List<String>>();
+		for (String name : names)
+			result.put(name, found.get(cacheKey(name)));
+		return result;
+	}
+
+	/**
+	 * Search for objects using a filter and gives each search result to
+	 * <b>action</b>.
 	 *
-	 * @return a list with common names or an empty list if partOfUsername does not
-	 *         match any common name of some user.
+	 * @param operation  the request, for the {@link ActiveDirectoryListener}
+	 * @param filter     a string with the filter for the search
+	 * @param attributes the attributes returned by the search
+	 * @param action     receives each search result
 	 *
 	 * @throws NamingException          if a naming exception is encountered
 	 * @throws ActiveDirectoryException if the handShake method is not called before
 	 *                                  this method
 	 */
-	public List<String> searchUserObjects(String partOfUsername) throws NamingException, ActiveDirectoryException {
-		String searchFilter = "(&(objectCategory=person)(objectClass=user)(sAMAccountName=*" + partOfUsername + "*))";
+	private void forEachSearchResult(Operation operation, String filter, String[] attributes,
+			Consumer<SearchResult> action) throws NamingException, ActiveDirectoryException {
+		try (SearchCursor cursor = openCursor(operation, filter, attributes)) {
+			while (cursor.hasMore())
+				action.accept(cursor.next());
+		}
+	}
 
-		return searchForObjects(searchFilter);
+	/**
+	 * Read all the results of a cursor, giving the values produced by
+	 * <b>mapper</b> to <b>action</b>. The cursor is always closed.
+	 */
+	private static void forEach(SearchResultEnumeration cursor, SearchResultMapper mapper,
+			Consumer<? super String> action)
+			throws NamingException {
+		try {
+			while (cursor.hasMore())
+				mapper.map(cursor.next(), action);
+		} finally {
+			cursor.close();
+		}
 	}
 
 	/**
-	 * Search for common names of group objects where their common names contain
-	 * parts of partOfTheCommonName <br>
-	 * and returns a list of those common names.
-	 * <p>
-	 * Example:
-	 * <blockquote>
+	 * Wrap a cursor in a lazy stream, closing the stream closes the cursor.
+	 */
+	private static Stream<String> stream(SearchResultEnumeration cursor, SearchResultMapper mapper) {
+		SearchResultIterator iterator = new SearchResultIterator(cursor, mapper);
+
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL),
+						false)
+				.onClose(cursor::close);
+	}
+
+	/**
+	 * Start a search under the {@link ActiveDirectory#usersContainer} with a
+	 * context borrowed from the connection pool. The search is paged if
+	 * {@link ActiveDirectory#setPageSize(int)} is greater than zero.
 	 *
-	 * <pre>
-	 * For the group names in Active Directory: [records, info, sales, financial, inventory, directory, check-in]
+	 * @param operation  the request, for the {@link ActiveDirectoryListener}
+	 * @param filter     a string with the filter for the search
+	 * @param attributes the attributes returned by the search
 	 *
-	 * If partOfGroupName is: "in"
+	 * @return an open cursor, it must be closed to give back the context
 	 *
-	 * The list returned is: [info, financial, inventory, check-in]
-	 * </pre>
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 *                                  this method or if no connection got free in
+	 *                                  time
+	 */
+	SearchCursor openCursor(Operation operation, String filter, String... attributes)
+			throws NamingException, ActiveDirectoryException {
+		return openCursor(operation, filter, pageSize, attributes);
+	}
+
+	/**
+	 * Same as {@link #openCursor(Operation, String, String...)} with another page
+	 * size, e.g.: a search that must read all the objects.
 	 *
-	 * </blockquote>
+	 * @param pageSize the number of results per page, zero or less for an
+	 *                 unpaged search
+	 */
+	SearchCursor openCursor(Operation operation, String filter, int pageSize, String... attributes)
+			throws NamingException, ActiveDirectoryException {
+		return openCursor(operation, usersContainer, SearchControls.SUBTREE_SCOPE, filter, pageSize, new Control[0],
+				attributes);
+	}
+
+	/**
+	 * Same as {@link #openCursor(Operation, String, int, String...)} with other
+	 * request controls, e.g.: Show Deleted.
 	 *
-	 * @param partOfGroupName a string containing part of the objects common name
+	 * @param requestControls the controls sent with each page
+	 */
+	SearchCursor openCursor(Operation operation, String filter, int pageSize, Control[] requestControls,
+			String... attributes) throws NamingException, ActiveDirectoryException {
+		return openCursor(operation, usersContainer, SearchControls.SUBTREE_SCOPE, filter, pageSize, requestControls,
+				attributes);
+	}
+
+	/**
+	 * Same as {@link #openCursor(Operation, String, int, Control[], String...)}
+	 * under another base, e.g.: a partition of a search.
 	 *
-	 * @return a list with common names or an empty list if partOfGroupName does not
-	 *         match any common name of some group.
+	 * @param base  the base DN of the search
+	 * @param scope the scope of the search, see {@link SearchControls}
+	 */
+	private SearchCursor openCursor(Operation operation, String base, int scope, String filter, int pageSize,
+			Control[] requestControls, String... attributes) throws NamingException, ActiveDirectoryException {
+		DirContextPool pool = pool();
+
+		SearchControls controls = new SearchControls();
+		controls.setReturningAttributes(attributes);
+		controls.setSearchScope(scope);
+
+		Deadline current = deadline.get();
+		if (current != null) {
+			long remaining = current.remainingMillis();
+			if (remaining == 0)
+				throw new DeadlineExceededException("the deadline expired before the search.");
+			// the LDAP time limit is in seconds and JNDI truncates the milliseconds
+			controls.setTimeLimit((int) Math.min(Integer.MAX_VALUE, (remaining + 999) / 1000 * 1000));
+		}
+
+		return SearchCursor.open(pool, base, filter, controls, pageSize, requestControls, trace(operation));
+	}
+
+	/**
+	 * @return the trace of a request or null if there is no listener
+	 */
+	private OperationTrace trace(Operation operation) {
+		return OperationTrace.start(listener, operation, server);
+	}
+
+	/**
+	 * @return the connection pool
+	 *
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 */
+	private DirContextPool pool() throws ActiveDirectoryException {
+		DirContextPool pool = dirContextPool;
+		if (!isHandShakeMade || pool == null)
+			throwAhandShakeException();
+		return pool;
+	}
+
+	/**
+	 * Read attributes of the rootDSE (the entry with an empty DN, it describes the
+	 * server) with a context borrowed from the connection pool.
+	 *
+	 * @param attributeIds the attributes to read
+	 *
+	 * @return the attributes found
 	 *
 	 * @throws NamingException          if a naming exception is encountered
 	 * @throws ActiveDirectoryException if the handShake method is not called before
-	 *                                  this method
+	 *                                  this method or if no connection got free in
+	 *                                  time
 	 */
-	public List<String> searchGroupObjects(String partOfGroupName) throws NamingException, ActiveDirectoryException {
-		String searchFilter = "(&(objectCategory=group)(sAMAccountName=*" + partOfGroupName + "*))";
-		return searchForObjects(searchFilter);
+	Attributes getRootDseAttributes(String... attributeIds) throws NamingException, ActiveDirectoryException {
+		return withContext(Operation.ROOT_DSE, (context, trace) -> {
+			Attributes attributes = context.getAttributes("", attributeIds);
+			if (trace != null)
+				trace.entry(attributes);
+			return attributes;
+		});
 	}
 
 	/**
-	 * Search for objects using a filter and returns a list with the common name of
-	 * those objects.
+	 * Make a request with a context borrowed from the connection pool, for the
+	 * requests that don't fit in a {@link SearchCursor}, e.g.: a search with
+	 * other controls.
 	 *
-	 * @param filter a string with the filter for the search
+	 * @param operation the request, for the {@link ActiveDirectoryListener}
+	 * @param action    the request
 	 *
-	 * @return a list common names {@link String}.
+	 * @return the result of the request
 	 *
 	 * @throws NamingException          if a naming exception is encountered
 	 * @throws ActiveDirectoryException if the handShake method is not called before
-	 *                                  this method
+	 *                                  this method or if no connection got free in
+	 *                                  time
 	 */
-	private List<String> searchForObjects(String filter) throws NamingException, ActiveDirectoryException {
+	<T> T withContext(Operation operation, ContextAction<T> action) throws NamingException, ActiveDirectoryException {
+		DirContextPool pool = pool();
+		OperationTrace trace = trace(operation);
+		PooledDirContext pooled = OperationTrace.borrow(pool, trace);
 
-		if (!isHandShakeMade)
-			throwAhandShakeException();
+		T result;
+		try {
+			result = action.run(pooled.getContext(), trace);
+		} catch (NamingException e) {
+			if (DirContextPool.isBrokenConnection(e))
+				pool.invalidate(pooled);
+			else
+				pool.release(pooled);
+			if (trace != null)
+				trace.finish(e);
+			throw e;
+		} catch (RuntimeException e) {
+			pool.invalidate(pooled);
+			if (trace != null)
+				trace.finish(e);
+			throw e;
+		}
 
-		List<String> listActiveDirectoryObjects = new ArrayList<String>();
+		pool.release(pooled);
+		if (trace != null)
+			trace.finish(null);
+		return result;
+	}
 
-		SearchControls ctls = new SearchControls();
-		ctls.setReturningAttributes(new String[] { "cn" });
-		ctls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+	/**
+	 * @return the base DN of the searches, e.g.: <b>DC=mydomain,DC=global</b>
+	 */
+	String getUsersContainer() {
+		return usersContainer;
+	}
 
-		NamingEnumeration<SearchResult> answer = dirContext.search(usersContainer, filter, ctls);
+	/**
+	 * @return the pool of {@link ActiveDirectory#authenticate(String, String)},
+	 *         created on the first use
+	 *
+	 * @throws NamingException          if the first connection cannot be opened
+	 * @throws ActiveDirectoryException if the handShake method is not called before
+	 */
+	private DirContextPool bindPool() throws NamingException, ActiveDirectoryException {
+		DirContextPool pool = bindContextPool;
+		if (pool != null)
+			return pool;
 
-		while (answer.hasMore()) {
-			SearchResult searchResult = answer.next();
+		pool();
 
-			Attributes attrs = searchResult.getAttributes();
-			Attribute att = attrs.get("cn");
-			listActiveDirectoryObjects.add((String) att.get(0));
+		synchronized (this) {
+			if (bindContextPool == null) {
+				DirContextPool newPool = new DirContextPool(contextFactory(properties), bindPoolConfig);
+				newPool.start();
+				bindContextPool = newPool;
+			}
+			return bindContextPool;
 		}
-
-		return listActiveDirectoryObjects;
 	}
 
 	/**
-	 * Search by the object attributes. For example: search the members of a group.
+	 * Bind again over the connection of a context with the user credentials. The
+	 * environment of the context goes back to the credentials of the handShake,
+	 * so the user password is not kept.
 	 *
-	 * @param searchFilter a string with ldpa syntax to filter.
-	 * @param attribute    the object attribute
-	 *
-	 * @return a list with common names
+	 * @return the result of the bind
 	 *
-	 * @throws NamingException          if a naming exception is encountered
-	 * @throws ActiveDirectoryException if the handShake method is not called before
-	 *                                  this method
+	 * @throws NamingException if a naming exception other than a bind failure is
+	 *                         encountered
 	 */
-	private List<String> searchToObjectAttributes(String searchFilter, String attribute)
-			throws NamingException, ActiveDirectoryException {
+	private AuthenticationResult bind(DirContext context, String principal, String password)
+			throws NamingException {
 
-		if (!isHandShakeMade)
-			throwAhandShakeException();
+		if (!(context instanceof LdapContext))
+			throw new OperationNotSupportedException("a bind needs a LdapContext.");
 
-		SearchControls ctls = new SearchControls();
-		ctls.setReturningAttributes(new String[] { attribute });
-		ctls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+		LdapContext ldapContext = (LdapContext) context;
+		ldapContext.addToEnvironment(Context.SECURITY_PRINCIPAL, principal);
+		ldapContext.addToEnvironment(Context.SECURITY_CREDENTIALS, password);
+		try {
+			// the context has no other contexts sharing its connection, so the bind is
+			// made over the same connection
+			TlsSocketFactory tls = tlsSocketFactory;
+			if (tls == null || tls.config().getTransportSecurity() == TransportSecurity.START_TLS) {
+				// a broken StartTLS connection is not opened again without its upgrade,
+				// the CommunicationException makes the caller borrow another one
+				ldapContext.reconnect(null);
+			} else {
+				// a broken LDAPS connection is opened again by the reconnect
+				tls.open(() -> {
+					ldapContext.reconnect(null);
+					return ldapContext;
+				});
+			}
+			return AuthenticationResult.success();
+		} catch (AuthenticationException e) {
+			// the message is read once
+			LdapError error = LdapError.of(e);
+			return new AuthenticationResult(error, friendlyMessage(error, e));
+		} finally {
+			ldapContext.addToEnvironment(Context.SECURITY_PRINCIPAL, properties.get(Context.SECURITY_PRINCIPAL));
+			ldapContext.addToEnvironment(Context.SECURITY_CREDENTIALS, properties.get(Context.SECURITY_CREDENTIALS));
+		}
+	}
 
-		NamingEnumeration<SearchResult> objectAttributes = dirContext.search(usersContainer, searchFilter, ctls);
+	private static String friendlyMessage(LdapError error, NamingException e) {
+		if (error.getResultCode() < 0)
+			return e.getMessage();
+		return ActiveDirectoryUtils.friendlyMessage(error);
+	}
 
-		if (!objectAttributes.hasMoreElements())
-			return new ArrayList<String>();
+	/**
+	 * The LDAP_MATCHING_RULE_IN_CHAIN is an Active Directory extension, the
+	 * server is asked once per handShake if it is an Active Directory.
+	 */
+	private boolean isMatchingRuleInChainSupported() throws NamingException, ActiveDirectoryException {
+		Boolean supported = matchingRuleInChainSupported;
+		if (supported != null)
+			return supported;
 
-		// if the search were successful return the SearchResult's lasts common names
-		return getLastCommonNames(objectAttributes, attribute);
+		Attribute capabilities = getRootDseAttributes("supportedCapabilities").get("supportedCapabilities");
+		supported = capabilities != null && capabilities.contains(ACTIVE_DIRECTORY_CAPABILITY);
+
+		matchingRuleInChainSupported = supported;
+		return supported;
+	}
+
+	// created on the first call under a deadline
+	private synchronized DeadlineTimer deadlineTimer() {
+		if (deadlineTimer == null)
+			deadlineTimer = new DeadlineTimer();
+		return deadlineTimer;
 	}
 
 	/**
-	 * Returns a list of common names.<br>
-	 * <br>
-	 * 1) This method loops through a
-	 * {@link NamingEnumeration}<{@link SearchResult}><br>
+	 * @return the executor of the parallel searches, at most one thread per
+	 *         connection of the pool. When all the threads are busy the caller
+	 *         runs the search.
+	 */
+	private synchronized Executor searchExecutor() {
+		if (searchExecutor == null) {
+			searchExecutor = new ThreadPoolExecutor(0, connectionPoolConfig.getMaxSize(), 60, TimeUnit.SECONDS,
+					new SynchronousQueue<Runnable>(), new DaemonThreadFactory("active-directory-search"),
+					new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+		return searchExecutor;
+	}
+
+	/**
+	 * Gives the common name of an object found by {@link ActiveDirectory#forEachObject}
+	 * to <b>commonNames</b>.
+	 */
+	private static void getCommonName(SearchResult searchResult, Consumer<? super String> commonNames)
+			throws NamingException {
+		Attributes attrs = searchResult.getAttributes();
+		Attribute att = attrs.get("cn");
+		commonNames.accept((String) att.get(0));
+	}
+
+	/**
+	 * Gives the common names of a {@link SearchResult} attribute to
+	 * <b>commonNames</b>.<br>
 	 * <br>
-	 * 2) The common names are obtained from each {@link SearchResult} in
-	 * {@link NamingEnumeration}<{@link SearchResult}><br>
-	 * &nbsp;&nbsp;&nbsp;&nbspThese common names are the last common names of an
-	 * attribute list of a {@link SearchResult} attribute.<br>
-	 * &nbsp;&nbsp;&nbsp;&nbspThe {@link SearchResult} attribute is obtained through
-	 * ID, this ID is <b>attributeIdToFilter</b><br>
+	 * These common names are the last common names of the values of a
+	 * {@link SearchResult} attribute.<br>
+	 * The {@link SearchResult} attribute is obtained through ID, this ID is
+	 * <b>attributeIdToFilter</b><br>
 	 * <p>
 	 * Examples:
 	 * <blockquote>
 	 *
 	 * <pre>
-	 * if <b>searchResultEnumeration</b> param is equal the:
-	 *          [[SearchResult: CN=inf,OU=INF,OU=acme: null:null:{member=member: CN=<u>user1</u>,CN=Users,DC=mydomain,DC=LOCAL, CN=<u>user2</u>,CN=Users,DC=mydomain,DC=LOCAL}],
-	 *           [SearchResult: CN=inf,OU=VEN,OU=acme: null:null:{member=member: CN=<u>user3</u>,CN=Users,DC=mydomain,DC=LOCAL, CN=<u>user4</u>,CN=Users,DC=mydomain,DC=LOCAL}]
+	 * if <b>searchResult</b> param is equal the:
+	 *          [SearchResult: CN=inf,OU=INF,OU=acme: null:null:{member=member: CN=<u>user1</u>,CN=Users,DC=mydomain,DC=LOCAL, CN=<u>user2</u>,CN=Users,DC=mydomain,DC=LOCAL}]
 	 * and <b>attributeIdToFilter</b> is equal:
 	 *           member
 	 *
-	 * The list of common name strings returned will be:
-	 * 			[user1, user2, user3, user4]
+	 * The common name strings given to commonNames will be:
+	 * 			user1, user2
 	 * </pre>
 	 *
 	 * </blockquote>
 	 *
-	 * @param searchResultEnumeration a enumeration with SearchResult
-	 * @param attributeIdToFilter     id to {@link SearchResult} attribute
-	 *
-	 * @return a list common names {@link String}
+	 * @param searchResult        a search result
+	 * @param attributeIdToFilter id to {@link SearchResult} attribute
+	 * @param commonNames         receives each common name
 	 *
 	 * @throws NamingException if a naming exception is encountered
 	 */
-	private List<String> getLastCommonNames(NamingEnumeration<SearchResult> searchResultEnumeration,
-			String attributeIdToFilter) throws NamingException {
-		List<String> commonNameListReturn = new ArrayList<String>();
-
-		String attribute = "",
-				commonName = "";
-
-		while (searchResultEnumeration.hasMoreElements()) {
+	static void getLastCommonNames(SearchResult searchResult, String attributeIdToFilter,
+			Consumer<? super String> commonNames) throws NamingException {
 
-			SearchResult searchResult = (SearchResult) searchResultEnumeration.next();
+		Attributes searchResultAtttributes = searchResult.getAttributes();
 
-			Attributes searchResultAtttributes = searchResult.getAttributes();
+		// if searchResult has no attributes, return
+		if (searchResultAtttributes.size() == 0)
+			return;
 
-			// if searchResult has no attributes, continue
-			if (searchResultAtttributes.size() == 0)
-				continue;
-
-			// get a list of attributes for (attributeIdToFilter) attribute in the
-			// searchResult.
-			Attribute attributesToGetLastCommonNames = searchResultAtttributes.get(attributeIdToFilter);
-
-			// if list of attributes to attributeIdToFilter was not found in searchResult,
-			// continue
-			if (attributesToGetLastCommonNames == null)
-				continue;
+		// get a list of attributes for (attributeIdToFilter) attribute in the
+		// searchResult.
+		Attribute attributesToGetLastCommonNames = searchResultAtttributes.get(attributeIdToFilter);
 
-			// add last common name to each attribute in attributesToGetLastCommonNames to
-			// commonNameListReturn
-			for (int count = 0; count < attributesToGetLastCommonNames.size(); count++) {
-				attribute = (String) attributesToGetLastCommonNames.get(count);
+		// if list of attributes to attributeIdToFilter was not found in searchResult,
+		// return
+		if (attributesToGetLastCommonNames == null)
+			return;
 
-				// for the string: "CN=paul,CN=Users,DC=mydomain,DC=LOCAL", the commonName is:
-				// "paul"
-				commonName = attribute.substring(3, attribute.indexOf(","));
-
-				commonNameListReturn.add(commonName);
-			}
+		// give the last common name of each attribute in
+		// attributesToGetLastCommonNames to commonNames
+		for (int count = 0; count < attributesToGetLastCommonNames.size(); count++) {
+			String attribute = (String) attributesToGetLastCommonNames.get(count);
 
+			// for the string: "CN=paul,CN=Users,DC=mydomain,DC=LOCAL", the commonName is:
+			// "paul", see DnParser for the escaped values
+			commonNames.accept(DnParser.commonName(attribute));
 		}
-		return commonNameListReturn;
 	}
 
 	/**
@@ -337,7 +2118,7 @@ public class ActiveDirectory {
 	 * @param domain the domain to create usersContainer, e.g.:
 	 *               <b>mydomain.global</b>
 	 */
-	private void createUsersContainer(String domain) {
+	void createUsersContainer(String domain) {
 		StringBuilder usersContainerTmp = new StringBuilder();
 
 		String[] domainHierarchy = domain.split("\\.");
@@ -357,6 +2138,130 @@ public class ActiveDirectory {
 		usersContainer = usersContainerTmp.toString();
 	}
 
+	// the Active Directory names are case insensitive
+	private static String cacheKey(String name) {
+		return name.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * @return the server with its port, e.g.: <b>dc01:389</b>
+	 */
+	private String endpoint(String dc) {
+		// an IPv6 address is in brackets, e.g.: [::1]:389
+		int colon = dc.lastIndexOf(':');
+		return colon > dc.lastIndexOf(']') ? dc : dc + ":" + port;
+	}
+
+	private static String urls(List<String> endpoints, boolean ldaps) {
+		StringBuilder urls = new StringBuilder();
+		for (String endpoint : endpoints) {
+			if (urls.length() > 0)
+				urls.append(' ');
+			urls.append(ldaps ? "LDAPS://" : "LDAP://").append(endpoint);
+		}
+		return urls.toString();
+	}
+
+	/**
+	 * @param environment the environment of the connections
+	 *
+	 * @return the factory of the connections of a pool, with the TLS of the
+	 *         handShake
+	 */
+	private DirContextFactory contextFactory(Properties environment) {
+		TlsSocketFactory tls = tlsSocketFactory;
+		if (tls == null)
+			return () -> new InitialLdapContext(environment, null);
+		if (tls.config().getTransportSecurity() == TransportSecurity.START_TLS)
+			return () -> startTls(environment, tls);
+		return () -> tls.open(() -> new InitialLdapContext(environment, null));
+	}
+
+	/**
+	 * Open a plain connection without a bind, upgrade it to TLS and then bind, so
+	 * the credentials never cross the plain connection.
+	 */
+	private static DirContext startTls(Properties environment, TlsSocketFactory tls) throws NamingException {
+		Properties anonymous = new Properties();
+		anonymous.putAll(environment);
+		anonymous.remove(Context.SECURITY_PRINCIPAL);
+		anonymous.remove(Context.SECURITY_CREDENTIALS);
+		anonymous.put(Context.SECURITY_AUTHENTICATION, "none");
+
+		// the plain connection, the only one opened without TLS
+		LdapContext context = (LdapContext) tls.open(() -> new InitialLdapContext(anonymous, null));
+		try {
+			StartTlsResponse response = (StartTlsResponse) context.extendedOperation(new StartTlsRequest());
+			if (!tls.isHostnameVerification())
+				response.setHostnameVerifier((hostname, session) -> true);
+			response.negotiate(tls);
+
+			// the bind over the same, now encrypted, connection
+			context.addToEnvironment(Context.SECURITY_AUTHENTICATION, "simple");
+			context.addToEnvironment(Context.SECURITY_PRINCIPAL, environment.get(Context.SECURITY_PRINCIPAL));
+			context.addToEnvironment(Context.SECURITY_CREDENTIALS, environment.get(Context.SECURITY_CREDENTIALS));
+			context.reconnect(null);
+			return context;
+		} catch (IOException e) {
+			context.close();
+			CommunicationException failure = new CommunicationException("the StartTLS negotiation failed: " + e.getMessage());
+			failure.setRootCause(e);
+			throw failure;
+		} catch (NamingException | RuntimeException e) {
+			context.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Keep the requests of the current thread on one domain controller until
+	 * {@link ActiveDirectory#unpinServer()}, with many domain controllers.
+	 *
+	 * @param server the domain controller to keep, the one of the first request
+	 *               when it holds null; it receives the one used
+	 */
+	void pinServer(AtomicReference<String> server) {
+		DirContextPool pool = dirContextPool;
+		if (pool instanceof BalancedDirContextPool)
+			((BalancedDirContextPool) pool).pin(server);
+	}
+
+	/**
+	 * Stop keeping the requests of the current thread on one domain controller.
+	 */
+	void unpinServer() {
+		DirContextPool pool = dirContextPool;
+		if (pool instanceof BalancedDirContextPool)
+			((BalancedDirContextPool) pool).unpin();
+	}
+
+	private static String userGroupsFilter(String username) {
+		return "(&(objectclass=user)(sAMAccountName=" + username + "))";
+	}
+
+	private static String usersGroupFilter(String groupName) {
+		return "CN=" + groupName;
+	}
+
+	private static String groupFilter(String groupName) {
+		return "(&(objectClass=group)(cn=" + LdapFilter.escape(groupName) + "))";
+	}
+
+	// every object, except the groups, member of one of the groups or of their
+	// nested groups
+	private static String nestedMembersFilter(List<String> groupDistinguishedNames) {
+		return "(&(!(objectClass=group))" + LdapFilter.anyOf("memberOf:1.2.840.113556.1.4.1941:", groupDistinguishedNames)
+				+ ")";
+	}
+
+	private static String userObjectsFilter(String partOfUsername) {
+		return "(&(objectCategory=person)(objectClass=user)(sAMAccountName=*" + partOfUsername + "*))";
+	}
+
+	private static String groupObjectsFilter(String partOfGroupName) {
+		return "(&(objectCategory=group)(sAMAccountName=*" + partOfGroupName + "*))";
+	}
+
 	/**
 	 * centralize the handShake exceptions
 	 *
@@ -0,0 +1,46 @@
+package com.quazzom.active_directory;
+
+/**
+ * Receives an {@link OperationEvent} for each LDAP request made by
+ * {@link ActiveDirectory}, e.g.: to record metrics (see
+ * {@link OperationMetrics}) or to create tracing spans.
+ * <p>
+ * A listener is set with
+ * {@link ActiveDirectory#setListener(ActiveDirectoryListener)}. Without a
+ * listener nothing is measured, a search only checks that the listener is
+ * null.
+ * <p>
+ * The methods are called by the threads making the searches, so they must be
+ * thread-safe and fast. A {@link RuntimeException} thrown by a listener is
+ * ignored, it never fails a search.
+ *
+ */
+public interface ActiveDirectoryListener {
+
+	/**
+	 * Called before the request borrows a connection, on the thread that starts
+	 * the request. A tracer can open a span here and close it in
+	 * {@link #operationFinished(OperationEvent)}.
+	 *
+	 * @param operation      the name of the operation, e.g.:
+	 *                       <b>searchUserGroups</b>
+	 * @param filterTemplate the LDAP filter with the values replaced by <b>?</b>,
+	 *                       or null if the operation is not a search
+	 * @param server         the server of the request
+	 *
+	 * @return an object given back by {@link OperationEvent#getAttachment()}, or
+	 *         null
+	 */
+	default Object operationStarted(String operation, String filterTemplate, String server) {
+		return null;
+	}
+
+	/**
+	 * Called once when the request ends, with an error or not. A search ends when
+	 * its last result is read or when it is closed, so for the streams the event
+	 * can come from the thread that closes the stream.
+	 *
+	 * @param event the measures of the request
+	 */
+	void operationFinished(OperationEvent event);
+}
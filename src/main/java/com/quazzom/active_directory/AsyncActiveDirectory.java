@@ -0,0 +1,204 @@
+package com.quazzom.active_directory;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The searches of an {@link ActiveDirectory} without blocking the calling
+ * thread. Each search runs in an executor and returns a
+ * {@link CompletableFuture}.
+ * <p>
+ * By default the searches run in virtual threads when the JVM is a Java 21 or
+ * newer, and in a bounded pool of {@link ConnectionPoolConfig#getMaxSize()}
+ * threads otherwise. In both cases the number of searches talking to the server
+ * at the same time is bounded by the connection pool.
+ * <p>
+ * Cancelling a returned future interrupts its search, the search is abandoned
+ * in the server and its connection goes back to the pool. The futures made from
+ * the returned one (e.g.: by <b>thenApply</b>) don't cancel the search.
+ * <p>
+ * Example:
+ * <blockquote>
+ *
+ * <pre>
+ * AsyncActiveDirectory async = new AsyncActiveDirectory(ad);
+ *
+ * async.searchUserGroups("john").thenAccept(groups -&gt; System.out.println(groups));
+ * </pre>
+ *
+ * </blockquote>
+ *
+ */
+public class AsyncActiveDirectory implements AutoCloseable {
+
+	// the searches waiting for a thread of the default pool, above it they fail
+	private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	private final ActiveDirectory activeDirectory;
+	private final Executor executor;
+	private final ExecutorService ownedExecutor; // null if the executor was given
+
+	/**
+	 * Use the default executor: virtual threads on Java 21 or newer, or a bounded
+	 * pool of threads. The {@link ActiveDirectory#setConnectionPoolConfig} must be
+	 * called before this constructor.
+	 *
+	 * @param activeDirectory the Active Directory to search
+	 */
+	public AsyncActiveDirectory(ActiveDirectory activeDirectory) {
+		this.activeDirectory = activeDirectory;
+		this.ownedExecutor = defaultExecutor(activeDirectory.getConnectionPoolConfig().getMaxSize());
+		this.executor = ownedExecutor;
+	}
+
+	/**
+	 * Use an executor of the caller, e.g.: a bounded pool shared with other work.
+	 * It is not shut down by {@link AsyncActiveDirectory#close()}.
+	 *
+	 * @param activeDirectory the Active Directory to search
+	 * @param executor        runs the searches
+	 */
+	public AsyncActiveDirectory(ActiveDirectory activeDirectory, Executor executor) {
+		this.activeDirectory = activeDirectory;
+		this.executor = executor;
+		this.ownedExecutor = null;
+	}
+
+	/**
+	 * See {@link ActiveDirectory#searchUserGroups(String)}.
+	 *
+	 * @param username a string with the user name that will have its groups listed.
+	 *
+	 * @return a future with the common names of the groups
+	 */
+	public CompletableFuture<List<String>> searchUserGroups(String username) {
+		return submit(() -> activeDirectory.searchUserGroups(username));
+	}
+
+	/**
+	 * See {@link ActiveDirectory#searchUserGroups(Collection)}.
+	 *
+	 * @param usernames the user names that will have their groups listed.
+	 *
+	 * @return a future with the common names of the groups of each user
+	 */
+	public CompletableFuture<Map<String, List<String>>> searchUserGroups(Collection<String> usernames) {
+		return submit(() -> activeDirectory.searchUserGroups(usernames));
+	}
+
+	/**
+	 * See {@link ActiveDirectory#searchUsersGroup(String)}.
+	 *
+	 * @param groupName a string with the group name that will have its users
+	 *                  listed.
+	 *
+	 * @return a future with the common names of the users
+	 */
+	public CompletableFuture<List<String>> searchUsersGroup(String groupName) {
+		return submit(() -> activeDirectory.searchUsersGroup(groupName));
+	}
+
+	/**
+	 * See {@link ActiveDirectory#searchUsersGroup(String, boolean)}.
+	 *
+	 * @param groupName  a string with the group name that will have its users
+	 *                   listed.
+	 * @param transitive true to list the users of the nested groups too
+	 *
+	 * @return a future with the common names of the users
+	 */
+	public CompletableFuture<List<String>> searchUsersGroup(String groupName, boolean transitive) {
+		return submit(() -> activeDirectory.searchUsersGroup(groupName, transitive));
+	}
+
+	/**
+	 * See {@link ActiveDirectory#searchUsersGroup(Collection)}.
+	 *
+	 * @param groupNames the group names that will have their users listed.
+	 *
+	 * @return a future with the common names of the users of each group
+	 */
+	public CompletableFuture<Map<String, List<String>>> searchUsersGroup(Collection<String> groupNames) {
+		return submit(() -> activeDirectory.searchUsersGroup(groupNames));
+	}
+
+	/**
+	 * See {@link ActiveDirectory#searchUserObjects(String)}.
+	 *
+	 * @param partOfUsername a string containing part of the objects common name
+	 *
+	 * @return a future with the common names of the users
+	 */
+	public CompletableFuture<List<String>> searchUserObjects(String partOfUsername) {
+		return submit(() -> activeDirectory.searchUserObjects(partOfUsername));
+	}
+
+	/**
+	 * See {@link ActiveDirectory#searchGroupObjects(String)}.
+	 *
+	 * @param partOfGroupName a string containing part of the objects common name
+	 *
+	 * @return a future with the common names of the groups
+	 */
+	public CompletableFuture<List<String>> searchGroupObjects(String partOfGroupName) {
+		return submit(() -> activeDirectory.searchGroupObjects(partOfGroupName));
+	}
+
+	/**
+	 * Stop the default executor, the searches running are interrupted. An
+	 * executor given to the constructor is not stopped. The
+	 * {@link ActiveDirectory} is not closed.
+	 */
+	@Override
+	public void close() {
+		if (ownedExecutor != null)
+			ownedExecutor.shutdownNow();
+	}
+
+	private <T> CompletableFuture<T> submit(SearchTask.Search<T> search) {
+		SearchTask<T> task = new SearchTask<T>(search);
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			task.completeExceptionally(e);
+		}
+		return task;
+	}
+
+	/**
+	 * @return an executor of virtual threads on Java 21 or newer, or a pool of
+	 *         <b>maxThreads</b> threads with a bounded queue
+	 */
+	static ExecutorService defaultExecutor(int maxThreads) {
+		ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+		if (virtualThreads != null)
+			return virtualThreads;
+
+		ThreadPoolExecutor threads = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(DEFAULT_QUEUE_CAPACITY), new DaemonThreadFactory("active-directory-async"));
+		threads.allowCoreThreadTimeOut(true);
+		return threads;
+	}
+
+	// the library is compiled for Java 8, so the Java 21 method is found at run
+	// time
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// before Java 21, or a preview feature not enabled
+			return null;
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package com.quazzom.active_directory;
+
+/**
+ * The result of {@link ActiveDirectory#authenticate(String, String)}.
+ *
+ */
+public class AuthenticationResult {
+
+	private final AuthenticationStatus status;
+	private final int errorCode;
+	private final String subCode;
+	private final String message;
+	private final LdapError error;
+
+	AuthenticationResult(AuthenticationStatus status, int errorCode, String subCode, String message) {
+		this.status = status;
+		this.errorCode = errorCode;
+		this.subCode = subCode;
+		this.message = message;
+		this.error = null;
+	}
+
+	AuthenticationResult(LdapError error, String message) {
+		this.status = error.getAuthenticationStatus();
+		this.errorCode = error.getResultCode();
+		this.subCode = error.getSubCode();
+		this.message = message;
+		this.error = error;
+	}
+
+	static AuthenticationResult success() {
+		return new AuthenticationResult(AuthenticationStatus.SUCCESS, 0, null, null);
+	}
+
+	/**
+	 * @return true if the user name and password are valid.
+	 */
+	public boolean isAuthenticated() {
+		return status == AuthenticationStatus.SUCCESS;
+	}
+
+	/**
+	 * @return why the authentication failed, or {@link AuthenticationStatus#SUCCESS}.
+	 */
+	public AuthenticationStatus getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the LDAP error code of the bind (49 for the invalid credentials), 0
+	 *         on success or -1 if the server was not asked.
+	 */
+	public int getErrorCode() {
+		return errorCode;
+	}
+
+	/**
+	 * @return the Active Directory sub-code of the bind failure, e.g.: <b>52e</b>,
+	 *         or null.
+	 */
+	public String getSubCode() {
+		return subCode;
+	}
+
+	/**
+	 * @return a friendly message of the failure, see
+	 *         {@link ActiveDirectoryUtils#getActiveDirectoryErrorMessage(String)},
+	 *         or null on success.
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * @return the error of the bind, with its category (e.g.:
+	 *         {@link LdapErrorCategory#LOCKOUT}), or null if the server was not
+	 *         asked or on success.
+	 */
+	public LdapError getError() {
+		return error;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("AuthenticationResult[status=%s, errorCode=%d, subCode=%s]", status, errorCode, subCode);
+	}
+}
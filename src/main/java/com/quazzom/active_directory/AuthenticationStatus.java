@@ -0,0 +1,50 @@
+package com.quazzom.active_directory;
+
+/**
+ * The outcome of {@link ActiveDirectory#authenticate(String, String)}. The
+ * failures of a bind with the LDAP error 49 are told apart by the Active
+ * Directory sub-code, the <b>data</b> part of the error message, e.g.:
+ * <b>data 52e</b>.
+ *
+ */
+public enum AuthenticationStatus {
+
+	/** The user name and password are valid. */
+	SUCCESS,
+
+	/** The password is null or empty, the server is not asked. */
+	EMPTY_PASSWORD,
+
+	/** Sub-code 525. */
+	USER_NOT_FOUND,
+
+	/** Sub-code 52e, the user name or the password is wrong. */
+	INVALID_CREDENTIALS,
+
+	/** Sub-code 52f. */
+	ACCOUNT_RESTRICTED,
+
+	/** Sub-code 530, the user cannot log in at this time. */
+	INVALID_LOGON_HOURS,
+
+	/** Sub-code 531, the user cannot log in from this computer. */
+	INVALID_WORKSTATION,
+
+	/** Sub-code 532. */
+	PASSWORD_EXPIRED,
+
+	/** Sub-code 533. */
+	ACCOUNT_DISABLED,
+
+	/** Sub-code 701. */
+	ACCOUNT_EXPIRED,
+
+	/** Sub-code 773, the user must change the password. */
+	PASSWORD_MUST_CHANGE,
+
+	/** Sub-code 775. */
+	ACCOUNT_LOCKED,
+
+	/** A bind failure without a known sub-code. */
+	OTHER
+}
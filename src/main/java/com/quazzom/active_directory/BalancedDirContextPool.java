@@ -0,0 +1,395 @@
+package com.quazzom.active_directory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.DirContext;
+
+/**
+ * A {@link DirContextPool} over many domain controllers, with a pool of
+ * connections per domain controller. Each borrow chooses a domain controller
+ * with the {@link LoadBalancingStrategy} and gives the context back to its
+ * pool.
+ * <p>
+ * Each domain controller has a {@link CircuitBreaker}: after
+ * {@link LoadBalancingConfig#getFailureThreshold()} consecutive connection
+ * failures it is ejected (the circuit opens) and the borrow that failed tries
+ * the next one. After {@link LoadBalancingConfig#getEjectionMillis()} a single
+ * request or a probe (a rootDSE read over a new connection) tries it again
+ * (half-open), its failure doubles the ejection. The latency of a domain
+ * controller is measured by its requests (the time they hold a connection), so
+ * a slow one gets fewer requests, and by the probes of the idle ones. When all
+ * the circuits are open the borrows fail at once, the domain controllers are
+ * not overloaded while they recover.
+ *
+ */
+final class BalancedDirContextPool extends DirContextPool {
+
+	private static final String[] PROBE_ATTRIBUTES = new String[] { "supportedLDAPVersion" };
+
+	private final List<DomainController> controllers;
+	private final Map<String, DomainController> byServer;
+	private final LoadBalancingConfig balancing;
+	private final LongSupplier ticker;
+	private final AtomicInteger next = new AtomicInteger();
+
+	// the domain controller kept by the requests of a thread, see pin()
+	private final ThreadLocal<AtomicReference<String>> pinned = new ThreadLocal<AtomicReference<String>>();
+	// the domain controller left for the others by a thread, see avoid()
+	private final ThreadLocal<String> avoided = new ThreadLocal<String>();
+
+	private ScheduledExecutorService prober;
+	private volatile boolean closed;
+
+	/**
+	 * @param factories the factory of the connections of each domain controller,
+	 *                  by its name
+	 * @param config    the settings of the pool of each domain controller
+	 * @param balancing the load balancing settings
+	 */
+	BalancedDirContextPool(Map<String, DirContextFactory> factories, ConnectionPoolConfig config,
+			LoadBalancingConfig balancing) {
+		this(factories, config, balancing, System::nanoTime);
+	}
+
+	BalancedDirContextPool(Map<String, DirContextFactory> factories, ConnectionPoolConfig config,
+			LoadBalancingConfig balancing, LongSupplier ticker) {
+		// the contexts are lent by the pool of each domain controller
+		super(null, config);
+
+		if (factories.isEmpty())
+			throw new IllegalArgumentException("at least one domain controller is needed.");
+
+		List<DomainController> list = new ArrayList<DomainController>();
+		Map<String, DomainController> map = new LinkedHashMap<String, DomainController>();
+		for (Map.Entry<String, DirContextFactory> factory : factories.entrySet()) {
+			DomainController controller = new DomainController(factory.getKey(), factory.getValue(),
+					new DirContextPool(factory.getValue(), config, factory.getKey()), new CircuitBreaker(balancing));
+			list.add(controller);
+			map.put(controller.server, controller);
+		}
+
+		this.controllers = Collections.unmodifiableList(list);
+		this.byServer = map;
+		this.balancing = balancing;
+		this.ticker = ticker;
+	}
+
+	/**
+	 * Open the first connections of each domain controller. An unreachable one
+	 * is ejected, only when none can be reached the start fails.
+	 */
+	@Override
+	void start() throws NamingException {
+		NamingException failure = null;
+		int started = 0;
+
+		for (DomainController controller : controllers) {
+			try {
+				controller.pool.start();
+				started++;
+			} catch (NamingException e) {
+				if (!isBrokenConnection(e)) {
+					// e.g.: invalid credentials, the same in every domain controller
+					close();
+					throw e;
+				}
+
+				controller.pool.startEviction();
+				controller.breaker.open(ticker.getAsLong());
+				failure = e;
+			}
+		}
+
+		if (started == 0) {
+			close();
+			throw failure;
+		}
+
+		prober = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("active-directory-dc-probe"));
+		prober.scheduleWithFixedDelay(this::probe, balancing.getProbeIntervalMillis(),
+				balancing.getProbeIntervalMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	PooledDirContext borrow() throws NamingException, ActiveDirectoryException {
+		if (closed)
+			throw new ActiveDirectoryException("the connection pool is closed.");
+
+		AtomicReference<String> pin = pinned.get();
+		List<DomainController> tried = new ArrayList<DomainController>(controllers.size());
+		NamingException failure = null;
+
+		DomainController controller;
+		while ((controller = select(tried, pin)) != null) {
+			tried.add(controller);
+			// the trial of a half-open circuit can be taken by another thread
+			if (!controller.breaker.acquire(ticker.getAsLong()))
+				continue;
+			controller.outstanding.incrementAndGet();
+
+			try {
+				PooledDirContext pooled = controller.pool.borrow();
+				pooled.setBorrowedAt(ticker.getAsLong());
+				if (pin != null)
+					pin.set(controller.server);
+				return pooled;
+			} catch (NamingException e) {
+				controller.outstanding.decrementAndGet();
+				if (!isBrokenConnection(e)) {
+					controller.breaker.cancelled();
+					throw e;
+				}
+
+				// the domain controller can't be reached, try the next one
+				controller.breaker.failed(ticker.getAsLong());
+				failure = e;
+			} catch (ActiveDirectoryException | RuntimeException e) {
+				controller.outstanding.decrementAndGet();
+				controller.breaker.cancelled();
+				throw e;
+			}
+		}
+
+		if (failure == null)
+			throw new ServiceUnavailableException("the circuits of all the domain controllers are open.");
+		throw failure;
+	}
+
+	@Override
+	void release(PooledDirContext pooled) {
+		DomainController controller = byServer.get(pooled.getServer());
+		controller.requestEnded(ticker.getAsLong(), pooled, balancing);
+		controller.breaker.succeeded();
+		controller.outstanding.decrementAndGet();
+		controller.pool.release(pooled);
+	}
+
+	@Override
+	void invalidate(PooledDirContext pooled) {
+		DomainController controller = byServer.get(pooled.getServer());
+		controller.requestEnded(ticker.getAsLong(), pooled, balancing);
+		controller.breaker.failed(ticker.getAsLong());
+		controller.outstanding.decrementAndGet();
+		controller.pool.invalidate(pooled);
+	}
+
+	@Override
+	int getSize() {
+		int size = 0;
+		for (DomainController controller : controllers)
+			size += controller.pool.getSize();
+		return size;
+	}
+
+	@Override
+	int getIdleCount() {
+		int idle = 0;
+		for (DomainController controller : controllers)
+			idle += controller.pool.getIdleCount();
+		return idle;
+	}
+
+	@Override
+	void evict() {
+		for (DomainController controller : controllers)
+			controller.pool.evict();
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		if (prober != null)
+			prober.shutdownNow();
+
+		for (DomainController controller : controllers)
+			controller.pool.close();
+	}
+
+	/**
+	 * Keep the requests of the current thread on one domain controller, e.g.: the
+	 * searches of a sync cycle, whose update sequence numbers are local to a
+	 * domain controller. A domain controller with an open circuit is still left for
+	 * another.
+	 *
+	 * @param server the domain controller to keep, the one of the first request
+	 *               when it holds null; it receives the one used
+	 */
+	void pin(AtomicReference<String> server) {
+		pinned.set(server);
+	}
+
+	/**
+	 * Stop keeping the requests of the current thread on a domain controller.
+	 */
+	void unpin() {
+		pinned.remove();
+	}
+
+	/**
+	 * @return true if the requests of the current thread are kept on a domain
+	 *         controller, see {@link #pin(AtomicReference)}
+	 */
+	boolean isPinned() {
+		return pinned.get() != null;
+	}
+
+	/**
+	 * Send the requests of the current thread to another domain controller than
+	 * <b>server</b> while there is another one, e.g.: the copy of a hedged search.
+	 *
+	 * @param server the domain controller to leave, null to use any one
+	 */
+	void avoid(String server) {
+		if (server == null)
+			avoided.remove();
+		else
+			avoided.set(server);
+	}
+
+	/**
+	 * @return the state of each domain controller
+	 */
+	List<DomainControllerStatus> status() {
+		List<DomainControllerStatus> status = new ArrayList<DomainControllerStatus>(controllers.size());
+		for (DomainController controller : controllers)
+			status.add(controller.status());
+		return status;
+	}
+
+	private DomainController select(List<DomainController> tried, AtomicReference<String> pin) {
+		long now = ticker.getAsLong();
+		if (pin != null && pin.get() != null) {
+			DomainController controller = byServer.get(pin.get());
+			if (controller != null && controller.breaker.allows(now) && !tried.contains(controller))
+				return controller;
+		}
+
+		List<DomainController> candidates = new ArrayList<DomainController>(controllers.size());
+		for (DomainController controller : controllers)
+			if (controller.breaker.allows(now) && !tried.contains(controller))
+				candidates.add(controller);
+
+		String avoid = avoided.get();
+		if (avoid != null && candidates.size() > 1)
+			candidates.removeIf(controller -> controller.server.equals(avoid));
+
+		if (candidates.size() <= 1)
+			return candidates.isEmpty() ? null : candidates.get(0);
+
+		if (balancing.getStrategy() == LoadBalancingStrategy.ROUND_ROBIN)
+			return candidates.get(Math.floorMod(next.getAndIncrement(), candidates.size()));
+
+		// the power of two random choices: almost the best one, without sending all
+		// the requests to the same one between two measures
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int first = random.nextInt(candidates.size());
+		int second = random.nextInt(candidates.size() - 1);
+		if (second >= first)
+			second++;
+
+		DomainController one = candidates.get(first);
+		DomainController other = candidates.get(second);
+		return cost(one) <= cost(other) ? one : other;
+	}
+
+	private double cost(DomainController controller) {
+		int outstanding = controller.outstanding.get();
+		if (balancing.getStrategy() == LoadBalancingStrategy.LEAST_OUTSTANDING)
+			return outstanding;
+		return controller.latencyNanos * (outstanding + 1);
+	}
+
+	/**
+	 * Read the rootDSE of each domain controller over a new connection: the
+	 * healthy ones without requests since the last probe and, as the trial of the
+	 * half-open circuit, the ejected ones whose ejection is over.
+	 */
+	void probe() {
+		for (DomainController controller : controllers) {
+			if (closed)
+				return;
+			// the requests measure a busy one
+			if (controller.requested.getAndSet(false) && controller.breaker.state() == CircuitState.CLOSED)
+				continue;
+			if (!controller.breaker.acquire(ticker.getAsLong()))
+				continue;
+
+			long start = ticker.getAsLong();
+			try {
+				DirContext context = controller.factory.create();
+				try {
+					context.getAttributes("", PROBE_ATTRIBUTES);
+				} finally {
+					context.close();
+				}
+				long now = ticker.getAsLong();
+				controller.measured(now, now - start, balancing);
+				controller.breaker.succeeded();
+			} catch (NamingException | RuntimeException e) {
+				controller.breaker.failed(ticker.getAsLong());
+			}
+		}
+	}
+
+	/**
+	 * A domain controller, its pool and its health.
+	 */
+	private static final class DomainController {
+		final String server;
+		final DirContextFactory factory;
+		final DirContextPool pool;
+		final CircuitBreaker breaker;
+		final AtomicInteger outstanding = new AtomicInteger();
+		// a request ended since the last probe
+		final AtomicBoolean requested = new AtomicBoolean();
+
+		volatile double latencyNanos;
+
+		private boolean measured; // guarded by this
+		private long measuredAt; // guarded by this
+
+		DomainController(String server, DirContextFactory factory, DirContextPool pool, CircuitBreaker breaker) {
+			this.server = server;
+			this.factory = factory;
+			this.pool = pool;
+			this.breaker = breaker;
+		}
+
+		void requestEnded(long now, PooledDirContext pooled, LoadBalancingConfig balancing) {
+			requested.set(true);
+			measured(now, now - pooled.getBorrowedAt(), balancing);
+		}
+
+		synchronized void measured(long now, long latency, LoadBalancingConfig balancing) {
+			// a peak above the average replaces it, a lower latency is averaged in
+			if (!measured || latency > latencyNanos) {
+				latencyNanos = latency;
+			} else {
+				double weight = Math.exp(
+						-(double) (now - measuredAt) / TimeUnit.MILLISECONDS.toNanos(balancing.getLatencyDecayMillis()));
+				latencyNanos = latencyNanos * weight + latency * (1 - weight);
+			}
+			measured = true;
+			measuredAt = now;
+		}
+
+		DomainControllerStatus status() {
+			return new DomainControllerStatus(server, breaker.state(), outstanding.get(), latencyNanos / 1e6,
+					breaker.openings());
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package com.quazzom.active_directory;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import javax.naming.NamingException;
+
+/**
+ * The few BER (X.690) encodings needed by the control values of this library:
+ * SEQUENCE, INTEGER and OCTET STRING, with the definite length forms.
+ *
+ */
+final class BerCodec {
+
+	static final int SEQUENCE = 0x30;
+	static final int INTEGER = 0x02;
+	static final int OCTET_STRING = 0x04;
+
+	private BerCodec() {
+	}
+
+	/**
+	 * @param elements the encoded elements
+	 *
+	 * @return the SEQUENCE of the elements
+	 */
+	static byte[] sequence(byte[]... elements) {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		for (byte[] element : elements)
+			content.write(element, 0, element.length);
+		return tagged(SEQUENCE, content.toByteArray());
+	}
+
+	/**
+	 * @param value the value
+	 *
+	 * @return the INTEGER, in the fewest bytes of its two's complement
+	 */
+	static byte[] integer(int value) {
+		byte[] bytes = { (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value };
+		int start = 0;
+		// a leading byte is redundant when it only repeats the sign of the next one
+		while (start < 3 && ((bytes[start] == 0 && bytes[start + 1] >= 0)
+				|| (bytes[start] == (byte) 0xff && bytes[start + 1] < 0)))
+			start++;
+		return tagged(INTEGER, Arrays.copyOfRange(bytes, start, 4));
+	}
+
+	/**
+	 * @param value the value, null is an empty string
+	 *
+	 * @return the OCTET STRING
+	 */
+	static byte[] octetString(byte[] value) {
+		return tagged(OCTET_STRING, value == null ? new byte[0] : value);
+	}
+
+	private static byte[] tagged(int tag, byte[] content) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(content.length + 6);
+		out.write(tag);
+
+		int length = content.length;
+		if (length < 0x80) {
+			out.write(length);
+		} else {
+			int bytes = length > 0xffffff ? 4 : length > 0xffff ? 3 : length > 0xff ? 2 : 1;
+			out.write(0x80 | bytes);
+			for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8)
+				out.write(length >>> shift);
+		}
+
+		out.write(content, 0, content.length);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Reads the elements of an encoded value in order.
+	 */
+	static final class Reader {
+		private final byte[] bytes;
+		private int position;
+
+		Reader(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		/**
+		 * Enter a SEQUENCE, the next read is its first element.
+		 *
+		 * @return the length of the sequence content
+		 */
+		int readSequence() throws NamingException {
+			return readHeader(SEQUENCE);
+		}
+
+		int readInteger() throws NamingException {
+			int length = readHeader(INTEGER);
+			if (length < 1 || length > 4)
+				throw new NamingException("invalid BER integer length: " + length + ".");
+
+			int value = bytes[position++]; // the sign
+			for (int count = 1; count < length; count++)
+				value = (value << 8) | (bytes[position++] & 0xff);
+			return value;
+		}
+
+		byte[] readOctetString() throws NamingException {
+			int length = readHeader(OCTET_STRING);
+			byte[] value = Arrays.copyOfRange(bytes, position, position + length);
+			position += length;
+			return value;
+		}
+
+		private int readHeader(int tag) throws NamingException {
+			if (position + 2 > bytes.length)
+				throw new NamingException("truncated BER value.");
+			if ((bytes[position++] & 0xff) != tag)
+				throw new NamingException("unexpected BER tag, expected " + tag + ".");
+
+			int length = bytes[position++] & 0xff;
+			if (length >= 0x80) {
+				int count = length & 0x7f;
+				if (count < 1 || count > 4 || position + count > bytes.length)
+					throw new NamingException("invalid BER length.");
+				length = 0;
+				for (int index = 0; index < count; index++)
+					length = (length << 8) | (bytes[position++] & 0xff);
+			}
+
+			if (length < 0 || position + length > bytes.length)
+				throw new NamingException("truncated BER value.");
+			return length;
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package com.quazzom.active_directory;
+
+import java.util.Arrays;
+
+/**
+ * An immutable Bloom filter of strings in a {@code long[]}: a string not in the
+ * filter is always reported absent, a string in the filter is reported present
+ * and a string not in the filter is reported present with the false positive
+ * rate given to the build.
+ * <p>
+ * Each string is hashed once to 64 bits and its bits are chosen by double
+ * hashing (Kirsch and Mitzenmacher), so the build keeps only the hashes, 8
+ * bytes per string, until the size of the filter is known.
+ *
+ */
+final class BloomFilter {
+
+	private final long[] bits;
+	private final long bitCount;
+	private final int hashCount;
+	private final int size;
+
+	private BloomFilter(long[] bits, int hashCount, int size) {
+		this.bits = bits;
+		this.bitCount = (long) bits.length * Long.SIZE;
+		this.hashCount = hashCount;
+		this.size = size;
+	}
+
+	/**
+	 * @param value the string
+	 *
+	 * @return false if <b>value</b> is surely not in the filter
+	 */
+	boolean mightContain(String value) {
+		long hash = hash(value);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+
+		for (int index = 1; index <= hashCount; index++) {
+			int combined = h1 + index * h2;
+			if (combined < 0)
+				combined = ~combined;
+			long bit = combined % bitCount;
+			if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of strings added to the filter
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the size of the filter in bytes
+	 */
+	long getBytes() {
+		return (long) bits.length * Long.BYTES;
+	}
+
+	/**
+	 * The hash of a string, the FNV-1a of its characters with the final mix of
+	 * MurmurHash3, so the two halves used by {@link #mightContain(String)} are
+	 * independent enough.
+	 */
+	static long hash(String value) {
+		long hash = 0xcbf29ce484222325L;
+		for (int index = 0; index < value.length(); index++) {
+			hash ^= value.charAt(index);
+			hash *= 0x100000001b3L;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * Collects the strings of a filter.
+	 */
+	static final class Builder {
+		private long[] hashes = new long[1024];
+		private int size;
+
+		/**
+		 * @param value a string of the filter
+		 */
+		void add(String value) {
+			if (size == hashes.length)
+				hashes = Arrays.copyOf(hashes, size * 2);
+			hashes[size++] = hash(value);
+		}
+
+		/**
+		 * @param falsePositiveRate the fraction of the absent strings reported
+		 *                          present
+		 *
+		 * @return the filter
+		 */
+		BloomFilter build(double falsePositiveRate) {
+			// the optimal sizes: m = -n ln(p) / ln(2)^2 bits and k = m / n ln(2) hashes
+			int n = Math.max(1, size);
+			double ln2 = Math.log(2);
+			long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (ln2 * ln2));
+			// the double hashing gives indexes up to 2^31
+			m = Math.max(Long.SIZE, Math.min(m, Integer.MAX_VALUE));
+			int k = Math.max(1, (int) Math.round((double) m / n * ln2));
+
+			long[] bits = new long[(int) ((m + Long.SIZE - 1) / Long.SIZE)];
+			long bitCount = (long) bits.length * Long.SIZE;
+			for (int index = 0; index < size; index++) {
+				long hash = hashes[index];
+				int h1 = (int) hash;
+				int h2 = (int) (hash >>> 32);
+				for (int i = 1; i <= k; i++) {
+					int combined = h1 + i * h2;
+					if (combined < 0)
+						combined = ~combined;
+					long bit = combined % bitCount;
+					bits[(int) (bit >>> 6)] |= 1L << bit;
+				}
+			}
+
+			return new BloomFilter(bits, k, size);
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package com.quazzom.active_directory;
+
+/**
+ * Settings of the caches of {@link ActiveDirectory#searchUserGroups(String)}
+ * and {@link ActiveDirectory#searchUsersGroup(String)}.
+ * <p>
+ * The defaults are: timeToLiveMillis 300000, maxEntries 10000 and
+ * refreshAheadRatio 0.8.
+ *
+ */
+public class CacheConfig {
+
+	private long timeToLiveMillis = 300000;
+	private int maxEntries = 10000;
+	private double refreshAheadRatio = 0.8;
+
+	/**
+	 * @return how long an entry is served from the cache after being loaded.
+	 */
+	public long getTimeToLiveMillis() {
+		return timeToLiveMillis;
+	}
+
+	/**
+	 * @param timeToLiveMillis how long an entry is served from the cache after
+	 *                         being loaded.
+	 */
+	public void setTimeToLiveMillis(long timeToLiveMillis) {
+		if (timeToLiveMillis <= 0)
+			throw new IllegalArgumentException("timeToLiveMillis must be greater than zero.");
+		this.timeToLiveMillis = timeToLiveMillis;
+	}
+
+	/**
+	 * @return the maximum number of entries, the least recently used entries are
+	 *         evicted above it.
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * @param maxEntries the maximum number of entries, the least recently used
+	 *                   entries are evicted above it.
+	 */
+	public void setMaxEntries(int maxEntries) {
+		if (maxEntries < 1)
+			throw new IllegalArgumentException("maxEntries must be greater than zero.");
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * @return the fraction of the time to live after which a hit reloads the entry
+	 *         in background, zero or one disables the refresh-ahead.
+	 */
+	public double getRefreshAheadRatio() {
+		return refreshAheadRatio;
+	}
+
+	/**
+	 * @param refreshAheadRatio the fraction of the time to live after which a hit
+	 *                          reloads the entry in background, e.g.: with 0.8 and
+	 *                          a time to live of 5 minutes, a hit on an entry
+	 *                          loaded 4 minutes ago reloads it. Zero or one
+	 *                          disables the refresh-ahead.
+	 */
+	public void setRefreshAheadRatio(double refreshAheadRatio) {
+		if (refreshAheadRatio < 0 || refreshAheadRatio > 1)
+			throw new IllegalArgumentException("refreshAheadRatio must be between 0 and 1.");
+		this.refreshAheadRatio = refreshAheadRatio;
+	}
+}
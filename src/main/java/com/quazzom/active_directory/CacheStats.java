@@ -0,0 +1,83 @@
+package com.quazzom.active_directory;
+
+/**
+ * A snapshot of the statistics of a cache.
+ *
+ */
+public class CacheStats {
+
+	private final long hitCount;
+	private final long missCount;
+	private final long loadFailureCount;
+	private final long refreshCount;
+	private final long evictionCount;
+	private final int size;
+
+	CacheStats(long hitCount, long missCount, long loadFailureCount, long refreshCount, long evictionCount,
+			int size) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.loadFailureCount = loadFailureCount;
+		this.refreshCount = refreshCount;
+		this.evictionCount = evictionCount;
+		this.size = size;
+	}
+
+	/**
+	 * @return the number of lookups answered by the cache.
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return the number of lookups that needed a search in the Active Directory.
+	 */
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return the number of searches, on a miss or on a refresh, that failed.
+	 */
+	public long getLoadFailureCount() {
+		return loadFailureCount;
+	}
+
+	/**
+	 * @return the number of background reloads of entries close to expire.
+	 */
+	public long getRefreshCount() {
+		return refreshCount;
+	}
+
+	/**
+	 * @return the number of entries removed to keep the cache under its maximum
+	 *         size.
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * @return the number of entries in the cache.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the fraction of lookups answered by the cache, 1.0 if there were no
+	 *         lookups.
+	 */
+	public double getHitRate() {
+		long lookups = hitCount + missCount;
+		return lookups == 0 ? 1.0 : (double) hitCount / lookups;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CacheStats[hits=%d, misses=%d, loadFailures=%d, refreshes=%d, evictions=%d, size=%d]",
+				hitCount, missCount, loadFailureCount, refreshCount, evictionCount, size);
+	}
+}
@@ -0,0 +1,116 @@
+package com.quazzom.active_directory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The circuit breaker of a domain controller: after
+ * {@link LoadBalancingConfig#getFailureThreshold()} consecutive failures the
+ * circuit opens and no request is sent for
+ * {@link LoadBalancingConfig#getEjectionMillis()}. Then a single trial request
+ * is let through (half-open), its success closes the circuit and its failure
+ * opens it again for twice as long, up to
+ * {@link LoadBalancingConfig#getMaxEjectionMillis()}.
+ *
+ */
+final class CircuitBreaker {
+
+	private final LoadBalancingConfig config;
+
+	private CircuitState state = CircuitState.CLOSED;
+	private int consecutiveFailures;
+	private int backoff; // the doublings of the next opening
+	private long openUntil;
+	private long openings;
+	private boolean trialInFlight;
+
+	CircuitBreaker(LoadBalancingConfig config) {
+		this.config = config;
+	}
+
+	/**
+	 * @param now the current time, in nanoseconds
+	 *
+	 * @return true if a request can be sent now, without taking the trial of a
+	 *         half-open circuit
+	 */
+	synchronized boolean allows(long now) {
+		switch (state) {
+		case CLOSED:
+			return true;
+		case OPEN:
+			return now - openUntil >= 0;
+		default:
+			return !trialInFlight;
+		}
+	}
+
+	/**
+	 * Take the right to send a request, the trial of a half-open circuit.
+	 *
+	 * @param now the current time, in nanoseconds
+	 *
+	 * @return false if the circuit is open or if the trial is taken
+	 */
+	synchronized boolean acquire(long now) {
+		if (!allows(now))
+			return false;
+
+		if (state != CircuitState.CLOSED) {
+			state = CircuitState.HALF_OPEN;
+			trialInFlight = true;
+		}
+		return true;
+	}
+
+	/**
+	 * The request let through ended without a result, e.g.: no connection got
+	 * free in time, the trial of a half-open circuit is given to another one.
+	 */
+	synchronized void cancelled() {
+		trialInFlight = false;
+	}
+
+	synchronized void succeeded() {
+		consecutiveFailures = 0;
+		backoff = 0;
+		trialInFlight = false;
+		state = CircuitState.CLOSED;
+	}
+
+	/**
+	 * @param now the current time, in nanoseconds
+	 */
+	synchronized void failed(long now) {
+		consecutiveFailures++;
+		if (state != CircuitState.CLOSED || consecutiveFailures >= config.getFailureThreshold())
+			open(now);
+	}
+
+	/**
+	 * Open the circuit at once, e.g.: the domain controller can't be reached at
+	 * the start.
+	 *
+	 * @param now the current time, in nanoseconds
+	 */
+	synchronized void open(long now) {
+		if (state == CircuitState.CLOSED)
+			openings++;
+
+		long millis = Math.min(config.getEjectionMillis() << Math.min(backoff, 20), config.getMaxEjectionMillis());
+		backoff++;
+		openUntil = now + TimeUnit.MILLISECONDS.toNanos(millis);
+		trialInFlight = false;
+		state = CircuitState.OPEN;
+	}
+
+	synchronized CircuitState state() {
+		return state;
+	}
+
+	/**
+	 * @return the number of times the circuit opened after being closed
+	 */
+	synchronized long openings() {
+		return openings;
+	}
+}
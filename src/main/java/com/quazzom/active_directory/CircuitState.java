@@ -0,0 +1,28 @@
+package com.quazzom.active_directory;
+
+/**
+ * The state of the circuit breaker of a domain controller, see
+ * {@link DomainControllerStatus#getCircuitState()}.
+ *
+ */
+public enum CircuitState {
+
+	/**
+	 * The domain controller receives requests, its consecutive failures are
+	 * counted.
+	 */
+	CLOSED,
+
+	/**
+	 * The domain controller failed too many times in a row and receives no
+	 * request until the end of the ejection.
+	 */
+	OPEN,
+
+	/**
+	 * The ejection is over, a single request (or a probe) tries the domain
+	 * controller: a success closes the circuit, a failure opens it again for
+	 * twice as long.
+	 */
+	HALF_OPEN
+}
@@ -0,0 +1,53 @@
+package com.quazzom.active_directory;
+
+/**
+ * A snapshot of the statistics of the coalescing of the identical searches made
+ * at the same time.
+ *
+ */
+public class CoalescingStats {
+
+	private final long requestCount;
+	private final long coalescedCount;
+
+	CoalescingStats(long requestCount, long coalescedCount) {
+		this.requestCount = requestCount;
+		this.coalescedCount = coalescedCount;
+	}
+
+	/**
+	 * @return the number of searches asked.
+	 */
+	public long getRequestCount() {
+		return requestCount;
+	}
+
+	/**
+	 * @return the number of searches that waited for the same search in flight
+	 *         instead of going to the Active Directory.
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount;
+	}
+
+	/**
+	 * @return the number of searches sent to the Active Directory.
+	 */
+	public long getSearchCount() {
+		return requestCount - coalescedCount;
+	}
+
+	/**
+	 * @return the fraction of the searches asked that were coalesced, 0.0 if there
+	 *         were no searches.
+	 */
+	public double getDedupRatio() {
+		return requestCount == 0 ? 0.0 : (double) coalescedCount / requestCount;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CoalescingStats[requests=%d, coalesced=%d, dedupRatio=%.3f]", requestCount,
+				coalescedCount, getDedupRatio());
+	}
+}
@@ -0,0 +1,130 @@
+package com.quazzom.active_directory;
+
+/**
+ * Settings of the connection pool used by {@link ActiveDirectory}.
+ * <p>
+ * The defaults are: minSize 1, maxSize 8, borrowTimeoutMillis 10000,
+ * idleTimeoutMillis 300000, evictionIntervalMillis 30000, validateOnBorrow
+ * true and validationIntervalMillis 5000.
+ *
+ */
+public class ConnectionPoolConfig {
+
+	private int minSize = 1;
+	private int maxSize = 8;
+	private long borrowTimeoutMillis = 10000;
+	private long idleTimeoutMillis = 300000; // AD drops idle connections after 900 seconds
+	private long evictionIntervalMillis = 30000;
+	private boolean validateOnBorrow = true;
+	private long validationIntervalMillis = 5000;
+
+	/**
+	 * @return the number of connections kept open even when they are idle.
+	 */
+	public int getMinSize() {
+		return minSize;
+	}
+
+	/**
+	 * @param minSize the number of connections kept open even when they are idle.
+	 */
+	public void setMinSize(int minSize) {
+		if (minSize < 0)
+			throw new IllegalArgumentException("minSize cannot be negative.");
+		this.minSize = minSize;
+	}
+
+	/**
+	 * @return the maximum number of open connections.
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @param maxSize the maximum number of open connections.
+	 */
+	public void setMaxSize(int maxSize) {
+		if (maxSize < 1)
+			throw new IllegalArgumentException("maxSize must be greater than zero.");
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return how long a search waits for a free connection before failing.
+	 */
+	public long getBorrowTimeoutMillis() {
+		return borrowTimeoutMillis;
+	}
+
+	/**
+	 * @param borrowTimeoutMillis how long a search waits for a free connection
+	 *                            before failing.
+	 */
+	public void setBorrowTimeoutMillis(long borrowTimeoutMillis) {
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+	}
+
+	/**
+	 * @return how long a connection can stay idle before it is closed, zero or
+	 *         less disables the eviction.
+	 */
+	public long getIdleTimeoutMillis() {
+		return idleTimeoutMillis;
+	}
+
+	/**
+	 * @param idleTimeoutMillis how long a connection can stay idle before it is
+	 *                          closed, zero or less disables the eviction.
+	 */
+	public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+
+	/**
+	 * @return the interval between two runs of the idle connections eviction.
+	 */
+	public long getEvictionIntervalMillis() {
+		return evictionIntervalMillis;
+	}
+
+	/**
+	 * @param evictionIntervalMillis the interval between two runs of the idle
+	 *                               connections eviction.
+	 */
+	public void setEvictionIntervalMillis(long evictionIntervalMillis) {
+		this.evictionIntervalMillis = evictionIntervalMillis;
+	}
+
+	/**
+	 * @return true if an idle connection is checked (with a rootDSE read) before
+	 *         being used.
+	 */
+	public boolean isValidateOnBorrow() {
+		return validateOnBorrow;
+	}
+
+	/**
+	 * @param validateOnBorrow true to check an idle connection (with a rootDSE
+	 *                         read) before being used.
+	 */
+	public void setValidateOnBorrow(boolean validateOnBorrow) {
+		this.validateOnBorrow = validateOnBorrow;
+	}
+
+	/**
+	 * @return connections used less than this time ago are not validated on
+	 *         borrow.
+	 */
+	public long getValidationIntervalMillis() {
+		return validationIntervalMillis;
+	}
+
+	/**
+	 * @param validationIntervalMillis connections used less than this time ago are
+	 *                                 not validated on borrow.
+	 */
+	public void setValidationIntervalMillis(long validationIntervalMillis) {
+		this.validationIntervalMillis = validationIntervalMillis;
+	}
+}
@@ -0,0 +1,23 @@
+package com.quazzom.active_directory;
+
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+
+/**
+ * A request made with a context borrowed from the {@link DirContextPool}, see
+ * {@link ActiveDirectory#withContext(Operation, ContextAction)}.
+ *
+ * @param <T> the type of the result
+ */
+interface ContextAction<T> {
+
+	/**
+	 * @param context the borrowed context, it must not be closed
+	 * @param trace   the trace of the request, null without a listener
+	 *
+	 * @return the result of the request
+	 *
+	 * @throws NamingException if a naming exception is encountered
+	 */
+	T run(DirContext context, OperationTrace trace) throws NamingException;
+}
@@ -0,0 +1,30 @@
+package com.quazzom.active_directory;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads, so the background work of this library never
+ * keeps the JVM alive.
+ *
+ */
+class DaemonThreadFactory implements ThreadFactory {
+
+	private final String namePrefix;
+	private final AtomicInteger count = new AtomicInteger();
+
+	/**
+	 * @param namePrefix the prefix of the thread names, e.g.:
+	 *                   <b>active-directory-pool</b>
+	 */
+	DaemonThreadFactory(String namePrefix) {
+		this.namePrefix = namePrefix;
+	}
+
+	@Override
+	public Thread newThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, namePrefix + "-" + count.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
@@ -0,0 +1,59 @@
+package com.quazzom.active_directory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The instant when a request must have ended, see
+ * {@link ActiveDirectory#withDeadline(Deadline, DirectoryCall)}.
+ *
+ */
+public final class Deadline {
+
+	private final long expiresAt; // System.nanoTime()
+
+	private Deadline(long expiresAt) {
+		this.expiresAt = expiresAt;
+	}
+
+	/**
+	 * @param timeoutMillis the time left for the request, from now
+	 *
+	 * @return a deadline <b>timeoutMillis</b> from now
+	 */
+	public static Deadline after(long timeoutMillis) {
+		if (timeoutMillis < 0)
+			throw new IllegalArgumentException("timeoutMillis cannot be negative.");
+		return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+	}
+
+	/**
+	 * @return the milliseconds left, rounded up, or zero if the deadline expired
+	 */
+	public long remainingMillis() {
+		long remaining = remainingNanos();
+		return remaining <= 0 ? 0 : (remaining + 999999) / 1000000;
+	}
+
+	/**
+	 * @return true if the deadline expired
+	 */
+	public boolean isExpired() {
+		return remainingNanos() <= 0;
+	}
+
+	long remainingNanos() {
+		return expiresAt - System.nanoTime();
+	}
+
+	/**
+	 * @return the earliest of this deadline and <b>other</b>
+	 */
+	Deadline earliest(Deadline other) {
+		return expiresAt - other.expiresAt <= 0 ? this : other;
+	}
+
+	@Override
+	public String toString() {
+		return "Deadline[remainingMillis=" + remainingMillis() + "]";
+	}
+}
@@ -0,0 +1,20 @@
+package com.quazzom.active_directory;
+
+/**
+ * Thrown when a request doesn't end before its {@link Deadline}, see
+ * {@link ActiveDirectory#withDeadline(Deadline, DirectoryCall)}. The search in
+ * progress was abandoned.
+ *
+ */
+public class DeadlineExceededException extends ActiveDirectoryException {
+
+	private static final long serialVersionUID = 1L;
+
+	public DeadlineExceededException(String message) {
+		super(message);
+	}
+
+	public DeadlineExceededException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
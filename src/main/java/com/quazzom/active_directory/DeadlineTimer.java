@@ -0,0 +1,67 @@
+package com.quazzom.active_directory;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interrupts the thread of a request when its {@link Deadline} expires, see
+ * {@link RequestInterrupter}.
+ *
+ */
+final class DeadlineTimer {
+
+	/**
+	 * The watch of a request, closed by the thread of the request when it ends.
+	 */
+	static final class Scope {
+		private final RequestInterrupter interrupter;
+		private volatile ScheduledFuture<?> future;
+
+		private Scope(RequestInterrupter interrupter) {
+			this.interrupter = interrupter;
+		}
+
+		/**
+		 * Stop the watch. Calling this method more than once has no effect.
+		 *
+		 * @return true if the thread was interrupted by the deadline
+		 */
+		boolean close() {
+			ScheduledFuture<?> scheduled = future;
+			if (scheduled != null)
+				scheduled.cancel(false);
+			return interrupter.close();
+		}
+	}
+
+	private final ScheduledThreadPoolExecutor scheduler;
+
+	DeadlineTimer() {
+		scheduler = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("active-directory-deadline"));
+		scheduler.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * Start the watch of the request of the current thread.
+	 *
+	 * @param deadline the deadline of the request
+	 *
+	 * @return the watch, to close when the request ends
+	 */
+	Scope start(Deadline deadline) {
+		RequestInterrupter interrupter = new RequestInterrupter(Thread.currentThread());
+		Scope scope = new Scope(interrupter);
+		try {
+			scope.future = scheduler.schedule(interrupter::interrupt, deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+		} catch (RejectedExecutionException e) {
+			// closed, the server time limit still ends the searches
+		}
+		return scope;
+	}
+
+	void close() {
+		scheduler.shutdownNow();
+	}
+}
@@ -0,0 +1,21 @@
+package com.quazzom.active_directory;
+
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+
+/**
+ * Creates new, already bound, {@link DirContext} instances. Used by the
+ * connection pool every time it needs a new connection to the Active Directory.
+ *
+ */
+public interface DirContextFactory {
+
+	/**
+	 * Open a new connection to the Active Directory and bind it.
+	 *
+	 * @return a new bound {@link DirContext}
+	 *
+	 * @throws NamingException if a naming exception is encountered
+	 */
+	DirContext create() throws NamingException;
+}
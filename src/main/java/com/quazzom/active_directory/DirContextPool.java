@@ -0,0 +1,394 @@
+package com.quazzom.active_directory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.naming.CommunicationException;
+import javax.naming.InterruptedNamingException;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.DirContext;
+
+/**
+ * A thread-safe pool of bound {@link DirContext}.
+ * <p>
+ * A {@link DirContext} can't be used by two threads at the same time, so each
+ * search borrows one context from the pool and gives it back when the search
+ * ends. The pool:
+ * <ul>
+ * <li>keeps between {@link ConnectionPoolConfig#getMinSize()} and
+ * {@link ConnectionPoolConfig#getMaxSize()} contexts open;</li>
+ * <li>makes the borrowers wait up to
+ * {@link ConnectionPoolConfig#getBorrowTimeoutMillis()} when all contexts are in
+ * use;</li>
+ * <li>closes the contexts idle for more than
+ * {@link ConnectionPoolConfig#getIdleTimeoutMillis()};</li>
+ * <li>checks idle contexts with a cheap rootDSE read before lending them and
+ * replaces (re-binds) the broken ones.</li>
+ * </ul>
+ *
+ */
+class DirContextPool implements AutoCloseable {
+
+	// a rootDSE attribute that every LDAP v3 server publishes
+	private static final String[] VALIDATION_ATTRIBUTES = new String[] { "supportedLDAPVersion" };
+
+	private final DirContextFactory factory;
+	private final ConnectionPoolConfig config;
+	private final String server; // null when there is only one server
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition available = lock.newCondition();
+
+	// most recently used contexts first
+	private final Deque<PooledDirContext> idle = new ArrayDeque<PooledDirContext>();
+
+	// idle + borrowed + being created
+	private int size;
+	private boolean closed;
+
+	private ScheduledExecutorService evictor;
+
+	/**
+	 * @param factory creates the new contexts
+	 * @param config  the pool settings
+	 */
+	DirContextPool(DirContextFactory factory, ConnectionPoolConfig config) {
+		this(factory, config, null);
+	}
+
+	/**
+	 * @param factory creates the new contexts
+	 * @param config  the pool settings
+	 * @param server  the server of the contexts, given to each
+	 *                {@link PooledDirContext}
+	 */
+	DirContextPool(DirContextFactory factory, ConnectionPoolConfig config, String server) {
+		if (config.getMinSize() > config.getMaxSize())
+			throw new IllegalArgumentException("minSize cannot be greater than maxSize.");
+
+		this.factory = factory;
+		this.config = config;
+		this.server = server;
+	}
+
+	/**
+	 * Open the first connections and start the idle connections eviction.
+	 * <p>
+	 * At least one connection is opened, so bad credentials or an unreachable
+	 * server are reported here and not on the first search.
+	 *
+	 * @throws NamingException if a naming exception is encountered
+	 */
+	void start() throws NamingException {
+		fill(Math.max(1, config.getMinSize()));
+		startEviction();
+	}
+
+	/**
+	 * Start the idle connections eviction without opening a connection, for a
+	 * pool whose server was unreachable in {@link #start()}.
+	 */
+	void startEviction() {
+		lock.lock();
+		try {
+			if (closed || evictor != null)
+				return;
+
+			if (config.getIdleTimeoutMillis() > 0 && config.getEvictionIntervalMillis() > 0) {
+				evictor = Executors
+						.newSingleThreadScheduledExecutor(new DaemonThreadFactory("active-directory-pool-evictor"));
+				evictor.scheduleWithFixedDelay(this::evict, config.getEvictionIntervalMillis(),
+						config.getEvictionIntervalMillis(), TimeUnit.MILLISECONDS);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Borrow a context, waiting up to
+	 * {@link ConnectionPoolConfig#getBorrowTimeoutMillis()} if all of them are in
+	 * use.
+	 *
+	 * @return a bound context
+	 *
+	 * @throws NamingException          if a naming exception is encountered while
+	 *                                  creating a new context
+	 * @throws ActiveDirectoryException if the pool is closed or if no context got
+	 *                                  free in time
+	 */
+	PooledDirContext borrow() throws NamingException, ActiveDirectoryException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getBorrowTimeoutMillis());
+
+		while (true) {
+			PooledDirContext pooled = null;
+			boolean create = false;
+
+			lock.lock();
+			try {
+				while (pooled == null && !create) {
+					if (closed)
+						throw new ActiveDirectoryException("the connection pool is closed.");
+
+					pooled = idle.pollFirst();
+
+					if (pooled == null && size < config.getMaxSize()) {
+						size++;
+						create = true;
+					}
+
+					if (pooled == null && !create) {
+						long remaining = deadline - System.nanoTime();
+						if (remaining <= 0)
+							throw new ActiveDirectoryException(String.format(
+									"timed out after %d ms waiting for a free connection.",
+									config.getBorrowTimeoutMillis()));
+						available.awaitNanos(remaining);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedNamingException("interrupted while waiting for a free connection.");
+			} finally {
+				lock.unlock();
+			}
+
+			if (create)
+				return create();
+
+			if (isValid(pooled))
+				return pooled;
+
+			// broken context, replace it by a new one
+			invalidate(pooled);
+		}
+	}
+
+	/**
+	 * Give back a healthy context to the pool.
+	 *
+	 * @param pooled the context borrowed by {@link #borrow()}
+	 */
+	void release(PooledDirContext pooled) {
+		pooled.setLastUsedAt(System.currentTimeMillis());
+
+		lock.lock();
+		try {
+			if (!closed) {
+				idle.addFirst(pooled);
+				available.signal();
+				return;
+			}
+			size--;
+		} finally {
+			lock.unlock();
+		}
+
+		closeQuietly(pooled);
+	}
+
+	/**
+	 * Close and discard a broken context, its place in the pool gets free to a new
+	 * one.
+	 *
+	 * @param pooled the context borrowed by {@link #borrow()}
+	 */
+	void invalidate(PooledDirContext pooled) {
+		lock.lock();
+		try {
+			size--;
+			available.signal();
+		} finally {
+			lock.unlock();
+		}
+
+		closeQuietly(pooled);
+	}
+
+	/**
+	 * @return the number of open contexts, idle or borrowed.
+	 */
+	int getSize() {
+		lock.lock();
+		try {
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of idle contexts.
+	 */
+	int getIdleCount() {
+		lock.lock();
+		try {
+			return idle.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Close the idle contexts. The borrowed contexts are closed when they are
+	 * given back.
+	 */
+	@Override
+	public void close() {
+		List<PooledDirContext> toClose;
+
+		lock.lock();
+		try {
+			if (closed)
+				return;
+
+			closed = true;
+			toClose = new ArrayList<PooledDirContext>(idle);
+			size -= idle.size();
+			idle.clear();
+			available.signalAll();
+		} finally {
+			lock.unlock();
+		}
+
+		if (evictor != null)
+			evictor.shutdownNow();
+
+		for (PooledDirContext pooled : toClose)
+			closeQuietly(pooled);
+	}
+
+	/**
+	 * Returns true if the exception means that the connection under the context is
+	 * broken, and so the context must be invalidated and not released.
+	 *
+	 * @param e the exception thrown while using a context
+	 *
+	 * @return true if the context is broken
+	 */
+	static boolean isBrokenConnection(NamingException e) {
+		return e instanceof CommunicationException || e instanceof ServiceUnavailableException
+				|| isReadTimeout(e);
+	}
+
+	/**
+	 * Returns true if the exception is the end of the read timeout
+	 * (<b>com.sun.jndi.ldap.read.timeout</b>), the server didn't answer in time and
+	 * the connection is not used again.
+	 *
+	 * @param e the exception thrown while using a context
+	 *
+	 * @return true if the server didn't answer in time
+	 */
+	static boolean isReadTimeout(NamingException e) {
+		String message = e.getMessage();
+		return message != null && message.startsWith("LDAP response read timed out");
+	}
+
+	/**
+	 * Close the contexts idle for too long and open new ones until the pool has
+	 * {@link ConnectionPoolConfig#getMinSize()} contexts.
+	 */
+	void evict() {
+		List<PooledDirContext> toClose = new ArrayList<PooledDirContext>();
+		long idleSince = System.currentTimeMillis() - config.getIdleTimeoutMillis();
+
+		lock.lock();
+		try {
+			// the least recently used contexts are at the end of the deque
+			Iterator<PooledDirContext> iterator = idle.descendingIterator();
+			while (iterator.hasNext() && size > config.getMinSize()) {
+				PooledDirContext pooled = iterator.next();
+				if (pooled.getLastUsedAt() > idleSince)
+					break;
+
+				iterator.remove();
+				size--;
+				toClose.add(pooled);
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		for (PooledDirContext pooled : toClose)
+			closeQuietly(pooled);
+
+		try {
+			fill(config.getMinSize());
+		} catch (NamingException e) {
+			// the server is unreachable now, the next run tries again
+		}
+	}
+
+	/**
+	 * Open new contexts until the pool has <b>minSize</b> contexts.
+	 */
+	private void fill(int minSize) throws NamingException {
+		while (true) {
+			lock.lock();
+			try {
+				if (closed || size >= minSize)
+					return;
+				size++;
+			} finally {
+				lock.unlock();
+			}
+
+			release(create());
+		}
+	}
+
+	/**
+	 * Create a new context for a place already reserved in {@link #size}.
+	 */
+	private PooledDirContext create() throws NamingException {
+		try {
+			return new PooledDirContext(factory.create(), System.currentTimeMillis(), server);
+		} catch (NamingException | RuntimeException e) {
+			lock.lock();
+			try {
+				size--;
+				available.signal();
+			} finally {
+				lock.unlock();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Check an idle context with a rootDSE read, the contexts used recently are
+	 * considered valid without a check.
+	 */
+	private boolean isValid(PooledDirContext pooled) {
+		if (!config.isValidateOnBorrow())
+			return true;
+
+		if (System.currentTimeMillis() - pooled.getLastUsedAt() < config.getValidationIntervalMillis())
+			return true;
+
+		try {
+			pooled.getContext().getAttributes("", VALIDATION_ATTRIBUTES);
+			return true;
+		} catch (NamingException e) {
+			return false;
+		}
+	}
+
+	private static void closeQuietly(PooledDirContext pooled) {
+		try {
+			pooled.getContext().close();
+		} catch (NamingException e) {
+			// the connection is discarded anyway
+		}
+	}
+}
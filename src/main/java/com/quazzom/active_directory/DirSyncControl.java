@@ -0,0 +1,95 @@
+package com.quazzom.active_directory;
+
+import javax.naming.NamingException;
+import javax.naming.ldap.Control;
+
+/**
+ * The Active Directory DirSync request control (<b>1.2.840.113556.1.4.841</b>),
+ * a search with it returns only the objects and the attributes changed since
+ * the search that returned the cookie.
+ * <p>
+ * The value is <b>SEQUENCE { flags INTEGER, maxBytes INTEGER, cookie OCTET
+ * STRING }</b>, the response control has the same OID and the value
+ * <b>SEQUENCE { moreResults INTEGER, unused INTEGER, cookie OCTET STRING }</b>.
+ *
+ */
+final class DirSyncControl implements Control {
+
+	private static final long serialVersionUID = 1L;
+
+	static final String OID = "1.2.840.113556.1.4.841";
+
+	// LDAP_DIRSYNC_OBJECT_SECURITY, an account without the replication right gets
+	// the objects it can read
+	static final int OBJECT_SECURITY = 0x00000001;
+
+	// LDAP_DIRSYNC_INCREMENTAL_VALUES, the changed values of a multi-valued
+	// attribute instead of all the values, as member;range=1-1 (added) and
+	// member;range=0-0 (removed)
+	static final int INCREMENTAL_VALUES = 0x80000000;
+
+	private final byte[] encodedValue;
+
+	/**
+	 * @param flags    the DirSync flags
+	 * @param maxBytes the maximum size of a response, zero for the server
+	 *                 default
+	 * @param cookie   the cookie of the last response, null for a full sync
+	 */
+	DirSyncControl(int flags, int maxBytes, byte[] cookie) {
+		this.encodedValue = BerCodec.sequence(BerCodec.integer(flags), BerCodec.integer(maxBytes),
+				BerCodec.octetString(cookie));
+	}
+
+	@Override
+	public String getID() {
+		return OID;
+	}
+
+	@Override
+	public boolean isCritical() {
+		return true;
+	}
+
+	@Override
+	public byte[] getEncodedValue() {
+		return encodedValue.clone();
+	}
+
+	/**
+	 * The DirSync response control of a search.
+	 */
+	static final class Response {
+		final boolean moreResults;
+		final byte[] cookie;
+
+		Response(boolean moreResults, byte[] cookie) {
+			this.moreResults = moreResults;
+			this.cookie = cookie;
+		}
+	}
+
+	/**
+	 * @param controls the response controls of a search, may be null
+	 *
+	 * @return the DirSync response or null if there is none
+	 *
+	 * @throws NamingException if the response control is not valid
+	 */
+	static Response response(Control[] controls) throws NamingException {
+		if (controls == null)
+			return null;
+
+		for (Control control : controls) {
+			if (!OID.equals(control.getID()))
+				continue;
+
+			BerCodec.Reader reader = new BerCodec.Reader(control.getEncodedValue());
+			reader.readSequence();
+			boolean moreResults = reader.readInteger() != 0;
+			reader.readInteger();
+			return new Response(moreResults, reader.readOctetString());
+		}
+		return null;
+	}
+}
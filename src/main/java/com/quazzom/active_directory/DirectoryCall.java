@@ -0,0 +1,21 @@
+package com.quazzom.active_directory;
+
+import javax.naming.NamingException;
+
+/**
+ * Requests to the Active Directory made under a {@link Deadline}, see
+ * {@link ActiveDirectory#withDeadline(Deadline, DirectoryCall)}.
+ *
+ * @param <T> the type of the result
+ */
+@FunctionalInterface
+public interface DirectoryCall<T> {
+
+	/**
+	 * @return the result of the requests
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if a request fails
+	 */
+	T call() throws NamingException, ActiveDirectoryException;
+}
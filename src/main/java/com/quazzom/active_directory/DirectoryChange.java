@@ -0,0 +1,137 @@
+package com.quazzom.active_directory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A change of a user or of a group, published by a {@link DirectorySync}.
+ * <p>
+ * The objects are identified by their <b>objectGUID</b>, the distinguished name
+ * changes when an object is moved, renamed or deleted.
+ *
+ */
+public final class DirectoryChange {
+
+	/**
+	 * The kind of change.
+	 */
+	public enum Type {
+		/**
+		 * A new object, or any object of a full resync.
+		 */
+		ADDED,
+		/**
+		 * An object with changed attributes or members.
+		 */
+		MODIFIED,
+		/**
+		 * A deleted object, only its identity and a few attributes are known.
+		 */
+		DELETED
+	}
+
+	private final Type type;
+	private final String objectGuid;
+	private final String distinguishedName;
+	private final boolean group;
+	private final Map<String, List<String>> attributes;
+	private final List<String> members;
+	private final List<String> addedMembers;
+	private final List<String> removedMembers;
+
+	DirectoryChange(Type type, String objectGuid, String distinguishedName, boolean group,
+			Map<String, List<String>> attributes, List<String> members, List<String> addedMembers,
+			List<String> removedMembers) {
+		this.type = type;
+		this.objectGuid = objectGuid;
+		this.distinguishedName = distinguishedName;
+		this.group = group;
+		this.attributes = Collections.unmodifiableMap(attributes);
+		this.members = members == null ? null : Collections.unmodifiableList(members);
+		this.addedMembers = Collections.unmodifiableList(addedMembers);
+		this.removedMembers = Collections.unmodifiableList(removedMembers);
+	}
+
+	/**
+	 * @return the kind of change.
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @return the <b>objectGUID</b> of the object, e.g.:
+	 *         <b>2f9e5c2a-6a1b-4c3d-9e8f-0a1b2c3d4e5f</b>, or null if the server
+	 *         did not return it.
+	 */
+	public String getObjectGuid() {
+		return objectGuid;
+	}
+
+	/**
+	 * @return the distinguished name of the object, for a deleted object its name
+	 *         in the Deleted Objects container.
+	 */
+	public String getDistinguishedName() {
+		return distinguishedName;
+	}
+
+	/**
+	 * @return true for a group, false for a user.
+	 */
+	public boolean isGroup() {
+		return group;
+	}
+
+	/**
+	 * @return the text attributes read (<b>sAMAccountName</b>, <b>cn</b>,
+	 *         <b>objectClass</b>, ...), a DirSync change only has the changed
+	 *         attributes.
+	 */
+	public Map<String, List<String>> getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * @param attributeId the attribute, e.g.: <b>sAMAccountName</b>
+	 *
+	 * @return the first value of the attribute or null
+	 */
+	public String getAttribute(String attributeId) {
+		for (Map.Entry<String, List<String>> attribute : attributes.entrySet())
+			if (attribute.getKey().equalsIgnoreCase(attributeId) && !attribute.getValue().isEmpty())
+				return attribute.getValue().get(0);
+		return null;
+	}
+
+	/**
+	 * @return all the member DNs of a group, or null when only the member changes
+	 *         are known (see {@link #getAddedMembers()}) or for a user.
+	 */
+	public List<String> getMembers() {
+		return members;
+	}
+
+	/**
+	 * @return the member DNs added to a group since the last cycle, only known
+	 *         with DirSync.
+	 */
+	public List<String> getAddedMembers() {
+		return addedMembers;
+	}
+
+	/**
+	 * @return the member DNs removed from a group since the last cycle, only
+	 *         known with DirSync.
+	 */
+	public List<String> getRemovedMembers() {
+		return removedMembers;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("DirectoryChange[type=%s, objectGuid=%s, dn=%s, group=%s]", type, objectGuid,
+				distinguishedName, group);
+	}
+}
@@ -0,0 +1,45 @@
+package com.quazzom.active_directory;
+
+/**
+ * Receives the changes published by a {@link DirectorySync}, on the thread
+ * running the sync cycle.
+ * <p>
+ * The changes are delivered at least once: a cycle that fails before saving
+ * its {@link SyncState} is read again by the next cycle, so applying a change
+ * must be idempotent.
+ *
+ */
+public interface DirectoryChangeListener {
+
+	/**
+	 * Called before the changes of a full resync: the first sync, a sync with
+	 * another domain controller or a sync whose state the server no longer
+	 * accepts. Every object is published as {@link DirectoryChange.Type#ADDED},
+	 * so the objects not published again were deleted.
+	 */
+	default void fullResyncStarted() {
+	}
+
+	/**
+	 * @param change a change of a user or of a group
+	 */
+	void changed(DirectoryChange change);
+
+	/**
+	 * Called after the changes of a cycle, before the state is saved.
+	 *
+	 * @param fullResync true if the cycle was a full resync
+	 * @param changes    the number of changes published by the cycle
+	 */
+	default void cycleCompleted(boolean fullResync, long changes) {
+	}
+
+	/**
+	 * Called when a cycle started by {@link DirectorySync#start(long)} fails, the
+	 * next cycle tries again from the last saved state.
+	 *
+	 * @param e the failure
+	 */
+	default void syncFailed(Exception e) {
+	}
+}
@@ -0,0 +1,350 @@
+package com.quazzom.active_directory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+import javax.naming.InterruptedNamingException;
+import javax.naming.NamingException;
+import javax.naming.OperationNotSupportedException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.SearchResult;
+
+/**
+ * Exports all the users and groups, with their memberships, to a JSONL or CSV
+ * file, in constant memory.
+ * <p>
+ * The objects are read by USN windows: each search reads the objects with a
+ * <b>uSNChanged</b> in the next {@link ExportConfig#getUsnWindow()} update
+ * sequence numbers, up to the <b>highestCommittedUSN</b> of the start, a page
+ * at a time. A thread reads and decodes the objects ahead of the file, at most
+ * {@link ExportConfig#getQueueCapacity()} of them: when the writes are slower
+ * the searches wait (the next page is only requested when the current one is
+ * read). The objects are written through a buffer (and gzip) to a
+ * {@link FileChannel}.
+ * <p>
+ * After each window the file is forced to the disk and a checkpoint is saved
+ * in the file <b>&lt;file&gt;.checkpoint</b>. An export that stops (a failure,
+ * a restart) is resumed by the next call from its last checkpoint: the file is
+ * truncated to the checkpoint and the next window is read. The export starts
+ * again with another domain controller (the USN are local to it) or with
+ * other settings. The checkpoint is deleted at the end.
+ * <p>
+ * The objects changed during the export are read again by catch-up searches
+ * above the first highestCommittedUSN, so an object can be twice in the file:
+ * its last line is the newest one. As any LDAP export it is not a point in time
+ * copy.
+ * <p>
+ * Example:
+ * <blockquote>
+ *
+ * <pre>
+ * ExportConfig config = new ExportConfig();
+ * config.setFormat(ExportFormat.CSV);
+ * config.setGzip(true);
+ *
+ * DirectoryExport export = new DirectoryExport(ad, config);
+ * export.setListener(progress -&gt; System.out.println(progress));
+ * export.export(Paths.get("directory.csv.gz"));
+ * </pre>
+ *
+ * </blockquote>
+ *
+ */
+public class DirectoryExport {
+
+	// the catch-up searches of the objects changed during the export, the last
+	// changes are left for the next export
+	private static final int CATCH_UP_ROUNDS = 3;
+
+	private final ActiveDirectory activeDirectory;
+	private final ExportConfig config;
+	private final String[] searchedAttributes;
+	private final String layout;
+	private volatile ExportListener listener;
+
+	/**
+	 * @param activeDirectory the Active Directory, after its handShake
+	 * @param config          the export settings
+	 */
+	public DirectoryExport(ActiveDirectory activeDirectory, ExportConfig config) {
+		this.activeDirectory = activeDirectory;
+		this.config = config;
+
+		String[] searched = new String[config.getAttributes().size() + 3];
+		searched[0] = "objectGUID";
+		searched[1] = "objectClass";
+		searched[2] = "member";
+		for (int index = 0; index < config.getAttributes().size(); index++)
+			searched[index + 3] = config.getAttributes().get(index);
+		this.searchedAttributes = searched;
+		this.layout = config.getFormat() + (config.isGzip() ? ";gzip;" : ";") + String.join(",", config.getAttributes());
+	}
+
+	/**
+	 * @param listener receives the progress after each checkpoint, or null
+	 */
+	public void setListener(ExportListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Export the users and groups to a file, or resume the export of the file
+	 * from its checkpoint.
+	 *
+	 * @param file the file, replaced unless the export is resumed
+	 *
+	 * @return the progress at the end
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method of the Active
+	 *                                  Directory is not called before this
+	 *                                  method
+	 * @throws IOException              if the file or the checkpoint cannot be
+	 *                                  written
+	 */
+	public ExportProgress export(Path file) throws NamingException, ActiveDirectoryException, IOException {
+		Path checkpointFile = file.resolveSibling(file.getFileName() + ".checkpoint");
+		AtomicReference<String> domainController = new AtomicReference<String>();
+
+		long highest;
+		String server;
+		activeDirectory.pinServer(domainController);
+		try {
+			Attributes rootDse = activeDirectory.getRootDseAttributes("highestCommittedUSN", "dsServiceName");
+			highest = highestCommittedUsn(rootDse);
+			server = DirectorySync.serverIdentity(activeDirectory, DirectorySync.value(rootDse, "dsServiceName"));
+		} finally {
+			activeDirectory.unpinServer();
+		}
+
+		ExportCheckpoint checkpoint = ExportCheckpoint.load(checkpointFile);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			if (checkpoint == null || !checkpoint.getLayout().equals(layout) || !checkpoint.getServer().equals(server)
+					|| channel.size() < checkpoint.getPosition())
+				checkpoint = new ExportCheckpoint(layout, server, highest, 0, 0, 0);
+
+			// the objects after the checkpoint are read again
+			channel.truncate(checkpoint.getPosition());
+			channel.position(checkpoint.getPosition());
+			return write(channel, checkpointFile, checkpoint, domainController);
+		}
+	}
+
+	private ExportProgress write(FileChannel channel, Path checkpointFile, ExportCheckpoint start,
+			AtomicReference<String> domainController) throws NamingException, ActiveDirectoryException, IOException {
+		BlockingQueue<Item> queue = new ArrayBlockingQueue<Item>(config.getQueueCapacity());
+		Thread fetcher = new DaemonThreadFactory("active-directory-export")
+				.newThread(() -> fetch(start, domainController, queue));
+		fetcher.start();
+
+		ExportEncoder encoder = new ExportEncoder(config.getFormat(), config.getAttributes());
+		long objects = start.getObjectCount();
+		Segment segment = null;
+
+		try {
+			if (channel.position() == 0) {
+				segment = new Segment(channel);
+				encoder.header(segment.writer);
+			}
+
+			while (true) {
+				Item item = take(queue);
+				if (item.object != null) {
+					if (segment == null)
+						segment = new Segment(channel);
+					encoder.encode(item.object, segment.writer);
+					objects++;
+					continue;
+				}
+				if (item.failure instanceof NamingException)
+					throw (NamingException) item.failure;
+				if (item.failure instanceof ActiveDirectoryException)
+					throw (ActiveDirectoryException) item.failure;
+				if (item.failure != null)
+					throw (RuntimeException) item.failure;
+
+				// the end of a window: the objects read are on the disk before the checkpoint
+				if (segment != null) {
+					segment.finish();
+					segment = null;
+				}
+				channel.force(false);
+
+				ExportProgress progress = new ExportProgress(objects, channel.position(), item.nextUsn,
+						item.highestUsn, item.end);
+				if (item.end)
+					Files.deleteIfExists(checkpointFile);
+				else
+					new ExportCheckpoint(layout, start.getServer(), item.highestUsn, item.nextUsn, channel.position(),
+							objects).save(checkpointFile);
+
+				ExportListener current = listener;
+				if (current != null)
+					current.progress(progress);
+				if (item.end)
+					return progress;
+			}
+		} finally {
+			// stops a fetcher waiting for room in the queue, its cursor is closed
+			fetcher.interrupt();
+		}
+	}
+
+	/**
+	 * Read the objects window by window into the queue, in the fetcher thread.
+	 */
+	private void fetch(ExportCheckpoint start, AtomicReference<String> domainController, BlockingQueue<Item> queue) {
+		activeDirectory.pinServer(domainController);
+		try {
+			long highest = start.getHighestUsn();
+			long next = start.getNextUsn();
+
+			for (int round = 0;; round++) {
+				while (next <= highest) {
+					long last = Math.min(highest, next + config.getUsnWindow() - 1);
+					fetch(next, last, queue);
+					next = last + 1;
+					if (next <= highest)
+						queue.put(Item.window(next, highest, false));
+				}
+
+				// the objects changed since the start have a greater USN
+				long current = round < CATCH_UP_ROUNDS
+						? highestCommittedUsn(activeDirectory.getRootDseAttributes("highestCommittedUSN"))
+						: highest;
+				if (current <= highest) {
+					queue.put(Item.window(next, highest, true));
+					return;
+				}
+				queue.put(Item.window(next, current, false));
+				highest = current;
+			}
+		} catch (NamingException | ActiveDirectoryException | RuntimeException e) {
+			try {
+				queue.put(Item.failed(e));
+			} catch (InterruptedException interrupted) {
+				// the writer stopped
+			}
+		} catch (InterruptedException e) {
+			// the writer stopped
+		} finally {
+			activeDirectory.unpinServer();
+		}
+	}
+
+	/**
+	 * Read the objects of a USN window, the ranges of the members of a large group
+	 * are joined in one object.
+	 */
+	private void fetch(long first, long last, BlockingQueue<Item> queue)
+			throws NamingException, ActiveDirectoryException, InterruptedException {
+		String filter = "(&" + DirectorySync.OBJECTS + "(uSNChanged>=" + first + ")(uSNChanged<=" + last + "))";
+		SearchResultEnumeration cursor = new RangedAttributeEnumeration(
+				activeDirectory.openCursor(Operation.EXPORT, filter, config.getPageSize(), searchedAttributes),
+				"member");
+
+		try {
+			DirectorySync.ChangeBuilder pending = null;
+			while (cursor.hasMore()) {
+				SearchResult searchResult = cursor.next();
+				if (pending != null && pending.distinguishedName.equals(searchResult.getNameInNamespace())) {
+					pending.add(searchResult);
+					continue;
+				}
+
+				if (pending != null)
+					queue.put(Item.object(pending.build(DirectoryChange.Type.ADDED)));
+				pending = new DirectorySync.ChangeBuilder(searchResult, false);
+			}
+
+			if (pending != null)
+				queue.put(Item.object(pending.build(DirectoryChange.Type.ADDED)));
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private static long highestCommittedUsn(Attributes rootDse) throws NamingException {
+		String highestCommittedUsn = DirectorySync.value(rootDse, "highestCommittedUSN");
+		if (highestCommittedUsn == null)
+			throw new OperationNotSupportedException("the server has no highestCommittedUSN, it is not an Active Directory.");
+		return Long.parseLong(highestCommittedUsn);
+	}
+
+	private static Item take(BlockingQueue<Item> queue) throws NamingException {
+		try {
+			return queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedNamingException("interrupted while waiting for the directory export.");
+		}
+	}
+
+	/**
+	 * The writes between two checkpoints. With gzip each one is a gzip member,
+	 * finished before the checkpoint, so the file can be truncated to a
+	 * checkpoint and continued.
+	 */
+	private final class Segment {
+		final Writer writer;
+		private final GZIPOutputStream gzip;
+
+		Segment(FileChannel channel) throws IOException {
+			// not closed, the channel is used by the next segment
+			OutputStream out = Channels.newOutputStream(channel);
+			gzip = config.isGzip() ? new GZIPOutputStream(out, config.getBufferSize()) : null;
+			writer = new BufferedWriter(new OutputStreamWriter(gzip != null ? gzip : out, StandardCharsets.UTF_8),
+					config.getBufferSize());
+		}
+
+		void finish() throws IOException {
+			writer.flush();
+			if (gzip != null)
+				gzip.finish();
+		}
+	}
+
+	/**
+	 * An object, the end of a window or the failure of the fetcher.
+	 */
+	private static final class Item {
+		final DirectoryChange object;
+		final long nextUsn;
+		final long highestUsn;
+		final boolean end;
+		final Exception failure;
+
+		private Item(DirectoryChange object, long nextUsn, long highestUsn, boolean end, Exception failure) {
+			this.object = object;
+			this.nextUsn = nextUsn;
+			this.highestUsn = highestUsn;
+			this.end = end;
+			this.failure = failure;
+		}
+
+		static Item object(DirectoryChange object) {
+			return new Item(object, 0, 0, false, null);
+		}
+
+		static Item window(long nextUsn, long highestUsn, boolean end) {
+			return new Item(null, nextUsn, highestUsn, end, null);
+		}
+
+		static Item failed(Exception failure) {
+			return new Item(null, 0, 0, false, failure);
+		}
+	}
+}
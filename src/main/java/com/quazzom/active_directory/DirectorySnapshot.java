@@ -0,0 +1,420 @@
+package com.quazzom.active_directory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An immutable copy of the groups of each user and of the members of each
+ * group, in a compact binary form that is read in place: from a file mapped in
+ * memory at the start, or from a heap buffer after a load.
+ * <p>
+ * The layout, all the integers big-endian:
+ *
+ * <pre>
+ * header      magic "ADSN", version, createdMillis (long), stringCount,
+ *             userCount, userEdgeCount, groupCount, groupEdgeCount, stringBytes
+ * strings     int[stringCount + 1] offsets of the UTF-8 bytes
+ * users       int[userCount] key strings, sorted by their UTF-8 bytes
+ *             int[userCount + 1] offsets of the edges of each user
+ *             int[userEdgeCount] group common name strings
+ * groups      the same as the users, with the member common names
+ * string data the UTF-8 bytes of the strings
+ * </pre>
+ *
+ * The keys are the lower case user (<b>sAMAccountName</b>) and group
+ * (<b>cn</b>) names, and each string is stored once.
+ *
+ */
+final class DirectorySnapshot {
+
+	private static final int MAGIC = 0x4144534e; // ADSN
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 40;
+
+	private final ByteBuffer buffer;
+	private final long createdMillis;
+	private final int stringCount;
+	private final int stringOffsets;
+	private final int stringData;
+	private final Section users;
+	private final Section groups;
+
+	/**
+	 * The keys and the edges of the users or of the groups.
+	 */
+	private static final class Section {
+		final int count;
+		final int keys;
+		final int edgeOffsets;
+		final int edges;
+
+		Section(int count, int start) {
+			this.count = count;
+			this.keys = start;
+			this.edgeOffsets = keys + 4 * count;
+			this.edges = edgeOffsets + 4 * (count + 1);
+		}
+
+		int end(int edgeCount) {
+			return edges + 4 * edgeCount;
+		}
+	}
+
+	private DirectorySnapshot(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+
+		if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC)
+			throw new IOException("not a directory snapshot.");
+		if (buffer.getInt(4) != VERSION)
+			throw new IOException("unsupported directory snapshot version: " + buffer.getInt(4) + ".");
+
+		createdMillis = buffer.getLong(8);
+		stringCount = buffer.getInt(16);
+		int userCount = buffer.getInt(20);
+		int userEdgeCount = buffer.getInt(24);
+		int groupCount = buffer.getInt(28);
+		int groupEdgeCount = buffer.getInt(32);
+		int stringBytes = buffer.getInt(36);
+
+		if (stringCount < 0 || userCount < 0 || userEdgeCount < 0 || groupCount < 0 || groupEdgeCount < 0
+				|| stringBytes < 0)
+			throw new IOException("invalid directory snapshot header.");
+
+		// the sizes are checked in longs, a corrupt header can't overflow them
+		long expected = HEADER_BYTES + 4L * (stringCount + 1) + 4L * (2L * userCount + 1 + userEdgeCount)
+				+ 4L * (2L * groupCount + 1 + groupEdgeCount) + stringBytes;
+		if (expected != buffer.capacity())
+			throw new IOException("truncated directory snapshot.");
+
+		stringOffsets = HEADER_BYTES;
+		users = new Section(userCount, stringOffsets + 4 * (stringCount + 1));
+		groups = new Section(groupCount, users.end(userEdgeCount));
+		stringData = groups.end(groupEdgeCount);
+
+		validateOffsets(stringOffsets, stringCount, stringBytes);
+		validate(users, userEdgeCount);
+		validate(groups, groupEdgeCount);
+	}
+
+	/**
+	 * Map a snapshot file in memory, the file is read on demand by the lookups.
+	 *
+	 * @param file the snapshot file
+	 *
+	 * @return the snapshot
+	 *
+	 * @throws IOException if the file cannot be read or is not a valid snapshot
+	 */
+	static DirectorySnapshot open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("directory snapshot too large: " + file + ".");
+			// the mapping stays valid after the channel is closed
+			return new DirectorySnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Write the snapshot to a temporary file and move it over <b>file</b>, so a
+	 * crash while writing keeps the old file.
+	 *
+	 * @param file the snapshot file
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	void write(Path file) throws IOException {
+		Path absolute = file.toAbsolutePath();
+		Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				ByteBuffer content = buffer.duplicate();
+				content.clear();
+				while (content.hasRemaining())
+					channel.write(content);
+				channel.force(false);
+			}
+
+			try {
+				Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * @return when the snapshot was built, in milliseconds since the epoch
+	 */
+	long getCreatedMillis() {
+		return createdMillis;
+	}
+
+	/**
+	 * @return the number of users
+	 */
+	int userCount() {
+		return users.count;
+	}
+
+	/**
+	 * @return the number of groups
+	 */
+	int groupCount() {
+		return groups.count;
+	}
+
+	/**
+	 * @return the size of the snapshot in bytes
+	 */
+	int size() {
+		return buffer.capacity();
+	}
+
+	/**
+	 * @param username the user name, case insensitive
+	 *
+	 * @return the common names of the groups of the user, or null if the user is
+	 *         not in the snapshot
+	 */
+	List<String> userGroups(String username) {
+		return edges(users, username);
+	}
+
+	/**
+	 * @param groupName the group name, case insensitive
+	 *
+	 * @return the common names of the members of the group, or null if the group
+	 *         is not in the snapshot
+	 */
+	List<String> groupMembers(String groupName) {
+		return edges(groups, groupName);
+	}
+
+	private List<String> edges(Section section, String name) {
+		byte[] key = name.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+
+		int low = 0;
+		int high = section.count - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int compared = compare(buffer.getInt(section.keys + 4 * middle), key);
+			if (compared < 0) {
+				low = middle + 1;
+			} else if (compared > 0) {
+				high = middle - 1;
+			} else {
+				int from = buffer.getInt(section.edgeOffsets + 4 * middle);
+				int to = buffer.getInt(section.edgeOffsets + 4 * (middle + 1));
+				List<String> values = new ArrayList<String>(to - from);
+				for (int edge = from; edge < to; edge++)
+					values.add(string(buffer.getInt(section.edges + 4 * edge)));
+				return values;
+			}
+		}
+		return null;
+	}
+
+	// compare the UTF-8 bytes of a string with a key, as unsigned bytes
+	private int compare(int string, byte[] key) {
+		int from = stringData + buffer.getInt(stringOffsets + 4 * string);
+		int length = stringData + buffer.getInt(stringOffsets + 4 * (string + 1)) - from;
+
+		for (int index = 0; index < Math.min(length, key.length); index++) {
+			int compared = (buffer.get(from + index) & 0xff) - (key[index] & 0xff);
+			if (compared != 0)
+				return compared;
+		}
+		return length - key.length;
+	}
+
+	private String string(int string) {
+		int from = buffer.getInt(stringOffsets + 4 * string);
+		int to = buffer.getInt(stringOffsets + 4 * (string + 1));
+
+		byte[] bytes = new byte[to - from];
+		ByteBuffer data = buffer.duplicate();
+		data.position(stringData + from);
+		data.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// a corrupt snapshot is refused when it is opened, never by a lookup
+	private void validate(Section section, int edgeCount) throws IOException {
+		for (int index = 0; index < section.count; index++) {
+			int key = buffer.getInt(section.keys + 4 * index);
+			if (key < 0 || key >= stringCount)
+				throw new IOException("invalid directory snapshot key.");
+		}
+
+		validateOffsets(section.edgeOffsets, section.count, edgeCount);
+
+		for (int index = 0; index < edgeCount; index++) {
+			int value = buffer.getInt(section.edges + 4 * index);
+			if (value < 0 || value >= stringCount)
+				throw new IOException("invalid directory snapshot edge.");
+		}
+	}
+
+	private void validateOffsets(int position, int count, int limit) throws IOException {
+		int previous = 0;
+		for (int index = 0; index <= count; index++) {
+			int offset = buffer.getInt(position + 4 * index);
+			if (offset < previous || offset > limit || (index == 0 && offset != 0) || (index == count && offset != limit))
+				throw new IOException("invalid directory snapshot offsets.");
+			previous = offset;
+		}
+	}
+
+	/**
+	 * Collects the users and the groups of a snapshot.
+	 */
+	static final class Builder {
+		private final Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+		private final List<byte[]> strings = new ArrayList<byte[]>();
+		private final Map<Integer, List<Integer>> users = new HashMap<Integer, List<Integer>>();
+		private final Map<Integer, List<Integer>> groups = new HashMap<Integer, List<Integer>>();
+		private final long createdMillis;
+
+		Builder() {
+			this(System.currentTimeMillis());
+		}
+
+		Builder(long createdMillis) {
+			this.createdMillis = createdMillis;
+		}
+
+		/**
+		 * Add a user, or more groups to a user already added.
+		 *
+		 * @param username the user name
+		 * @param groups   the common names of its groups
+		 */
+		void addUser(String username, List<String> groups) {
+			add(users, username, groups);
+		}
+
+		/**
+		 * Add a group, or more members to a group already added.
+		 *
+		 * @param groupName the group name
+		 * @param members   the common names of its members
+		 */
+		void addGroup(String groupName, List<String> members) {
+			add(this.groups, groupName, members);
+		}
+
+		private void add(Map<Integer, List<Integer>> section, String name, List<String> values) {
+			List<Integer> edges = section.computeIfAbsent(intern(name.toLowerCase(Locale.ROOT)),
+					key -> new ArrayList<Integer>());
+			for (String value : values)
+				edges.add(intern(value));
+		}
+
+		private int intern(String string) {
+			Integer index = stringIndexes.get(string);
+			if (index == null) {
+				index = strings.size();
+				stringIndexes.put(string, index);
+				strings.add(string.getBytes(StandardCharsets.UTF_8));
+			}
+			return index;
+		}
+
+		/**
+		 * @return the snapshot, in a heap buffer
+		 */
+		DirectorySnapshot build() {
+			int[] userKeys = sortedKeys(users);
+			int[] groupKeys = sortedKeys(groups);
+			int userEdgeCount = edgeCount(users);
+			int groupEdgeCount = edgeCount(groups);
+
+			int stringBytes = 0;
+			for (byte[] string : strings)
+				stringBytes += string.length;
+
+			long size = HEADER_BYTES + 4L * (strings.size() + 1) + 4L * (2L * userKeys.length + 1 + userEdgeCount)
+					+ 4L * (2L * groupKeys.length + 1 + groupEdgeCount) + stringBytes;
+			if (size > Integer.MAX_VALUE)
+				throw new IllegalStateException("the directory is too large for a snapshot.");
+
+			ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			buffer.putInt(MAGIC).putInt(VERSION).putLong(createdMillis).putInt(strings.size());
+			buffer.putInt(userKeys.length).putInt(userEdgeCount).putInt(groupKeys.length).putInt(groupEdgeCount);
+			buffer.putInt(stringBytes);
+
+			int offset = 0;
+			buffer.putInt(offset);
+			for (byte[] string : strings)
+				buffer.putInt(offset += string.length);
+
+			putSection(buffer, users, userKeys);
+			putSection(buffer, groups, groupKeys);
+
+			for (byte[] string : strings)
+				buffer.put(string);
+
+			try {
+				return new DirectorySnapshot(buffer);
+			} catch (IOException e) {
+				throw new IllegalStateException("invalid directory snapshot built.", e);
+			}
+		}
+
+		private int[] sortedKeys(Map<Integer, List<Integer>> section) {
+			Integer[] keys = section.keySet().toArray(new Integer[0]);
+			// the order of the binary search of the lookups
+			Arrays.sort(keys, (first, second) -> compareBytes(strings.get(first), strings.get(second)));
+
+			int[] sorted = new int[keys.length];
+			for (int index = 0; index < keys.length; index++)
+				sorted[index] = keys[index];
+			return sorted;
+		}
+
+		private static int edgeCount(Map<Integer, List<Integer>> section) {
+			int count = 0;
+			for (List<Integer> edges : section.values())
+				count += edges.size();
+			return count;
+		}
+
+		private static void putSection(ByteBuffer buffer, Map<Integer, List<Integer>> section, int[] keys) {
+			for (int key : keys)
+				buffer.putInt(key);
+
+			int offset = 0;
+			buffer.putInt(offset);
+			for (int key : keys)
+				buffer.putInt(offset += section.get(key).size());
+
+			for (int key : keys)
+				for (int edge : section.get(key))
+					buffer.putInt(edge);
+		}
+
+		private static int compareBytes(byte[] first, byte[] second) {
+			for (int index = 0; index < Math.min(first.length, second.length); index++) {
+				int compared = (first[index] & 0xff) - (second[index] & 0xff);
+				if (compared != 0)
+					return compared;
+			}
+			return first.length - second.length;
+		}
+	}
+}
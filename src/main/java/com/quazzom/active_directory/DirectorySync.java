@@ -0,0 +1,578 @@
+package com.quazzom.active_directory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.NoPermissionException;
+import javax.naming.OperationNotSupportedException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.BasicControl;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.LdapName;
+
+/**
+ * Keeps a local copy of the users and groups up to date reading only what
+ * changed since the last cycle, instead of searching all the objects again.
+ * <p>
+ * By default the changes are the objects with a <b>uSNChanged</b> above the
+ * <b>highestCommittedUSN</b> of the last cycle, plus the deleted objects
+ * (read with the Show Deleted control). A changed group comes with all its
+ * members. With {@link #setUseDirSync(boolean)} the changes are read with the
+ * DirSync control, which also gives the added and removed members of a group;
+ * if the bind account or the server can't use DirSync the USN changes are used
+ * from then on.
+ * <p>
+ * The state of the sync (the USN or the DirSync cookie, and the identity of
+ * the domain controller) is saved in a {@link SyncStateStore} after each
+ * cycle. Without a state, with another domain controller, after a restore of
+ * the domain controller or with a cookie the server no longer accepts, the
+ * cycle is a full resync: every object is published as
+ * {@link DirectoryChange.Type#ADDED}. With many domain controllers the cycles
+ * stay on the domain controller of the last cycle while it is healthy.
+ * <p>
+ * The full resyncs and the USN searches are paged (see
+ * {@link #setPageSize(int)}) whatever the page size of the Active Directory, so
+ * they read all the objects even above the server size limit.
+ * <p>
+ * The <b>memberOf</b> of a user is computed by the server from the members of
+ * the groups, so the membership changes come from the groups.
+ * <p>
+ * Example:
+ * <blockquote>
+ *
+ * <pre>
+ * DirectorySync sync = new DirectorySync(ad, new FileSyncStateStore(Paths.get("ad-sync.properties")), listener);
+ * sync.start(60000);
+ * </pre>
+ *
+ * </blockquote>
+ *
+ */
+public class DirectorySync implements AutoCloseable {
+
+	static final String OBJECTS = "(|(objectClass=user)(objectClass=group))(!(objectClass=computer))";
+
+	private static final String[] ATTRIBUTES = { "objectGUID", "objectClass", "sAMAccountName", "cn", "uSNCreated",
+			"member" };
+	private static final String[] DELETED_ATTRIBUTES = { "objectGUID", "objectClass", "sAMAccountName", "isDeleted",
+			"lastKnownParent" };
+	private static final String[] DIRSYNC_ATTRIBUTES = { "objectGUID", "objectClass", "sAMAccountName", "cn",
+			"isDeleted", "member" };
+
+	// LDAP_SERVER_SHOW_DELETED_OID
+	private static final String SHOW_DELETED = "1.2.840.113556.1.4.417";
+
+	private final ActiveDirectory activeDirectory;
+	private final SyncStateStore store;
+	private final DirectoryChangeListener listener;
+	private volatile boolean useDirSync;
+	private volatile int pageSize = 1000;
+
+	// the state of the last cycle, loaded from the store by the first one
+	private SyncState state;
+	private boolean stateLoaded;
+
+	// with many domain controllers the cycles stay on the one of the last cycle
+	private final AtomicReference<String> domainController = new AtomicReference<String>();
+
+	private final Object schedulerLock = new Object();
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * @param activeDirectory the Active Directory, after its handShake
+	 * @param store           keeps the state between the cycles
+	 * @param listener        receives the changes
+	 */
+	public DirectorySync(ActiveDirectory activeDirectory, SyncStateStore store, DirectoryChangeListener listener) {
+		this.activeDirectory = activeDirectory;
+		this.store = store;
+		this.listener = listener;
+	}
+
+	/**
+	 * Read the changes with the DirSync control (<b>1.2.840.113556.1.4.841</b>)
+	 * instead of the <b>uSNChanged</b>. The DirSync changes have only the changed
+	 * attributes and the added and removed members. The bind account needs the
+	 * right to read the objects (the DirSync object security flag is used).
+	 *
+	 * @param useDirSync true to use DirSync, false (the default) for the USN
+	 */
+	public void setUseDirSync(boolean useDirSync) {
+		this.useDirSync = useDirSync;
+	}
+
+	/**
+	 * @return true if the next cycle uses DirSync, false after it was refused by
+	 *         the server.
+	 */
+	public boolean isUsingDirSync() {
+		return useDirSync;
+	}
+
+	/**
+	 * The number of objects per page of the USN searches, at most the
+	 * MaxPageSize of the server (1000 by default).
+	 *
+	 * @param pageSize the number of objects per page, 1000 by default
+	 */
+	public void setPageSize(int pageSize) {
+		if (pageSize <= 0)
+			throw new IllegalArgumentException("pageSize must be greater than zero.");
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * @return the number of objects per page of the USN searches
+	 */
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * Run a sync cycle: publish the changes since the last cycle to the listener
+	 * and save the new state.
+	 *
+	 * @return the number of changes published
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if the handShake method of the Active
+	 *                                  Directory is not called before this
+	 *                                  method
+	 * @throws IOException              if the state cannot be read or saved
+	 */
+	public synchronized long sync() throws NamingException, ActiveDirectoryException, IOException {
+		if (!stateLoaded) {
+			state = store.load();
+			stateLoaded = true;
+		}
+
+		activeDirectory.pinServer(domainController);
+		try {
+			if (useDirSync) {
+				try {
+					return dirSync();
+				} catch (NamingException e) {
+					if (!isDirSyncRefused(e))
+						throw e;
+					// the bind account or the server can't use DirSync, don't try it again
+					useDirSync = false;
+				}
+			}
+
+			return usnSync();
+		} finally {
+			activeDirectory.unpinServer();
+		}
+	}
+
+	/**
+	 * Run a sync cycle now and then every <b>intervalMillis</b> after the end of
+	 * the last one, in a daemon thread. The failures are given to
+	 * {@link DirectoryChangeListener#syncFailed(Exception)}.
+	 *
+	 * @param intervalMillis the time between the cycles
+	 */
+	public void start(long intervalMillis) {
+		if (intervalMillis <= 0)
+			throw new IllegalArgumentException("intervalMillis must be greater than zero.");
+
+		synchronized (schedulerLock) {
+			if (scheduler != null)
+				throw new IllegalStateException("the sync is already started.");
+
+			scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("active-directory-sync"));
+			scheduler.scheduleWithFixedDelay(this::scheduledSync, 0, intervalMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Stop the cycles started by {@link #start(long)}, a running cycle is
+	 * interrupted and its state is not saved.
+	 */
+	@Override
+	public void close() {
+		synchronized (schedulerLock) {
+			if (scheduler != null)
+				scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	private void scheduledSync() {
+		try {
+			sync();
+		} catch (Exception e) {
+			try {
+				listener.syncFailed(e);
+			} catch (RuntimeException listenerFailure) {
+				// a failing listener doesn't stop the next cycles
+			}
+		}
+	}
+
+	private long usnSync() throws NamingException, ActiveDirectoryException, IOException {
+		Attributes rootDse = activeDirectory.getRootDseAttributes("highestCommittedUSN", "dsServiceName");
+		String highestCommittedUsn = value(rootDse, "highestCommittedUSN");
+		if (highestCommittedUsn == null)
+			throw new OperationNotSupportedException("the server has no highestCommittedUSN, it is not an Active Directory.");
+
+		// read before the search, a change made during the search is read again by
+		// the next cycle
+		long highest = Long.parseLong(highestCommittedUsn);
+		String server = serverIdentity(activeDirectory, value(rootDse, "dsServiceName"));
+
+		boolean full = state == null || state.getMode() != SyncState.Mode.USN || !server.equals(state.getServer())
+				|| highest < state.getHighestUsn();
+
+		long changes = 0;
+		if (full) {
+			listener.fullResyncStarted();
+			changes = publish(Operation.SYNC_FULL, "(&" + OBJECTS + ")", -1);
+		} else if (highest > state.getHighestUsn()) {
+			String range = "(uSNChanged>=" + (state.getHighestUsn() + 1) + ")(uSNChanged<=" + highest + ")";
+			changes = publish(Operation.SYNC_CHANGES, "(&" + OBJECTS + range + ")", state.getHighestUsn());
+			changes += publishDeleted("(&(isDeleted=TRUE)" + OBJECTS + range + ")");
+		}
+
+		listener.cycleCompleted(full, changes);
+		save(new SyncState(SyncState.Mode.USN, server, highest, null));
+		return changes;
+	}
+
+	/**
+	 * Publish the objects found by a search, the ranges of the members of a group
+	 * are joined in one change.
+	 *
+	 * @param lastUsn the USN of the last cycle, the objects created after it are
+	 *                added, -1 for a full resync
+	 */
+	private long publish(Operation operation, String filter, long lastUsn)
+			throws NamingException, ActiveDirectoryException {
+		long changes = 0;
+		SearchResultEnumeration cursor = new RangedAttributeEnumeration(
+				activeDirectory.openCursor(operation, filter, pageSize, ATTRIBUTES), "member");
+
+		try {
+			ChangeBuilder pending = null;
+			while (cursor.hasMore()) {
+				SearchResult searchResult = cursor.next();
+				if (pending != null && pending.distinguishedName.equals(searchResult.getNameInNamespace())) {
+					pending.add(searchResult);
+					continue;
+				}
+
+				if (pending != null) {
+					listener.changed(pending.build(type(pending, lastUsn)));
+					changes++;
+				}
+				pending = new ChangeBuilder(searchResult, false);
+			}
+
+			if (pending != null) {
+				listener.changed(pending.build(type(pending, lastUsn)));
+				changes++;
+			}
+		} finally {
+			cursor.close();
+		}
+		return changes;
+	}
+
+	private static DirectoryChange.Type type(ChangeBuilder change, long lastUsn) {
+		if (lastUsn < 0)
+			return DirectoryChange.Type.ADDED;
+
+		String created = change.value("uSNCreated");
+		return created != null && Long.parseLong(created) > lastUsn ? DirectoryChange.Type.ADDED
+				: DirectoryChange.Type.MODIFIED;
+	}
+
+	/**
+	 * Publish the objects deleted in a range of USN. The deleted objects are only
+	 * returned with the Show Deleted control, and only to an account allowed to
+	 * read them, otherwise no deletion is found.
+	 */
+	private long publishDeleted(String filter) throws NamingException, ActiveDirectoryException {
+		long changes = 0;
+		try (SearchCursor cursor = activeDirectory.openCursor(Operation.SYNC_DELETED, filter, pageSize,
+				new Control[] { new BasicControl(SHOW_DELETED, false, null) }, DELETED_ATTRIBUTES)) {
+			while (cursor.hasMore()) {
+				listener.changed(new ChangeBuilder(cursor.next(), false).build(DirectoryChange.Type.DELETED));
+				changes++;
+			}
+		}
+		return changes;
+	}
+
+	private long dirSync() throws NamingException, ActiveDirectoryException, IOException {
+		String server = serverIdentity(activeDirectory,
+				value(activeDirectory.getRootDseAttributes("dsServiceName"), "dsServiceName"));
+
+		boolean full = state == null || state.getMode() != SyncState.Mode.DIRSYNC || !server.equals(state.getServer())
+				|| state.getCookie() == null;
+
+		if (!full) {
+			try {
+				return dirSync(server, state.getCookie(), false);
+			} catch (NamingException e) {
+				if (!isCookieRejected(e))
+					throw e;
+				// e.g.: a cookie older than the tombstone lifetime
+			}
+		}
+
+		return dirSync(server, null, true);
+	}
+
+	private long dirSync(String server, byte[] cookie, boolean full)
+			throws NamingException, ActiveDirectoryException, IOException {
+		if (full)
+			listener.fullResyncStarted();
+
+		long changes = 0;
+		boolean moreResults = true;
+
+		while (moreResults) {
+			byte[] requestCookie = cookie;
+			DirSyncPage page = activeDirectory.withContext(Operation.SYNC_DIRSYNC,
+					(context, trace) -> dirSyncPage(context, trace, requestCookie, full));
+
+			for (DirectoryChange change : page.changes)
+				listener.changed(change);
+			changes += page.changes.size();
+
+			cookie = page.cookie;
+			moreResults = page.moreResults;
+		}
+
+		listener.cycleCompleted(full, changes);
+		save(new SyncState(SyncState.Mode.DIRSYNC, server, 0, cookie));
+		return changes;
+	}
+
+	private static final class DirSyncPage {
+		final List<DirectoryChange> changes;
+		final byte[] cookie;
+		final boolean moreResults;
+
+		DirSyncPage(List<DirectoryChange> changes, byte[] cookie, boolean moreResults) {
+			this.changes = changes;
+			this.cookie = cookie;
+			this.moreResults = moreResults;
+		}
+	}
+
+	/**
+	 * Read one response of DirSync, the server splits the changes in responses of
+	 * a maximum size.
+	 */
+	private DirSyncPage dirSyncPage(DirContext context, OperationTrace trace, byte[] cookie, boolean full)
+			throws NamingException {
+		DirSyncControl control = new DirSyncControl(DirSyncControl.OBJECT_SECURITY | DirSyncControl.INCREMENTAL_VALUES,
+				0, cookie);
+		// a new instance shares the connection but has its own request controls
+		LdapContext dirSyncContext = ldapContext(context).newInstance(new Control[] { control });
+		List<DirectoryChange> changes = new ArrayList<DirectoryChange>();
+
+		try {
+			NamingEnumeration<SearchResult> answer = dirSyncContext.search(activeDirectory.getUsersContainer(),
+					"(&" + OBJECTS + ")", controls(DIRSYNC_ATTRIBUTES));
+			try {
+				while (answer.hasMore()) {
+					SearchResult searchResult = answer.next();
+					if (trace != null)
+						trace.entry(searchResult.getAttributes());
+
+					ChangeBuilder change = new ChangeBuilder(searchResult, true);
+					changes.add(change.build(change.deleted ? DirectoryChange.Type.DELETED
+							: full ? DirectoryChange.Type.ADDED : DirectoryChange.Type.MODIFIED));
+				}
+			} finally {
+				answer.close();
+			}
+
+			DirSyncControl.Response response = DirSyncControl.response(dirSyncContext.getResponseControls());
+			if (response == null)
+				throw new OperationNotSupportedException("the server did not return the DirSync response control.");
+			return new DirSyncPage(changes, response.cookie, response.moreResults);
+		} finally {
+			dirSyncContext.close();
+		}
+	}
+
+	/**
+	 * The USN are local to a domain controller: its <b>invocationId</b> changes
+	 * when its database is restored, its <b>dsServiceName</b> is the fallback.
+	 */
+	static String serverIdentity(ActiveDirectory activeDirectory, String dsServiceName)
+			throws NamingException, ActiveDirectoryException {
+		if (dsServiceName == null)
+			throw new OperationNotSupportedException("the server has no dsServiceName, it is not an Active Directory.");
+
+		Object invocationId = activeDirectory.withContext(Operation.SYNC_SERVER, (context, trace) -> {
+			Attribute attribute = context.getAttributes(new LdapName(dsServiceName), new String[] { "invocationId" })
+					.get("invocationId");
+			return attribute == null ? null : attribute.get();
+		});
+
+		return invocationId instanceof byte[] ? guid((byte[]) invocationId) : dsServiceName;
+	}
+
+	private void save(SyncState newState) throws IOException {
+		store.save(newState);
+		state = newState;
+	}
+
+	private static boolean isDirSyncRefused(NamingException e) {
+		if (e instanceof OperationNotSupportedException || e instanceof NoPermissionException)
+			return true;
+
+		// unavailableCriticalExtension, insufficientAccessRights
+		int errorCode = ActiveDirectoryUtils.getErrorCode(e.getMessage());
+		return errorCode == 12 || errorCode == 50;
+	}
+
+	private static boolean isCookieRejected(NamingException e) {
+		// protocolError, unwillingToPerform
+		int errorCode = ActiveDirectoryUtils.getErrorCode(e.getMessage());
+		return errorCode == 2 || errorCode == 53;
+	}
+
+	private static LdapContext ldapContext(DirContext context) throws NamingException {
+		if (!(context instanceof LdapContext))
+			throw new OperationNotSupportedException("a sync needs a LdapContext.");
+		return (LdapContext) context;
+	}
+
+	private static SearchControls controls(String[] attributes) {
+		SearchControls controls = new SearchControls();
+		controls.setReturningAttributes(attributes);
+		controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+		return controls;
+	}
+
+	static String value(Attributes attributes, String attributeId) throws NamingException {
+		Attribute attribute = attributes.get(attributeId);
+		return attribute == null || attribute.size() == 0 ? null : String.valueOf(attribute.get());
+	}
+
+	/**
+	 * The text form of a GUID, the first three groups of the binary form are
+	 * little-endian.
+	 */
+	static String guid(byte[] bytes) {
+		if (bytes.length != 16)
+			return null;
+
+		int[] order = { 3, 2, 1, 0, 5, 4, 7, 6, 8, 9, 10, 11, 12, 13, 14, 15 };
+		StringBuilder guid = new StringBuilder(36);
+		for (int index = 0; index < 16; index++) {
+			if (index == 4 || index == 6 || index == 8 || index == 10)
+				guid.append('-');
+			int value = bytes[order[index]] & 0xff;
+			guid.append(Character.forDigit(value >>> 4, 16)).append(Character.forDigit(value & 0xf, 16));
+		}
+		return guid.toString();
+	}
+
+	/**
+	 * Collects the attributes of a changed object, from one or more search
+	 * results (the ranges of the members of a large group).
+	 */
+	static final class ChangeBuilder {
+		final String distinguishedName;
+		final boolean incrementalValues;
+		final Map<String, List<String>> attributes = new LinkedHashMap<String, List<String>>();
+		final List<String> addedMembers = new ArrayList<String>();
+		final List<String> removedMembers = new ArrayList<String>();
+		List<String> members;
+		String objectGuid;
+		boolean group;
+		boolean deleted;
+
+		ChangeBuilder(SearchResult searchResult, boolean incrementalValues) throws NamingException {
+			this.distinguishedName = searchResult.getNameInNamespace();
+			this.incrementalValues = incrementalValues;
+			add(searchResult);
+		}
+
+		void add(SearchResult searchResult) throws NamingException {
+			NamingEnumeration<? extends Attribute> all = searchResult.getAttributes().getAll();
+			while (all.hasMore()) {
+				Attribute attribute = all.next();
+				String id = attribute.getID();
+
+				if (id.equalsIgnoreCase("objectGUID")) {
+					Object value = attribute.get();
+					if (value instanceof byte[])
+						objectGuid = guid((byte[]) value);
+				} else if (incrementalValues && id.equalsIgnoreCase("member;range=1-1")) {
+					values(attribute, addedMembers);
+				} else if (incrementalValues && id.equalsIgnoreCase("member;range=0-0")) {
+					values(attribute, removedMembers);
+				} else if (id.equalsIgnoreCase("member")) {
+					if (members == null)
+						members = new ArrayList<String>();
+					values(attribute, members);
+				} else if (!attributes.containsKey(id)) {
+					// the other attributes are repeated in each range
+					List<String> values = new ArrayList<String>();
+					values(attribute, values);
+					attributes.put(id, values);
+
+					if (id.equalsIgnoreCase("objectClass"))
+						group = containsIgnoreCase(values, "group");
+					else if (id.equalsIgnoreCase("isDeleted"))
+						deleted = containsIgnoreCase(values, "TRUE");
+				}
+			}
+		}
+
+		String value(String attributeId) {
+			for (Map.Entry<String, List<String>> attribute : attributes.entrySet())
+				if (attribute.getKey().equalsIgnoreCase(attributeId) && !attribute.getValue().isEmpty())
+					return attribute.getValue().get(0);
+			return null;
+		}
+
+		DirectoryChange build(DirectoryChange.Type type) {
+			// a group without members has no member attribute
+			List<String> allMembers = members;
+			if (allMembers == null && group && !incrementalValues && type != DirectoryChange.Type.DELETED)
+				allMembers = new ArrayList<String>();
+
+			return new DirectoryChange(type, objectGuid, distinguishedName, group, attributes, allMembers,
+					addedMembers, removedMembers);
+		}
+
+		private static void values(Attribute attribute, List<String> values) throws NamingException {
+			for (int index = 0; index < attribute.size(); index++) {
+				Object value = attribute.get(index);
+				// the binary attributes, e.g.: the parentGUID of DirSync, are skipped
+				if (value instanceof String)
+					values.add((String) value);
+			}
+		}
+
+		private static boolean containsIgnoreCase(List<String> values, String value) {
+			for (String candidate : values)
+				if (candidate.equalsIgnoreCase(value))
+					return true;
+			return false;
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package com.quazzom.active_directory;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.naming.InvalidNameException;
+
+/**
+ * Reads the common name of a distinguished name (RFC 4514), e.g.: <b>paul</b>
+ * for <b>CN=paul,CN=Users,DC=mydomain,DC=LOCAL</b>.
+ * <p>
+ * The escaped characters (<b>CN=Smith\, John</b>), the hex pairs
+ * (<b>CN=Jos\C3\A9</b>), the quoted values, the multi-valued RDNs
+ * (<b>OU=Sales+CN=paul</b>) and the attribute types in any case or as an OID
+ * (<b>cn</b>, <b>2.5.4.3</b>) are understood.
+ * <p>
+ * The DN is scanned once, without a copy. When the value has nothing to
+ * unescape, the only allocation is the returned string.
+ *
+ */
+final class DnParser {
+
+	private DnParser() {
+	}
+
+	/**
+	 * Returns the common name of the first RDN of a DN. If the first RDN has no
+	 * common name (e.g.: <b>OU=Sales,DC=acme</b>) the value of its first attribute
+	 * is returned. A value in the hex form (<b>#04024869</b>) is returned as it is.
+	 *
+	 * @param dn the distinguished name
+	 *
+	 * @return the common name
+	 *
+	 * @throws InvalidNameException if <b>dn</b> is not a valid DN
+	 */
+	static String commonName(CharSequence dn) throws InvalidNameException {
+		int length = dn.length();
+		int position = 0;
+
+		// the first value of the RDN, used if the RDN has no common name
+		int firstStart = -1;
+		int firstEnd = -1;
+		boolean firstPlain = false;
+
+		while (true) {
+			// the attribute type, e.g.: CN
+			position = skipSpaces(dn, position, length);
+			int typeStart = position;
+			while (position < length && dn.charAt(position) != '=')
+				position++;
+
+			if (position == length)
+				throw new InvalidNameException("invalid DN: " + dn);
+
+			boolean commonName = isCommonName(dn, typeStart, trimEnd(dn, typeStart, position));
+
+			// the attribute value, until a not escaped and not quoted , ; or +
+			position = skipSpaces(dn, position + 1, length);
+			int valueStart = position;
+			boolean plain = true;
+			boolean quoted = false;
+
+			while (position < length) {
+				char character = dn.charAt(position);
+
+				if (character == '\\') {
+					if (position + 1 == length)
+						throw new InvalidNameException("invalid DN, it ends with an escape: " + dn);
+					plain = false;
+					position += 2;
+					continue;
+				}
+
+				if (character == '"') {
+					plain = false;
+					quoted = !quoted;
+				} else if (!quoted && (character == ',' || character == ';' || character == '+')) {
+					break;
+				}
+
+				position++;
+			}
+
+			if (quoted)
+				throw new InvalidNameException("invalid DN, a quote is not closed: " + dn);
+
+			int valueEnd = position;
+
+			if (commonName)
+				return value(dn, valueStart, valueEnd, plain);
+
+			if (firstStart < 0) {
+				firstStart = valueStart;
+				firstEnd = valueEnd;
+				firstPlain = plain;
+			}
+
+			// the end of the first RDN
+			if (position == length || dn.charAt(position) != '+')
+				return value(dn, firstStart, firstEnd, firstPlain);
+
+			position++;
+		}
+	}
+
+	private static String value(CharSequence dn, int start, int end, boolean plain) {
+		if (plain)
+			return dn.subSequence(start, trimEnd(dn, start, end)).toString();
+		return unescape(dn, start, end);
+	}
+
+	/**
+	 * Decode a value with escaped characters, hex pairs or quotes. The hex pairs
+	 * in sequence are the bytes of UTF-8 characters.
+	 */
+	private static String unescape(CharSequence dn, int start, int end) {
+		StringBuilder value = new StringBuilder(end - start);
+		byte[] bytes = null;
+		int byteCount = 0;
+		// the not escaped spaces at the end are not part of the value
+		int significantLength = 0;
+
+		int position = start;
+		while (position < end) {
+			char character = dn.charAt(position);
+
+			if (character == '\\') {
+				char next = dn.charAt(position + 1);
+				if (position + 2 < end && isHex(next) && isHex(dn.charAt(position + 2))) {
+					if (bytes == null)
+						bytes = new byte[(end - start) / 3];
+					bytes[byteCount++] = (byte) (hexValue(next) << 4 | hexValue(dn.charAt(position + 2)));
+					position += 3;
+					continue;
+				}
+
+				if (byteCount > 0) {
+					value.append(new String(bytes, 0, byteCount, StandardCharsets.UTF_8));
+					byteCount = 0;
+				}
+				value.append(next);
+				significantLength = value.length();
+				position += 2;
+				continue;
+			}
+
+			if (byteCount > 0) {
+				value.append(new String(bytes, 0, byteCount, StandardCharsets.UTF_8));
+				byteCount = 0;
+				significantLength = value.length();
+			}
+
+			if (character == '"') {
+				// the spaces inside the quotes are part of the value
+				significantLength = value.length();
+			} else {
+				value.append(character);
+				if (character != ' ')
+					significantLength = value.length();
+			}
+			position++;
+		}
+
+		if (byteCount > 0) {
+			value.append(new String(bytes, 0, byteCount, StandardCharsets.UTF_8));
+			significantLength = value.length();
+		}
+
+		value.setLength(significantLength);
+		return value.toString();
+	}
+
+	// CN, cn, 2.5.4.3 or OID.2.5.4.3
+	private static boolean isCommonName(CharSequence dn, int start, int end) {
+		int length = end - start;
+
+		if (length == 2)
+			return (dn.charAt(start) == 'c' || dn.charAt(start) == 'C')
+					&& (dn.charAt(start + 1) == 'n' || dn.charAt(start + 1) == 'N');
+
+		if (length == 11 && (dn.charAt(start) == 'o' || dn.charAt(start) == 'O'))
+			return regionMatchesIgnoreCase(dn, start, "oid.2.5.4.3");
+
+		return length == 7 && regionMatchesIgnoreCase(dn, start, "2.5.4.3");
+	}
+
+	private static boolean regionMatchesIgnoreCase(CharSequence dn, int start, String expected) {
+		for (int count = 0; count < expected.length(); count++)
+			if (Character.toLowerCase(dn.charAt(start + count)) != expected.charAt(count))
+				return false;
+		return true;
+	}
+
+	private static boolean isHex(char character) {
+		return hexValue(character) >= 0;
+	}
+
+	// only the ASCII digits, unlike Character.digit
+	private static int hexValue(char character) {
+		if (character >= '0' && character <= '9')
+			return character - '0';
+		if (character >= 'a' && character <= 'f')
+			return character - 'a' + 10;
+		if (character >= 'A' && character <= 'F')
+			return character - 'A' + 10;
+		return -1;
+	}
+
+	private static int skipSpaces(CharSequence dn, int position, int end) {
+		while (position < end && dn.charAt(position) == ' ')
+			position++;
+		return position;
+	}
+
+	private static int trimEnd(CharSequence dn, int start, int end) {
+		while (end > start && dn.charAt(end - 1) == ' ')
+			end--;
+		return end;
+	}
+}
@@ -0,0 +1,74 @@
+package com.quazzom.active_directory;
+
+/**
+ * The state of a domain controller of the load balancing, see
+ * {@link ActiveDirectory#getDomainControllers()}.
+ *
+ */
+public final class DomainControllerStatus {
+
+	private final String server;
+	private final CircuitState circuitState;
+	private final int outstanding;
+	private final double latencyMillis;
+	private final long ejections;
+
+	DomainControllerStatus(String server, CircuitState circuitState, int outstanding, double latencyMillis,
+			long ejections) {
+		this.server = server;
+		this.circuitState = circuitState;
+		this.outstanding = outstanding;
+		this.latencyMillis = latencyMillis;
+		this.ejections = ejections;
+	}
+
+	/**
+	 * @return the domain controller, e.g.: <b>dc01.mydomain.global:389</b>
+	 */
+	public String getServer() {
+		return server;
+	}
+
+	/**
+	 * @return false while the domain controller is ejected, its circuit is open or
+	 *         half-open.
+	 */
+	public boolean isHealthy() {
+		return circuitState == CircuitState.CLOSED;
+	}
+
+	/**
+	 * @return the state of the circuit breaker of the domain controller.
+	 */
+	public CircuitState getCircuitState() {
+		return circuitState;
+	}
+
+	/**
+	 * @return the requests in progress.
+	 */
+	public int getOutstanding() {
+		return outstanding;
+	}
+
+	/**
+	 * @return the moving average of the latency.
+	 */
+	public double getLatencyMillis() {
+		return latencyMillis;
+	}
+
+	/**
+	 * @return the number of times the domain controller was ejected, its circuit
+	 *         opened.
+	 */
+	public long getEjections() {
+		return ejections;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("DomainControllerStatus[server=%s, circuit=%s, outstanding=%d, latencyMillis=%.3f, ejections=%d]",
+				server, circuitState, outstanding, latencyMillis, ejections);
+	}
+}
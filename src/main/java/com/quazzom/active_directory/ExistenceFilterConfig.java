@@ -0,0 +1,55 @@
+package com.quazzom.active_directory;
+
+/**
+ * Settings of the filter of the existing user names, see
+ * {@link ActiveDirectory#setExistenceFilterConfig(ExistenceFilterConfig)}.
+ * <p>
+ * The defaults are: falsePositiveRate 0.01 and refreshIntervalMillis 300000.
+ *
+ */
+public class ExistenceFilterConfig {
+
+	private double falsePositiveRate = 0.01;
+	private long refreshIntervalMillis = 300000;
+
+	/**
+	 * @return the fraction of the absent user names that are still searched in
+	 *         the Active Directory.
+	 */
+	public double getFalsePositiveRate() {
+		return falsePositiveRate;
+	}
+
+	/**
+	 * @param falsePositiveRate the fraction of the absent user names that are
+	 *                          still searched in the Active Directory, a lower
+	 *                          rate takes more memory: about 1.2 bytes per user
+	 *                          at 0.01 and 1.8 bytes at 0.001.
+	 */
+	public void setFalsePositiveRate(double falsePositiveRate) {
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1)
+			throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1.");
+		this.falsePositiveRate = falsePositiveRate;
+	}
+
+	/**
+	 * @return how long a filter is used after being loaded before it is loaded
+	 *         again in background.
+	 */
+	public long getRefreshIntervalMillis() {
+		return refreshIntervalMillis;
+	}
+
+	/**
+	 * @param refreshIntervalMillis how long a filter is used after being loaded
+	 *                              before it is loaded again in background. A
+	 *                              user created in the Active Directory is
+	 *                              reported absent until then, unless it is
+	 *                              invalidated.
+	 */
+	public void setRefreshIntervalMillis(long refreshIntervalMillis) {
+		if (refreshIntervalMillis <= 0)
+			throw new IllegalArgumentException("refreshIntervalMillis must be greater than zero.");
+		this.refreshIntervalMillis = refreshIntervalMillis;
+	}
+}
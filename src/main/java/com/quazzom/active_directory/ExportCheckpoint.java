@@ -0,0 +1,128 @@
+package com.quazzom.active_directory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Where a {@link DirectoryExport} stopped: the objects up to an update
+ * sequence number are in the file up to a position. The file is written to a
+ * temporary file first and then moved over the old one, as by
+ * {@link FileSyncStateStore}.
+ *
+ */
+final class ExportCheckpoint {
+
+	private final String layout;
+	private final String server;
+	private final long highestUsn;
+	private final long nextUsn;
+	private final long position;
+	private final long objectCount;
+
+	/**
+	 * @param layout      the format, the compression and the attributes of the
+	 *                    file
+	 * @param server      the identity of the domain controller, the USN are local
+	 *                    to it
+	 * @param highestUsn  the last USN to read
+	 * @param nextUsn     the first USN not read yet
+	 * @param position    the size of the file with the objects read
+	 * @param objectCount the number of objects in the file
+	 */
+	ExportCheckpoint(String layout, String server, long highestUsn, long nextUsn, long position, long objectCount) {
+		this.layout = layout;
+		this.server = server;
+		this.highestUsn = highestUsn;
+		this.nextUsn = nextUsn;
+		this.position = position;
+		this.objectCount = objectCount;
+	}
+
+	String getLayout() {
+		return layout;
+	}
+
+	String getServer() {
+		return server;
+	}
+
+	long getHighestUsn() {
+		return highestUsn;
+	}
+
+	long getNextUsn() {
+		return nextUsn;
+	}
+
+	long getPosition() {
+		return position;
+	}
+
+	long getObjectCount() {
+		return objectCount;
+	}
+
+	/**
+	 * @param file the checkpoint file
+	 *
+	 * @return the checkpoint, or null if there is no file or it is not valid
+	 *
+	 * @throws IOException if the file cannot be read
+	 */
+	static ExportCheckpoint load(Path file) throws IOException {
+		if (!Files.exists(file))
+			return null;
+
+		Properties properties = new Properties();
+		try (InputStream in = Files.newInputStream(file)) {
+			properties.load(in);
+		}
+
+		try {
+			return new ExportCheckpoint(properties.getProperty("layout", ""), properties.getProperty("server", ""),
+					Long.parseLong(properties.getProperty("highestUsn")),
+					Long.parseLong(properties.getProperty("nextUsn")), Long.parseLong(properties.getProperty("position")),
+					Long.parseLong(properties.getProperty("objectCount")));
+		} catch (NumberFormatException e) {
+			// the export starts again
+			return null;
+		}
+	}
+
+	/**
+	 * @param file the checkpoint file, replaced
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	void save(Path file) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("layout", layout);
+		properties.setProperty("server", server);
+		properties.setProperty("highestUsn", Long.toString(highestUsn));
+		properties.setProperty("nextUsn", Long.toString(nextUsn));
+		properties.setProperty("position", Long.toString(position));
+		properties.setProperty("objectCount", Long.toString(objectCount));
+
+		Path absolute = file.toAbsolutePath();
+		Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+		try {
+			try (OutputStream out = Files.newOutputStream(temporary)) {
+				properties.store(out, "active-directory export checkpoint");
+			}
+
+			try {
+				Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+}
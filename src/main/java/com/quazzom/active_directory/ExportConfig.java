@@ -0,0 +1,144 @@
+package com.quazzom.active_directory;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Settings of a {@link DirectoryExport}.
+ * <p>
+ * The defaults are: the {@link ExportFormat#JSONL} format without gzip, the
+ * attributes <b>sAMAccountName</b>, <b>cn</b> and <b>memberOf</b>, a
+ * usnWindow of 50000, a pageSize of 1000, a queueCapacity of 1000 and a
+ * bufferSize of 65536.
+ *
+ */
+public class ExportConfig {
+
+	private ExportFormat format = ExportFormat.JSONL;
+	private boolean gzip;
+	private List<String> attributes = Arrays.asList("sAMAccountName", "cn", "memberOf");
+	private long usnWindow = 50000;
+	private int pageSize = 1000;
+	private int queueCapacity = 1000;
+	private int bufferSize = 65536;
+
+	/**
+	 * @return the file format.
+	 */
+	public ExportFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * @param format the file format
+	 */
+	public void setFormat(ExportFormat format) {
+		if (format == null)
+			throw new IllegalArgumentException("format cannot be null.");
+		this.format = format;
+	}
+
+	/**
+	 * @return true if the file is compressed with gzip.
+	 */
+	public boolean isGzip() {
+		return gzip;
+	}
+
+	/**
+	 * @param gzip true to compress the file with gzip. The file is a series of
+	 *             gzip members, one per checkpoint, read as one by gunzip and by
+	 *             {@link java.util.zip.GZIPInputStream}.
+	 */
+	public void setGzip(boolean gzip) {
+		this.gzip = gzip;
+	}
+
+	/**
+	 * @return the attributes exported besides the objectGUID, the DN, the type and
+	 *         the members of the groups.
+	 */
+	public List<String> getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * @param attributes the attributes exported besides the objectGUID, the DN,
+	 *                   the type and the members of the groups, in the order of
+	 *                   the CSV columns
+	 */
+	public void setAttributes(List<String> attributes) {
+		if (attributes == null)
+			throw new IllegalArgumentException("attributes cannot be null.");
+		this.attributes = Arrays.asList(attributes.toArray(new String[0]));
+	}
+
+	/**
+	 * @return the number of update sequence numbers read by each search, a
+	 *         checkpoint is saved after each one.
+	 */
+	public long getUsnWindow() {
+		return usnWindow;
+	}
+
+	/**
+	 * @param usnWindow the number of update sequence numbers read by each search,
+	 *                  a checkpoint is saved after each one. A smaller window
+	 *                  loses less work on a failure, with more searches.
+	 */
+	public void setUsnWindow(long usnWindow) {
+		if (usnWindow <= 0)
+			throw new IllegalArgumentException("usnWindow must be greater than zero.");
+		this.usnWindow = usnWindow;
+	}
+
+	/**
+	 * @return the number of results per page of the searches.
+	 */
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * @param pageSize the number of results per page of the searches, at most the
+	 *                 MaxPageSize of the Active Directory (1000 by default)
+	 */
+	public void setPageSize(int pageSize) {
+		if (pageSize <= 0)
+			throw new IllegalArgumentException("pageSize must be greater than zero.");
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * @return the number of objects read ahead of the file.
+	 */
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * @param queueCapacity the number of objects read ahead of the file, when it
+	 *                      is full the searches wait for the writes
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		if (queueCapacity <= 0)
+			throw new IllegalArgumentException("queueCapacity must be greater than zero.");
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * @return the size in characters of the write buffer.
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * @param bufferSize the size in characters of the write buffer
+	 */
+	public void setBufferSize(int bufferSize) {
+		if (bufferSize <= 0)
+			throw new IllegalArgumentException("bufferSize must be greater than zero.");
+		this.bufferSize = bufferSize;
+	}
+}
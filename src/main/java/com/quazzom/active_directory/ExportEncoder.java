@@ -0,0 +1,188 @@
+package com.quazzom.active_directory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the objects of a {@link DirectoryExport} in JSONL or in CSV.
+ * <p>
+ * Each object has its <b>objectGUID</b>, its DN, its type (<b>user</b> or
+ * <b>group</b>), the exported attributes and, for a group, its <b>member</b>
+ * DNs. In JSONL an attribute the object doesn't have is left out, in CSV its
+ * column is empty.
+ *
+ */
+final class ExportEncoder {
+
+	private final ExportFormat format;
+	private final List<String> attributes;
+
+	/**
+	 * @param format     the file format
+	 * @param attributes the exported attributes, in the order of the CSV columns
+	 */
+	ExportEncoder(ExportFormat format, List<String> attributes) {
+		this.format = format;
+		this.attributes = attributes;
+	}
+
+	/**
+	 * Write the first line of the file, the header of a CSV.
+	 *
+	 * @param out the file
+	 *
+	 * @throws IOException if the write fails
+	 */
+	void header(Writer out) throws IOException {
+		if (format != ExportFormat.CSV)
+			return;
+
+		out.write("objectGUID,distinguishedName,type");
+		for (String attribute : attributes) {
+			out.write(',');
+			csv(attribute, out);
+		}
+		out.write(",member\n");
+	}
+
+	/**
+	 * Write an object as a line.
+	 *
+	 * @param object the object
+	 * @param out    the file
+	 *
+	 * @throws IOException if the write fails
+	 */
+	void encode(DirectoryChange object, Writer out) throws IOException {
+		if (format == ExportFormat.CSV)
+			csvLine(object, out);
+		else
+			jsonLine(object, out);
+	}
+
+	private void jsonLine(DirectoryChange object, Writer out) throws IOException {
+		out.write("{\"objectGUID\":");
+		json(object.getObjectGuid(), out);
+		out.write(",\"distinguishedName\":");
+		json(object.getDistinguishedName(), out);
+		out.write(object.isGroup() ? ",\"type\":\"group\"" : ",\"type\":\"user\"");
+
+		for (String attribute : attributes) {
+			List<String> values = values(object.getAttributes(), attribute);
+			if (values == null)
+				continue;
+			out.write(',');
+			json(attribute, out);
+			out.write(':');
+			json(values, out);
+		}
+
+		if (object.getMembers() != null) {
+			out.write(",\"member\":");
+			json(object.getMembers(), out);
+		}
+		out.write("}\n");
+	}
+
+	private void csvLine(DirectoryChange object, Writer out) throws IOException {
+		csv(object.getObjectGuid(), out);
+		out.write(',');
+		csv(object.getDistinguishedName(), out);
+		out.write(object.isGroup() ? ",group" : ",user");
+
+		for (String attribute : attributes) {
+			out.write(',');
+			List<String> values = values(object.getAttributes(), attribute);
+			if (values != null)
+				csv(join(values), out);
+		}
+
+		out.write(',');
+		if (object.getMembers() != null)
+			csv(join(object.getMembers()), out);
+		out.write('\n');
+	}
+
+	private static List<String> values(Map<String, List<String>> attributes, String attributeId) {
+		// the names come from the server, with its case
+		for (Map.Entry<String, List<String>> attribute : attributes.entrySet())
+			if (attribute.getKey().equalsIgnoreCase(attributeId))
+				return attribute.getValue();
+		return null;
+	}
+
+	private static String join(List<String> values) {
+		return values.size() == 1 ? values.get(0) : String.join(";", values);
+	}
+
+	private static void json(List<String> values, Writer out) throws IOException {
+		out.write('[');
+		for (int index = 0; index < values.size(); index++) {
+			if (index > 0)
+				out.write(',');
+			json(values.get(index), out);
+		}
+		out.write(']');
+	}
+
+	static void json(String value, Writer out) throws IOException {
+		if (value == null) {
+			out.write("null");
+			return;
+		}
+
+		out.write('"');
+		int start = 0;
+		for (int index = 0; index < value.length(); index++) {
+			char c = value.charAt(index);
+			if (c >= 0x20 && c != '"' && c != '\\')
+				continue;
+
+			out.write(value, start, index - start);
+			start = index + 1;
+			switch (c) {
+			case '"':
+				out.write("\\\"");
+				break;
+			case '\\':
+				out.write("\\\\");
+				break;
+			case '\n':
+				out.write("\\n");
+				break;
+			case '\r':
+				out.write("\\r");
+				break;
+			case '\t':
+				out.write("\\t");
+				break;
+			default:
+				out.write(String.format("\\u%04x", (int) c));
+			}
+		}
+		out.write(value, start, value.length() - start);
+		out.write('"');
+	}
+
+	static void csv(String value, Writer out) throws IOException {
+		if (value == null)
+			return;
+
+		boolean quote = false;
+		for (int index = 0; index < value.length() && !quote; index++) {
+			char c = value.charAt(index);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+
+		if (!quote) {
+			out.write(value);
+			return;
+		}
+
+		out.write('"');
+		out.write(value.replace("\"", "\"\""));
+		out.write('"');
+	}
+}
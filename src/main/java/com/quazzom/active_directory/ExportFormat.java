@@ -0,0 +1,20 @@
+package com.quazzom.active_directory;
+
+/**
+ * The file format of a {@link DirectoryExport}, see
+ * {@link ExportConfig#setFormat(ExportFormat)}.
+ *
+ */
+public enum ExportFormat {
+
+	/**
+	 * A JSON object per line, each attribute as an array of values.
+	 */
+	JSONL,
+
+	/**
+	 * A header line and a line per object (RFC 4180), the values of a
+	 * multi-valued attribute joined by <b>;</b>.
+	 */
+	CSV
+}
@@ -0,0 +1,16 @@
+package com.quazzom.active_directory;
+
+/**
+ * Receives the progress of a {@link DirectoryExport}, on the thread running
+ * the export.
+ *
+ */
+public interface ExportListener {
+
+	/**
+	 * Called after each checkpoint and at the end of the export.
+	 *
+	 * @param progress the objects and bytes written so far
+	 */
+	void progress(ExportProgress progress);
+}
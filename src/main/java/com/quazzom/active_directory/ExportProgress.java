@@ -0,0 +1,75 @@
+package com.quazzom.active_directory;
+
+/**
+ * The progress of a {@link DirectoryExport}, given to the
+ * {@link ExportListener} after each checkpoint.
+ *
+ */
+public class ExportProgress {
+
+	private final long objectCount;
+	private final long bytes;
+	private final long nextUsn;
+	private final long highestUsn;
+	private final boolean completed;
+
+	ExportProgress(long objectCount, long bytes, long nextUsn, long highestUsn, boolean completed) {
+		this.objectCount = objectCount;
+		this.bytes = bytes;
+		this.nextUsn = nextUsn;
+		this.highestUsn = highestUsn;
+		this.completed = completed;
+	}
+
+	/**
+	 * @return the number of objects written, with the ones of a resumed export.
+	 */
+	public long getObjectCount() {
+		return objectCount;
+	}
+
+	/**
+	 * @return the size of the file.
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return the first update sequence number not read yet.
+	 */
+	public long getNextUsn() {
+		return nextUsn;
+	}
+
+	/**
+	 * @return the <b>highestCommittedUSN</b> of the domain controller when the
+	 *         export started, or after the last catch-up search.
+	 */
+	public long getHighestUsn() {
+		return highestUsn;
+	}
+
+	/**
+	 * @return true after the last object was written.
+	 */
+	public boolean isCompleted() {
+		return completed;
+	}
+
+	/**
+	 * @return the fraction of the update sequence numbers read, 1.0 when
+	 *         completed.
+	 */
+	public double getFraction() {
+		if (completed || highestUsn <= 0)
+			return 1.0;
+		return Math.min(1.0, (double) nextUsn / (highestUsn + 1));
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ExportProgress[objects=%d, bytes=%d, nextUsn=%d, highestUsn=%d, completed=%b]",
+				objectCount, bytes, nextUsn, highestUsn, completed);
+	}
+}
@@ -0,0 +1,64 @@
+package com.quazzom.active_directory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * A {@link SyncStateStore} in a properties file. The file is written to a
+ * temporary file first and then moved over the old one, so a crash while
+ * saving keeps the old state.
+ *
+ */
+public class FileSyncStateStore implements SyncStateStore {
+
+	private final Path file;
+
+	/**
+	 * @param file the file of the state, created on the first save
+	 */
+	public FileSyncStateStore(Path file) {
+		this.file = file;
+	}
+
+	@Override
+	public SyncState load() throws IOException {
+		if (!Files.exists(file))
+			return null;
+
+		Properties properties = new Properties();
+		try (InputStream in = Files.newInputStream(file)) {
+			properties.load(in);
+		}
+
+		try {
+			return SyncState.fromProperties(properties);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("invalid sync state in " + file + ".", e);
+		}
+	}
+
+	@Override
+	public void save(SyncState state) throws IOException {
+		Path absolute = file.toAbsolutePath();
+		Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+		try {
+			try (OutputStream out = Files.newOutputStream(temporary)) {
+				state.toProperties().store(out, "active-directory sync state");
+			}
+
+			try {
+				Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+}
@@ -0,0 +1,253 @@
+package com.quazzom.active_directory;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.naming.NamingException;
+
+/**
+ * Sends a copy of a search that takes longer than usual and keeps the first
+ * answer, the hedged requests of "The Tail at Scale".
+ * <p>
+ * The search runs in the thread of the caller. When it has not answered after
+ * the {@link HedgingConfig#getPercentile()} of the recent durations of its
+ * operation, a copy is run by another thread, over another connection (on
+ * another domain controller when there is one). If the copy answers first the
+ * search is interrupted, which abandons it in the server, and the other way
+ * round. The copies are at most {@link HedgingConfig#getMaxHedgeRatio()} of the
+ * searches and nothing is copied until {@link #MIN_SAMPLES} durations are
+ * known.
+ *
+ */
+final class Hedger {
+
+	// below this number of durations the percentile is not trusted
+	static final int MIN_SAMPLES = 100;
+
+	// the delay of an operation is computed again after this time
+	private static final long DELAY_TTL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final HedgingConfig config;
+	private final LongSupplier ticker;
+	private final ScheduledThreadPoolExecutor timer;
+	private final ThreadPoolExecutor executor;
+	private final ConcurrentHashMap<Operation, Window> windows = new ConcurrentHashMap<Operation, Window>();
+
+	private final LongAdder requestCount = new LongAdder();
+	private final LongAdder hedgeCount = new LongAdder();
+	private final LongAdder hedgeWinCount = new LongAdder();
+
+	/**
+	 * @param config    the hedging settings
+	 * @param maxHedges the most copies running at the same time, above it no copy
+	 *                  is sent
+	 */
+	Hedger(HedgingConfig config, int maxHedges) {
+		this(config, maxHedges, System::nanoTime);
+	}
+
+	Hedger(HedgingConfig config, int maxHedges, LongSupplier ticker) {
+		this.config = config;
+		this.ticker = ticker;
+		this.timer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("active-directory-hedge-timer"));
+		this.timer.setRemoveOnCancelPolicy(true);
+		this.executor = new ThreadPoolExecutor(0, maxHedges, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+				new DaemonThreadFactory("active-directory-hedge"));
+	}
+
+	/**
+	 * Run a search, with a copy if it is slow.
+	 *
+	 * @param operation the operation of the search, each one has its durations
+	 * @param search    the search, run by the current thread
+	 * @param copy      the copy of the search, run by another thread
+	 *
+	 * @return the first answer
+	 *
+	 * @throws NamingException          if the search fails and the copy, if any,
+	 *                                  fails too
+	 * @throws ActiveDirectoryException if the search fails and the copy, if any,
+	 *                                  fails too
+	 */
+	<V> V execute(Operation operation, DirectoryCall<V> search, DirectoryCall<V> copy)
+			throws NamingException, ActiveDirectoryException {
+		requestCount.increment();
+		Window window = windows.computeIfAbsent(operation, key -> new Window());
+		long start = ticker.getAsLong();
+
+		long delay = window.delayNanos(start);
+		if (delay < 0) {
+			V value = search.call();
+			window.record(ticker.getAsLong() - start);
+			return value;
+		}
+
+		Hedge<V> hedge = new Hedge<V>(copy, new RequestInterrupter(Thread.currentThread()));
+		ScheduledFuture<?> scheduled = null;
+		try {
+			scheduled = timer.schedule(hedge::start, delay, TimeUnit.NANOSECONDS);
+		} catch (RejectedExecutionException e) {
+			// closed, no copy
+		}
+
+		try {
+			V value = search.call();
+			window.record(ticker.getAsLong() - start);
+			return value;
+		} catch (NamingException | ActiveDirectoryException | RuntimeException e) {
+			// the copy answered first and interrupted the search, or the search failed
+			// while the copy runs
+			SearchTask<V> task = hedge.stop();
+			if (task == null)
+				throw e;
+
+			try {
+				V value = task.get();
+				hedgeWinCount.increment();
+				window.record(ticker.getAsLong() - start);
+				return value;
+			} catch (InterruptedException interrupted) {
+				// e.g.: the deadline of the search
+				Thread.currentThread().interrupt();
+				throw e;
+			} catch (ExecutionException | CancellationException failed) {
+				throw e;
+			}
+		} finally {
+			if (scheduled != null)
+				scheduled.cancel(false);
+			hedge.close();
+		}
+	}
+
+	/**
+	 * @return a snapshot of the statistics
+	 */
+	HedgingStats stats() {
+		return new HedgingStats(requestCount.sum(), hedgeCount.sum(), hedgeWinCount.sum());
+	}
+
+	void close() {
+		timer.shutdownNow();
+		executor.shutdownNow();
+	}
+
+	/**
+	 * The copy of a search.
+	 */
+	private final class Hedge<V> {
+		private final DirectoryCall<V> copy;
+		private final RequestInterrupter interrupter; // of the thread of the search
+
+		private SearchTask<V> task; // guarded by this
+		private boolean stopped; // guarded by this
+
+		Hedge(DirectoryCall<V> copy, RequestInterrupter interrupter) {
+			this.copy = copy;
+			this.interrupter = interrupter;
+		}
+
+		synchronized void start() {
+			if (stopped || hedgeCount.sum() >= config.getMaxHedgeRatio() * requestCount.sum())
+				return;
+
+			SearchTask<V> newTask = new SearchTask<V>(copy::call);
+			// only an answer of the copy stops the search
+			newTask.thenRun(interrupter::interrupt);
+			try {
+				executor.execute(newTask);
+				task = newTask;
+				hedgeCount.increment();
+			} catch (RejectedExecutionException e) {
+				// too many copies running
+			}
+		}
+
+		/**
+		 * No copy starts after this and the copy no longer interrupts the search.
+		 *
+		 * @return the copy or null if it did not start
+		 */
+		SearchTask<V> stop() {
+			synchronized (this) {
+				stopped = true;
+			}
+			interrupter.close();
+
+			synchronized (this) {
+				return task;
+			}
+		}
+
+		/**
+		 * Stop and abandon the copy if it is running.
+		 */
+		void close() {
+			SearchTask<V> running = stop();
+			if (running != null)
+				running.cancel(true);
+		}
+	}
+
+	/**
+	 * The recent durations of an operation, in two windows: the one being filled
+	 * and the previous one.
+	 */
+	private final class Window {
+		private volatile LatencyHistogram current = new LatencyHistogram();
+		private volatile LatencyHistogram previous;
+		private volatile long startedAt = ticker.getAsLong();
+
+		private volatile long delay = -1;
+		private volatile long delayComputedAt = ticker.getAsLong() - DELAY_TTL_NANOS;
+
+		void record(long nanos) {
+			rotate(ticker.getAsLong());
+			current.record(nanos);
+		}
+
+		/**
+		 * @return the wait before the copy, or -1 if nothing is copied yet
+		 */
+		long delayNanos(long now) {
+			if (now - delayComputedAt < DELAY_TTL_NANOS)
+				return delay;
+
+			rotate(now);
+			LatencyHistogram last = previous;
+			LatencyHistogram histogram = last != null && last.getCount() >= MIN_SAMPLES ? last : current;
+
+			long computed = -1;
+			if (histogram.getCount() >= MIN_SAMPLES)
+				computed = Math.max(histogram.getValueAtPercentile(config.getPercentile()),
+						TimeUnit.MILLISECONDS.toNanos(config.getMinDelayMillis()));
+
+			delay = computed;
+			delayComputedAt = now;
+			return computed;
+		}
+
+		private void rotate(long now) {
+			long windowNanos = TimeUnit.MILLISECONDS.toNanos(config.getWindowMillis());
+			if (now - startedAt < windowNanos)
+				return;
+
+			synchronized (this) {
+				if (now - startedAt >= windowNanos) {
+					previous = current;
+					current = new LatencyHistogram();
+					startedAt = now;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.quazzom.active_directory;
+
+/**
+ * Settings of the hedged searches, see
+ * {@link ActiveDirectory#setHedgingConfig(HedgingConfig)}.
+ * <p>
+ * The defaults are: percentile 95.0, minDelayMillis 10, maxHedgeRatio 0.05 and
+ * windowMillis 60000.
+ *
+ */
+public class HedgingConfig {
+
+	private double percentile = 95.0;
+	private long minDelayMillis = 10;
+	private double maxHedgeRatio = 0.05;
+	private long windowMillis = 60000;
+
+	/**
+	 * @return the percentile of the recent durations of a search after which a
+	 *         copy is sent.
+	 */
+	public double getPercentile() {
+		return percentile;
+	}
+
+	/**
+	 * @param percentile the percentile of the recent durations of a search after
+	 *                   which a copy is sent, e.g.: 95.0 sends a copy of the 5%
+	 *                   slowest searches.
+	 */
+	public void setPercentile(double percentile) {
+		if (percentile <= 0 || percentile >= 100)
+			throw new IllegalArgumentException("percentile must be between 0 and 100.");
+		this.percentile = percentile;
+	}
+
+	/**
+	 * @return the shortest wait before a copy is sent.
+	 */
+	public long getMinDelayMillis() {
+		return minDelayMillis;
+	}
+
+	/**
+	 * @param minDelayMillis the shortest wait before a copy is sent, so the fast
+	 *                       searches are never copied.
+	 */
+	public void setMinDelayMillis(long minDelayMillis) {
+		if (minDelayMillis < 0)
+			throw new IllegalArgumentException("minDelayMillis cannot be negative.");
+		this.minDelayMillis = minDelayMillis;
+	}
+
+	/**
+	 * @return the largest fraction of the searches that can be copied.
+	 */
+	public double getMaxHedgeRatio() {
+		return maxHedgeRatio;
+	}
+
+	/**
+	 * @param maxHedgeRatio the largest fraction of the searches that can be
+	 *                      copied, so a slow Active Directory doesn't receive
+	 *                      twice the load.
+	 */
+	public void setMaxHedgeRatio(double maxHedgeRatio) {
+		if (maxHedgeRatio <= 0 || maxHedgeRatio > 1)
+			throw new IllegalArgumentException("maxHedgeRatio must be greater than zero and at most 1.");
+		this.maxHedgeRatio = maxHedgeRatio;
+	}
+
+	/**
+	 * @return how long the durations of the searches are kept to compute the
+	 *         percentile.
+	 */
+	public long getWindowMillis() {
+		return windowMillis;
+	}
+
+	/**
+	 * @param windowMillis how long the durations of the searches are kept to
+	 *                     compute the percentile, the delay follows the changes
+	 *                     of the latency after one or two windows.
+	 */
+	public void setWindowMillis(long windowMillis) {
+		if (windowMillis <= 0)
+			throw new IllegalArgumentException("windowMillis must be greater than zero.");
+		this.windowMillis = windowMillis;
+	}
+}
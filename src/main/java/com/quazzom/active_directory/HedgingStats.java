@@ -0,0 +1,54 @@
+package com.quazzom.active_directory;
+
+/**
+ * A snapshot of the statistics of the hedged searches, see
+ * {@link ActiveDirectory#setHedgingConfig(HedgingConfig)}.
+ *
+ */
+public class HedgingStats {
+
+	private final long requestCount;
+	private final long hedgeCount;
+	private final long hedgeWinCount;
+
+	HedgingStats(long requestCount, long hedgeCount, long hedgeWinCount) {
+		this.requestCount = requestCount;
+		this.hedgeCount = hedgeCount;
+		this.hedgeWinCount = hedgeWinCount;
+	}
+
+	/**
+	 * @return the number of searches that could be hedged.
+	 */
+	public long getRequestCount() {
+		return requestCount;
+	}
+
+	/**
+	 * @return the number of copies sent.
+	 */
+	public long getHedgeCount() {
+		return hedgeCount;
+	}
+
+	/**
+	 * @return the number of searches answered by the copy.
+	 */
+	public long getHedgeWinCount() {
+		return hedgeWinCount;
+	}
+
+	/**
+	 * @return the fraction of the searches that were copied, 0.0 if there were no
+	 *         searches.
+	 */
+	public double getHedgeRatio() {
+		return requestCount == 0 ? 0.0 : (double) hedgeCount / requestCount;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("HedgingStats[requests=%d, hedges=%d, hedgeWins=%d]", requestCount, hedgeCount,
+				hedgeWinCount);
+	}
+}
@@ -0,0 +1,129 @@
+package com.quazzom.active_directory;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations with log-linear buckets, as in
+ * HdrHistogram: the values below 128 have a bucket each and above that each
+ * power of two is split in 64 buckets, so a percentile is within 1.6% of the
+ * recorded value, from nanoseconds to days, in a fixed array of 3712 counts.
+ * <p>
+ * Recording is a few shifts and an atomic increment, no allocation. The reads
+ * are not a snapshot, a value recorded during a read may or may not be seen.
+ *
+ */
+final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS; // 128
+	private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2; // 64
+
+	// 128 linear buckets, then 64 buckets for each power of two from 2^7 to 2^62
+	private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * HALF_SUB_BUCKET_COUNT;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Record a value, a negative value is recorded as zero.
+	 *
+	 * @param value the value, e.g.: a duration in nanoseconds
+	 */
+	void record(long value) {
+		if (value < 0)
+			value = 0;
+
+		counts.incrementAndGet(bucket(value));
+		count.increment();
+		sum.add(value);
+
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value))
+			current = max.get();
+	}
+
+	/**
+	 * @return the number of values recorded
+	 */
+	long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return the largest value recorded, exact
+	 */
+	long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return the mean of the values recorded, exact, 0 without values
+	 */
+	double getMean() {
+		long values = count.sum();
+		return values == 0 ? 0 : (double) sum.sum() / values;
+	}
+
+	/**
+	 * @param percentile the percentile, from 0 to 100, e.g.: 99.9
+	 *
+	 * @return the largest value of the bucket of the percentile, never above the
+	 *         maximum, 0 without values
+	 */
+	long getValueAtPercentile(double percentile) {
+		long total = 0;
+		for (int index = 0; index < BUCKET_COUNT; index++)
+			total += counts.get(index);
+		if (total == 0)
+			return 0;
+
+		double clamped = Math.min(100, Math.max(0, percentile));
+		long target = Math.max(1, (long) Math.ceil(clamped / 100 * total));
+
+		long seen = 0;
+		for (int index = 0; index < BUCKET_COUNT; index++) {
+			seen += counts.get(index);
+			if (seen >= target)
+				return Math.min(highestValue(index), getMax());
+		}
+		return getMax();
+	}
+
+	/**
+	 * Remove all the values. The values recorded during a reset may be kept.
+	 */
+	void reset() {
+		for (int index = 0; index < BUCKET_COUNT; index++)
+			counts.set(index, 0);
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+
+	static int bucket(long value) {
+		if (value < SUB_BUCKET_COUNT)
+			return (int) value;
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value); // 7 or more
+		int shift = exponent - SUB_BUCKET_BITS + 1;
+		// the 7 most significant bits, from 64 to 127
+		int subBucket = (int) (value >>> shift);
+		return SUB_BUCKET_COUNT + (exponent - SUB_BUCKET_BITS) * HALF_SUB_BUCKET_COUNT
+				+ (subBucket - HALF_SUB_BUCKET_COUNT);
+	}
+
+	static long highestValue(int bucket) {
+		if (bucket < SUB_BUCKET_COUNT)
+			return bucket;
+
+		int index = bucket - SUB_BUCKET_COUNT;
+		int exponent = index / HALF_SUB_BUCKET_COUNT + SUB_BUCKET_BITS;
+		int shift = exponent - SUB_BUCKET_BITS + 1;
+		long subBucket = index % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
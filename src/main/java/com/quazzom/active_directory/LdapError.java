@@ -0,0 +1,371 @@
+package com.quazzom.active_directory;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.naming.AuthenticationException;
+import javax.naming.NamingException;
+
+/**
+ * The parts of an LDAP error message of the Active Directory, e.g.: for
+ * <b>[LDAP: error code 49 - 80090308: LdapErr: DSID-0C090439, comment:
+ * AcceptSecurityContext error, data 775, v4563]</b> the result code 49, the
+ * sub-code <b>775</b>, the <b>DSID-0C090439</b> and the category
+ * {@link LdapErrorCategory#LOCKOUT}.
+ * <p>
+ * The message is read once from left to right, without regular expressions,
+ * and the codes are looked up in arrays, so an error can be classified on each
+ * failed bind. A message in another format only has the parts found, it is
+ * never rejected.
+ *
+ */
+public final class LdapError {
+
+	private static final String BUNDLE = "com.quazzom.active_directory.LdapErrorMessages";
+	private static final ResourceBundle.Control NO_FALLBACK = ResourceBundle.Control
+			.getNoFallbackControl(ResourceBundle.Control.FORMAT_PROPERTIES);
+
+	private static final int INVALID_CREDENTIALS = 49;
+	private static final int ACCOUNT_LOCKED = 0x775;
+
+	// the names of the result codes, by code
+	private static final String[] NAMES = new String[124];
+	private static final LdapErrorCategory[] CATEGORIES = new LdapErrorCategory[NAMES.length];
+
+	// the sub-codes of the error 49, sorted, and their statuses
+	private static final int[] SUB_CODES = { 0x525, 0x52e, 0x52f, 0x530, 0x531, 0x532, 0x533, 0x701, 0x773, 0x775 };
+	private static final AuthenticationStatus[] SUB_CODE_STATUSES = { AuthenticationStatus.USER_NOT_FOUND,
+			AuthenticationStatus.INVALID_CREDENTIALS, AuthenticationStatus.ACCOUNT_RESTRICTED,
+			AuthenticationStatus.INVALID_LOGON_HOURS, AuthenticationStatus.INVALID_WORKSTATION,
+			AuthenticationStatus.PASSWORD_EXPIRED, AuthenticationStatus.ACCOUNT_DISABLED,
+			AuthenticationStatus.ACCOUNT_EXPIRED, AuthenticationStatus.PASSWORD_MUST_CHANGE,
+			AuthenticationStatus.ACCOUNT_LOCKED };
+
+	static {
+		NAMES[0] = "LDAP_SUCCESS";
+		NAMES[1] = "LDAP_OPERATIONS_ERROR";
+		NAMES[2] = "LDAP_PROTOCOL_ERROR";
+		NAMES[3] = "LDAP_TIMELIMIT_EXCEEDED";
+		NAMES[4] = "LDAP_SIZELIMIT_EXCEEDED";
+		NAMES[5] = "LDAP_COMPARE_FALSE";
+		NAMES[6] = "LDAP_COMPARE_TRUE";
+		NAMES[7] = "LDAP_AUTH_METHOD_NOT_SUPPORTED";
+		NAMES[8] = "LDAP_STRONG_AUTH_REQUIRED";
+		NAMES[9] = "reserved.";
+		NAMES[10] = "LDAP_REFERRAL";
+		NAMES[11] = "LDAP_ADMINLIMIT_EXCEEDED";
+		NAMES[12] = "LDAP_UNAVAILABLE_CRITICAL_EXTENSION";
+		NAMES[13] = "LDAP_CONFIDENTIALITY_REQUIRED";
+		NAMES[14] = "LDAP_SASL_BIND_IN_PROGRESS";
+		NAMES[15] = "Not used.";
+		NAMES[16] = "LDAP_NO_SUCH_ATTRIBUTE";
+		NAMES[17] = "LDAP_UNDEFINED_TYPE";
+		NAMES[18] = "LDAP_INAPPROPRIATE_MATCHING";
+		NAMES[19] = "LDAP_CONSTRAINT_VIOLATION";
+		NAMES[20] = "LDAP_TYPE_OR_VALUE_EXISTS";
+		NAMES[21] = "LDAP_INVALID_SYNTAX";
+		Arrays.fill(NAMES, 22, 32, "Not used.");
+		NAMES[32] = "LDAP_NO_SUCH_OBJECT";
+		NAMES[33] = "LDAP_ALIAS_PROBLEM";
+		NAMES[34] = "LDAP_INVALID_DN_SYNTAX";
+		NAMES[35] = "LDAP_IS_LEAF(Some Server RESERVED)";
+		NAMES[36] = "LDAP_ALIAS_DEREF_PROBLEM";
+		Arrays.fill(NAMES, 37, 48, "reserved.");
+		NAMES[48] = "LDAP_INAPPROPRIATE_AUTH";
+		NAMES[49] = "LDAP_INVALID_CREDENTIALS";
+		NAMES[50] = "LDAP_INSUFFICIENT_ACCESS";
+		NAMES[51] = "LDAP_BUSY";
+		NAMES[52] = "LDAP_UNAVAILABLE";
+		NAMES[53] = "LDAP_UNWILLING_TO_PERFORM";
+		NAMES[54] = "LDAP_LOOP_DETECT";
+		Arrays.fill(NAMES, 55, 64, "reserved.");
+		NAMES[64] = "LDAP_NAMING_VIOLATION";
+		NAMES[65] = "LDAP_OBJECT_CLASS_VIOLATION";
+		NAMES[66] = "LDAP_NOT_ALLOWED_ON_NONLEAF";
+		NAMES[67] = "LDAP_NOT_ALLOWED_ON_RDN";
+		NAMES[68] = "LDAP_ALREADY_EXISTS";
+		NAMES[69] = "LDAP_NO_OBJECT_CLASS_MODS";
+		NAMES[70] = "LDAP_RESULTS_TOO_LARGE";
+		NAMES[71] = "LDAP_AFFECTS_MULTIPLE_DSAS";
+		Arrays.fill(NAMES, 72, 80, "reserved.");
+		NAMES[80] = "LDAP_OTHER";
+		NAMES[81] = "LDAP_SERVER_DOWN";
+		NAMES[82] = "LDAP_LOCAL_ERROR";
+		NAMES[83] = "LDAP_ENCODING_ERROR";
+		NAMES[84] = "LDAP_DECODING_ERROR";
+		NAMES[85] = "LDAP_TIMEOUT";
+		NAMES[86] = "LDAP_AUTH_UNKNOWN";
+		NAMES[87] = "LDAP_FILTER_ERROR";
+		NAMES[88] = "LDAP_USER_CANCELLED";
+		NAMES[89] = "LDAP_PARAM_ERROR";
+		NAMES[90] = "LDAP_NO_MEMORY";
+		NAMES[91] = "LDAP_CONNECT_ERROR";
+		NAMES[92] = "LDAP_NOT_SUPPORTED";
+		NAMES[93] = "LDAP_CONTROL_NOT_FOUND";
+		NAMES[94] = "LDAP_NO_RESULTS_RETURNED";
+		NAMES[95] = "LDAP_MORE_RESULTS_TO_RETURN";
+		NAMES[96] = "LDAP_CLIENT_LOOP";
+		NAMES[97] = "LDAP_REFERRAL_LIMIT_EXCEEDED";
+		NAMES[100] = "INVALID_RESPONSE";
+		NAMES[101] = "AMBIGUOUS_RESPONSE";
+		NAMES[112] = "TLS_NOT_SUPPORTED";
+		NAMES[113] = "LCUPRESOURCESEXHAUSTED";
+		NAMES[114] = "LCUPSECURITYVIOLATION";
+		NAMES[115] = "LCUPINVALIDDATA";
+		NAMES[116] = "LCUPUNSUPPORTEDSCHEME";
+		NAMES[117] = "LCUPRELOADREQUIRED";
+		NAMES[118] = "CANCELED";
+		NAMES[119] = "NOSUCHOPERATION";
+		NAMES[120] = "TOOLATE";
+		NAMES[121] = "CANNOTCANCEL";
+		NAMES[122] = "ASSERTIONFAILED";
+		NAMES[123] = "AUTHORIZATIONDENIED";
+
+		Arrays.fill(CATEGORIES, LdapErrorCategory.OTHER);
+		CATEGORIES[0] = LdapErrorCategory.SUCCESS;
+		CATEGORIES[3] = LdapErrorCategory.RETRYABLE;
+		CATEGORIES[48] = LdapErrorCategory.AUTHENTICATION_FAILURE;
+		CATEGORIES[49] = LdapErrorCategory.AUTHENTICATION_FAILURE;
+		CATEGORIES[51] = LdapErrorCategory.RETRYABLE;
+		CATEGORIES[52] = LdapErrorCategory.RETRYABLE;
+		CATEGORIES[81] = LdapErrorCategory.RETRYABLE;
+		CATEGORIES[85] = LdapErrorCategory.RETRYABLE;
+		CATEGORIES[91] = LdapErrorCategory.RETRYABLE;
+	}
+
+	// the bundles already loaded, by locale
+	private static final Map<Locale, ResourceBundle> BUNDLES = new ConcurrentHashMap<Locale, ResourceBundle>();
+
+	private final int resultCode;
+	private final int subCode;
+	private final LdapErrorCategory category;
+
+	// the DSID is cut from the message only when asked
+	private final String message;
+	private final int dsidStart;
+	private final int dsidEnd;
+
+	private LdapError(int resultCode, int subCode, LdapErrorCategory category, String message, int dsidStart,
+			int dsidEnd) {
+		this.resultCode = resultCode;
+		this.subCode = subCode;
+		this.category = category;
+		this.message = message;
+		this.dsidStart = dsidStart;
+		this.dsidEnd = dsidEnd;
+	}
+
+	/**
+	 * Read an LDAP error message.
+	 *
+	 * @param message the error message, can be null
+	 *
+	 * @return the error, with a result code of -1 if <b>message</b> has none
+	 */
+	public static LdapError parse(String message) {
+		return parse(message, LdapErrorCategory.OTHER);
+	}
+
+	/**
+	 * Read the message of an exception. An exception without a result code is
+	 * classified by its type: a broken connection or a read timeout is
+	 * {@link LdapErrorCategory#RETRYABLE} and an {@link AuthenticationException}
+	 * is {@link LdapErrorCategory#AUTHENTICATION_FAILURE}.
+	 *
+	 * @param e the exception
+	 *
+	 * @return the error
+	 */
+	public static LdapError of(NamingException e) {
+		LdapErrorCategory category = LdapErrorCategory.OTHER;
+		if (DirContextPool.isBrokenConnection(e))
+			category = LdapErrorCategory.RETRYABLE;
+		else if (e instanceof AuthenticationException)
+			category = LdapErrorCategory.AUTHENTICATION_FAILURE;
+		return parse(e.getMessage(), category);
+	}
+
+	private static LdapError parse(String message, LdapErrorCategory withoutCode) {
+		int resultCode = -1;
+		int subCode = -1;
+		int dsidStart = -1;
+		int dsidEnd = -1;
+
+		int at = message == null ? -1 : message.indexOf("error code ");
+		if (at >= 0) {
+			// each part is searched after the previous one
+			at += "error code ".length();
+			int end = at;
+			int value = 0;
+			while (end < message.length() && end - at < 9 && isDigit(message.charAt(end)))
+				value = value * 10 + message.charAt(end++) - '0';
+			if (end > at)
+				resultCode = value;
+			at = end;
+
+			dsidStart = message.indexOf("DSID-", at);
+			if (dsidStart >= 0) {
+				end = dsidStart + "DSID-".length();
+				while (end < message.length() && Character.digit(message.charAt(end), 16) >= 0)
+					end++;
+				dsidEnd = end;
+				at = end;
+			}
+
+			int dataAt = message.indexOf("data ", at);
+			if (dataAt >= 0) {
+				int start = dataAt + "data ".length();
+				end = start;
+				int hex = 0;
+				int digit;
+				while (end < message.length() && end - start < 8
+						&& (digit = Character.digit(message.charAt(end), 16)) >= 0) {
+					hex = hex << 4 | digit;
+					end++;
+				}
+				if (end > start)
+					subCode = hex;
+			}
+		}
+
+		LdapErrorCategory category = withoutCode;
+		if (resultCode >= 0 && resultCode < CATEGORIES.length)
+			category = resultCode == INVALID_CREDENTIALS && subCode == ACCOUNT_LOCKED ? LdapErrorCategory.LOCKOUT
+					: CATEGORIES[resultCode];
+		else if (resultCode >= 0)
+			category = LdapErrorCategory.OTHER;
+
+		return new LdapError(resultCode, subCode, category, message, dsidStart, dsidEnd);
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	/**
+	 * @param resultCode the LDAP result code
+	 *
+	 * @return the name of the result code, e.g.: <b>LDAP_NO_SUCH_OBJECT</b> for
+	 *         <b>32</b>, or null if the code is unknown.
+	 */
+	static String name(int resultCode) {
+		return resultCode >= 0 && resultCode < NAMES.length ? NAMES[resultCode] : null;
+	}
+
+	/**
+	 * @return the LDAP result code, e.g.: <b>49</b>, or -1 if the message has
+	 *         none.
+	 */
+	public int getResultCode() {
+		return resultCode;
+	}
+
+	/**
+	 * @return the name of the result code, e.g.: <b>LDAP_INVALID_CREDENTIALS</b>,
+	 *         or null.
+	 */
+	public String getName() {
+		return name(resultCode);
+	}
+
+	/**
+	 * @return the Active Directory sub-code in lower case hexadecimal without
+	 *         leading zeros, e.g.: <b>52e</b>, or null if the message has none.
+	 */
+	public String getSubCode() {
+		return subCode < 0 ? null : Integer.toHexString(subCode);
+	}
+
+	/**
+	 * @return the place of the error in the Active Directory code, e.g.:
+	 *         <b>DSID-0C090439</b>, or null.
+	 */
+	public String getDsid() {
+		return dsidStart < 0 ? null : message.substring(dsidStart, dsidEnd);
+	}
+
+	/**
+	 * @return what can be done about the error.
+	 */
+	public LdapErrorCategory getCategory() {
+		return category;
+	}
+
+	/**
+	 * @return true if the request can be made again.
+	 */
+	public boolean isRetryable() {
+		return category == LdapErrorCategory.RETRYABLE;
+	}
+
+	/**
+	 * @return true if a bind failed because of the user, a locked account
+	 *         included.
+	 */
+	public boolean isAuthenticationFailure() {
+		return category == LdapErrorCategory.AUTHENTICATION_FAILURE || category == LdapErrorCategory.LOCKOUT;
+	}
+
+	/**
+	 * @return true if a bind failed because the account is locked.
+	 */
+	public boolean isLockout() {
+		return category == LdapErrorCategory.LOCKOUT;
+	}
+
+	/**
+	 * @return the reason of a bind failure, {@link AuthenticationStatus#OTHER} if
+	 *         the error is not an error 49 with a known sub-code.
+	 */
+	public AuthenticationStatus getAuthenticationStatus() {
+		if (resultCode != INVALID_CREDENTIALS)
+			return AuthenticationStatus.OTHER;
+
+		int index = Arrays.binarySearch(SUB_CODES, subCode);
+		return index < 0 ? AuthenticationStatus.OTHER : SUB_CODE_STATUSES[index];
+	}
+
+	/**
+	 * Get a friendly message from the <b>LdapErrorMessages</b> resource bundle,
+	 * english by default and portuguese (pt_BR).
+	 *
+	 * @param locale the language of the message
+	 *
+	 * @return the message of the sub-code or of the result code, the name of the
+	 *         result code if the bundle has no message, or null if the error has
+	 *         no result code.
+	 */
+	public String getMessage(Locale locale) {
+		if (resultCode < 0)
+			return null;
+
+		try {
+			ResourceBundle bundle = BUNDLES.get(locale);
+			if (bundle == null) {
+				bundle = ResourceBundle.getBundle(BUNDLE, locale, LdapError.class.getClassLoader(), NO_FALLBACK);
+				BUNDLES.put(locale, bundle);
+			}
+			if (subCode >= 0) {
+				String key = resultCode + "." + Integer.toHexString(subCode);
+				if (bundle.containsKey(key))
+					return bundle.getString(key);
+			}
+			String key = Integer.toString(resultCode);
+			if (bundle.containsKey(key))
+				return bundle.getString(key);
+		} catch (MissingResourceException e) {
+			// the name is used
+		}
+		return getName();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("LdapError[resultCode=%d, name=%s, subCode=%s, dsid=%s, category=%s]", resultCode,
+				getName(), getSubCode(), getDsid(), category);
+	}
+}
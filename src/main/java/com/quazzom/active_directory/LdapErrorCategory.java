@@ -0,0 +1,26 @@
+package com.quazzom.active_directory;
+
+/**
+ * What a caller can do about an {@link LdapError}.
+ *
+ */
+public enum LdapErrorCategory {
+
+	/** Not an error, the LDAP result code 0. */
+	SUCCESS,
+
+	/**
+	 * The server is busy, unavailable or didn't answer in time, the request can
+	 * be made again, e.g.: to another domain controller.
+	 */
+	RETRYABLE,
+
+	/** The bind failed because of the user credentials or account. */
+	AUTHENTICATION_FAILURE,
+
+	/** The bind failed because the account is locked, sub-code 775. */
+	LOCKOUT,
+
+	/** Any other error, the same request fails again. */
+	OTHER
+}
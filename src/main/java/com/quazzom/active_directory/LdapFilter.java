@@ -0,0 +1,88 @@
+package com.quazzom.active_directory;
+
+import java.util.Collection;
+
+/**
+ * Helpers to build LDAP search filters (RFC 4515).
+ *
+ */
+final class LdapFilter {
+
+	private LdapFilter() {
+	}
+
+	/**
+	 * Escape the characters with a special meaning in a filter value, so the value
+	 * is matched literally. E.g.: the DN <b>CN=Smith\, John,OU=Sales</b> becomes
+	 * <b>CN=Smith\5c, John,OU=Sales</b>.
+	 *
+	 * @param value a filter value
+	 *
+	 * @return the escaped value
+	 */
+	static String escape(String value) {
+		StringBuilder escaped = null;
+
+		for (int count = 0; count < value.length(); count++) {
+			char character = value.charAt(count);
+			String replacement;
+
+			switch (character) {
+			case '\\':
+				replacement = "\\5c";
+				break;
+			case '*':
+				replacement = "\\2a";
+				break;
+			case '(':
+				replacement = "\\28";
+				break;
+			case ')':
+				replacement = "\\29";
+				break;
+			case '\0':
+				replacement = "\\00";
+				break;
+			default:
+				replacement = null;
+			}
+
+			// most values have nothing to escape, so nothing is copied
+			if (replacement != null && escaped == null)
+				escaped = new StringBuilder(value.length() + 8).append(value, 0, count);
+
+			if (escaped != null) {
+				if (replacement != null)
+					escaped.append(replacement);
+				else
+					escaped.append(character);
+			}
+		}
+
+		return escaped == null ? value : escaped.toString();
+	}
+
+	/**
+	 * Build a filter matching any of the values of an attribute. E.g.: for
+	 * <b>memberOf</b> and [a, b] returns <b>(|(memberOf=a)(memberOf=b))</b>.
+	 *
+	 * @param attribute the attribute name
+	 * @param values    the values, they are escaped
+	 *
+	 * @return the filter
+	 */
+	static String anyOf(String attribute, Collection<String> values) {
+		StringBuilder filter = new StringBuilder();
+
+		if (values.size() != 1)
+			filter.append("(|");
+
+		for (String value : values)
+			filter.append('(').append(attribute).append('=').append(escape(value)).append(')');
+
+		if (values.size() != 1)
+			filter.append(')');
+
+		return filter.toString();
+	}
+}
@@ -0,0 +1,129 @@
+package com.quazzom.active_directory;
+
+/**
+ * Settings of the load balancing over many domain controllers, see
+ * {@link ActiveDirectory#ActiveDirectory(java.util.List, String, String, String, String)}.
+ * <p>
+ * The defaults are: strategy EWMA_LATENCY, failureThreshold 3, ejectionMillis
+ * 30000, maxEjectionMillis 300000, probeIntervalMillis 10000 and
+ * latencyDecayMillis 10000.
+ *
+ */
+public class LoadBalancingConfig {
+
+	private LoadBalancingStrategy strategy = LoadBalancingStrategy.EWMA_LATENCY;
+	private int failureThreshold = 3;
+	private long ejectionMillis = 30000;
+	private long maxEjectionMillis = 300000;
+	private long probeIntervalMillis = 10000;
+	private long latencyDecayMillis = 10000;
+
+	/**
+	 * @return how the requests are spread over the domain controllers.
+	 */
+	public LoadBalancingStrategy getStrategy() {
+		return strategy;
+	}
+
+	/**
+	 * @param strategy how the requests are spread over the domain controllers.
+	 */
+	public void setStrategy(LoadBalancingStrategy strategy) {
+		if (strategy == null)
+			throw new IllegalArgumentException("strategy cannot be null.");
+		this.strategy = strategy;
+	}
+
+	/**
+	 * @return the consecutive connection failures that eject a domain controller,
+	 *         opening its circuit breaker.
+	 */
+	public int getFailureThreshold() {
+		return failureThreshold;
+	}
+
+	/**
+	 * @param failureThreshold the consecutive connection failures that eject a
+	 *                         domain controller.
+	 */
+	public void setFailureThreshold(int failureThreshold) {
+		if (failureThreshold < 1)
+			throw new IllegalArgumentException("failureThreshold must be greater than zero.");
+		this.failureThreshold = failureThreshold;
+	}
+
+	/**
+	 * @return how long an ejected domain controller waits before a trial request
+	 *         or probe (half-open circuit).
+	 */
+	public long getEjectionMillis() {
+		return ejectionMillis;
+	}
+
+	/**
+	 * @param ejectionMillis how long an ejected domain controller waits before a
+	 *                       trial request or probe, doubled after each failed
+	 *                       trial.
+	 */
+	public void setEjectionMillis(long ejectionMillis) {
+		if (ejectionMillis <= 0)
+			throw new IllegalArgumentException("ejectionMillis must be greater than zero.");
+		this.ejectionMillis = ejectionMillis;
+	}
+
+	/**
+	 * @return the longest wait of an ejected domain controller between trials.
+	 */
+	public long getMaxEjectionMillis() {
+		return maxEjectionMillis;
+	}
+
+	/**
+	 * @param maxEjectionMillis the longest wait of an ejected domain controller
+	 *                          between trials.
+	 */
+	public void setMaxEjectionMillis(long maxEjectionMillis) {
+		if (maxEjectionMillis <= 0)
+			throw new IllegalArgumentException("maxEjectionMillis must be greater than zero.");
+		this.maxEjectionMillis = maxEjectionMillis;
+	}
+
+	/**
+	 * @return the time between the health probes (a rootDSE read) of the domain
+	 *         controllers.
+	 */
+	public long getProbeIntervalMillis() {
+		return probeIntervalMillis;
+	}
+
+	/**
+	 * @param probeIntervalMillis the time between the health probes (a rootDSE
+	 *                            read) of the domain controllers. A probe readmits
+	 *                            an ejected domain controller and measures the
+	 *                            latency of an idle one.
+	 */
+	public void setProbeIntervalMillis(long probeIntervalMillis) {
+		if (probeIntervalMillis <= 0)
+			throw new IllegalArgumentException("probeIntervalMillis must be greater than zero.");
+		this.probeIntervalMillis = probeIntervalMillis;
+	}
+
+	/**
+	 * @return the time for the weight of a latency in the moving average to fall
+	 *         to 37%.
+	 */
+	public long getLatencyDecayMillis() {
+		return latencyDecayMillis;
+	}
+
+	/**
+	 * @param latencyDecayMillis the time for the weight of a latency in the moving
+	 *                           average to fall to 37% (1/e). A latency above the
+	 *                           average replaces it at once.
+	 */
+	public void setLatencyDecayMillis(long latencyDecayMillis) {
+		if (latencyDecayMillis <= 0)
+			throw new IllegalArgumentException("latencyDecayMillis must be greater than zero.");
+		this.latencyDecayMillis = latencyDecayMillis;
+	}
+}
@@ -0,0 +1,28 @@
+package com.quazzom.active_directory;
+
+/**
+ * How the requests are spread over the domain controllers, see
+ * {@link LoadBalancingConfig#setStrategy(LoadBalancingStrategy)}. The domain
+ * controllers ejected after failures receive no requests.
+ *
+ */
+public enum LoadBalancingStrategy {
+
+	/**
+	 * Each domain controller in turn.
+	 */
+	ROUND_ROBIN,
+
+	/**
+	 * The domain controller with fewer requests in progress, of two chosen at
+	 * random.
+	 */
+	LEAST_OUTSTANDING,
+
+	/**
+	 * The domain controller with the lower moving average of the latency
+	 * multiplied by its requests in progress, of two chosen at random. A slow
+	 * domain controller gets fewer requests.
+	 */
+	EWMA_LATENCY
+}
@@ -0,0 +1,161 @@
+package com.quazzom.active_directory;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import javax.naming.NamingException;
+
+/**
+ * Keeps a {@link BloomFilter} of the <b>sAMAccountName</b> of all the users, to
+ * answer the lookups of the users that don't exist (typos, credential stuffing)
+ * without a request.
+ * <p>
+ * The first lookup starts a load of the filter in background, the lookups go
+ * to the Active Directory until it ends. The filter is loaded again after the
+ * refresh interval. A name added after the start of a load (e.g.: a new user,
+ * see {@link #add(String)}) is reported present until the next load.
+ *
+ */
+class LocalExistenceFilter {
+
+	/**
+	 * Loads the names of all the users.
+	 */
+	interface Loader {
+		/**
+		 * @param names receives the names
+		 */
+		void load(Consumer<String> names) throws NamingException, ActiveDirectoryException;
+	}
+
+	// a failed load is tried again sooner than the refresh interval
+	private static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+	private final Loader loader;
+	private final double falsePositiveRate;
+	private final long refreshIntervalNanos;
+	private final Executor refreshExecutor;
+	private final LongSupplier ticker;
+
+	private final AtomicBoolean refreshing = new AtomicBoolean();
+	private final AtomicLong changes = new AtomicLong();
+
+	// the names added after the start of the load of the filter
+	private final Map<String, Long> added = new ConcurrentHashMap<String, Long>();
+	private volatile long invalidatedAll;
+
+	private volatile Loaded loaded;
+	private volatile long nextRefreshAt;
+
+	/**
+	 * A filter and the changes made before its load started.
+	 */
+	private static final class Loaded {
+		final BloomFilter filter;
+		final long changes;
+
+		Loaded(BloomFilter filter, long changes) {
+			this.filter = filter;
+			this.changes = changes;
+		}
+	}
+
+	/**
+	 * @param config          the filter settings
+	 * @param loader          loads the names
+	 * @param refreshExecutor runs the background loads
+	 */
+	LocalExistenceFilter(ExistenceFilterConfig config, Loader loader, Executor refreshExecutor) {
+		this(config, loader, refreshExecutor, System::nanoTime);
+	}
+
+	LocalExistenceFilter(ExistenceFilterConfig config, Loader loader, Executor refreshExecutor,
+			LongSupplier ticker) {
+		this.loader = loader;
+		this.falsePositiveRate = config.getFalsePositiveRate();
+		this.refreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getRefreshIntervalMillis());
+		this.refreshExecutor = refreshExecutor;
+		this.ticker = ticker;
+		this.nextRefreshAt = ticker.getAsLong();
+	}
+
+	/**
+	 * @param username the user name
+	 *
+	 * @return true if the user surely doesn't exist, false if it must be searched
+	 *         in the Active Directory
+	 */
+	boolean isAbsent(String username) {
+		if (ticker.getAsLong() - nextRefreshAt >= 0 && refreshing.compareAndSet(false, true))
+			refresh();
+
+		Loaded current = loaded;
+		if (current == null || invalidatedAll > current.changes || !LocalObjectIndex.isLiteral(username))
+			return false;
+
+		String key = username.toLowerCase(Locale.ROOT);
+		return !current.filter.mightContain(key) && !added.containsKey(key);
+	}
+
+	/**
+	 * The user is reported present until the next load, e.g.: it was just
+	 * created.
+	 *
+	 * @param username the user name
+	 */
+	void add(String username) {
+		added.put(username.toLowerCase(Locale.ROOT), changes.incrementAndGet());
+	}
+
+	/**
+	 * All the users are searched in the Active Directory until the next load,
+	 * which starts with the next lookup.
+	 */
+	void invalidateAll() {
+		invalidatedAll = changes.incrementAndGet();
+		nextRefreshAt = ticker.getAsLong();
+	}
+
+	/**
+	 * @return the filter used or null
+	 */
+	BloomFilter filter() {
+		Loaded current = loaded;
+		return current == null ? null : current.filter;
+	}
+
+	private void refresh() {
+		try {
+			refreshExecutor.execute(() -> {
+				try {
+					load();
+				} catch (NamingException | ActiveDirectoryException | RuntimeException e) {
+					// the old filter is kept
+					nextRefreshAt = ticker.getAsLong() + Math.min(RETRY_NANOS, refreshIntervalNanos);
+				} finally {
+					refreshing.set(false);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			refreshing.set(false);
+		}
+	}
+
+	private void load() throws NamingException, ActiveDirectoryException {
+		long startedChanges = changes.get();
+		BloomFilter.Builder builder = new BloomFilter.Builder();
+		loader.load(name -> builder.add(name.toLowerCase(Locale.ROOT)));
+
+		loaded = new Loaded(builder.build(falsePositiveRate), startedChanges);
+		added.values().removeIf(change -> change <= startedChanges);
+		nextRefreshAt = ticker.getAsLong() + refreshIntervalNanos;
+	}
+}
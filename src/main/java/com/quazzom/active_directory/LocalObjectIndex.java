@@ -0,0 +1,148 @@
+package com.quazzom.active_directory;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+import javax.naming.NamingException;
+
+/**
+ * Keeps a {@link SubstringIndex} of the objects of a kind (the users or the
+ * groups) up to date.
+ * <p>
+ * The index is loaded by the first search. After the refresh interval a search
+ * still uses the loaded index and starts a load in background, so the searches
+ * never wait for a refresh. A directory above the memory budget is not indexed
+ * and the load is only tried again after the refresh interval. A failed load
+ * doesn't fail the searches, they go to the Active Directory until a load
+ * succeeds.
+ *
+ */
+class LocalObjectIndex {
+
+	/**
+	 * Loads all the names of the objects.
+	 */
+	interface Loader {
+		/**
+		 * @param maxMemoryBytes the memory budget of the index
+		 *
+		 * @return the index or null if it doesn't fit in the budget
+		 */
+		SubstringIndex load(long maxMemoryBytes) throws NamingException, ActiveDirectoryException;
+	}
+
+	// a failed load is tried again sooner than the refresh interval
+	private static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+	private final Loader loader;
+	private final long refreshIntervalNanos;
+	private final long maxMemoryBytes;
+	private final Executor refreshExecutor;
+	private final LongSupplier ticker;
+
+	private final Object loadLock = new Object();
+	private final AtomicBoolean refreshing = new AtomicBoolean();
+
+	private volatile SubstringIndex index;
+	private volatile boolean loaded; // true after the first load, even a failed one
+	private volatile long nextRefreshAt;
+
+	/**
+	 * @param config          the index settings
+	 * @param loader          loads the index
+	 * @param refreshExecutor runs the background loads
+	 */
+	LocalObjectIndex(SubstringIndexConfig config, Loader loader, Executor refreshExecutor) {
+		this(config, loader, refreshExecutor, System::nanoTime);
+	}
+
+	LocalObjectIndex(SubstringIndexConfig config, Loader loader, Executor refreshExecutor, LongSupplier ticker) {
+		this.loader = loader;
+		this.refreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getRefreshIntervalMillis());
+		this.maxMemoryBytes = config.getMaxMemoryBytes();
+		this.refreshExecutor = refreshExecutor;
+		this.ticker = ticker;
+	}
+
+	/**
+	 * Search the names containing <b>part</b>.
+	 *
+	 * @param part a part of a name
+	 *
+	 * @return the values of the names found, or null if the search must go to the
+	 *         Active Directory: the directory is above the memory budget, the
+	 *         load failed or <b>part</b> has characters of a filter, e.g.: a
+	 *         <b>*</b>
+	 */
+	List<String> search(String part) {
+		if (!isLiteral(part))
+			return null;
+
+		if (!loaded) {
+			synchronized (loadLock) {
+				if (!loaded)
+					firstLoad();
+			}
+		} else if (ticker.getAsLong() - nextRefreshAt >= 0 && refreshing.compareAndSet(false, true)) {
+			refresh();
+		}
+
+		SubstringIndex current = index;
+		return current == null ? null : current.search(part);
+	}
+
+	/**
+	 * @return the number of names in the index, -1 if there is no index
+	 */
+	int size() {
+		SubstringIndex current = index;
+		return current == null ? -1 : current.size();
+	}
+
+	private void firstLoad() {
+		try {
+			load();
+		} catch (NamingException | ActiveDirectoryException | RuntimeException e) {
+			// the searches go to the Active Directory, the next loads are in background
+			nextRefreshAt = ticker.getAsLong() + Math.min(RETRY_NANOS, refreshIntervalNanos);
+		}
+		loaded = true;
+	}
+
+	private void load() throws NamingException, ActiveDirectoryException {
+		index = loader.load(maxMemoryBytes);
+		nextRefreshAt = ticker.getAsLong() + refreshIntervalNanos;
+	}
+
+	private void refresh() {
+		try {
+			refreshExecutor.execute(() -> {
+				try {
+					load();
+				} catch (NamingException | ActiveDirectoryException | RuntimeException e) {
+					// the old index is kept
+					nextRefreshAt = ticker.getAsLong() + Math.min(RETRY_NANOS, refreshIntervalNanos);
+				} finally {
+					refreshing.set(false);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			refreshing.set(false);
+		}
+	}
+
+	// the filter characters of RFC 4515, the Active Directory search keeps their
+	// meaning
+	static boolean isLiteral(String part) {
+		for (int index = 0; index < part.length(); index++) {
+			char c = part.charAt(index);
+			if (c == '*' || c == '(' || c == ')' || c == '\\' || c == '\0')
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,204 @@
+package com.quazzom.active_directory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import javax.naming.NamingException;
+
+/**
+ * Keeps a {@link DirectorySnapshot} of the groups of the users and of the
+ * members of the groups, saved in a file between the restarts.
+ * <p>
+ * At the start the snapshot file is mapped in memory and answers the lookups
+ * at once, while the first lookup starts a load from the Active Directory in
+ * background. After each load the new snapshot answers the lookups and is
+ * written to the file for the next start; a load is made again after the
+ * refresh interval. A user or a group not in the snapshot is searched in the
+ * Active Directory.
+ *
+ */
+class LocalSnapshot {
+
+	/**
+	 * Loads the groups and the members from the Active Directory.
+	 */
+	interface Loader {
+		/**
+		 * @return the snapshot
+		 */
+		DirectorySnapshot load() throws NamingException, ActiveDirectoryException;
+	}
+
+	// a failed load is tried again sooner than the refresh interval, the snapshot
+	// read from the file can be old
+	private static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+	private final Path file;
+	private final Loader loader;
+	private final long refreshIntervalNanos;
+	private final Executor refreshExecutor;
+	private final LongSupplier ticker;
+
+	private final AtomicBoolean refreshing = new AtomicBoolean();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	// the names invalidated after the start of the load of the snapshot are
+	// searched in the Active Directory
+	private final Map<String, Long> invalidatedUsers = new ConcurrentHashMap<String, Long>();
+	private final Map<String, Long> invalidatedGroups = new ConcurrentHashMap<String, Long>();
+	private volatile long invalidatedAll;
+
+	private volatile Loaded loaded;
+	private volatile long nextRefreshAt;
+
+	/**
+	 * A snapshot and the invalidations made before its load started.
+	 */
+	private static final class Loaded {
+		final DirectorySnapshot snapshot;
+		final long invalidations;
+
+		Loaded(DirectorySnapshot snapshot, long invalidations) {
+			this.snapshot = snapshot;
+			this.invalidations = invalidations;
+		}
+	}
+
+	/**
+	 * @param config          the snapshot settings
+	 * @param loader          loads the snapshot
+	 * @param refreshExecutor runs the background loads
+	 */
+	LocalSnapshot(SnapshotConfig config, Loader loader, Executor refreshExecutor) {
+		this(config, loader, refreshExecutor, System::nanoTime);
+	}
+
+	LocalSnapshot(SnapshotConfig config, Loader loader, Executor refreshExecutor, LongSupplier ticker) {
+		this.file = config.getFile();
+		this.loader = loader;
+		this.refreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getRefreshIntervalMillis());
+		this.refreshExecutor = refreshExecutor;
+		this.ticker = ticker;
+		this.nextRefreshAt = ticker.getAsLong();
+
+		try {
+			if (Files.exists(file))
+				loaded = new Loaded(DirectorySnapshot.open(file), 0);
+		} catch (IOException e) {
+			// a corrupt or unreadable file is replaced after the first load
+		}
+	}
+
+	/**
+	 * @param username the user name
+	 *
+	 * @return the common names of the groups of the user, or null if the user
+	 *         must be searched in the Active Directory
+	 */
+	List<String> userGroups(String username) {
+		Loaded current = current(username, invalidatedUsers);
+		return current == null ? null : current.snapshot.userGroups(username);
+	}
+
+	/**
+	 * @param groupName the group name
+	 *
+	 * @return the common names of the members of the group, or null if the group
+	 *         must be searched in the Active Directory
+	 */
+	List<String> groupMembers(String groupName) {
+		Loaded current = current(groupName, invalidatedGroups);
+		return current == null ? null : current.snapshot.groupMembers(groupName);
+	}
+
+	/**
+	 * The user is searched in the Active Directory until the next load.
+	 *
+	 * @param username the user name
+	 */
+	void invalidateUser(String username) {
+		invalidatedUsers.put(username.toLowerCase(Locale.ROOT), invalidations.incrementAndGet());
+	}
+
+	/**
+	 * The group is searched in the Active Directory until the next load.
+	 *
+	 * @param groupName the group name
+	 */
+	void invalidateGroup(String groupName) {
+		invalidatedGroups.put(groupName.toLowerCase(Locale.ROOT), invalidations.incrementAndGet());
+	}
+
+	/**
+	 * Everything is searched in the Active Directory until the next load, which
+	 * starts with the next lookup.
+	 */
+	void invalidateAll() {
+		invalidatedAll = invalidations.incrementAndGet();
+		nextRefreshAt = ticker.getAsLong();
+	}
+
+	/**
+	 * @return the snapshot used or null
+	 */
+	DirectorySnapshot snapshot() {
+		Loaded current = loaded;
+		return current == null ? null : current.snapshot;
+	}
+
+	private Loaded current(String name, Map<String, Long> invalidated) {
+		if (ticker.getAsLong() - nextRefreshAt >= 0 && refreshing.compareAndSet(false, true))
+			refresh();
+
+		Loaded current = loaded;
+		if (current == null || invalidatedAll > current.invalidations)
+			return null;
+
+		Long invalidation = invalidated.get(name.toLowerCase(Locale.ROOT));
+		return invalidation != null && invalidation > current.invalidations ? null : current;
+	}
+
+	private void refresh() {
+		try {
+			refreshExecutor.execute(() -> {
+				try {
+					load();
+				} catch (NamingException | ActiveDirectoryException | RuntimeException e) {
+					// the old snapshot is kept
+					nextRefreshAt = ticker.getAsLong() + Math.min(RETRY_NANOS, refreshIntervalNanos);
+				} finally {
+					refreshing.set(false);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			refreshing.set(false);
+		}
+	}
+
+	private void load() throws NamingException, ActiveDirectoryException {
+		long startedInvalidations = invalidations.get();
+		DirectorySnapshot snapshot = loader.load();
+
+		loaded = new Loaded(snapshot, startedInvalidations);
+		invalidatedUsers.values().removeIf(invalidation -> invalidation <= startedInvalidations);
+		invalidatedGroups.values().removeIf(invalidation -> invalidation <= startedInvalidations);
+		nextRefreshAt = ticker.getAsLong() + refreshIntervalNanos;
+
+		try {
+			snapshot.write(file);
+		} catch (IOException e) {
+			// the snapshot in memory is used, the next start reads the old file
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package com.quazzom.active_directory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import javax.naming.NamingException;
+
+/**
+ * A thread-safe cache of search results with a time to live per entry and a
+ * maximum number of entries.
+ * <p>
+ * A hit is a lock-free read of a {@link ConcurrentHashMap}, no LDAP round trip
+ * is made. Above the maximum size the least recently used entries are evicted
+ * in batches, so the cost of the eviction is spread over many loads. A hit on
+ * an entry close to expire (see {@link CacheConfig#getRefreshAheadRatio()})
+ * reloads it in background, so the hot keys never expire.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+class LookupCache<K, V> {
+
+	/**
+	 * Loads the value of a key from the Active Directory.
+	 */
+	interface Loader<K, V> {
+		V load(K key) throws NamingException, ActiveDirectoryException;
+	}
+
+	private static final class Entry<V> {
+		final V value;
+		final long loadedAt;
+		volatile long accessedAt;
+		final AtomicBoolean refreshing = new AtomicBoolean();
+
+		Entry(V value, long now) {
+			this.value = value;
+			this.loadedAt = now;
+			this.accessedAt = now;
+		}
+	}
+
+	// the access time is copied, so it doesn't change while the candidates are sorted
+	private static final class Candidate<K, V> {
+		final K key;
+		final Entry<V> entry;
+		final long accessedAt;
+
+		Candidate(K key, Entry<V> entry) {
+			this.key = key;
+			this.entry = entry;
+			this.accessedAt = entry.accessedAt;
+		}
+	}
+
+	private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<K, Entry<V>>();
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	// incremented before each invalidation, a value loaded before it is not stored
+	private final AtomicLong generation = new AtomicLong();
+
+	private final long timeToLiveNanos;
+	private final long refreshAfterNanos; // zero disables the refresh-ahead
+	private final int maxEntries;
+	private final int evictionBatch;
+	private final Executor refreshExecutor;
+	private final LongSupplier ticker;
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder loadFailureCount = new LongAdder();
+	private final LongAdder refreshCount = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+
+	/**
+	 * @param config          the cache settings
+	 * @param refreshExecutor runs the refresh-ahead reloads
+	 */
+	LookupCache(CacheConfig config, Executor refreshExecutor) {
+		this(config, refreshExecutor, System::nanoTime);
+	}
+
+	LookupCache(CacheConfig config, Executor refreshExecutor, LongSupplier ticker) {
+		this.timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(config.getTimeToLiveMillis());
+		double ratio = config.getRefreshAheadRatio();
+		this.refreshAfterNanos = (ratio <= 0 || ratio >= 1) ? 0 : (long) (timeToLiveNanos * ratio);
+		this.maxEntries = config.getMaxEntries();
+		this.evictionBatch = Math.max(1, maxEntries / 16);
+		this.refreshExecutor = refreshExecutor;
+		this.ticker = ticker;
+	}
+
+	/**
+	 * Returns the cached value of the key, or loads it if it is absent or expired.
+	 *
+	 * @param key    the key
+	 * @param loader loads the value on a miss or on a refresh
+	 *
+	 * @return the value of the key
+	 *
+	 * @throws NamingException          if a naming exception is encountered while
+	 *                                  loading
+	 * @throws ActiveDirectoryException if the load fails
+	 */
+	V get(K key, Loader<K, V> loader) throws NamingException, ActiveDirectoryException {
+		long now = ticker.getAsLong();
+		Entry<V> entry = entries.get(key);
+
+		if (entry != null) {
+			long age = now - entry.loadedAt;
+			if (age < timeToLiveNanos) {
+				hitCount.increment();
+				entry.accessedAt = now;
+
+				if (refreshAfterNanos > 0 && age >= refreshAfterNanos && entry.refreshing.compareAndSet(false, true))
+					refresh(key, entry, loader);
+
+				return entry.value;
+			}
+		}
+
+		missCount.increment();
+		return load(key, loader);
+	}
+
+	/**
+	 * Returns the cached value of the key, without loading it. Used by the batch
+	 * searches, that load the missing keys together and {@link #put} them.
+	 *
+	 * @param key the key
+	 *
+	 * @return the value of the key or null if it is absent or expired
+	 */
+	V getIfPresent(K key) {
+		long now = ticker.getAsLong();
+		Entry<V> entry = entries.get(key);
+
+		if (entry != null && now - entry.loadedAt < timeToLiveNanos) {
+			hitCount.increment();
+			entry.accessedAt = now;
+			return entry.value;
+		}
+
+		missCount.increment();
+		return null;
+	}
+
+	/**
+	 * @return the generation of the cache, to {@link #put(Object, Object, long)} a
+	 *         value loaded after it
+	 */
+	long generation() {
+		return generation.get();
+	}
+
+	/**
+	 * Store a value loaded outside of the cache, unless an invalidation happened
+	 * since the load started: the value can be older than the invalidation.
+	 *
+	 * @param key        the key
+	 * @param value      the value of the key
+	 * @param generation the {@link #generation()} before the load
+	 */
+	void put(K key, V value, long generation) {
+		// the check and the store are atomic for the key, an invalidation after
+		// them removes the entry
+		entries.compute(key, (k, current) -> this.generation.get() == generation
+				? new Entry<V>(value, ticker.getAsLong())
+				: current);
+
+		if (entries.size() > maxEntries)
+			evict();
+	}
+
+	/**
+	 * Remove an entry, the next lookup of the key is a miss.
+	 *
+	 * @param key the key
+	 */
+	void invalidate(K key) {
+		generation.incrementAndGet();
+		entries.remove(key);
+	}
+
+	/**
+	 * Remove all the entries.
+	 */
+	void invalidateAll() {
+		generation.incrementAndGet();
+		entries.clear();
+	}
+
+	/**
+	 * @return a snapshot of the cache statistics
+	 */
+	CacheStats stats() {
+		return new CacheStats(hitCount.sum(), missCount.sum(), loadFailureCount.sum(), refreshCount.sum(),
+				evictionCount.sum(), entries.size());
+	}
+
+	private V load(K key, Loader<K, V> loader) throws NamingException, ActiveDirectoryException {
+		long start = generation.get();
+		V value;
+		try {
+			value = loader.load(key);
+		} catch (NamingException | ActiveDirectoryException | RuntimeException e) {
+			loadFailureCount.increment();
+			throw e;
+		}
+
+		// an invalidation during the load wins over the loaded value
+		put(key, value, start);
+		return value;
+	}
+
+	private void refresh(K key, Entry<V> entry, Loader<K, V> loader) {
+		try {
+			refreshExecutor.execute(() -> {
+				try {
+					V value = loader.load(key);
+					refreshCount.increment();
+
+					// an invalidation during the reload wins over the reloaded value
+					entries.replace(key, entry, new Entry<V>(value, ticker.getAsLong()));
+				} catch (NamingException | ActiveDirectoryException | RuntimeException e) {
+					loadFailureCount.increment();
+					// the next hit close to expire tries again
+					entry.refreshing.set(false);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			entry.refreshing.set(false);
+		}
+	}
+
+	/**
+	 * Remove the expired entries and, if it is not enough, the least recently
+	 * used ones, leaving room for {@link #evictionBatch} new entries.
+	 */
+	private void evict() {
+		// a thread already evicting will make room for this load too
+		if (!evictionLock.tryLock())
+			return;
+
+		try {
+			long now = ticker.getAsLong();
+			List<Candidate<K, V>> candidates = new ArrayList<Candidate<K, V>>(entries.size());
+
+			for (Map.Entry<K, Entry<V>> mapEntry : entries.entrySet()) {
+				Entry<V> entry = mapEntry.getValue();
+				if (now - entry.loadedAt >= timeToLiveNanos) {
+					if (entries.remove(mapEntry.getKey(), entry))
+						evictionCount.increment();
+				} else {
+					candidates.add(new Candidate<K, V>(mapEntry.getKey(), entry));
+				}
+			}
+
+			int toRemove = entries.size() - maxEntries + evictionBatch;
+			if (toRemove <= 0)
+				return;
+
+			Collections.sort(candidates, Comparator.comparingLong(candidate -> candidate.accessedAt));
+
+			for (int count = 0; count < toRemove && count < candidates.size(); count++) {
+				Candidate<K, V> candidate = candidates.get(count);
+				if (entries.remove(candidate.key, candidate.entry))
+					evictionCount.increment();
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+}
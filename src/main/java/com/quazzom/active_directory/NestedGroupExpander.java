@@ -0,0 +1,198 @@
+package com.quazzom.active_directory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import javax.naming.InterruptedNamingException;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.SearchResult;
+
+/**
+ * Expands the members of groups through the nested groups, on the client side,
+ * for servers without the LDAP_MATCHING_RULE_IN_CHAIN.
+ * <p>
+ * The expansion is breadth-first and searches by <b>memberOf</b>: the members
+ * of a whole nesting level are found with one search per
+ * {@link #chunkSize} groups, and the searches of a level run in parallel. So a
+ * tree of depth <b>d</b> is resolved in <b>d</b> rounds of round trips, and not
+ * one round trip per group. Each group is expanded once, even if it is reached
+ * by many paths, so cycles (a group member of itself through other groups) end
+ * the expansion.
+ *
+ */
+class NestedGroupExpander {
+
+	/**
+	 * Runs a search under the users container, giving each result to
+	 * <b>action</b>. The results must have the <b>cn</b> and <b>objectClass</b>
+	 * attributes.
+	 */
+	interface Search {
+		void search(String filter, Consumer<SearchResult> action) throws NamingException, ActiveDirectoryException;
+	}
+
+	private static final class Member {
+		final String distinguishedName;
+		final String commonName;
+		final boolean group;
+
+		Member(String distinguishedName, String commonName, boolean group) {
+			this.distinguishedName = distinguishedName;
+			this.commonName = commonName;
+			this.group = group;
+		}
+	}
+
+	private final Search search;
+	private final Executor executor;
+	private final int chunkSize;
+
+	/**
+	 * @param search    runs the searches by memberOf
+	 * @param executor  runs the searches of a nesting level in parallel
+	 * @param chunkSize the maximum number of groups in one search filter
+	 */
+	NestedGroupExpander(Search search, Executor executor, int chunkSize) {
+		this.search = search;
+		this.executor = executor;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Returns the common names of the members of the groups and of their nested
+	 * groups, the groups themselves are not in the list.
+	 *
+	 * @param groupDistinguishedNames the DNs of the groups to expand
+	 *
+	 * @return the common names of the members, each member once
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if a search fails
+	 */
+	List<String> expand(Collection<String> groupDistinguishedNames) throws NamingException, ActiveDirectoryException {
+		// only the calling thread reads and writes these sets, the searches return
+		// their members and the merge is done here, level by level
+		Set<String> expandedGroups = new HashSet<String>();
+		Set<String> foundMembers = new HashSet<String>();
+		List<String> commonNames = new ArrayList<String>();
+
+		List<String> level = new ArrayList<String>();
+		for (String distinguishedName : groupDistinguishedNames)
+			if (expandedGroups.add(key(distinguishedName)))
+				level.add(distinguishedName);
+
+		while (!level.isEmpty()) {
+			List<String> nextLevel = new ArrayList<String>();
+
+			for (List<Member> members : searchLevel(level)) {
+				for (Member member : members) {
+					if (member.group) {
+						if (expandedGroups.add(key(member.distinguishedName)))
+							nextLevel.add(member.distinguishedName);
+					} else if (foundMembers.add(key(member.distinguishedName))) {
+						commonNames.add(member.commonName);
+					}
+				}
+			}
+
+			level = nextLevel;
+		}
+
+		return commonNames;
+	}
+
+	/**
+	 * Search the direct members of the groups of a level, one search per chunk.
+	 * The results are in the order of the chunks.
+	 */
+	private List<List<Member>> searchLevel(List<String> level) throws NamingException, ActiveDirectoryException {
+		List<CompletableFuture<List<Member>>> futures = new ArrayList<CompletableFuture<List<Member>>>();
+
+		for (int from = 0; from < level.size(); from += chunkSize) {
+			String filter = LdapFilter.anyOf("memberOf", level.subList(from, Math.min(from + chunkSize, level.size())));
+			futures.add(CompletableFuture.supplyAsync(() -> searchMembers(filter), executor));
+		}
+
+		List<List<Member>> results = new ArrayList<List<Member>>(futures.size());
+		try {
+			// an interruptible wait, e.g.: by the deadline of the call
+			for (CompletableFuture<List<Member>> future : futures)
+				results.add(future.get());
+		} catch (InterruptedException e) {
+			for (CompletableFuture<List<Member>> future : futures)
+				future.cancel(false);
+
+			Thread.currentThread().interrupt();
+			throw new InterruptedNamingException("interrupted while waiting for the nested groups.");
+		} catch (ExecutionException e) {
+			for (CompletableFuture<List<Member>> future : futures)
+				future.cancel(false);
+
+			Throwable cause = e.getCause();
+			if (cause instanceof SearchFailure)
+				cause = cause.getCause();
+			if (cause instanceof NamingException)
+				throw (NamingException) cause;
+			if (cause instanceof ActiveDirectoryException)
+				throw (ActiveDirectoryException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new CompletionException(cause);
+		}
+
+		return results;
+	}
+
+	private List<Member> searchMembers(String filter) {
+		List<Member> members = new ArrayList<Member>();
+		try {
+			search.search(filter, searchResult -> members.add(toMember(searchResult)));
+		} catch (NamingException | ActiveDirectoryException e) {
+			throw new SearchFailure(e);
+		}
+		return members;
+	}
+
+	private static Member toMember(SearchResult searchResult) {
+		try {
+			Attribute commonName = searchResult.getAttributes().get("cn");
+			Attribute objectClass = searchResult.getAttributes().get("objectClass");
+
+			boolean group = false;
+			if (objectClass != null)
+				for (int count = 0; count < objectClass.size(); count++)
+					if ("group".equalsIgnoreCase((String) objectClass.get(count)))
+						group = true;
+
+			return new Member(searchResult.getNameInNamespace(), (String) commonName.get(0), group);
+		} catch (NamingException e) {
+			throw new SearchFailure(e);
+		}
+	}
+
+	// the DNs are case insensitive
+	private static String key(String distinguishedName) {
+		return distinguishedName.toLowerCase(Locale.ROOT);
+	}
+
+	// carries the checked exceptions of a search out of the executor
+	private static final class SearchFailure extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		SearchFailure(Exception cause) {
+			super(cause);
+		}
+	}
+}
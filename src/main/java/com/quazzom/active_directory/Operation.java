@@ -0,0 +1,62 @@
+package com.quazzom.active_directory;
+
+/**
+ * The LDAP requests made by {@link ActiveDirectory}, with the name and the
+ * filter template reported to the {@link ActiveDirectoryListener}. The values
+ * of a filter template are replaced by <b>?</b>, so the templates don't hold
+ * user input and are few.
+ *
+ */
+enum Operation {
+
+	USER_GROUPS("searchUserGroups", "(&(objectclass=user)(sAMAccountName=?))"),
+	USER_GROUPS_BATCH("searchUserGroupsBatch", "(&(objectclass=user)(|(sAMAccountName=?)...))"),
+	USERS_GROUP("searchUsersGroup", "CN=?"),
+	USERS_GROUP_BATCH("searchUsersGroupBatch", "(|(cn=?)...)"),
+	TRANSITIVE_GROUP("searchUsersGroupTransitive", "(&(objectClass=group)(cn=?))"),
+	TRANSITIVE_MEMBERS("searchUsersGroupTransitiveMembers",
+			"(&(!(objectClass=group))(|(memberOf:1.2.840.113556.1.4.1941:=?)...))"),
+	NESTED_GROUP_EXPANSION("searchUsersGroupNestedExpansion", "(|(memberOf=?)...)"),
+	USER_OBJECTS("searchUserObjects", "(&(objectCategory=person)(objectClass=user)(sAMAccountName=*?*))"),
+	GROUP_OBJECTS("searchGroupObjects", "(&(objectCategory=group)(sAMAccountName=*?*))"),
+	USER_OBJECTS_INDEX("loadUserObjectsIndex", "(&(objectCategory=person)(objectClass=user)(sAMAccountName=*))"),
+	GROUP_OBJECTS_INDEX("loadGroupObjectsIndex", "(&(objectCategory=group)(sAMAccountName=*))"),
+	USER_GROUPS_SNAPSHOT("loadUserGroupsSnapshot", "(&(objectclass=user)(sAMAccountName=*))"),
+	USERS_GROUP_SNAPSHOT("loadUsersGroupSnapshot", "(&(objectClass=group)(cn=*))"),
+	USER_EXISTENCE_FILTER("loadUserExistenceFilter", "(&(objectclass=user)(sAMAccountName=*))"),
+	SYNC_FULL("syncFull", "(&(|(objectClass=user)(objectClass=group))(!(objectClass=computer)))"),
+	SYNC_CHANGES("syncChanges",
+			"(&(|(objectClass=user)(objectClass=group))(!(objectClass=computer))(uSNChanged>=?)(uSNChanged<=?))"),
+	SYNC_DELETED("syncDeleted",
+			"(&(isDeleted=TRUE)(|(objectClass=user)(objectClass=group))(!(objectClass=computer))(uSNChanged>=?)(uSNChanged<=?))"),
+	SYNC_DIRSYNC("syncDirSync", "(&(|(objectClass=user)(objectClass=group))(!(objectClass=computer)))"),
+	PARTITIONS("searchPartitions", "(objectClass=*)"),
+	EXPORT("export",
+			"(&(|(objectClass=user)(objectClass=group))(!(objectClass=computer))(uSNChanged>=?)(uSNChanged<=?))"),
+	SYNC_SERVER("syncServer", null),
+	ROOT_DSE("rootDse", null),
+	AUTHENTICATE("authenticate", null);
+
+	private final String operationName;
+	private final String filterTemplate;
+
+	private Operation(String operationName, String filterTemplate) {
+		this.operationName = operationName;
+		this.filterTemplate = filterTemplate;
+	}
+
+	/**
+	 * @return the name of the operation, e.g.: <b>searchUserGroups</b>
+	 */
+	String getOperationName() {
+		return operationName;
+	}
+
+	/**
+	 * @return the filter with the values replaced by <b>?</b>, or null if the
+	 *         operation is not a search
+	 */
+	String getFilterTemplate() {
+		return filterTemplate;
+	}
+}
@@ -0,0 +1,150 @@
+package com.quazzom.active_directory;
+
+/**
+ * The measures of one LDAP request, given to
+ * {@link ActiveDirectoryListener#operationFinished(OperationEvent)}.
+ * <p>
+ * The duration goes from the start of the request, before a connection is
+ * borrowed, to the end of the search. For the searches read a result at a time
+ * (the streams and the methods with a <b>Consumer</b>) it includes the time
+ * the caller takes to consume the results.
+ *
+ */
+public final class OperationEvent {
+
+	private final String operation;
+	private final String filterTemplate;
+	private final String server;
+	private final Object attachment;
+	private final long durationNanos;
+	private final long connectionAcquireNanos;
+	private final long entries;
+	private final long values;
+	private final long bytesDecoded;
+	private final int errorCode;
+	private final Throwable error;
+
+	OperationEvent(String operation, String filterTemplate, String server, Object attachment, long durationNanos,
+			long connectionAcquireNanos, long entries, long values, long bytesDecoded, int errorCode,
+			Throwable error) {
+		this.operation = operation;
+		this.filterTemplate = filterTemplate;
+		this.server = server;
+		this.attachment = attachment;
+		this.durationNanos = durationNanos;
+		this.connectionAcquireNanos = connectionAcquireNanos;
+		this.entries = entries;
+		this.values = values;
+		this.bytesDecoded = bytesDecoded;
+		this.errorCode = errorCode;
+		this.error = error;
+	}
+
+	/**
+	 * @return the name of the operation, e.g.: <b>searchUserGroups</b>.
+	 */
+	public String getOperation() {
+		return operation;
+	}
+
+	/**
+	 * @return the LDAP filter with the values replaced by <b>?</b>, e.g.:
+	 *         <b>(&amp;(objectclass=user)(sAMAccountName=?))</b>, or null if the
+	 *         operation is not a search.
+	 */
+	public String getFilterTemplate() {
+		return filterTemplate;
+	}
+
+	/**
+	 * @return the server of the request.
+	 */
+	public String getServer() {
+		return server;
+	}
+
+	/**
+	 * @return the object returned by
+	 *         {@link ActiveDirectoryListener#operationStarted(String, String, String)}.
+	 */
+	public Object getAttachment() {
+		return attachment;
+	}
+
+	/**
+	 * @return the duration of the request in nanoseconds.
+	 */
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+
+	/**
+	 * @return the time waiting for a connection of the pool, in nanoseconds.
+	 */
+	public long getConnectionAcquireNanos() {
+		return connectionAcquireNanos;
+	}
+
+	/**
+	 * @return the number of entries returned by the server.
+	 */
+	public long getEntries() {
+		return entries;
+	}
+
+	/**
+	 * @return the number of attribute values returned by the server, the values
+	 *         of the ranged attributes included.
+	 */
+	public long getValues() {
+		return values;
+	}
+
+	/**
+	 * @return the size in bytes (UTF-8) of the attribute values decoded, an
+	 *         estimate of the size of the responses without the LDAP encoding.
+	 */
+	public long getBytesDecoded() {
+		return bytesDecoded;
+	}
+
+	/**
+	 * @return 0 on success, the LDAP error code of a failure (e.g.: <b>49</b> for
+	 *         a bind with a wrong password) or -1 for a failure without an LDAP
+	 *         error code, e.g.: a connection refused.
+	 */
+	public int getErrorCode() {
+		return errorCode;
+	}
+
+	/**
+	 * @return the name of the LDAP error code, e.g.: <b>LDAP_INVALID_CREDENTIALS</b>,
+	 *         or null on success or if the failure has no LDAP error code.
+	 */
+	public String getErrorName() {
+		return errorCode > 0 ? ActiveDirectoryUtils.getErrorName(errorCode) : null;
+	}
+
+	/**
+	 * @return the exception that ended the request, or null. A bind that fails
+	 *         only has an error code, the reason is in the
+	 *         {@link AuthenticationResult}.
+	 */
+	public Throwable getError() {
+		return error;
+	}
+
+	/**
+	 * @return true if the request succeeded.
+	 */
+	public boolean isSuccess() {
+		return errorCode == 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"OperationEvent[operation=%s, server=%s, durationNanos=%d, connectionAcquireNanos=%d, entries=%d, values=%d, bytesDecoded=%d, errorCode=%d]",
+				operation, server, durationNanos, connectionAcquireNanos, entries, values, bytesDecoded, errorCode);
+	}
+}
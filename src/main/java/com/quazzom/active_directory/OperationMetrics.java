@@ -0,0 +1,170 @@
+package com.quazzom.active_directory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A ready-made {@link ActiveDirectoryListener} that keeps latency histograms
+ * and counters per operation (e.g.: <b>searchUserGroups</b>) and per server, to
+ * find the slow operations and the overloaded domain controllers.
+ * <p>
+ * Example:
+ * <blockquote>
+ *
+ * <pre>
+ * OperationMetrics metrics = new OperationMetrics();
+ * metrics.registerMBeans(ManagementFactory.getPlatformMBeanServer());
+ * activeDirectory.setListener(metrics);
+ * </pre>
+ *
+ * </blockquote>
+ * <p>
+ * With the MBeans registered each operation is an MXBean named
+ * <b>com.quazzom.active_directory:type=Operation,name=searchUserGroups</b> and
+ * each server is an MXBean named
+ * <b>com.quazzom.active_directory:type=Server,name=server001</b>, see
+ * {@link OperationStatsMXBean}.
+ *
+ */
+public class OperationMetrics implements ActiveDirectoryListener {
+
+	/**
+	 * The JMX domain of the MBeans.
+	 */
+	public static final String JMX_DOMAIN = "com.quazzom.active_directory";
+
+	private final ConcurrentHashMap<String, OperationStats> operations = new ConcurrentHashMap<String, OperationStats>();
+	private final ConcurrentHashMap<String, OperationStats> servers = new ConcurrentHashMap<String, OperationStats>();
+
+	// null while the MBeans are not registered
+	private MBeanServer mBeanServer;
+
+	@Override
+	public void operationFinished(OperationEvent event) {
+		stats(operations, "Operation", event.getOperation()).record(event);
+		if (event.getServer() != null)
+			stats(servers, "Server", event.getServer()).record(event);
+	}
+
+	/**
+	 * @param operation the name of the operation, e.g.: <b>searchUserGroups</b>
+	 *
+	 * @return the measures of the operation or null if it made no request.
+	 */
+	public OperationStats getOperationStats(String operation) {
+		return operations.get(operation);
+	}
+
+	/**
+	 * @return the measures of each operation, sorted by name.
+	 */
+	public Map<String, OperationStats> getOperationStats() {
+		return Collections.unmodifiableMap(new TreeMap<String, OperationStats>(operations));
+	}
+
+	/**
+	 * @return the measures of each server, sorted by name.
+	 */
+	public Map<String, OperationStats> getServerStats() {
+		return Collections.unmodifiableMap(new TreeMap<String, OperationStats>(servers));
+	}
+
+	/**
+	 * Remove all the measures, the MBeans stay registered.
+	 */
+	public void reset() {
+		for (OperationStats stats : operations.values())
+			stats.reset();
+		for (OperationStats stats : servers.values())
+			stats.reset();
+	}
+
+	/**
+	 * Register an MXBean for each operation and each server, the ones seen later
+	 * are registered when they make their first request.
+	 *
+	 * @param mBeanServer the MBean server, e.g.:
+	 *                    <b>ManagementFactory.getPlatformMBeanServer()</b>
+	 *
+	 * @throws JMException if an MBean cannot be registered, e.g.: another
+	 *                     instance registered the same names
+	 */
+	public synchronized void registerMBeans(MBeanServer mBeanServer) throws JMException {
+		if (this.mBeanServer != null)
+			throw new IllegalStateException("the MBeans are already registered.");
+
+		for (Map.Entry<String, OperationStats> entry : operations.entrySet())
+			mBeanServer.registerMBean(entry.getValue(), objectName("Operation", entry.getKey()));
+		for (Map.Entry<String, OperationStats> entry : servers.entrySet())
+			mBeanServer.registerMBean(entry.getValue(), objectName("Server", entry.getKey()));
+
+		this.mBeanServer = mBeanServer;
+	}
+
+	/**
+	 * Unregister the MBeans registered by
+	 * {@link OperationMetrics#registerMBeans(MBeanServer)}.
+	 */
+	public synchronized void unregisterMBeans() {
+		if (mBeanServer == null)
+			return;
+
+		for (String operation : operations.keySet())
+			unregister("Operation", operation);
+		for (String server : servers.keySet())
+			unregister("Server", server);
+
+		mBeanServer = null;
+	}
+
+	/**
+	 * @param type the type of the MBean, <b>Operation</b> or <b>Server</b>
+	 * @param name the name of the operation or of the server
+	 *
+	 * @return the name of the MBean
+	 *
+	 * @throws JMException if the name is not valid
+	 */
+	public static ObjectName objectName(String type, String name) throws JMException {
+		return new ObjectName(JMX_DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+	}
+
+	private OperationStats stats(ConcurrentHashMap<String, OperationStats> map, String type, String name) {
+		OperationStats stats = map.get(name);
+		if (stats != null)
+			return stats;
+
+		OperationStats created = new OperationStats();
+		stats = map.putIfAbsent(name, created);
+		if (stats != null)
+			return stats;
+
+		register(type, name, created);
+		return created;
+	}
+
+	private synchronized void register(String type, String name, OperationStats stats) {
+		if (mBeanServer == null)
+			return;
+
+		try {
+			mBeanServer.registerMBean(stats, objectName(type, name));
+		} catch (JMException e) {
+			// the measures are still kept, a listener never fails a request
+		}
+	}
+
+	private void unregister(String type, String name) {
+		try {
+			mBeanServer.unregisterMBean(objectName(type, name));
+		} catch (JMException e) {
+			// already unregistered by someone else
+		}
+	}
+}
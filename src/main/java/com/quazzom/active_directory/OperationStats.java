@@ -0,0 +1,154 @@
+package com.quazzom.active_directory;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The measures of the requests of an operation or of a server, kept by
+ * {@link OperationMetrics}. The updates are lock-free, the getters read the
+ * current values.
+ *
+ */
+public class OperationStats implements OperationStatsMXBean {
+
+	private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LatencyHistogram connectionAcquire = new LatencyHistogram();
+	private final LongAdder errorCount = new LongAdder();
+	private final LongAdder entries = new LongAdder();
+	private final LongAdder values = new LongAdder();
+	private final LongAdder bytesDecoded = new LongAdder();
+	private final ConcurrentHashMap<String, LongAdder> errorCounts = new ConcurrentHashMap<String, LongAdder>();
+	private volatile String filterTemplate;
+
+	OperationStats() {
+	}
+
+	void record(OperationEvent event) {
+		latency.record(event.getDurationNanos());
+		connectionAcquire.record(event.getConnectionAcquireNanos());
+		entries.add(event.getEntries());
+		values.add(event.getValues());
+		bytesDecoded.add(event.getBytesDecoded());
+
+		if (event.getFilterTemplate() != null)
+			filterTemplate = event.getFilterTemplate();
+
+		if (!event.isSuccess()) {
+			errorCount.increment();
+			String errorName = event.getErrorName();
+			String key = errorName == null ? String.valueOf(event.getErrorCode()) : errorName;
+			errorCounts.computeIfAbsent(key, name -> new LongAdder()).increment();
+		}
+	}
+
+	@Override
+	public long getCount() {
+		return latency.getCount();
+	}
+
+	@Override
+	public long getErrorCount() {
+		return errorCount.sum();
+	}
+
+	@Override
+	public Map<String, Long> getErrorCounts() {
+		Map<String, Long> counts = new TreeMap<String, Long>();
+		for (Map.Entry<String, LongAdder> entry : errorCounts.entrySet())
+			counts.put(entry.getKey(), entry.getValue().sum());
+		return counts;
+	}
+
+	@Override
+	public String getFilterTemplate() {
+		return filterTemplate;
+	}
+
+	/**
+	 * @param percentile the percentile, from 0 to 100, e.g.: 99.9
+	 *
+	 * @return the duration of the percentile in nanoseconds, within 1.6% of the
+	 *         measured duration
+	 */
+	public long getDurationNanosAtPercentile(double percentile) {
+		return latency.getValueAtPercentile(percentile);
+	}
+
+	@Override
+	public double getMeanMillis() {
+		return latency.getMean() / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getP50Millis() {
+		return latency.getValueAtPercentile(50) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getP90Millis() {
+		return latency.getValueAtPercentile(90) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getP99Millis() {
+		return latency.getValueAtPercentile(99) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getP999Millis() {
+		return latency.getValueAtPercentile(99.9) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getMaxMillis() {
+		return latency.getMax() / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getMeanConnectionAcquireMillis() {
+		return connectionAcquire.getMean() / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getP99ConnectionAcquireMillis() {
+		return connectionAcquire.getValueAtPercentile(99) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public long getEntries() {
+		return entries.sum();
+	}
+
+	@Override
+	public long getValues() {
+		return values.sum();
+	}
+
+	@Override
+	public long getBytesDecoded() {
+		return bytesDecoded.sum();
+	}
+
+	@Override
+	public void reset() {
+		latency.reset();
+		connectionAcquire.reset();
+		errorCount.reset();
+		entries.reset();
+		values.reset();
+		bytesDecoded.reset();
+		errorCounts.clear();
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"OperationStats[count=%d, errors=%d, meanMillis=%.3f, p99Millis=%.3f, maxMillis=%.3f, entries=%d, values=%d]",
+				getCount(), getErrorCount(), getMeanMillis(), getP99Millis(), getMaxMillis(), getEntries(),
+				getValues());
+	}
+}
@@ -0,0 +1,94 @@
+package com.quazzom.active_directory;
+
+import java.util.Map;
+
+/**
+ * The JMX view of an {@link OperationStats}, registered by
+ * {@link OperationMetrics#registerMBeans(javax.management.MBeanServer)}.
+ *
+ */
+public interface OperationStatsMXBean {
+
+	/**
+	 * @return the number of requests.
+	 */
+	long getCount();
+
+	/**
+	 * @return the number of failed requests.
+	 */
+	long getErrorCount();
+
+	/**
+	 * @return the number of failed requests by error name, e.g.:
+	 *         <b>LDAP_INVALID_CREDENTIALS</b>, or by error code when the code has no
+	 *         name. The failures without an LDAP error code are under <b>-1</b>.
+	 */
+	Map<String, Long> getErrorCounts();
+
+	/**
+	 * @return the filter template of the last request, or null.
+	 */
+	String getFilterTemplate();
+
+	/**
+	 * @return the mean duration in milliseconds.
+	 */
+	double getMeanMillis();
+
+	/**
+	 * @return the median duration in milliseconds.
+	 */
+	double getP50Millis();
+
+	/**
+	 * @return the 90th percentile of the duration in milliseconds.
+	 */
+	double getP90Millis();
+
+	/**
+	 * @return the 99th percentile of the duration in milliseconds.
+	 */
+	double getP99Millis();
+
+	/**
+	 * @return the 99.9th percentile of the duration in milliseconds.
+	 */
+	double getP999Millis();
+
+	/**
+	 * @return the longest duration in milliseconds.
+	 */
+	double getMaxMillis();
+
+	/**
+	 * @return the mean time waiting for a connection of the pool in milliseconds.
+	 */
+	double getMeanConnectionAcquireMillis();
+
+	/**
+	 * @return the 99th percentile of the time waiting for a connection of the pool
+	 *         in milliseconds.
+	 */
+	double getP99ConnectionAcquireMillis();
+
+	/**
+	 * @return the number of entries returned.
+	 */
+	long getEntries();
+
+	/**
+	 * @return the number of attribute values returned.
+	 */
+	long getValues();
+
+	/**
+	 * @return the size in bytes of the attribute values decoded.
+	 */
+	long getBytesDecoded();
+
+	/**
+	 * Remove all the measures.
+	 */
+	void reset();
+}
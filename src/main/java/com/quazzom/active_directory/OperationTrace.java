@@ -0,0 +1,184 @@
+package com.quazzom.active_directory;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+
+/**
+ * Measures one LDAP request for an {@link ActiveDirectoryListener}. A trace is
+ * only created when there is a listener, the code of a request checks the
+ * trace for null before each measure.
+ * <p>
+ * A trace is used by one thread at a time, like the cursor of its search.
+ *
+ */
+final class OperationTrace {
+
+	private final ActiveDirectoryListener listener;
+	private final Operation operation;
+	private String server;
+	private final Object attachment;
+	private final long startNanos;
+
+	private long connectionAcquireNanos;
+	private long entries;
+	private long values;
+	private long bytesDecoded;
+	private int errorCode;
+	private boolean finished;
+
+	private OperationTrace(ActiveDirectoryListener listener, Operation operation, String server, Object attachment,
+			long startNanos) {
+		this.listener = listener;
+		this.operation = operation;
+		this.server = server;
+		this.attachment = attachment;
+		this.startNanos = startNanos;
+	}
+
+	/**
+	 * Start the trace of a request.
+	 *
+	 * @param listener  the listener, may be null
+	 * @param operation the request
+	 * @param server    the server of the request
+	 *
+	 * @return the trace or null if <b>listener</b> is null
+	 */
+	static OperationTrace start(ActiveDirectoryListener listener, Operation operation, String server) {
+		if (listener == null)
+			return null;
+
+		Object attachment = null;
+		try {
+			attachment = listener.operationStarted(operation.getOperationName(), operation.getFilterTemplate(), server);
+		} catch (RuntimeException e) {
+			// a listener never fails a request
+		}
+
+		return new OperationTrace(listener, operation, server, attachment, System.nanoTime());
+	}
+
+	/**
+	 * Borrow a context from a pool, measuring the wait. A failure ends the trace.
+	 *
+	 * @param pool  the pool
+	 * @param trace the trace of the request, may be null
+	 *
+	 * @return the borrowed context
+	 *
+	 * @throws NamingException          if a new connection cannot be opened
+	 * @throws ActiveDirectoryException if no connection got free in time
+	 */
+	static PooledDirContext borrow(DirContextPool pool, OperationTrace trace)
+			throws NamingException, ActiveDirectoryException {
+		if (trace == null)
+			return pool.borrow();
+
+		long start = System.nanoTime();
+		try {
+			PooledDirContext pooled = pool.borrow();
+			trace.connectionAcquireNanos += System.nanoTime() - start;
+			// with many domain controllers the request is reported with the one used
+			if (pooled.getServer() != null)
+				trace.server = pooled.getServer();
+			return pooled;
+		} catch (NamingException | ActiveDirectoryException | RuntimeException e) {
+			trace.connectionAcquireNanos += System.nanoTime() - start;
+			trace.finish(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Count an entry returned by the server and its values.
+	 *
+	 * @param attributes the attributes of the entry
+	 */
+	void entry(Attributes attributes) {
+		entries++;
+		values(attributes);
+	}
+
+	/**
+	 * Count the values of attributes read without a new entry, e.g.: the ranges
+	 * of a large attribute.
+	 *
+	 * @param attributes the attributes read
+	 */
+	void values(Attributes attributes) {
+		if (attributes == null)
+			return;
+
+		try {
+			NamingEnumeration<? extends Attribute> all = attributes.getAll();
+			while (all.hasMore()) {
+				Attribute attribute = all.next();
+				for (int index = 0; index < attribute.size(); index++) {
+					values++;
+					bytesDecoded += size(attribute.get(index));
+				}
+			}
+		} catch (NamingException e) {
+			// the attributes of a search result are in memory, it doesn't happen
+		}
+	}
+
+	/**
+	 * Mark the request as failed with an LDAP error code, without an exception,
+	 * e.g.: a bind with a wrong password.
+	 *
+	 * @param errorCode the LDAP error code
+	 */
+	void failed(int errorCode) {
+		this.errorCode = errorCode == 0 ? -1 : errorCode;
+	}
+
+	/**
+	 * End the trace and report it to the listener. Only the first call has an
+	 * effect.
+	 *
+	 * @param error the exception that ended the request, or null
+	 */
+	void finish(Throwable error) {
+		if (finished)
+			return;
+		finished = true;
+
+		if (error != null) {
+			int code = ActiveDirectoryUtils.getErrorCode(error.getMessage());
+			errorCode = code == 0 ? -1 : code;
+		}
+
+		OperationEvent event = new OperationEvent(operation.getOperationName(), operation.getFilterTemplate(), server,
+				attachment, System.nanoTime() - startNanos, connectionAcquireNanos, entries, values, bytesDecoded,
+				errorCode, error);
+		try {
+			listener.operationFinished(event);
+		} catch (RuntimeException e) {
+			// a listener never fails a request
+		}
+	}
+
+	// the UTF-8 size of a string, without encoding it
+	private static long size(Object value) {
+		if (value instanceof byte[])
+			return ((byte[]) value).length;
+		if (!(value instanceof String))
+			return 0;
+
+		String string = (String) value;
+		long size = 0;
+		for (int index = 0; index < string.length(); index++) {
+			char c = string.charAt(index);
+			if (c < 0x80)
+				size++;
+			else if (c < 0x800 || Character.isSurrogate(c))
+				size += 2; // a surrogate pair is 4 bytes
+			else
+				size += 3;
+		}
+		return size;
+	}
+}
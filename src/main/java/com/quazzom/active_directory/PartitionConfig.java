@@ -0,0 +1,87 @@
+package com.quazzom.active_directory;
+
+/**
+ * Settings of the partitioned searches, see
+ * {@link ActiveDirectory#setPartitionConfig(PartitionConfig)}.
+ * <p>
+ * The defaults are: the {@link PartitionStrategy#NAME_RANGES} strategy, a
+ * parallelism of 4, 16 name ranges and the results in the order of the
+ * partitions.
+ *
+ */
+public class PartitionConfig {
+
+	private PartitionStrategy strategy = PartitionStrategy.NAME_RANGES;
+	private int parallelism = 4;
+	private int nameRanges = 16;
+	private boolean ordered;
+
+	/**
+	 * @return how a search is split.
+	 */
+	public PartitionStrategy getStrategy() {
+		return strategy;
+	}
+
+	/**
+	 * @param strategy how a search is split
+	 */
+	public void setStrategy(PartitionStrategy strategy) {
+		if (strategy == null)
+			throw new IllegalArgumentException("strategy cannot be null.");
+		this.strategy = strategy;
+	}
+
+	/**
+	 * @return the number of partitions searched at the same time.
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @param parallelism the number of partitions searched at the same time, each
+	 *                    one over its own connection, so at most the
+	 *                    {@link ConnectionPoolConfig#getMaxSize()}
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism <= 0)
+			throw new IllegalArgumentException("parallelism must be greater than zero.");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return the number of sAMAccountName ranges of the
+	 *         {@link PartitionStrategy#NAME_RANGES} strategy.
+	 */
+	public int getNameRanges() {
+		return nameRanges;
+	}
+
+	/**
+	 * @param nameRanges the number of sAMAccountName ranges of the
+	 *                   {@link PartitionStrategy#NAME_RANGES} strategy, from 2 to
+	 *                   26 (split by the first letter). More ranges than the
+	 *                   parallelism keep all the connections busy until the end.
+	 */
+	public void setNameRanges(int nameRanges) {
+		if (nameRanges < 2 || nameRanges > 26)
+			throw new IllegalArgumentException("nameRanges must be between 2 and 26.");
+		this.nameRanges = nameRanges;
+	}
+
+	/**
+	 * @return true if the results are sorted by common name.
+	 */
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	/**
+	 * @param ordered true to sort the results by common name, false (the default)
+	 *                to keep them in the order of the partitions
+	 */
+	public void setOrdered(boolean ordered) {
+		this.ordered = ordered;
+	}
+}
@@ -0,0 +1,25 @@
+package com.quazzom.active_directory;
+
+/**
+ * How a partitioned search is split, see
+ * {@link PartitionConfig#setStrategy(PartitionStrategy)}.
+ *
+ */
+public enum PartitionStrategy {
+
+	/**
+	 * A search of the subtree of each child of the base (the organizational
+	 * units, the containers and any other object), plus one of the base itself.
+	 * Together they are the subtree of the base, so nothing is missed, but a
+	 * large organizational unit is a large partition and each object right at
+	 * the base is a partition.
+	 */
+	ORGANIZATIONAL_UNITS,
+
+	/**
+	 * A search per range of <b>sAMAccountName</b> (e.g.: from <b>d</b> to
+	 * <b>g</b>), plus one for the objects without it. The ranges are even
+	 * whatever the tree of the directory.
+	 */
+	NAME_RANGES
+}
@@ -0,0 +1,255 @@
+package com.quazzom.active_directory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+
+/**
+ * Splits a search under the users container into searches of disjoint
+ * partitions (the subtrees of the children of the base, or ranges of
+ * <b>sAMAccountName</b>), run in parallel over many connections, and merges
+ * their common names.
+ * <p>
+ * A search is read by one server thread over one connection, so a large
+ * enumeration is bound by the round trips of its pages; the partitions read
+ * their pages at the same time. The results are deduplicated by DN, a partition
+ * can't lose an object but the merge doesn't rely on the partitions being
+ * disjoint.
+ *
+ */
+class PartitionedSearch {
+
+	/**
+	 * Runs the search of a partition, giving each result to <b>action</b>. The
+	 * results must have the <b>cn</b> attribute.
+	 */
+	interface Search {
+		void search(Partition partition, Consumer<SearchResult> action)
+				throws NamingException, ActiveDirectoryException;
+	}
+
+	/**
+	 * A part of the search: a base, a scope and a filter added to the filter of
+	 * the search.
+	 */
+	static final class Partition {
+		final String base;
+		final int scope;
+		final String filter; // null for the filter of the search
+
+		Partition(String base, int scope, String filter) {
+			this.base = base;
+			this.scope = scope;
+			this.filter = filter;
+		}
+
+		/**
+		 * @param searchFilter the filter of the search
+		 *
+		 * @return the filter of the search in this partition
+		 */
+		String filter(String searchFilter) {
+			return filter == null ? searchFilter : "(&" + searchFilter + filter + ")";
+		}
+
+		@Override
+		public String toString() {
+			return "Partition[base=" + base + ", scope=" + scope + ", filter=" + filter + "]";
+		}
+	}
+
+	private final Search search;
+	private final Executor executor;
+	private final int parallelism;
+	private final boolean ordered;
+
+	/**
+	 * @param search      runs the search of a partition
+	 * @param executor    runs the searches in parallel
+	 * @param parallelism the number of partitions searched at the same time
+	 * @param ordered     true to sort the common names, false for the order of
+	 *                    the partitions
+	 */
+	PartitionedSearch(Search search, Executor executor, int parallelism, boolean ordered) {
+		this.search = search;
+		this.executor = executor;
+		this.parallelism = parallelism;
+		this.ordered = ordered;
+	}
+
+	/**
+	 * The partitions of a subtree by its children: the base itself and the
+	 * subtree of each child. A child added after the children were read is not
+	 * searched.
+	 *
+	 * @param base     the base of the search
+	 * @param children the DNs of all the children of the base, whatever their
+	 *                 class
+	 *
+	 * @return the partitions
+	 */
+	static List<Partition> children(String base, List<String> children) {
+		List<Partition> partitions = new ArrayList<Partition>(children.size() + 1);
+		partitions.add(new Partition(base, SearchControls.OBJECT_SCOPE, null));
+		for (String child : children)
+			partitions.add(new Partition(child, SearchControls.SUBTREE_SCOPE, null));
+		return partitions;
+	}
+
+	/**
+	 * The partitions of a subtree by ranges of the first letter of the
+	 * <b>sAMAccountName</b>, e.g.: below <b>d</b>, from <b>d</b> to <b>g</b>, ...
+	 * from <b>w</b>, plus the objects without a sAMAccountName (e.g.: the
+	 * contacts).
+	 *
+	 * @param base   the base of the search
+	 * @param ranges the number of ranges, from 2 to 26
+	 *
+	 * @return the partitions
+	 */
+	static List<Partition> nameRanges(String base, int ranges) {
+		List<Partition> partitions = new ArrayList<Partition>(ranges + 1);
+		String lower = null;
+		for (int range = 1; range <= ranges; range++) {
+			// the letters are split evenly, the first range has the digits and the
+			// other characters below 'a'
+			String upper = range == ranges ? null : String.valueOf((char) ('a' + Math.round(range * 26.0 / ranges)));
+			StringBuilder filter = new StringBuilder("(sAMAccountName=*)");
+			if (lower != null)
+				filter.append("(sAMAccountName>=").append(lower).append(')');
+			if (upper != null)
+				filter.append("(!(sAMAccountName>=").append(upper).append("))");
+			partitions.add(new Partition(base, SearchControls.SUBTREE_SCOPE, filter.toString()));
+			lower = upper;
+		}
+		partitions.add(new Partition(base, SearchControls.SUBTREE_SCOPE, "(!(sAMAccountName=*))"));
+		return partitions;
+	}
+
+	/**
+	 * Search all the partitions, at most {@link #parallelism} at a time. The first
+	 * failure stops the partitions not started yet and is thrown once the
+	 * partitions in progress end.
+	 *
+	 * @param partitions the partitions of the search
+	 *
+	 * @return the common names, each object once
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if a search fails
+	 */
+	List<String> search(List<Partition> partitions) throws NamingException, ActiveDirectoryException {
+		AtomicReferenceArray<Map<String, String>> results = new AtomicReferenceArray<Map<String, String>>(
+				partitions.size());
+
+		// each worker takes the next partition, so a large partition doesn't hold
+		// back the others
+		AtomicInteger next = new AtomicInteger();
+		AtomicBoolean failed = new AtomicBoolean();
+		Runnable worker = () -> {
+			int index;
+			while (!failed.get() && (index = next.getAndIncrement()) < partitions.size()) {
+				try {
+					results.set(index, searchPartition(partitions.get(index)));
+				} catch (RuntimeException e) {
+					failed.set(true);
+					throw e;
+				}
+			}
+		};
+
+		int workers = Math.min(parallelism, partitions.size());
+		List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>(workers);
+		for (int count = 1; count < workers; count++)
+			futures.add(CompletableFuture.runAsync(worker, executor));
+
+		try {
+			// the calling thread is a worker too
+			worker.run();
+			for (CompletableFuture<Void> future : futures)
+				future.join();
+		} catch (RuntimeException e) {
+			failed.set(true);
+			// the other workers end their partition before the return, their searches
+			// hold connections of the pool
+			for (CompletableFuture<Void> future : futures) {
+				try {
+					future.join();
+				} catch (RuntimeException other) {
+					// the first failure is thrown
+				}
+			}
+
+			Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+			if (cause instanceof SearchFailure)
+				cause = cause.getCause();
+			if (cause instanceof NamingException)
+				throw (NamingException) cause;
+			if (cause instanceof ActiveDirectoryException)
+				throw (ActiveDirectoryException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw e;
+		}
+
+		return merge(results);
+	}
+
+	/**
+	 * @return the common names of a partition by their DN in lower case
+	 */
+	private Map<String, String> searchPartition(Partition partition) {
+		Map<String, String> commonNames = new LinkedHashMap<String, String>();
+		try {
+			search.search(partition, searchResult -> {
+				try {
+					Attribute commonName = searchResult.getAttributes().get("cn");
+					if (commonName != null)
+						commonNames.putIfAbsent(searchResult.getNameInNamespace().toLowerCase(Locale.ROOT),
+								(String) commonName.get());
+				} catch (NamingException e) {
+					throw new SearchFailure(e);
+				}
+			});
+		} catch (NamingException | ActiveDirectoryException e) {
+			throw new SearchFailure(e);
+		}
+		return commonNames;
+	}
+
+	private List<String> merge(AtomicReferenceArray<Map<String, String>> results) {
+		Map<String, String> merged = new LinkedHashMap<String, String>();
+		for (int index = 0; index < results.length(); index++)
+			for (Map.Entry<String, String> commonName : results.get(index).entrySet())
+				merged.putIfAbsent(commonName.getKey(), commonName.getValue());
+
+		List<String> commonNames = new ArrayList<String>(merged.values());
+		if (ordered)
+			Collections.sort(commonNames, String.CASE_INSENSITIVE_ORDER);
+		return commonNames;
+	}
+
+	// carries the checked exceptions of a search out of the executor
+	private static final class SearchFailure extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		SearchFailure(Exception cause) {
+			super(cause);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package com.quazzom.active_directory;
+
+import javax.naming.directory.DirContext;
+
+/**
+ * A {@link DirContext} borrowed from a {@link DirContextPool}. It must be given
+ * back with {@link DirContextPool#release(PooledDirContext)} or
+ * {@link DirContextPool#invalidate(PooledDirContext)}.
+ *
+ */
+final class PooledDirContext {
+
+	private final DirContext context;
+	private final long createdAt;
+	private final String server;
+	private volatile long lastUsedAt;
+	private volatile long borrowedAt;
+
+	PooledDirContext(DirContext context, long now) {
+		this(context, now, null);
+	}
+
+	PooledDirContext(DirContext context, long now, String server) {
+		this.context = context;
+		this.createdAt = now;
+		this.server = server;
+		this.lastUsedAt = now;
+	}
+
+	DirContext getContext() {
+		return context;
+	}
+
+	long getCreatedAt() {
+		return createdAt;
+	}
+
+	/**
+	 * @return the server of the connection, null when there is only one server
+	 */
+	String getServer() {
+		return server;
+	}
+
+	long getLastUsedAt() {
+		return lastUsedAt;
+	}
+
+	void setLastUsedAt(long lastUsedAt) {
+		this.lastUsedAt = lastUsedAt;
+	}
+
+	/**
+	 * @return the time of the borrow, in nanoseconds, set by a
+	 *         {@link BalancedDirContextPool}
+	 */
+	long getBorrowedAt() {
+		return borrowedAt;
+	}
+
+	void setBorrowedAt(long borrowedAt) {
+		this.borrowedAt = borrowedAt;
+	}
+}
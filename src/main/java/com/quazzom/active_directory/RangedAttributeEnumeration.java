@@ -0,0 +1,164 @@
+package com.quazzom.active_directory;
+
+import java.util.NoSuchElementException;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapName;
+
+/**
+ * Reads all the values of a multi-valued attribute using the incremental range
+ * retrieval of Active Directory.
+ * <p>
+ * Active Directory returns at most MaxValRange (1500) values of an attribute per
+ * request, e.g.: for a group with 4000 members the search returns only
+ * <b>member;range=0-1499</b>. This enumeration gives each range as a
+ * {@link SearchResult} with the plain attribute id (<b>member</b>) and requests
+ * the next range (<b>member;range=1500-*</b>, <b>member;range=3000-*</b>, ...)
+ * only when the current one is read, until the last range (<b>-*</b>). So only
+ * one range is kept in memory.
+ * <p>
+ * The search results where the attribute is not ranged are returned as they
+ * are.
+ *
+ */
+class RangedAttributeEnumeration implements SearchResultEnumeration {
+
+	private final SearchCursor cursor;
+	private final String attributeId;
+	private final String rangePrefix;
+
+	// the search result with more ranges to request
+	private SearchResult pending;
+	private int nextLow;
+
+	/**
+	 * @param cursor      the search, its context is used to request the ranges
+	 * @param attributeId the multi-valued attribute, e.g.: <b>member</b>
+	 */
+	RangedAttributeEnumeration(SearchCursor cursor, String attributeId) {
+		this.cursor = cursor;
+		this.attributeId = attributeId;
+		this.rangePrefix = attributeId + ";range=";
+	}
+
+	@Override
+	public boolean hasMore() throws NamingException {
+		return pending != null || cursor.hasMore();
+	}
+
+	@Override
+	public SearchResult next() throws NamingException {
+		if (pending != null)
+			return nextRange();
+
+		SearchResult searchResult = cursor.next();
+		Attributes attributes = searchResult.getAttributes();
+
+		// all the values came in the plain attribute
+		if (attributes == null || attributes.get(attributeId) != null)
+			return searchResult;
+
+		Attribute ranged = findRange(attributes);
+		if (ranged == null)
+			return searchResult;
+
+		return toRangeResult(searchResult, ranged);
+	}
+
+	@Override
+	public boolean hasMoreElements() {
+		return pending != null || cursor.hasMoreElements();
+	}
+
+	@Override
+	public SearchResult nextElement() {
+		try {
+			return next();
+		} catch (NamingException e) {
+			throw new NoSuchElementException(e.toString());
+		}
+	}
+
+	@Override
+	public void close() {
+		pending = null;
+		cursor.close();
+	}
+
+	/**
+	 * Request the next range of the pending search result.
+	 */
+	private SearchResult nextRange() throws NamingException {
+		SearchResult searchResult = pending;
+		pending = null;
+
+		Attributes attributes;
+		try {
+			attributes = cursor.getContext().getAttributes(new LdapName(searchResult.getNameInNamespace()),
+					new String[] { rangePrefix + nextLow + "-*" });
+		} catch (NamingException e) {
+			cursor.abort(e);
+			throw e;
+		}
+
+		cursor.recordValues(attributes);
+		Attribute ranged = findRange(attributes);
+		if (ranged == null)
+			return toRangeResult(searchResult, new BasicAttribute(rangePrefix + nextLow + "-*"));
+
+		return toRangeResult(searchResult, ranged);
+	}
+
+	/**
+	 * Find the ranged attribute, e.g.: <b>member;range=0-1499</b>.
+	 */
+	private Attribute findRange(Attributes attributes) throws NamingException {
+		NamingEnumeration<? extends Attribute> all = attributes.getAll();
+		while (all.hasMore()) {
+			Attribute attribute = all.next();
+			if (attribute.getID().regionMatches(true, 0, rangePrefix, 0, rangePrefix.length()))
+				return attribute;
+		}
+		return null;
+	}
+
+	/**
+	 * Copy the search result with the values of one range in the plain attribute
+	 * and keep it pending when it is not the last range. The other attributes of
+	 * the search result are in every copy.
+	 */
+	private SearchResult toRangeResult(SearchResult searchResult, Attribute ranged) throws NamingException {
+		// e.g.: member;range=1500-2999 or member;range=3000-*
+		String range = ranged.getID().substring(rangePrefix.length());
+		String high = range.substring(range.indexOf('-') + 1);
+
+		if (!"*".equals(high)) {
+			pending = searchResult;
+			nextLow = Integer.parseInt(high) + 1;
+		}
+
+		Attribute values = new BasicAttribute(attributeId, true);
+		for (int count = 0; count < ranged.size(); count++)
+			values.add(ranged.get(count));
+
+		Attributes attributes = new BasicAttributes(true);
+		NamingEnumeration<? extends Attribute> all = searchResult.getAttributes().getAll();
+		while (all.hasMore()) {
+			Attribute attribute = all.next();
+			if (!attribute.getID().regionMatches(true, 0, rangePrefix, 0, rangePrefix.length()))
+				attributes.put(attribute);
+		}
+		attributes.put(values);
+
+		SearchResult rangeResult = new SearchResult(searchResult.getName(), null, attributes,
+				searchResult.isRelative());
+		rangeResult.setNameInNamespace(searchResult.getNameInNamespace());
+		return rangeResult;
+	}
+}
@@ -0,0 +1,49 @@
+package com.quazzom.active_directory;
+
+/**
+ * Interrupts the thread of a request from another thread, e.g.: when its
+ * {@link Deadline} expires or when the copy of a hedged search answered first.
+ * The wait for the server reply (or for a free connection) ends with an
+ * {@link javax.naming.InterruptedNamingException} and the search cursor is
+ * closed, which abandons the search in the server, see {@link SearchTask}.
+ *
+ */
+final class RequestInterrupter {
+
+	private final Thread thread;
+	private boolean active = true; // guarded by this
+	private boolean fired; // guarded by this
+
+	/**
+	 * @param thread the thread of the request
+	 */
+	RequestInterrupter(Thread thread) {
+		this.thread = thread;
+	}
+
+	/**
+	 * Interrupt the thread, if the request did not end.
+	 */
+	synchronized void interrupt() {
+		if (!active)
+			return;
+		fired = true;
+		thread.interrupt();
+	}
+
+	/**
+	 * The request ended, called by its thread. Calling this method more than once
+	 * has no effect.
+	 *
+	 * @return true if the thread was interrupted by this interrupter
+	 */
+	synchronized boolean close() {
+		if (active) {
+			active = false;
+			// the interruption must not reach the next request of the thread
+			if (fired)
+				Thread.interrupted();
+		}
+		return fired;
+	}
+}
@@ -0,0 +1,309 @@
+package com.quazzom.active_directory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.OperationNotSupportedException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+
+/**
+ * A search over a context borrowed from the {@link DirContextPool}, the context
+ * is given back to the pool when the cursor is closed or when its last result
+ * is read.
+ * <p>
+ * When the page size is greater than zero the search uses the paged results
+ * control (RFC 2696): the results are requested <b>pageSize</b> at a time and
+ * the next page is only requested when the current one is read. So a search
+ * returns all the objects, even beyond the server size limit (MaxPageSize in
+ * Active Directory), and only one page is kept in memory. Other request
+ * controls (e.g.: Show Deleted) are sent with each page.
+ *
+ */
+class SearchCursor implements SearchResultEnumeration {
+
+	private final DirContextPool pool;
+	private final String base;
+	private final String filter;
+	private final SearchControls controls;
+	private final int pageSize;
+	private final Control[] requestControls;
+	private final OperationTrace trace; // null without a listener
+
+	private PooledDirContext pooled;
+	private LdapContext pagedContext;
+	private NamingEnumeration<SearchResult> answer;
+	private boolean broken;
+	private boolean closed;
+	private NamingException error;
+
+	private SearchCursor(DirContextPool pool, String base, String filter, SearchControls controls, int pageSize,
+			Control[] requestControls, OperationTrace trace) {
+		this.pool = pool;
+		this.base = base;
+		this.filter = filter;
+		this.controls = controls;
+		this.pageSize = pageSize;
+		this.requestControls = requestControls;
+		this.trace = trace;
+	}
+
+	/**
+	 * Same as {@link #open(DirContextPool, String, String, SearchControls, int, OperationTrace)}
+	 * without a trace.
+	 */
+	static SearchCursor open(DirContextPool pool, String base, String filter, SearchControls controls, int pageSize)
+			throws NamingException, ActiveDirectoryException {
+		return open(pool, base, filter, controls, pageSize, null);
+	}
+
+	/**
+	 * Same as
+	 * {@link #open(DirContextPool, String, String, SearchControls, int, Control[], OperationTrace)}
+	 * without other request controls.
+	 */
+	static SearchCursor open(DirContextPool pool, String base, String filter, SearchControls controls, int pageSize,
+			OperationTrace trace) throws NamingException, ActiveDirectoryException {
+		return open(pool, base, filter, controls, pageSize, new Control[0], trace);
+	}
+
+	/**
+	 * Borrow a context and start the search.
+	 * <p>
+	 * If the connection under the borrowed context is broken (e.g.: closed by the
+	 * server after being idle) the context is discarded and the search starts once
+	 * more with a new connection, unless the server didn't answer in time.
+	 *
+	 * @param pool     the pool to borrow the context
+	 * @param base     the base DN of the search
+	 * @param filter   the search filter
+	 * @param controls the search controls
+	 * @param pageSize        the number of results per page, zero or less for an
+	 *                        unpaged search
+	 * @param requestControls the other controls of the search
+	 * @param trace           the trace of the search, ended when the cursor is
+	 *                        closed, or null
+	 *
+	 * @return an open cursor
+	 *
+	 * @throws NamingException          if a naming exception is encountered
+	 * @throws ActiveDirectoryException if no connection got free in time
+	 */
+	static SearchCursor open(DirContextPool pool, String base, String filter, SearchControls controls, int pageSize,
+			Control[] requestControls, OperationTrace trace) throws NamingException, ActiveDirectoryException {
+
+		for (int attempt = 1;; attempt++) {
+			SearchCursor cursor = new SearchCursor(pool, base, filter, controls, pageSize, requestControls, trace);
+			cursor.pooled = OperationTrace.borrow(pool, trace);
+			try {
+				cursor.firstPage();
+				return cursor;
+			} catch (NamingException e) {
+				cursor.broken = DirContextPool.isBrokenConnection(e);
+				cursor.release();
+				// a server that didn't answer in time is not waited for twice
+				if (!cursor.broken || attempt > 1 || DirContextPool.isReadTimeout(e)) {
+					if (trace != null)
+						trace.finish(e);
+					throw e;
+				}
+			} catch (RuntimeException e) {
+				cursor.broken = true;
+				cursor.release();
+				if (trace != null)
+					trace.finish(e);
+				throw e;
+			}
+		}
+	}
+
+	@Override
+	public boolean hasMore() throws NamingException {
+		if (closed)
+			return false;
+
+		try {
+			while (!answer.hasMore()) {
+				if (!nextPage()) {
+					close();
+					return false;
+				}
+			}
+			return true;
+		} catch (NamingException e) {
+			abort(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the next result, {@link #hasMore()} must be called before, it is the
+	 * method that moves to the next page.
+	 */
+	@Override
+	public SearchResult next() throws NamingException {
+		if (closed)
+			throw new NoSuchElementException();
+
+		try {
+			SearchResult searchResult = answer.next();
+			if (trace != null)
+				trace.entry(searchResult.getAttributes());
+			return searchResult;
+		} catch (NamingException e) {
+			abort(e);
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean hasMoreElements() {
+		try {
+			return hasMore();
+		} catch (NamingException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public SearchResult nextElement() {
+		try {
+			return next();
+		} catch (NamingException e) {
+			throw new NoSuchElementException(e.toString());
+		}
+	}
+
+	/**
+	 * @return the context borrowed by this cursor, to make other requests while
+	 *         the search is read
+	 */
+	DirContext getContext() {
+		return pooled.getContext();
+	}
+
+	/**
+	 * Close the cursor after a failure of a request made with
+	 * {@link #getContext()}, a broken connection is not given back to the pool.
+	 *
+	 * @param e the exception thrown by the request
+	 */
+	void abort(NamingException e) {
+		broken = DirContextPool.isBrokenConnection(e);
+		error = e;
+		close();
+	}
+
+	/**
+	 * Count the values read with {@link #getContext()} for the trace of the
+	 * search, e.g.: the ranges of a large attribute.
+	 *
+	 * @param attributes the attributes read
+	 */
+	void recordValues(Attributes attributes) {
+		if (trace != null)
+			trace.values(attributes);
+	}
+
+	/**
+	 * Abandon the search, if it was not read until the end, and give back the
+	 * context to the pool. Calling this method more than once has no effect.
+	 */
+	@Override
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+
+		release();
+		if (trace != null)
+			trace.finish(error);
+	}
+
+	// give back the context, without ending the trace
+	private void release() {
+		try {
+			if (answer != null)
+				answer.close();
+			if (pagedContext != null)
+				pagedContext.close();
+		} catch (NamingException e) {
+			broken = true;
+		}
+
+		if (broken)
+			pool.invalidate(pooled);
+		else
+			pool.release(pooled);
+	}
+
+	private void firstPage() throws NamingException {
+		DirContext context = pooled.getContext();
+
+		if (pageSize <= 0 && requestControls.length == 0) {
+			answer = context.search(base, filter, controls);
+			return;
+		}
+
+		if (!(context instanceof LdapContext))
+			throw new OperationNotSupportedException("a paged search needs a LdapContext.");
+
+		// a new instance shares the connection but has its own request controls, so
+		// the pooled context is never left with a paged control
+		pagedContext = ((LdapContext) context).newInstance(requestControls(null));
+		answer = pagedContext.search(base, filter, controls);
+	}
+
+	/**
+	 * Request the next page, if the server has more results.
+	 */
+	private boolean nextPage() throws NamingException {
+		if (pagedContext == null || pageSize <= 0)
+			return false;
+
+		byte[] cookie = null;
+		Control[] responseControls = pagedContext.getResponseControls();
+		if (responseControls != null)
+			for (Control control : responseControls)
+				if (control instanceof PagedResultsResponseControl)
+					cookie = ((PagedResultsResponseControl) control).getCookie();
+
+		// an empty cookie means that this was the last page
+		if (cookie == null || cookie.length == 0)
+			return false;
+
+		answer.close();
+		pagedContext.setRequestControls(requestControls(cookie));
+		answer = pagedContext.search(base, filter, controls);
+		return true;
+	}
+
+	// the other controls and, for a paged search, the paged results control
+	private Control[] requestControls(byte[] cookie) throws NamingException {
+		if (pageSize <= 0)
+			return requestControls;
+
+		Control[] all = Arrays.copyOf(requestControls, requestControls.length + 1);
+		all[requestControls.length] = pagedControl(cookie);
+		return all;
+	}
+
+	private PagedResultsControl pagedControl(byte[] cookie) throws NamingException {
+		try {
+			return new PagedResultsControl(pageSize, cookie, Control.CRITICAL);
+		} catch (IOException e) {
+			NamingException namingException = new NamingException("could not encode the paged results control.");
+			namingException.setRootCause(e);
+			throw namingException;
+		}
+	}
+}
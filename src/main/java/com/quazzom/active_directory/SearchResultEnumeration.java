@@ -0,0 +1,19 @@
+package com.quazzom.active_directory;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.SearchResult;
+
+/**
+ * A {@link NamingEnumeration} of search results that holds a pooled connection,
+ * it must be closed to give it back.
+ *
+ */
+interface SearchResultEnumeration extends NamingEnumeration<SearchResult>, AutoCloseable {
+
+	/**
+	 * Abandon the search, if it was not read until the end, and give back the
+	 * connection. Calling this method more than once has no effect.
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,55 @@
+package com.quazzom.active_directory;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.naming.NamingException;
+
+/**
+ * Pulls the results of a search only when they are needed. Only the strings of
+ * the current {@link javax.naming.directory.SearchResult} are buffered.
+ *
+ */
+class SearchResultIterator implements Iterator<String> {
+
+	private final SearchResultEnumeration cursor;
+	private final SearchResultMapper mapper;
+	private final ArrayDeque<String> buffer = new ArrayDeque<String>();
+
+	SearchResultIterator(SearchResultEnumeration cursor, SearchResultMapper mapper) {
+		this.cursor = cursor;
+		this.mapper = mapper;
+	}
+
+	/**
+	 * @throws UncheckedNamingException if a naming exception is encountered, the
+	 *                                  cursor is closed
+	 */
+	@Override
+	public boolean hasNext() {
+		try {
+			while (buffer.isEmpty()) {
+				if (!cursor.hasMore())
+					return false;
+
+				mapper.map(cursor.next(), buffer::add);
+			}
+			return true;
+		} catch (NamingException e) {
+			cursor.close();
+			throw new UncheckedNamingException(e);
+		} catch (RuntimeException e) {
+			cursor.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public String next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		return buffer.poll();
+	}
+}
@@ -0,0 +1,22 @@
+package com.quazzom.active_directory;
+
+import java.util.function.Consumer;
+
+import javax.naming.NamingException;
+import javax.naming.directory.SearchResult;
+
+/**
+ * Turns a {@link SearchResult} into the strings returned by the searches, e.g.:
+ * the common names of its <b>memberOf</b> values.
+ *
+ */
+interface SearchResultMapper {
+
+	/**
+	 * @param searchResult a search result
+	 * @param values       receives each string of the search result
+	 *
+	 * @throws NamingException if a naming exception is encountered
+	 */
+	void map(SearchResult searchResult, Consumer<? super String> values) throws NamingException;
+}
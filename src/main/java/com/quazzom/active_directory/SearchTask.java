@@ -0,0 +1,73 @@
+package com.quazzom.active_directory;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A search run by an executor, completing itself with the search result.
+ * <p>
+ * Cancelling the future interrupts the thread running the search: the wait for
+ * the server reply ends with an {@link javax.naming.InterruptedNamingException}
+ * and the search cursor is closed, which abandons the search in the server and
+ * gives back the connection to the pool.
+ *
+ * @param <T> the type of the search result
+ */
+class SearchTask<T> extends CompletableFuture<T> implements Runnable {
+
+	/**
+	 * A search of {@link ActiveDirectory}.
+	 */
+	interface Search<T> {
+		T run() throws Exception;
+	}
+
+	private final Search<T> search;
+	private final Object runnerLock = new Object();
+	private Thread runner; // guarded by runnerLock
+
+	SearchTask(Search<T> search) {
+		this.search = search;
+	}
+
+	@Override
+	public void run() {
+		synchronized (runnerLock) {
+			// cancelled before it started
+			if (isDone())
+				return;
+			runner = Thread.currentThread();
+		}
+
+		try {
+			complete(search.run());
+		} catch (Throwable e) {
+			completeExceptionally(e);
+		} finally {
+			synchronized (runnerLock) {
+				runner = null;
+			}
+			// a cancel that came at the end must not interrupt the next task of the
+			// thread
+			Thread.interrupted();
+		}
+	}
+
+	/**
+	 * Cancel the search, interrupting it if it is running. Unlike
+	 * {@link CompletableFuture#cancel(boolean)}, the running search is always
+	 * interrupted.
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		boolean cancelled = super.cancel(mayInterruptIfRunning);
+
+		if (cancelled) {
+			synchronized (runnerLock) {
+				if (runner != null)
+					runner.interrupt();
+			}
+		}
+
+		return cancelled;
+	}
+}
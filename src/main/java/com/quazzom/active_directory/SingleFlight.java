@@ -0,0 +1,156 @@
+package com.quazzom.active_directory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+import javax.naming.InterruptedNamingException;
+import javax.naming.NamingException;
+
+/**
+ * Coalesces the identical requests made at the same time: while a request of a
+ * key is in flight, the other requests of the key wait for it and share its
+ * result (or its exception) instead of making their own. The interruption of
+ * the request in flight (e.g.: a cancelled asynchronous search) is not shared:
+ * the waiting requests make the request again, one of them in flight.
+ * <p>
+ * A request made after the end of the one in flight makes a new one, nothing
+ * is kept after the end, see {@link LookupCache} for that.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the results
+ */
+final class SingleFlight<K, V> {
+
+	/**
+	 * A request to the Active Directory.
+	 */
+	interface Call<V> {
+		V call() throws NamingException, ActiveDirectoryException;
+	}
+
+	private static final class Flight<V> {
+		final CountDownLatch done = new CountDownLatch(1);
+		volatile V value;
+		volatile Throwable failure;
+		volatile boolean interrupted; // the failure is not shared
+	}
+
+	private final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<K, Flight<V>>();
+	private final UnaryOperator<V> share;
+
+	private final LongAdder requestCount = new LongAdder();
+	private final LongAdder coalescedCount = new LongAdder();
+
+	/**
+	 * @param share gives each waiting request its own copy of the result, e.g.: of
+	 *              a mutable list
+	 */
+	SingleFlight(UnaryOperator<V> share) {
+		this.share = share;
+	}
+
+	/**
+	 * Make the request of the key, or wait for the one in flight.
+	 *
+	 * @param key  the key, equal for the requests with the same result
+	 * @param call makes the request
+	 *
+	 * @return the result of the request
+	 *
+	 * @throws NamingException          if the request fails or if the thread is
+	 *                                  interrupted while waiting
+	 * @throws ActiveDirectoryException if the request fails
+	 */
+	V execute(K key, Call<V> call) throws NamingException, ActiveDirectoryException {
+		return execute(key, call, true);
+	}
+
+	/**
+	 * Same as {@link #execute(Object, Call)}, but without <b>lead</b> the request
+	 * only waits for the one in flight: when there is none it is made alone, so
+	 * its failure (e.g.: the end of its own deadline) is not shared.
+	 *
+	 * @param key  the key, equal for the requests with the same result
+	 * @param call makes the request
+	 * @param lead false if the other requests must not wait for this one
+	 *
+	 * @return the result of the request
+	 *
+	 * @throws NamingException          if the request fails or if the thread is
+	 *                                  interrupted while waiting
+	 * @throws ActiveDirectoryException if the request fails
+	 */
+	V execute(K key, Call<V> call, boolean lead) throws NamingException, ActiveDirectoryException {
+		boolean counted = false;
+
+		while (true) {
+			Flight<V> flight = lead ? new Flight<V>() : null;
+			Flight<V> running = lead ? flights.putIfAbsent(key, flight) : flights.get(key);
+
+			// counted once it has joined the flight or made its own request
+			if (!counted) {
+				requestCount.increment();
+				counted = true;
+			}
+			if (running == null)
+				return lead ? lead(key, flight, call) : call.call();
+
+			await(running);
+			if (running.interrupted)
+				continue;
+
+			coalescedCount.increment();
+			return result(running);
+		}
+	}
+
+	/**
+	 * @return a snapshot of the statistics
+	 */
+	CoalescingStats stats() {
+		return new CoalescingStats(requestCount.sum(), coalescedCount.sum());
+	}
+
+	private V lead(K key, Flight<V> flight, Call<V> call) throws NamingException, ActiveDirectoryException {
+		try {
+			V value = call.call();
+			flight.value = value;
+			return value;
+		} catch (NamingException | ActiveDirectoryException | RuntimeException | Error e) {
+			// only this request was interrupted, the others try again
+			if (e instanceof InterruptedNamingException || Thread.currentThread().isInterrupted())
+				flight.interrupted = true;
+			else
+				flight.failure = e;
+			throw e;
+		} finally {
+			flights.remove(key, flight);
+			flight.done.countDown();
+		}
+	}
+
+	private void await(Flight<V> flight) throws InterruptedNamingException {
+		try {
+			flight.done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedNamingException("interrupted while waiting for the same search.");
+		}
+	}
+
+	private V result(Flight<V> flight) throws NamingException, ActiveDirectoryException {
+		Throwable failure = flight.failure;
+		if (failure == null)
+			return share.apply(flight.value);
+
+		if (failure instanceof NamingException)
+			throw (NamingException) failure;
+		if (failure instanceof ActiveDirectoryException)
+			throw (ActiveDirectoryException) failure;
+		if (failure instanceof Error)
+			throw (Error) failure;
+		throw (RuntimeException) failure;
+	}
+}
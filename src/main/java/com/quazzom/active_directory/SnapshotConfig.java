@@ -0,0 +1,55 @@
+package com.quazzom.active_directory;
+
+import java.nio.file.Path;
+
+/**
+ * Settings of the snapshot of the groups and members of
+ * {@link ActiveDirectory#searchUserGroups(String)} and
+ * {@link ActiveDirectory#searchUsersGroup(String)}, see
+ * {@link ActiveDirectory#setSnapshotConfig(SnapshotConfig)}.
+ * <p>
+ * The default refreshIntervalMillis is 900000.
+ *
+ */
+public class SnapshotConfig {
+
+	private final Path file;
+	private long refreshIntervalMillis = 900000;
+
+	/**
+	 * @param file the snapshot file, read at the start and written after each
+	 *             load of the snapshot
+	 */
+	public SnapshotConfig(Path file) {
+		if (file == null)
+			throw new IllegalArgumentException("file cannot be null.");
+		this.file = file;
+	}
+
+	/**
+	 * @return the snapshot file.
+	 */
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * @return how long a snapshot is used after being loaded before it is loaded
+	 *         again in background.
+	 */
+	public long getRefreshIntervalMillis() {
+		return refreshIntervalMillis;
+	}
+
+	/**
+	 * @param refreshIntervalMillis how long a snapshot is used after being loaded
+	 *                              before it is loaded again in background. The
+	 *                              old snapshot answers the searches while the
+	 *                              new one is loaded.
+	 */
+	public void setRefreshIntervalMillis(long refreshIntervalMillis) {
+		if (refreshIntervalMillis <= 0)
+			throw new IllegalArgumentException("refreshIntervalMillis must be greater than zero.");
+		this.refreshIntervalMillis = refreshIntervalMillis;
+	}
+}
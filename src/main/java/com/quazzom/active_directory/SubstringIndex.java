@@ -0,0 +1,194 @@
+package com.quazzom.active_directory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * An immutable trigram index of object names, it answers the same question as
+ * the filter <b>(sAMAccountName=*part*)</b> without a search in the Active
+ * Directory, where a medial substring filter can't use an index and reads all
+ * the objects.
+ * <p>
+ * Each name is split in its trigrams (the 3 character substrings of the lower
+ * case name) and the index keeps, for each trigram, the sorted ids of the names
+ * with it. All the postings are in one int array, with the sorted trigram keys
+ * and their offsets in two other arrays, so the index has no object per
+ * trigram. A search reads the shortest posting list of the trigrams of the
+ * part and checks each candidate with {@link String#contains}, so a key
+ * collision only costs a check. Parts shorter than 3 characters check every
+ * name.
+ *
+ */
+final class SubstringIndex {
+
+	private final String[] names; // lower case
+	private final String[] values;
+	private final int[] keys; // sorted trigram keys
+	private final int[] offsets; // postings of keys[i] are offsets[i] to offsets[i + 1]
+	private final int[] postings;
+	private final long estimatedBytes;
+
+	private SubstringIndex(String[] names, String[] values, int[] keys, int[] offsets, int[] postings,
+			long estimatedBytes) {
+		this.names = names;
+		this.values = values;
+		this.keys = keys;
+		this.offsets = offsets;
+		this.postings = postings;
+		this.estimatedBytes = estimatedBytes;
+	}
+
+	/**
+	 * Collects the names of an index.
+	 */
+	static final class Builder {
+		private final List<String> names = new ArrayList<String>();
+		private final List<String> values = new ArrayList<String>();
+		private long estimatedBytes;
+		private int trigramCount;
+
+		/**
+		 * @param name  the name searched, e.g.: the <b>sAMAccountName</b>
+		 * @param value the value returned when the name matches, e.g.: the
+		 *              <b>cn</b>
+		 *
+		 * @return this builder
+		 */
+		Builder add(String name, String value) {
+			String lowerCaseName = name.toLowerCase(Locale.ROOT);
+			// the common case of a cn equal to the sAMAccountName keeps one string
+			if (value.equals(name))
+				value = name;
+			if (lowerCaseName.equals(name))
+				lowerCaseName = name;
+
+			names.add(lowerCaseName);
+			values.add(value);
+
+			int trigrams = Math.max(0, lowerCaseName.length() - 2);
+			trigramCount += trigrams;
+			// two references, the strings not shared, a posting and its sort pair per
+			// trigram
+			estimatedBytes += 16 + stringBytes(lowerCaseName) + (value == lowerCaseName ? 0 : stringBytes(value))
+					+ trigrams * (4L + 8L);
+			return this;
+		}
+
+		/**
+		 * @return the estimated memory of the index being built, with the memory
+		 *         used while it is built
+		 */
+		long getEstimatedBytes() {
+			return estimatedBytes;
+		}
+
+		SubstringIndex build() {
+			String[] nameArray = names.toArray(new String[0]);
+			String[] valueArray = values.toArray(new String[0]);
+
+			// (key, id) pairs, sorted by key and then by id
+			long[] pairs = new long[trigramCount];
+			int count = 0;
+			for (int id = 0; id < nameArray.length; id++) {
+				String name = nameArray[id];
+				for (int start = 0; start + 3 <= name.length(); start++)
+					pairs[count++] = ((long) key(name, start) << 32) | id;
+			}
+			Arrays.sort(pairs, 0, count);
+
+			int[] keys = new int[count];
+			int[] offsets = new int[count + 1];
+			int[] postings = new int[count];
+			int keyCount = 0;
+			int postingCount = 0;
+			long previous = -1;
+
+			for (int index = 0; index < count; index++) {
+				long pair = pairs[index];
+				// a trigram repeated in a name
+				if (pair == previous)
+					continue;
+
+				int key = (int) (pair >>> 32);
+				if (keyCount == 0 || keys[keyCount - 1] != key) {
+					keys[keyCount] = key;
+					offsets[keyCount] = postingCount;
+					keyCount++;
+				}
+				postings[postingCount++] = (int) pair;
+				previous = pair;
+			}
+			offsets[keyCount] = postingCount;
+
+			long bytes = 16L * nameArray.length + 12L * keyCount + 4L * postingCount;
+			for (int id = 0; id < nameArray.length; id++)
+				bytes += stringBytes(nameArray[id]) + (valueArray[id] == nameArray[id] ? 0 : stringBytes(valueArray[id]));
+
+			return new SubstringIndex(nameArray, valueArray, Arrays.copyOf(keys, keyCount),
+					Arrays.copyOf(offsets, keyCount + 1), Arrays.copyOf(postings, postingCount), bytes);
+		}
+	}
+
+	/**
+	 * @param part a part of a name, it is not a filter: <b>*</b> is not a wildcard
+	 *
+	 * @return the values of the names containing <b>part</b>, ignoring the case,
+	 *         in the order they were added
+	 */
+	List<String> search(String part) {
+		String lowerCasePart = part.toLowerCase(Locale.ROOT);
+		List<String> found = new ArrayList<String>();
+
+		if (lowerCasePart.length() < 3) {
+			for (int id = 0; id < names.length; id++)
+				if (names[id].contains(lowerCasePart))
+					found.add(values[id]);
+			return found;
+		}
+
+		// the shortest posting list of the trigrams of the part
+		int from = 0;
+		int to = Integer.MAX_VALUE;
+		for (int start = 0; start + 3 <= lowerCasePart.length(); start++) {
+			int position = Arrays.binarySearch(keys, key(lowerCasePart, start));
+			if (position < 0)
+				return found;
+			if (offsets[position + 1] - offsets[position] < to - from) {
+				from = offsets[position];
+				to = offsets[position + 1];
+			}
+		}
+
+		for (int index = from; index < to; index++) {
+			int id = postings[index];
+			if (names[id].contains(lowerCasePart))
+				found.add(values[id]);
+		}
+		return found;
+	}
+
+	/**
+	 * @return the number of names
+	 */
+	int size() {
+		return names.length;
+	}
+
+	/**
+	 * @return the estimated memory of the index
+	 */
+	long getEstimatedBytes() {
+		return estimatedBytes;
+	}
+
+	private static int key(String name, int start) {
+		return (name.charAt(start) * 31 + name.charAt(start + 1)) * 31 + name.charAt(start + 2);
+	}
+
+	// header, the char array and its header
+	private static long stringBytes(String string) {
+		return 40 + 2L * string.length();
+	}
+}
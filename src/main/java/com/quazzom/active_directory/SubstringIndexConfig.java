@@ -0,0 +1,54 @@
+package com.quazzom.active_directory;
+
+/**
+ * Settings of the local indexes of
+ * {@link ActiveDirectory#searchUserObjects(String)} and
+ * {@link ActiveDirectory#searchGroupObjects(String)}.
+ * <p>
+ * The defaults are: refreshIntervalMillis 900000 and maxMemoryBytes 67108864
+ * (64 MiB) per index.
+ *
+ */
+public class SubstringIndexConfig {
+
+	private long refreshIntervalMillis = 900000;
+	private long maxMemoryBytes = 64L * 1024 * 1024;
+
+	/**
+	 * @return how long an index is used after being loaded before it is loaded
+	 *         again in background.
+	 */
+	public long getRefreshIntervalMillis() {
+		return refreshIntervalMillis;
+	}
+
+	/**
+	 * @param refreshIntervalMillis how long an index is used after being loaded
+	 *                              before it is loaded again in background. The
+	 *                              old index answers the searches while the new
+	 *                              one is loaded.
+	 */
+	public void setRefreshIntervalMillis(long refreshIntervalMillis) {
+		if (refreshIntervalMillis <= 0)
+			throw new IllegalArgumentException("refreshIntervalMillis must be greater than zero.");
+		this.refreshIntervalMillis = refreshIntervalMillis;
+	}
+
+	/**
+	 * @return the estimated memory limit of each index.
+	 */
+	public long getMaxMemoryBytes() {
+		return maxMemoryBytes;
+	}
+
+	/**
+	 * @param maxMemoryBytes the estimated memory limit of each index. A directory
+	 *                       too large for it is not indexed, its searches go to
+	 *                       the Active Directory.
+	 */
+	public void setMaxMemoryBytes(long maxMemoryBytes) {
+		if (maxMemoryBytes <= 0)
+			throw new IllegalArgumentException("maxMemoryBytes must be greater than zero.");
+		this.maxMemoryBytes = maxMemoryBytes;
+	}
+}
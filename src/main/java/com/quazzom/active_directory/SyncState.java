@@ -0,0 +1,117 @@
+package com.quazzom.active_directory;
+
+import java.util.Base64;
+import java.util.Properties;
+
+/**
+ * The position of a {@link DirectorySync} in the changes of the Active
+ * Directory, kept by a {@link SyncStateStore} between the sync cycles and the
+ * restarts.
+ * <p>
+ * The update sequence numbers (USN) are local to a domain controller, so the
+ * state has the identity of the domain controller: a sync with another one
+ * starts with a full resync.
+ *
+ */
+public final class SyncState {
+
+	/**
+	 * How the changes are read.
+	 */
+	public enum Mode {
+		/**
+		 * The objects with a <b>uSNChanged</b> above the last
+		 * <b>highestCommittedUSN</b>.
+		 */
+		USN,
+		/**
+		 * The DirSync control and its cookie.
+		 */
+		DIRSYNC
+	}
+
+	private final Mode mode;
+	private final String server;
+	private final long highestUsn;
+	private final byte[] cookie;
+
+	/**
+	 * @param mode       how the changes are read
+	 * @param server     the identity of the domain controller
+	 * @param highestUsn the last USN read, in the {@link Mode#USN} mode
+	 * @param cookie     the last DirSync cookie, in the {@link Mode#DIRSYNC} mode
+	 */
+	public SyncState(Mode mode, String server, long highestUsn, byte[] cookie) {
+		this.mode = mode;
+		this.server = server;
+		this.highestUsn = highestUsn;
+		this.cookie = cookie == null ? null : cookie.clone();
+	}
+
+	/**
+	 * @return how the changes are read.
+	 */
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * @return the identity of the domain controller, its <b>invocationId</b> or
+	 *         its <b>dsServiceName</b>.
+	 */
+	public String getServer() {
+		return server;
+	}
+
+	/**
+	 * @return the last USN read, in the {@link Mode#USN} mode.
+	 */
+	public long getHighestUsn() {
+		return highestUsn;
+	}
+
+	/**
+	 * @return the last DirSync cookie, in the {@link Mode#DIRSYNC} mode, or null.
+	 */
+	public byte[] getCookie() {
+		return cookie == null ? null : cookie.clone();
+	}
+
+	/**
+	 * @return the state as properties, see {@link #fromProperties(Properties)}
+	 */
+	public Properties toProperties() {
+		Properties properties = new Properties();
+		properties.setProperty("mode", mode.name());
+		if (server != null)
+			properties.setProperty("server", server);
+		properties.setProperty("highestUsn", Long.toString(highestUsn));
+		if (cookie != null)
+			properties.setProperty("cookie", Base64.getEncoder().encodeToString(cookie));
+		return properties;
+	}
+
+	/**
+	 * @param properties the properties written by {@link #toProperties()}
+	 *
+	 * @return the state
+	 *
+	 * @throws IllegalArgumentException if the properties are not a valid state
+	 */
+	public static SyncState fromProperties(Properties properties) {
+		String mode = properties.getProperty("mode");
+		if (mode == null)
+			throw new IllegalArgumentException("the sync state has no mode.");
+
+		String cookie = properties.getProperty("cookie");
+		return new SyncState(Mode.valueOf(mode), properties.getProperty("server"),
+				Long.parseLong(properties.getProperty("highestUsn", "0")),
+				cookie == null ? null : Base64.getDecoder().decode(cookie));
+	}
+
+	@Override
+	public String toString() {
+		return String.format("SyncState[mode=%s, server=%s, highestUsn=%d, cookie=%s]", mode, server, highestUsn,
+				cookie == null ? "none" : cookie.length + " bytes");
+	}
+}
@@ -0,0 +1,29 @@
+package com.quazzom.active_directory;
+
+import java.io.IOException;
+
+/**
+ * Keeps the {@link SyncState} of a {@link DirectorySync}, e.g.: in a file (see
+ * {@link FileSyncStateStore}) or in the database that holds the synchronized
+ * data, in the same transaction as the changes.
+ *
+ */
+public interface SyncStateStore {
+
+	/**
+	 * @return the last saved state or null if there is none, the next sync is a
+	 *         full resync
+	 *
+	 * @throws IOException if the state cannot be read
+	 */
+	SyncState load() throws IOException;
+
+	/**
+	 * Save the state after the changes of a cycle are published.
+	 *
+	 * @param state the state
+	 *
+	 * @throws IOException if the state cannot be written
+	 */
+	void save(SyncState state) throws IOException;
+}
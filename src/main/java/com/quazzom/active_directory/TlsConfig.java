@@ -0,0 +1,141 @@
+package com.quazzom.active_directory;
+
+import java.nio.file.Path;
+
+/**
+ * Settings of the encrypted connections with the Active Directory, see
+ * {@link ActiveDirectory#setTlsConfig(TlsConfig)}.
+ * <p>
+ * The defaults are: transportSecurity {@link TransportSecurity#LDAPS}, the
+ * trust store of the JVM, hostnameVerification true, sessionCacheSize 1000 and
+ * sessionTimeoutSeconds 86400.
+ *
+ */
+public class TlsConfig {
+
+	private TransportSecurity transportSecurity = TransportSecurity.LDAPS;
+	private Path trustStore;
+	private char[] trustStorePassword;
+	private String trustStoreType;
+	private boolean hostnameVerification = true;
+	private int sessionCacheSize = 1000;
+	private int sessionTimeoutSeconds = 86400;
+
+	/**
+	 * @return how the connections are encrypted.
+	 */
+	public TransportSecurity getTransportSecurity() {
+		return transportSecurity;
+	}
+
+	/**
+	 * @param transportSecurity how the connections are encrypted, the port given
+	 *                          to the {@link ActiveDirectory} must be the one of
+	 *                          this mode.
+	 */
+	public void setTransportSecurity(TransportSecurity transportSecurity) {
+		if (transportSecurity == null)
+			throw new IllegalArgumentException("transportSecurity cannot be null.");
+		this.transportSecurity = transportSecurity;
+	}
+
+	/**
+	 * @return the trust store with the certificates of the domain controllers or
+	 *         of their certification authority, null for the trust store of the
+	 *         JVM.
+	 */
+	public Path getTrustStore() {
+		return trustStore;
+	}
+
+	/**
+	 * @param trustStore the trust store with the certificates of the domain
+	 *                   controllers or of their certification authority, null
+	 *                   for the trust store of the JVM.
+	 */
+	public void setTrustStore(Path trustStore) {
+		this.trustStore = trustStore;
+	}
+
+	/**
+	 * @return the password of the trust store or null.
+	 */
+	public char[] getTrustStorePassword() {
+		return trustStorePassword;
+	}
+
+	/**
+	 * @param trustStorePassword the password of the trust store, null to read it
+	 *                           without checking its integrity.
+	 */
+	public void setTrustStorePassword(char[] trustStorePassword) {
+		this.trustStorePassword = trustStorePassword;
+	}
+
+	/**
+	 * @return the type of the trust store, null for the default type of the JVM.
+	 */
+	public String getTrustStoreType() {
+		return trustStoreType;
+	}
+
+	/**
+	 * @param trustStoreType the type of the trust store, e.g.: <b>PKCS12</b> or
+	 *                       <b>JKS</b>, null for the default type of the JVM.
+	 */
+	public void setTrustStoreType(String trustStoreType) {
+		this.trustStoreType = trustStoreType;
+	}
+
+	/**
+	 * @return true if the name of the server must match its certificate.
+	 */
+	public boolean isHostnameVerification() {
+		return hostnameVerification;
+	}
+
+	/**
+	 * @param hostnameVerification true if the name of the server must match its
+	 *                             certificate. Without it the certificate is still
+	 *                             checked against the trust store, but any
+	 *                             server with a trusted certificate is accepted.
+	 */
+	public void setHostnameVerification(boolean hostnameVerification) {
+		this.hostnameVerification = hostnameVerification;
+	}
+
+	/**
+	 * @return the number of TLS sessions kept to be resumed.
+	 */
+	public int getSessionCacheSize() {
+		return sessionCacheSize;
+	}
+
+	/**
+	 * @param sessionCacheSize the number of TLS sessions kept to be resumed, a new
+	 *                         connection to a server with a session in the cache
+	 *                         makes an abbreviated handshake.
+	 */
+	public void setSessionCacheSize(int sessionCacheSize) {
+		if (sessionCacheSize <= 0)
+			throw new IllegalArgumentException("sessionCacheSize must be greater than zero.");
+		this.sessionCacheSize = sessionCacheSize;
+	}
+
+	/**
+	 * @return how long a TLS session can be resumed.
+	 */
+	public int getSessionTimeoutSeconds() {
+		return sessionTimeoutSeconds;
+	}
+
+	/**
+	 * @param sessionTimeoutSeconds how long a TLS session can be resumed, after it
+	 *                              a new connection makes a full handshake.
+	 */
+	public void setSessionTimeoutSeconds(int sessionTimeoutSeconds) {
+		if (sessionTimeoutSeconds <= 0)
+			throw new IllegalArgumentException("sessionTimeoutSeconds must be greater than zero.");
+		this.sessionTimeoutSeconds = sessionTimeoutSeconds;
+	}
+}
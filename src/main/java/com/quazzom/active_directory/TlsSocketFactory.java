@@ -0,0 +1,279 @@
+package com.quazzom.active_directory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * The TLS sockets of the connections with the Active Directory, made from a
+ * {@link TlsConfig}. Not meant to be used directly: JNDI takes a socket factory
+ * by its class name (<b>java.naming.ldap.factory.socket</b>) and asks its
+ * static {@link #getDefault()}, which gives the factory of the connection
+ * being opened by the current thread, see {@link #open(DirContextFactory)}.
+ * <p>
+ * With StartTLS the connections are opened with plain sockets and upgraded by
+ * this factory. JNDI opens a connection again when it is broken (e.g.: by a
+ * reconnect to bind), but outside of {@link #open(DirContextFactory)} it gets no
+ * socket: a StartTLS connection is never opened again without its upgrade, so
+ * the credentials never cross a plain connection.
+ * <p>
+ * All the connections share one {@link SSLContext}, so a new connection to a
+ * server already seen resumes the cached TLS session (an abbreviated handshake,
+ * without the certificate checks and the key exchange) instead of a full
+ * handshake.
+ *
+ */
+public final class TlsSocketFactory extends SSLSocketFactory {
+
+	// the factory of the connection being opened by the current thread
+	private static final ThreadLocal<SocketFactory> OPENING = new ThreadLocal<SocketFactory>();
+
+	private final TlsConfig config;
+	private final SSLSocketFactory sockets;
+	private final boolean hostnameVerification;
+
+	private final LongAdder handshakes = new LongAdder();
+	private final LongAdder resumed = new LongAdder();
+
+	/**
+	 * @param config the TLS settings
+	 *
+	 * @throws GeneralSecurityException if the trust store cannot be used
+	 * @throws IOException              if the trust store cannot be read
+	 */
+	TlsSocketFactory(TlsConfig config) throws GeneralSecurityException, IOException {
+		TrustManagerFactory trustManagerFactory = TrustManagerFactory
+				.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		trustManagerFactory.init(trustStore(config));
+
+		TrustManager[] trustManagers = trustManagerFactory.getTrustManagers();
+		if (!config.isHostnameVerification())
+			for (int index = 0; index < trustManagers.length; index++)
+				if (trustManagers[index] instanceof X509TrustManager)
+					trustManagers[index] = new ChainOnlyTrustManager((X509TrustManager) trustManagers[index]);
+
+		SSLContext context = SSLContext.getInstance("TLS");
+		context.init(null, trustManagers, null);
+
+		SSLSessionContext sessions = context.getClientSessionContext();
+		sessions.setSessionCacheSize(config.getSessionCacheSize());
+		sessions.setSessionTimeout(config.getSessionTimeoutSeconds());
+
+		this.config = config;
+		this.sockets = context.getSocketFactory();
+		this.hostnameVerification = config.isHostnameVerification();
+	}
+
+	private static KeyStore trustStore(TlsConfig config) throws GeneralSecurityException, IOException {
+		if (config.getTrustStore() == null)
+			return null; // the trust store of the JVM
+
+		String type = config.getTrustStoreType() == null ? KeyStore.getDefaultType() : config.getTrustStoreType();
+		KeyStore trustStore = KeyStore.getInstance(type);
+		try (InputStream in = Files.newInputStream(config.getTrustStore())) {
+			trustStore.load(in, config.getTrustStorePassword());
+		}
+		return trustStore;
+	}
+
+	/**
+	 * Called by JNDI while a connection is opened.
+	 *
+	 * @return the factory of the connection being opened by the current thread
+	 */
+	public static SocketFactory getDefault() {
+		SocketFactory factory = OPENING.get();
+		if (factory == null)
+			throw new IllegalStateException(
+					"TlsSocketFactory only opens the connections of ActiveDirectory, in its handShake or its pool.");
+		return factory;
+	}
+
+	/**
+	 * Open a connection with the sockets of this factory: the new connections
+	 * made by JNDI in the current thread until the end of <b>factory</b> use it.
+	 * With StartTLS they use plain sockets, to be upgraded.
+	 *
+	 * @param factory opens the connection, e.g.: a new InitialLdapContext
+	 *
+	 * @return the context
+	 *
+	 * @throws NamingException if a naming exception is encountered
+	 */
+	DirContext open(DirContextFactory factory) throws NamingException {
+		SocketFactory outer = OPENING.get();
+		OPENING.set(config.getTransportSecurity() == TransportSecurity.START_TLS ? SocketFactory.getDefault() : this);
+		try {
+			return factory.create();
+		} finally {
+			if (outer == null)
+				OPENING.remove();
+			else
+				OPENING.set(outer);
+		}
+	}
+
+	/**
+	 * @return the settings of the factory
+	 */
+	TlsConfig config() {
+		return config;
+	}
+
+	/**
+	 * @return true if the name of the server must match its certificate
+	 */
+	boolean isHostnameVerification() {
+		return hostnameVerification;
+	}
+
+	/**
+	 * @return the statistics of the handshakes
+	 */
+	TlsStats stats() {
+		return new TlsStats(handshakes.sum(), resumed.sum());
+	}
+
+	@Override
+	public Socket createSocket() throws IOException {
+		return prepare(sockets.createSocket());
+	}
+
+	@Override
+	public Socket createSocket(String host, int port) throws IOException, UnknownHostException {
+		return prepare(sockets.createSocket(host, port));
+	}
+
+	@Override
+	public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+			throws IOException, UnknownHostException {
+		return prepare(sockets.createSocket(host, port, localHost, localPort));
+	}
+
+	@Override
+	public Socket createSocket(InetAddress host, int port) throws IOException {
+		return prepare(sockets.createSocket(host, port));
+	}
+
+	@Override
+	public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+			throws IOException {
+		return prepare(sockets.createSocket(address, port, localAddress, localPort));
+	}
+
+	/**
+	 * The TLS layer of a plain connection, used by StartTLS.
+	 */
+	@Override
+	public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+		return prepare(sockets.createSocket(socket, host, port, autoClose));
+	}
+
+	@Override
+	public String[] getDefaultCipherSuites() {
+		return sockets.getDefaultCipherSuites();
+	}
+
+	@Override
+	public String[] getSupportedCipherSuites() {
+		return sockets.getSupportedCipherSuites();
+	}
+
+	private Socket prepare(Socket socket) throws SocketException {
+		SSLSocket sslSocket = (SSLSocket) socket;
+		// the handshake is a few small writes, the Nagle algorithm with the delayed
+		// acknowledgements of the server would hold each one about 40 ms
+		sslSocket.setTcpNoDelay(true);
+		if (hostnameVerification) {
+			// the name is checked during the handshake, as the JNDI LDAPS does unless
+			// com.sun.jndi.ldap.object.disableEndpointIdentification is set
+			SSLParameters parameters = sslSocket.getSSLParameters();
+			parameters.setEndpointIdentificationAlgorithm("LDAPS");
+			sslSocket.setSSLParameters(parameters);
+		}
+
+		long openedAt = System.currentTimeMillis();
+		sslSocket.addHandshakeCompletedListener(event -> {
+			handshakes.increment();
+			// a resumed session keeps the creation time of its full handshake
+			if (event.getSession().getCreationTime() < openedAt)
+				resumed.increment();
+		});
+		return sslSocket;
+	}
+
+	/**
+	 * Checks the certificate chain of the server against the trust store, but not
+	 * the name of the server: an {@link X509ExtendedTrustManager} is trusted by
+	 * the JSSE to make the endpoint identification itself.
+	 */
+	private static final class ChainOnlyTrustManager extends X509ExtendedTrustManager {
+		private final X509TrustManager trustManager;
+
+		ChainOnlyTrustManager(X509TrustManager trustManager) {
+			this.trustManager = trustManager;
+		}
+
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+			trustManager.checkServerTrusted(chain, authType);
+		}
+
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket)
+				throws CertificateException {
+			trustManager.checkServerTrusted(chain, authType);
+		}
+
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+				throws CertificateException {
+			trustManager.checkServerTrusted(chain, authType);
+		}
+
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+			trustManager.checkClientTrusted(chain, authType);
+		}
+
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket)
+				throws CertificateException {
+			trustManager.checkClientTrusted(chain, authType);
+		}
+
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+				throws CertificateException {
+			trustManager.checkClientTrusted(chain, authType);
+		}
+
+		@Override
+		public X509Certificate[] getAcceptedIssuers() {
+			return trustManager.getAcceptedIssuers();
+		}
+	}
+}
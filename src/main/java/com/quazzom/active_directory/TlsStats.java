@@ -0,0 +1,54 @@
+package com.quazzom.active_directory;
+
+/**
+ * A snapshot of the statistics of the TLS handshakes of the connections with
+ * the Active Directory.
+ *
+ */
+public class TlsStats {
+
+	private final long handshakeCount;
+	private final long resumedCount;
+
+	TlsStats(long handshakeCount, long resumedCount) {
+		this.handshakeCount = handshakeCount;
+		this.resumedCount = resumedCount;
+	}
+
+	/**
+	 * @return the number of TLS handshakes, one per new connection.
+	 */
+	public long getHandshakeCount() {
+		return handshakeCount;
+	}
+
+	/**
+	 * @return the number of handshakes that resumed a cached session instead of a
+	 *         full handshake.
+	 */
+	public long getResumedCount() {
+		return resumedCount;
+	}
+
+	/**
+	 * @return the number of full handshakes, with the certificate checks and the
+	 *         key exchange.
+	 */
+	public long getFullHandshakeCount() {
+		return handshakeCount - resumedCount;
+	}
+
+	/**
+	 * @return the fraction of the handshakes that resumed a session, 0.0 if there
+	 *         were no handshakes.
+	 */
+	public double getResumptionRatio() {
+		return handshakeCount == 0 ? 0.0 : (double) resumedCount / handshakeCount;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("TlsStats[handshakes=%d, resumed=%d, resumptionRatio=%.3f]", handshakeCount,
+				resumedCount, getResumptionRatio());
+	}
+}
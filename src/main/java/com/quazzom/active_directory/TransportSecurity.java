@@ -0,0 +1,21 @@
+package com.quazzom.active_directory;
+
+/**
+ * How the connections with the Active Directory are encrypted, see
+ * {@link TlsConfig#setTransportSecurity(TransportSecurity)}.
+ *
+ */
+public enum TransportSecurity {
+
+	/**
+	 * TLS from the start of the connection, usually on the port 636 (3269 for the
+	 * global catalog).
+	 */
+	LDAPS,
+
+	/**
+	 * A plain connection, usually on the port 389, upgraded to TLS with the
+	 * StartTLS extended operation before the bind.
+	 */
+	START_TLS
+}
@@ -0,0 +1,30 @@
+package com.quazzom.active_directory;
+
+import javax.naming.NamingException;
+
+/**
+ * Wraps a {@link NamingException} thrown while a lazy result (e.g.: a
+ * {@link java.util.stream.Stream} returned by a stream search) is consumed,
+ * where checked exceptions can't be thrown.
+ *
+ */
+public class UncheckedNamingException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public UncheckedNamingException(NamingException cause) {
+		super(cause);
+	}
+
+	public UncheckedNamingException(String message, NamingException cause) {
+		super(message, cause);
+	}
+
+	/**
+	 * @return the {@link NamingException} wrapped by this exception
+	 */
+	@Override
+	public synchronized NamingException getCause() {
+		return (NamingException) super.getCause();
+	}
+}
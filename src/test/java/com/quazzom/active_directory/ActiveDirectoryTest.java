@@ -2,25 +2,46 @@ package com.quazzom.active_directory;
 
 import static java.util.Arrays.asList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.naming.AuthenticationException;
+import javax.naming.Context;
+import javax.naming.InterruptedNamingException;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
 import javax.naming.directory.DirContext;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.LdapName;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.util.ReflectionTestUtils;
@@ -42,9 +63,18 @@ public class ActiveDirectoryTest {
 	@Mock
 	DirContext dirContext;
 
-	@InjectMocks
+	@Mock
+	LdapContext ldapContext;
+
 	ActiveDirectory ad = new ActiveDirectory("a", "b", "0000", "LAB01", "ACME");
 
+	@BeforeEach
+	void setUp() {
+		// every search borrows the mocked dirContext from the pool
+		ReflectionTestUtils.setField(ad, "dirContextPool",
+				new DirContextPool(() -> dirContext, new ConnectionPoolConfig()));
+	}
+
 	@Test
 	void testSearchUserGroups() throws NamingException, ActiveDirectoryException {
 
@@ -69,7 +99,7 @@ public class ActiveDirectoryTest {
 
 		// teaching the searchResultEnumeration return a valid searchResult (the user
 		// exist in AD)
-		when(searchResultEnumeration.hasMoreElements()).thenReturn(true, true, false)
+		when(searchResultEnumeration.hasMore()).thenReturn(true, false)
 				// false to a invalid searchResult (the user don't exist in AD)
 				.thenReturn(false);
 		when(searchResultEnumeration.next()).thenReturn(searchResult);
@@ -115,7 +145,7 @@ public class ActiveDirectoryTest {
 
 		// teaching the searchResultEnumeration return a valid searchResult (the group
 		// exist in AD)
-		when(searchResultEnumeration.hasMoreElements()).thenReturn(true, true, false)
+		when(searchResultEnumeration.hasMore()).thenReturn(true, false)
 				// false to a invalid searchResult (the group don't exist in AD)
 				.thenReturn(false);
 		when(searchResultEnumeration.next()).thenReturn(searchResult);
@@ -276,4 +306,394 @@ public class ActiveDirectoryTest {
 		List<String> groupsDontMatch = asList();
 		assertEquals(groupsDontMatch, ad.searchGroupObjects("zzzz"));
 	}
+
+	@Test
+	void testStreamUserGroupsIsLazyAndCanStopEarly() throws NamingException, ActiveDirectoryException {
+
+		ReflectionTestUtils.setField(ad, "isHandShakeMade", true);
+
+		// teaching the attribute
+		when(attribute.size()).thenReturn(2);
+		when(attribute.get(0)).thenReturn("CN=firewall-advance,OU=Firewall Groups,DC=LAB01,DC=ACME");
+		when(attribute.get(1)).thenReturn("CN=firewall-vpn,OU=Firewall Groups,DC=LAB01,DC=ACME");
+
+		// teaching the attributes
+		when(attributes.size()).thenReturn(1);
+		when(attributes.get(anyString())).thenReturn(attribute);
+
+		// teaching the searchResult
+		when(searchResult.getAttributes()).thenReturn(attributes);
+
+		// teaching the searchResultEnumeration, it has more results than the caller
+		// reads
+		when(searchResultEnumeration.hasMore()).thenReturn(true);
+		when(searchResultEnumeration.next()).thenReturn(searchResult);
+
+		// teaching the dirContext
+		when(dirContext.search(nullable(String.class), eq("(&(objectclass=user)(sAMAccountName=john))"),
+				any(SearchControls.class))).thenReturn(searchResultEnumeration);
+
+		/* ASSERTS */
+
+		try (Stream<String> groups = ad.streamUserGroups("john")) {
+			// nothing is read before the stream is consumed
+			verify(searchResultEnumeration, never()).next();
+
+			assertEquals("firewall-advance", groups.findFirst().get());
+		}
+
+		// closing the stream abandons the search
+		verify(searchResultEnumeration).close();
+		verify(searchResultEnumeration, times(1)).next();
+	}
+
+	@Test
+	void testSearchGroupObjectsWithConsumer() throws NamingException, ActiveDirectoryException {
+
+		ReflectionTestUtils.setField(ad, "isHandShakeMade", true);
+
+		// teaching the attribute
+		when(attribute.get(0)).thenReturn("inf")
+				.thenReturn("firewall-inf");
+
+		// teaching the attributes
+		when(attributes.get(eq("cn"))).thenReturn(attribute);
+
+		// teaching the searchResult
+		when(searchResult.getAttributes()).thenReturn(attributes);
+
+		// teaching the searchResultEnumeration
+		when(searchResultEnumeration.next()).thenReturn(searchResult);
+		when(searchResultEnumeration.hasMore()).thenReturn(true)
+				.thenReturn(true)
+				.thenReturn(false);
+
+		// teaching the dirContext
+		when(dirContext.search(
+				nullable(String.class),
+				eq("(&(objectCategory=group)(sAMAccountName=*inf*))"),
+				any(SearchControls.class)))
+				.thenReturn(searchResultEnumeration);
+
+		/* ASSERTS */
+
+		List<String> groups = new ArrayList<String>();
+		ad.searchGroupObjects("inf", groups::add);
+		assertEquals(asList("inf", "firewall-inf"), groups);
+	}
+
+	@Test
+	void testSearchUsersGroupReadsAllTheRanges() throws NamingException, ActiveDirectoryException {
+
+		ReflectionTestUtils.setField(ad, "isHandShakeMade", true);
+
+		// the search returns only the first range of members
+		Attribute firstRange = new BasicAttribute("member;range=0-1", true);
+		firstRange.add("CN=user1,OU=SUP,DC=LAB01,DC=ACME");
+		firstRange.add("CN=user2,OU=SUP,DC=LAB01,DC=ACME");
+		Attributes groupAttributes = new BasicAttributes(true);
+		groupAttributes.put(firstRange);
+		SearchResult group = new SearchResult("CN=all-staff", null, groupAttributes);
+		group.setNameInNamespace("CN=all-staff,DC=LAB01,DC=ACME");
+
+		// teaching the searchResultEnumeration
+		when(searchResultEnumeration.hasMore()).thenReturn(true, false);
+		when(searchResultEnumeration.next()).thenReturn(group);
+
+		// teaching the dirContext, the last range ends with *
+		when(dirContext.search(nullable(String.class), eq("CN=all-staff"), any(SearchControls.class)))
+				.thenReturn(searchResultEnumeration);
+		when(dirContext.getAttributes(new LdapName("CN=all-staff,DC=LAB01,DC=ACME"),
+				new String[] { "member;range=2-*" })).thenReturn(new BasicAttributes("member;range=2-*", "CN=user3,OU=SUP,DC=LAB01,DC=ACME", true));
+
+		/* ASSERTS */
+
+		assertEquals(asList("user1", "user2", "user3"), ad.searchUsersGroup("all-staff"));
+	}
+
+	@Test
+	void testTransitiveSearchUsersGroupUsesTheMatchingRuleInChain() throws NamingException, ActiveDirectoryException {
+
+		ReflectionTestUtils.setField(ad, "isHandShakeMade", true);
+
+		SearchResult group = new SearchResult("CN=sup", null, new BasicAttributes("cn", "sup", true));
+		group.setNameInNamespace("CN=sup,OU=room,DC=LAB01,DC=ACME");
+		SearchResult user = new SearchResult("CN=alan.turing", null, new BasicAttributes("cn", "alan.turing", true));
+
+		// teaching the searchResultEnumeration, the group and then its nested members
+		when(searchResultEnumeration.hasMore()).thenReturn(true, false, true, false);
+		when(searchResultEnumeration.next()).thenReturn(group, user);
+
+		// teaching the dirContext, the server is an Active Directory
+		when(dirContext.getAttributes("", new String[] { "supportedCapabilities" }))
+				.thenReturn(new BasicAttributes("supportedCapabilities", "1.2.840.113556.1.4.800", true));
+		when(dirContext.search(nullable(String.class), eq("(&(objectClass=group)(cn=sup))"),
+				any(SearchControls.class))).thenReturn(searchResultEnumeration);
+		when(dirContext.search(nullable(String.class),
+				eq("(&(!(objectClass=group))(memberOf:1.2.840.113556.1.4.1941:=CN=sup,OU=room,DC=LAB01,DC=ACME))"),
+				any(SearchControls.class))).thenReturn(searchResultEnumeration);
+
+		/* ASSERTS */
+
+		assertEquals(asList("alan.turing"), ad.searchUsersGroup("sup", true));
+	}
+
+	@Test
+	void testSearchUserGroupsInBatch() throws NamingException, ActiveDirectoryException {
+
+		ReflectionTestUtils.setField(ad, "isHandShakeMade", true);
+
+		SearchResult john = new SearchResult("CN=john", null, userWithGroups("john", "CN=inf,OU=INF,DC=LAB01,DC=ACME",
+				"CN=firewall-vpn,OU=Firewall Groups,DC=LAB01,DC=ACME"));
+		SearchResult paul = new SearchResult("CN=paul", null, userWithGroups("paul", "CN=sales,OU=room,DC=LAB01,DC=ACME"));
+
+		// teaching the searchResultEnumeration, one search returns both users
+		when(searchResultEnumeration.hasMore()).thenReturn(true, true, false);
+		when(searchResultEnumeration.next()).thenReturn(paul, john);
+
+		// teaching the dirContext
+		when(dirContext.search(nullable(String.class),
+				eq("(&(objectclass=user)(|(sAMAccountName=john)(sAMAccountName=paul)(sAMAccountName=ghost)))"),
+				any(SearchControls.class))).thenReturn(searchResultEnumeration);
+
+		/* ASSERTS */
+
+		Map<String, List<String>> groups = ad.searchUserGroups(asList("John", "paul", "ghost"));
+
+		assertEquals(asList("John", "paul", "ghost"), new ArrayList<String>(groups.keySet()));
+		assertEquals(asList("inf", "firewall-vpn"), groups.get("John"));
+		assertEquals(asList("sales"), groups.get("paul"));
+		assertEquals(asList(), groups.get("ghost"));
+	}
+
+	@Test
+	void testSearchUserObjectsFromTheLocalIndex() throws NamingException, ActiveDirectoryException {
+
+		ReflectionTestUtils.setField(ad, "isHandShakeMade", true);
+		ad.setSubstringIndexConfig(new SubstringIndexConfig());
+
+		Attributes arthur = new BasicAttributes(true);
+		arthur.put("sAMAccountName", "arthur");
+		arthur.put("cn", "Arthur Dent");
+		Attributes marie = new BasicAttributes(true);
+		marie.put("sAMAccountName", "MARIE");
+		marie.put("cn", "marie");
+
+		// teaching the searchResultEnumeration, the index is loaded by one search
+		when(searchResultEnumeration.hasMore()).thenReturn(true, true, false);
+		when(searchResultEnumeration.next()).thenReturn(new SearchResult("CN=Arthur Dent", null, arthur),
+				new SearchResult("CN=marie", null, marie));
+
+		// teaching the dirContext
+		when(dirContext.search(nullable(String.class),
+				eq("(&(objectCategory=person)(objectClass=user)(sAMAccountName=*))"), any(SearchControls.class)))
+				.thenReturn(searchResultEnumeration);
+
+		/* ASSERTS */
+
+		assertEquals(asList("Arthur Dent", "marie"), ad.searchUserObjects("ar"));
+		assertEquals(asList("Arthur Dent"), ad.searchUserObjects("THU"));
+		assertEquals(asList(), ad.searchUserObjects("john"));
+		try (Stream<String> users = ad.streamUserObjects("rie")) {
+			assertEquals(1, users.count());
+		}
+
+		verify(dirContext, times(1)).search(nullable(String.class), anyString(), any(SearchControls.class));
+		ad.close();
+	}
+
+	@Test
+	void testPartitionedSearchUserObjectsReadsEveryChildOfTheBase() throws NamingException, ActiveDirectoryException {
+
+		ReflectionTestUtils.setField(ad, "isHandShakeMade", true);
+		PartitionConfig partitionConfig = new PartitionConfig();
+		partitionConfig.setStrategy(PartitionStrategy.ORGANIZATIONAL_UNITS);
+		ad.setPartitionConfig(partitionConfig);
+
+		// teaching the dirContext, the users are in an organizational unit and in the
+		// LostAndFound container
+		when(dirContext.search(nullable(String.class), anyString(), any(SearchControls.class))).thenAnswer(invocation -> {
+			String base = invocation.getArgument(0);
+			SearchControls controls = invocation.getArgument(2);
+			if (controls.getSearchScope() == SearchControls.ONELEVEL_SCOPE) {
+				assertEquals("(objectClass=*)", invocation.getArgument(1));
+				return results(result("OU=Sales,DC=LAB01,DC=ACME", null),
+						result("CN=LostAndFound,DC=LAB01,DC=ACME", null));
+			}
+			if ("OU=Sales,DC=LAB01,DC=ACME".equals(base))
+				return results(result("CN=arthur,OU=Sales,DC=LAB01,DC=ACME", "arthur"));
+			if ("CN=LostAndFound,DC=LAB01,DC=ACME".equals(base))
+				return results(result("CN=marie,CN=LostAndFound,DC=LAB01,DC=ACME", "marie"));
+			return results();
+		});
+
+		/* ASSERTS */
+
+		assertEquals(asList("arthur", "marie"), ad.searchUserObjects("ar"));
+		ad.close();
+	}
+
+	private static SearchResult result(String distinguishedName, String commonName) {
+		Attributes resultAttributes = new BasicAttributes(true);
+		if (commonName != null)
+			resultAttributes.put("cn", commonName);
+		SearchResult result = new SearchResult(distinguishedName, null, resultAttributes);
+		result.setNameInNamespace(distinguishedName);
+		return result;
+	}
+
+	private static NamingEnumeration<SearchResult> results(SearchResult... results) {
+		return new NamingEnumeration<SearchResult>() {
+			private int next;
+
+			@Override
+			public boolean hasMoreElements() {
+				return next < results.length;
+			}
+
+			@Override
+			public SearchResult nextElement() {
+				return results[next++];
+			}
+
+			@Override
+			public boolean hasMore() {
+				return hasMoreElements();
+			}
+
+			@Override
+			public SearchResult next() {
+				return nextElement();
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+	}
+
+	private static Attributes userWithGroups(String username, String... groups) {
+		Attribute memberOf = new BasicAttribute("memberOf", true);
+		for (String group : groups)
+			memberOf.add(group);
+
+		Attributes userAttributes = new BasicAttributes(true);
+		userAttributes.put("sAMAccountName", username);
+		userAttributes.put(memberOf);
+		return userAttributes;
+	}
+
+	@Test
+	void testAuthenticateRebindsOverThePooledConnection() throws NamingException, ActiveDirectoryException {
+
+		ReflectionTestUtils.setField(ad, "isHandShakeMade", true);
+		Properties environment = new Properties();
+		environment.put(Context.SECURITY_PRINCIPAL, "b@ACME");
+		environment.put(Context.SECURITY_CREDENTIALS, "0000");
+		ReflectionTestUtils.setField(ad, "properties", environment);
+		ReflectionTestUtils.setField(ad, "bindContextPool",
+				new DirContextPool(() -> ldapContext, new ConnectionPoolConfig()));
+
+		// teaching the ldapContext, the second bind fails with a locked account
+		doNothing().doThrow(new AuthenticationException(
+				"[LDAP: error code 49 - 80090308: LdapErr: DSID-0C09042A, comment: AcceptSecurityContext error, data 775, v3839]"))
+				.when(ldapContext).reconnect(null);
+
+		/* ASSERTS */
+
+		assertTrue(ad.authenticate("john", "secret").isAuthenticated());
+
+		AuthenticationResult locked = ad.authenticate("paul", "secret");
+		assertFalse(locked.isAuthenticated());
+		assertEquals(AuthenticationStatus.ACCOUNT_LOCKED, locked.getStatus());
+		assertEquals(49, locked.getErrorCode());
+		assertEquals("775", locked.getSubCode());
+		assertEquals("LDAP error 49: A sua conta está bloqueada.", locked.getMessage());
+
+		// both binds used the same connection, and the password of the user is not kept
+		verify(ldapContext).addToEnvironment(Context.SECURITY_PRINCIPAL, "john@ACME");
+		verify(ldapContext).addToEnvironment(Context.SECURITY_PRINCIPAL, "paul@ACME");
+		verify(ldapContext, times(2)).addToEnvironment(Context.SECURITY_CREDENTIALS, "0000");
+	}
+
+	@Test
+	void testAuthenticateWithAnEmptyPasswordIsNotSent() throws NamingException, ActiveDirectoryException {
+		assertEquals(AuthenticationStatus.EMPTY_PASSWORD, ad.authenticate("john", "").getStatus());
+		assertEquals(AuthenticationStatus.EMPTY_PASSWORD, ad.authenticate("john", null).getStatus());
+		verify(ldapContext, never()).reconnect(any());
+	}
+
+	@Test
+	void testSearchUnderADeadlineAsksTheServerForATimeLimit() throws NamingException, ActiveDirectoryException {
+
+		ReflectionTestUtils.setField(ad, "isHandShakeMade", true);
+		when(searchResultEnumeration.hasMore()).thenReturn(false);
+		when(dirContext.search(nullable(String.class), eq("(&(objectclass=user)(sAMAccountName=john))"),
+				argThat((SearchControls controls) -> controls.getTimeLimit() == 5000)))
+				.thenReturn(searchResultEnumeration);
+
+		// 4.5 seconds left is a limit of 5 seconds, the LDAP time limit is in seconds
+		assertEquals(asList(), ad.withDeadline(Deadline.after(4500), () -> ad.searchUserGroups("john")));
+
+		assertThrows(DeadlineExceededException.class,
+				() -> ad.withDeadline(Deadline.after(0), () -> ad.searchUserGroups("john")));
+	}
+
+	@Test
+	void testDeadlineAbandonsAHungSearch() throws NamingException, ActiveDirectoryException {
+
+		ReflectionTestUtils.setField(ad, "isHandShakeMade", true);
+
+		// the server never answers, the wait for the reply ends with an interruption
+		when(dirContext.search(nullable(String.class), anyString(), any(SearchControls.class))).thenAnswer(invocation -> {
+			try {
+				Thread.sleep(60000);
+			} catch (InterruptedException e) {
+				throw new InterruptedNamingException("interrupted");
+			}
+			return searchResultEnumeration;
+		});
+
+		long start = System.nanoTime();
+		DeadlineExceededException e = assertThrows(DeadlineExceededException.class,
+				() -> ad.withDeadline(Deadline.after(100), () -> ad.searchUsersGroup("staff")));
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+		assertTrue(e.getCause() instanceof InterruptedNamingException);
+
+		// the interruption doesn't reach the next request of the thread
+		assertFalse(Thread.currentThread().isInterrupted());
+		ad.close();
+	}
+
+	@Test
+	void testDeadlineBoundsTheNestedGroupExpansion() throws NamingException, ActiveDirectoryException {
+
+		ReflectionTestUtils.setField(ad, "isHandShakeMade", true);
+		ReflectionTestUtils.setField(ad, "matchingRuleInChainSupported", Boolean.FALSE);
+		List<Integer> timeLimits = new CopyOnWriteArrayList<Integer>();
+
+		// the group is found, then the search of its members never answers
+		when(dirContext.search(nullable(String.class), anyString(), any(SearchControls.class))).thenAnswer(invocation -> {
+			SearchControls controls = invocation.getArgument(2);
+			timeLimits.add(controls.getTimeLimit());
+			if ("(&(objectClass=group)(cn=staff))".equals(invocation.getArgument(1)))
+				return results(result("CN=staff,DC=LAB01,DC=ACME", "staff"));
+			try {
+				Thread.sleep(60000);
+			} catch (InterruptedException e) {
+				throw new InterruptedNamingException("interrupted");
+			}
+			return results();
+		});
+
+		long start = System.nanoTime();
+		assertThrows(DeadlineExceededException.class,
+				() -> ad.withDeadline(Deadline.after(300), () -> ad.searchUsersGroup("staff", true)));
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+
+		// the search of the members, in another thread, asked for the time limit too
+		assertEquals(asList(1000, 1000), timeLimits);
+		assertFalse(Thread.currentThread().isInterrupted());
+		ad.close();
+	}
 }
@@ -31,4 +31,19 @@ public class ActiveDirectoryUtilsTest {
 				"LDAP: error code 49 - 80090308: LdapErr: DSID-0C090439, comment: AcceptSecurityContext error, data 52e, v4563");
 		assertEquals("LDAP error 49: Usuário e/ou senha inválido(s).", validErrorMessage);
 	}
+
+	@Test
+	void testGetAuthenticationStatus() {
+		String errorMessage = "[LDAP: error code 49 - 80090308: LdapErr: DSID-0C090439, comment: AcceptSecurityContext error, data 533, v4563]";
+
+		assertEquals(49, ActiveDirectoryUtils.getErrorCode(errorMessage));
+		assertEquals("533", ActiveDirectoryUtils.getErrorSubCode(errorMessage));
+		assertEquals(AuthenticationStatus.ACCOUNT_DISABLED, ActiveDirectoryUtils.getAuthenticationStatus(errorMessage));
+
+		// not an error 49, or no sub-code
+		assertEquals(AuthenticationStatus.OTHER,
+				ActiveDirectoryUtils.getAuthenticationStatus("[LDAP: error code 53 - 0000052D: SvcErr: DSID-031A1248]"));
+		assertEquals(-1, ActiveDirectoryUtils.getErrorCode("connection refused"));
+		assertEquals(null, ActiveDirectoryUtils.getErrorSubCode(null));
+	}
 }
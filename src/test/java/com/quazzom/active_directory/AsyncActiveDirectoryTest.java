@@ -0,0 +1,100 @@
+package com.quazzom.active_directory;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.CommunicationException;
+import javax.naming.InterruptedNamingException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class AsyncActiveDirectoryTest {
+
+	@Mock
+	ActiveDirectory ad;
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void testSearchCompletesTheFuture() throws Exception {
+		when(ad.searchUserGroups("john")).thenReturn(asList("inf", "sales"));
+
+		try (AsyncActiveDirectory async = new AsyncActiveDirectory(ad, executor)) {
+			assertEquals(asList("inf", "sales"), async.searchUserGroups("john").get(5, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	void testSearchFailureCompletesTheFutureExceptionally() throws Exception {
+		CommunicationException failure = new CommunicationException("connection closed");
+		when(ad.searchUsersGroup("sales")).thenThrow(failure);
+
+		try (AsyncActiveDirectory async = new AsyncActiveDirectory(ad, executor)) {
+			CompletableFuture<List<String>> users = async.searchUsersGroup("sales");
+			ExecutionException e = assertThrows(ExecutionException.class, () -> users.get(5, TimeUnit.SECONDS));
+			assertSame(failure, e.getCause());
+		}
+	}
+
+	@Test
+	void testCancelInterruptsTheSearch() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch interrupted = new CountDownLatch(1);
+
+		// the search blocks like a wait for the server reply
+		when(ad.searchUserObjects("da")).thenAnswer(invocation -> {
+			started.countDown();
+			try {
+				Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+				throw new InterruptedNamingException("interrupted");
+			}
+			return asList("david");
+		});
+
+		try (AsyncActiveDirectory async = new AsyncActiveDirectory(ad, executor)) {
+			CompletableFuture<List<String>> users = async.searchUserObjects("da");
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+
+			assertTrue(users.cancel(false));
+
+			assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+			assertThrows(CancellationException.class, users::join);
+		}
+	}
+
+	@Test
+	void testRejectedSearchFailsTheFuture() {
+		ExecutorService stopped = Executors.newSingleThreadExecutor();
+		stopped.shutdown();
+
+		try (AsyncActiveDirectory async = new AsyncActiveDirectory(ad, stopped)) {
+			CompletableFuture<List<String>> groups = async.searchGroupObjects("inf");
+			assertTrue(groups.isCompletedExceptionally());
+		}
+	}
+}
@@ -0,0 +1,255 @@
+package com.quazzom.active_directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.naming.AuthenticationException;
+import javax.naming.CommunicationException;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class BalancedDirContextPoolTest {
+
+	private final AtomicBoolean dc1Down = new AtomicBoolean();
+	private final AtomicBoolean dc2Down = new AtomicBoolean();
+	private final long[] now = new long[1];
+	private final ConnectionPoolConfig config = new ConnectionPoolConfig();
+	private final LoadBalancingConfig balancing = new LoadBalancingConfig();
+	private BalancedDirContextPool pool;
+
+	private BalancedDirContextPool pool() throws NamingException {
+		config.setValidationIntervalMillis(0);
+		balancing.setProbeIntervalMillis(TimeUnit.HOURS.toMillis(1));
+
+		Map<String, DirContextFactory> factories = new LinkedHashMap<String, DirContextFactory>();
+		factories.put("dc1:389", () -> {
+			if (dc1Down.get())
+				throw new CommunicationException("dc1:389: connection refused");
+			return context(dc1Down);
+		});
+		factories.put("dc2:389", () -> {
+			if (dc2Down.get())
+				throw new CommunicationException("dc2:389: connection refused");
+			return context(dc2Down);
+		});
+
+		pool = new BalancedDirContextPool(factories, config, balancing, () -> now[0]);
+		pool.start();
+		return pool;
+	}
+
+	// a context that fails its checks once its server is down
+	private static DirContext context(AtomicBoolean down) throws NamingException {
+		DirContext context = mock(DirContext.class);
+		when(context.getAttributes(anyString(), any(String[].class))).thenAnswer(invocation -> {
+			if (down.get())
+				throw new CommunicationException("connection reset");
+			return new BasicAttributes(true);
+		});
+		return context;
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (pool != null)
+			pool.close();
+	}
+
+	@Test
+	void testRequestsAreSpreadOverTheDomainControllers() throws Exception {
+		balancing.setStrategy(LoadBalancingStrategy.LEAST_OUTSTANDING);
+		pool();
+
+		List<String> servers = new ArrayList<String>();
+		List<PooledDirContext> borrowed = new ArrayList<PooledDirContext>();
+		for (int count = 0; count < 4; count++) {
+			PooledDirContext pooled = pool.borrow();
+			borrowed.add(pooled);
+			servers.add(pooled.getServer());
+		}
+
+		// each borrow goes to the domain controller with fewer requests in progress
+		assertEquals(2, servers.stream().filter("dc1:389"::equals).count());
+		assertEquals(2, servers.stream().filter("dc2:389"::equals).count());
+		assertEquals(2, pool.status().get(0).getOutstanding());
+
+		borrowed.forEach(pool::release);
+		assertEquals(0, pool.status().get(0).getOutstanding());
+		assertEquals(4, pool.getSize());
+	}
+
+	@Test
+	void testRoundRobin() throws Exception {
+		balancing.setStrategy(LoadBalancingStrategy.ROUND_ROBIN);
+		pool();
+
+		PooledDirContext first = pool.borrow();
+		pool.release(first);
+		PooledDirContext second = pool.borrow();
+		pool.release(second);
+
+		assertFalse(first.getServer().equals(second.getServer()));
+	}
+
+	@Test
+	void testSlowRequestsMoveTheTrafficAway() throws Exception {
+		pool();
+
+		// dc1 answers the searches in 50 ms and dc2 in 1 ms
+		request("dc1:389", 50);
+		request("dc2:389", 1);
+		assertEquals(50.0, pool.status().get(0).getLatencyMillis(), 1e-9);
+
+		for (int count = 0; count < 10; count++) {
+			PooledDirContext pooled = pool.borrow();
+			assertEquals("dc2:389", pooled.getServer());
+			pool.release(pooled);
+		}
+
+		// a busy domain controller is not probed, an idle one is
+		now[0] += TimeUnit.SECONDS.toNanos(10);
+		pool.probe();
+		assertEquals(50.0, pool.status().get(0).getLatencyMillis(), 1e-9);
+		pool.probe();
+		assertTrue(pool.status().get(0).getLatencyMillis() < 50.0);
+	}
+
+	private void request(String server, long millis) throws Exception {
+		pool.pin(new AtomicReference<String>(server));
+		PooledDirContext pooled = pool.borrow();
+		assertEquals(server, pooled.getServer());
+		now[0] += TimeUnit.MILLISECONDS.toNanos(millis);
+		pool.release(pooled);
+		pool.unpin();
+	}
+
+	@Test
+	void testFailoverEjectionAndReadmission() throws Exception {
+		balancing.setFailureThreshold(1);
+		balancing.setEjectionMillis(1000);
+		pool();
+
+		// dc1 goes down, its idle connection fails the check and a new one can't
+		// be opened, so the borrow fails over to dc2
+		dc1Down.set(true);
+		for (int count = 0; count < 10; count++) {
+			PooledDirContext pooled = pool.borrow();
+			assertEquals("dc2:389", pooled.getServer());
+			pool.release(pooled);
+		}
+		assertFalse(pool.status().get(0).isHealthy());
+		assertEquals(1, pool.status().get(0).getEjections());
+
+		// no probe before the end of the ejection, then a failed probe doubles it
+		now[0] = TimeUnit.MILLISECONDS.toNanos(999);
+		pool.probe();
+		assertFalse(pool.status().get(0).isHealthy());
+		now[0] = TimeUnit.MILLISECONDS.toNanos(1000);
+		pool.probe();
+		assertFalse(pool.status().get(0).isHealthy());
+
+		dc1Down.set(false);
+		now[0] = TimeUnit.MILLISECONDS.toNanos(2999);
+		pool.probe();
+		assertFalse(pool.status().get(0).isHealthy());
+		now[0] = TimeUnit.MILLISECONDS.toNanos(3000);
+		pool.probe();
+		assertTrue(pool.status().get(0).isHealthy());
+		assertTrue(pool.status().get(1).isHealthy());
+	}
+
+	@Test
+	void testHalfOpenTrialAndOpenCircuitsFailFast() throws Exception {
+		balancing.setFailureThreshold(1);
+		balancing.setEjectionMillis(1000);
+		pool();
+
+		// pinned to dc1, so the borrow tries it first and fails over to dc2
+		AtomicReference<String> pinned = new AtomicReference<String>("dc1:389");
+		pool.pin(pinned);
+		dc1Down.set(true);
+		pool.release(pool.borrow());
+		assertEquals(CircuitState.OPEN, pool.status().get(0).getCircuitState());
+
+		// the ejection is over: a single request tries dc1, the others go to dc2
+		dc1Down.set(false);
+		now[0] = TimeUnit.MILLISECONDS.toNanos(1000);
+		pinned.set("dc1:389");
+		PooledDirContext trial = pool.borrow();
+		assertEquals("dc1:389", trial.getServer());
+		assertEquals(CircuitState.HALF_OPEN, pool.status().get(0).getCircuitState());
+
+		PooledDirContext other = pool.borrow();
+		assertEquals("dc2:389", other.getServer());
+		pool.release(other);
+		pool.unpin();
+
+		pool.release(trial);
+		assertEquals(CircuitState.CLOSED, pool.status().get(0).getCircuitState());
+
+		// both down: the circuits open, then the borrows fail without a connection
+		dc1Down.set(true);
+		dc2Down.set(true);
+		assertThrows(CommunicationException.class, pool::borrow);
+		assertEquals(CircuitState.OPEN, pool.status().get(0).getCircuitState());
+		assertEquals(CircuitState.OPEN, pool.status().get(1).getCircuitState());
+		assertThrows(ServiceUnavailableException.class, pool::borrow);
+		assertEquals(2, pool.status().get(0).getEjections());
+	}
+
+	@Test
+	void testAllDomainControllersDown() throws Exception {
+		pool();
+		dc1Down.set(true);
+
+		// the pinned dc2 is used while it is up
+		AtomicReference<String> pinned = new AtomicReference<String>("dc2:389");
+		pool.pin(pinned);
+		PooledDirContext pooled = pool.borrow();
+		assertEquals("dc2:389", pooled.getServer());
+		pool.invalidate(pooled);
+		pool.unpin();
+
+		BalancedDirContextPool down = new BalancedDirContextPool(singleDown(), config, balancing, () -> now[0]);
+		assertThrows(CommunicationException.class, down::start);
+	}
+
+	@Test
+	void testInvalidCredentialsFailTheStart() {
+		Map<String, DirContextFactory> factories = new LinkedHashMap<String, DirContextFactory>();
+		factories.put("dc1:389", () -> {
+			throw new AuthenticationException("[LDAP: error code 49 - 80090308: LdapErr: DSID-0C09042A, data 52e]");
+		});
+		factories.put("dc2:389", () -> context(new AtomicBoolean()));
+
+		BalancedDirContextPool invalid = new BalancedDirContextPool(factories, config, balancing, () -> now[0]);
+		assertThrows(AuthenticationException.class, invalid::start);
+	}
+
+	private static Map<String, DirContextFactory> singleDown() {
+		Map<String, DirContextFactory> factories = new LinkedHashMap<String, DirContextFactory>();
+		factories.put("dc3:389", () -> {
+			throw new CommunicationException("dc3:389: connection refused");
+		});
+		return factories;
+	}
+}
@@ -0,0 +1,35 @@
+package com.quazzom.active_directory;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class BloomFilterTest {
+
+	@Test
+	void testNoFalseNegativesAndTheFalsePositiveRate() {
+		BloomFilter.Builder builder = new BloomFilter.Builder();
+		for (int index = 0; index < 100000; index++)
+			builder.add("user" + index);
+		BloomFilter filter = builder.build(0.01);
+
+		for (int index = 0; index < 100000; index++)
+			assertTrue(filter.mightContain("user" + index));
+
+		int falsePositives = 0;
+		for (int index = 0; index < 100000; index++)
+			if (filter.mightContain("absent" + index))
+				falsePositives++;
+		assertTrue(falsePositives < 1500, "false positives: " + falsePositives);
+
+		// about 1.2 bytes per name at 1%
+		assertTrue(filter.getBytes() < 130000, "bytes: " + filter.getBytes());
+	}
+
+	@Test
+	void testAnEmptyFilterContainsNothing() {
+		BloomFilter filter = new BloomFilter.Builder().build(0.01);
+		assertFalse(filter.mightContain("john"));
+	}
+}
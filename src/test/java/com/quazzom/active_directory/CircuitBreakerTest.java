@@ -0,0 +1,54 @@
+package com.quazzom.active_directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class CircuitBreakerTest {
+
+	private static long millis(long millis) {
+		return TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	@Test
+	void testOpenHalfOpenAndClosed() {
+		LoadBalancingConfig config = new LoadBalancingConfig();
+		config.setFailureThreshold(2);
+		config.setEjectionMillis(1000);
+		CircuitBreaker breaker = new CircuitBreaker(config);
+
+		// a success between the failures starts the count again
+		breaker.failed(0);
+		breaker.succeeded();
+		breaker.failed(0);
+		assertEquals(CircuitState.CLOSED, breaker.state());
+		breaker.failed(0);
+		assertEquals(CircuitState.OPEN, breaker.state());
+		assertFalse(breaker.acquire(millis(999)));
+
+		// a single trial, its failure doubles the ejection
+		assertTrue(breaker.acquire(millis(1000)));
+		assertEquals(CircuitState.HALF_OPEN, breaker.state());
+		assertFalse(breaker.acquire(millis(1000)));
+		breaker.failed(millis(1000));
+		assertEquals(CircuitState.OPEN, breaker.state());
+		assertFalse(breaker.acquire(millis(2999)));
+
+		// a trial that ended without an answer leaves the trial to another request
+		assertTrue(breaker.acquire(millis(3000)));
+		breaker.cancelled();
+		assertTrue(breaker.acquire(millis(3000)));
+		breaker.succeeded();
+		assertEquals(CircuitState.CLOSED, breaker.state());
+		assertEquals(1, breaker.openings());
+
+		// closed again, the ejection starts from the beginning
+		breaker.failed(millis(4000));
+		breaker.failed(millis(4000));
+		assertTrue(breaker.acquire(millis(5000)));
+	}
+}
@@ -0,0 +1,187 @@
+package com.quazzom.active_directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+
+import org.junit.jupiter.api.Test;
+
+public class DirContextPoolTest {
+
+	private final AtomicInteger created = new AtomicInteger();
+
+	private DirContextFactory factory() {
+		return () -> {
+			created.incrementAndGet();
+			return mock(DirContext.class);
+		};
+	}
+
+	private ConnectionPoolConfig config(int min, int max) {
+		ConnectionPoolConfig config = new ConnectionPoolConfig();
+		config.setMinSize(min);
+		config.setMaxSize(max);
+		config.setBorrowTimeoutMillis(200);
+		config.setIdleTimeoutMillis(0);
+		return config;
+	}
+
+	@Test
+	void testStartOpensTheMinimumConnections() throws NamingException {
+		DirContextPool pool = new DirContextPool(factory(), config(3, 5));
+		pool.start();
+
+		assertEquals(3, created.get());
+		assertEquals(3, pool.getIdleCount());
+
+		// even with minSize 0 one connection is opened, to check the credentials
+		DirContextPool emptyPool = new DirContextPool(factory(), config(0, 5));
+		emptyPool.start();
+		assertEquals(4, created.get());
+	}
+
+	@Test
+	void testReleasedContextIsReused() throws NamingException, ActiveDirectoryException {
+		DirContextPool pool = new DirContextPool(factory(), config(0, 2));
+
+		PooledDirContext first = pool.borrow();
+		pool.release(first);
+		PooledDirContext second = pool.borrow();
+
+		assertSame(first, second);
+		assertEquals(1, created.get());
+	}
+
+	@Test
+	void testBorrowTimesOutWhenThePoolIsExhausted() throws NamingException, ActiveDirectoryException {
+		DirContextPool pool = new DirContextPool(factory(), config(0, 2));
+
+		pool.borrow();
+		pool.borrow();
+
+		Throwable ex = assertThrows(ActiveDirectoryException.class, pool::borrow);
+		assertEquals("timed out after 200 ms waiting for a free connection.", ex.getMessage());
+		assertEquals(2, pool.getSize());
+	}
+
+	@Test
+	void testWaitingBorrowerGetsTheReleasedContext() throws Exception {
+		ConnectionPoolConfig config = config(0, 1);
+		config.setBorrowTimeoutMillis(5000);
+		DirContextPool pool = new DirContextPool(factory(), config);
+
+		PooledDirContext borrowed = pool.borrow();
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		CountDownLatch waiting = new CountDownLatch(1);
+		Future<PooledDirContext> future = executor.submit(() -> {
+			waiting.countDown();
+			return pool.borrow();
+		});
+
+		waiting.await();
+		Thread.sleep(50);
+		pool.release(borrowed);
+
+		assertSame(borrowed, future.get(5, TimeUnit.SECONDS));
+		executor.shutdown();
+	}
+
+	@Test
+	void testBrokenContextIsReplacedOnBorrow() throws NamingException, ActiveDirectoryException {
+		ConnectionPoolConfig config = config(0, 1);
+		config.setValidationIntervalMillis(0);
+		DirContextPool pool = new DirContextPool(factory(), config);
+
+		PooledDirContext broken = pool.borrow();
+		when(broken.getContext().getAttributes(eq(""), any(String[].class)))
+				.thenThrow(new CommunicationException("connection closed"));
+		pool.release(broken);
+
+		PooledDirContext replaced = pool.borrow();
+
+		assertNotSame(broken, replaced);
+		verify(broken.getContext()).close();
+		assertEquals(1, pool.getSize());
+		assertEquals(2, created.get());
+	}
+
+	@Test
+	void testRecentlyUsedContextIsNotValidated() throws NamingException, ActiveDirectoryException {
+		DirContextPool pool = new DirContextPool(factory(), config(0, 1));
+
+		PooledDirContext pooled = pool.borrow();
+		pool.release(pooled);
+		pool.borrow();
+
+		verify(pooled.getContext(), never()).getAttributes(eq(""), any(String[].class));
+	}
+
+	@Test
+	void testInvalidateFreesThePlace() throws NamingException, ActiveDirectoryException {
+		DirContextPool pool = new DirContextPool(factory(), config(0, 1));
+
+		PooledDirContext pooled = pool.borrow();
+		pool.invalidate(pooled);
+
+		verify(pooled.getContext()).close();
+		assertNotSame(pooled, pool.borrow());
+		assertEquals(1, pool.getSize());
+	}
+
+	@Test
+	void testEvictClosesIdleContextsAboveTheMinimum() throws NamingException, ActiveDirectoryException {
+		ConnectionPoolConfig config = config(1, 3);
+		config.setIdleTimeoutMillis(1);
+		DirContextPool pool = new DirContextPool(factory(), config);
+
+		PooledDirContext first = pool.borrow();
+		PooledDirContext second = pool.borrow();
+		PooledDirContext third = pool.borrow();
+		pool.release(first);
+		pool.release(second);
+		pool.release(third);
+		first.setLastUsedAt(0);
+		second.setLastUsedAt(0);
+		third.setLastUsedAt(0);
+
+		pool.evict();
+
+		assertEquals(1, pool.getSize());
+		assertEquals(1, pool.getIdleCount());
+	}
+
+	@Test
+	void testClosedPoolRefusesBorrowers() throws NamingException, ActiveDirectoryException {
+		DirContextPool pool = new DirContextPool(factory(), config(1, 1));
+		pool.start();
+
+		PooledDirContext pooled = pool.borrow();
+		pool.close();
+		pool.release(pooled);
+
+		verify(pooled.getContext()).close();
+		assertEquals(0, pool.getSize());
+		Throwable ex = assertThrows(ActiveDirectoryException.class, pool::borrow);
+		assertTrue(ex.getMessage().contains("closed"));
+	}
+}
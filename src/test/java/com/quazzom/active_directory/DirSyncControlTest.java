@@ -0,0 +1,42 @@
+package com.quazzom.active_directory;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import javax.naming.NamingException;
+import javax.naming.ldap.BasicControl;
+import javax.naming.ldap.Control;
+
+import org.junit.jupiter.api.Test;
+
+public class DirSyncControlTest {
+
+	@Test
+	void testRequestValue() {
+		DirSyncControl control = new DirSyncControl(DirSyncControl.OBJECT_SECURITY | DirSyncControl.INCREMENTAL_VALUES,
+				0, null);
+
+		// SEQUENCE { INTEGER 0x80000001, INTEGER 0, OCTET STRING "" }
+		assertArrayEquals(new byte[] { 0x30, 0x0b, 0x02, 0x04, (byte) 0x80, 0x00, 0x00, 0x01, 0x02, 0x01, 0x00, 0x04,
+				0x00 }, control.getEncodedValue());
+		assertEquals("1.2.840.113556.1.4.841", control.getID());
+		assertTrue(control.isCritical());
+	}
+
+	@Test
+	void testResponseWithALongCookie() throws NamingException {
+		byte[] cookie = new byte[300];
+		for (int index = 0; index < cookie.length; index++)
+			cookie[index] = (byte) index;
+
+		Control response = new BasicControl(DirSyncControl.OID, false,
+				BerCodec.sequence(BerCodec.integer(1), BerCodec.integer(0), BerCodec.octetString(cookie)));
+
+		DirSyncControl.Response parsed = DirSyncControl.response(new Control[] { response });
+		assertTrue(parsed.moreResults);
+		assertArrayEquals(cookie, parsed.cookie);
+		assertNull(DirSyncControl.response(null));
+	}
+}
@@ -0,0 +1,187 @@
+package com.quazzom.active_directory;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.LdapName;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class DirectoryExportTest {
+
+	private static final String DS_SERVICE_NAME = "CN=NTDS Settings,CN=DC01,CN=Servers,DC=acme";
+	private static final String FIRST_WINDOW = window(0, 99);
+	private static final String SECOND_WINDOW = window(100, 150);
+
+	private final LdapContext context = mock(LdapContext.class);
+	private final LdapContext pagedContext = mock(LdapContext.class);
+	private final ActiveDirectory ad = new ActiveDirectory("a", "b", "0000", "LAB01", "ACME");
+	private final List<ExportProgress> progress = new ArrayList<ExportProgress>();
+
+	@TempDir
+	Path directory;
+
+	@BeforeEach
+	void setUp() throws NamingException {
+		ReflectionTestUtils.setField(ad, "isHandShakeMade", true);
+		ReflectionTestUtils.setField(ad, "dirContextPool", new DirContextPool(() -> context, new ConnectionPoolConfig()));
+
+		BasicAttributes rootDse = new BasicAttributes(true);
+		rootDse.put("highestCommittedUSN", "150");
+		rootDse.put("dsServiceName", DS_SERVICE_NAME);
+		when(context.getAttributes("", new String[] { "highestCommittedUSN", "dsServiceName" })).thenReturn(rootDse);
+		when(context.getAttributes("", new String[] { "highestCommittedUSN" })).thenReturn(rootDse);
+		when(context.getAttributes(new LdapName(DS_SERVICE_NAME), new String[] { "invocationId" }))
+				.thenReturn(new BasicAttributes("invocationId", guidBytes(), true));
+		when(context.newInstance(any(Control[].class))).thenReturn(pagedContext);
+	}
+
+	private DirectoryExport export(ExportConfig config) {
+		config.setUsnWindow(100);
+		DirectoryExport export = new DirectoryExport(ad, config);
+		export.setListener(progress::add);
+		return export;
+	}
+
+	@Test
+	void testJsonlExportReadsEachUsnWindow() throws Exception {
+		when(pagedContext.search(nullable(String.class), eq(FIRST_WINDOW), any(SearchControls.class)))
+				.thenReturn(enumeration(result("CN=staff,DC=acme", "group", "staff \"all\"", "CN=arthur,DC=acme")));
+		when(pagedContext.search(nullable(String.class), eq(SECOND_WINDOW), any(SearchControls.class)))
+				.thenReturn(enumeration(result("CN=arthur,DC=acme", "user", "arthur", null)));
+
+		Path file = directory.resolve("directory.jsonl");
+		ExportProgress end = export(new ExportConfig()).export(file);
+
+		assertEquals(asList(
+				"{\"objectGUID\":\"03020100-0504-0706-0809-0a0b0c0d0e0f\",\"distinguishedName\":\"CN=staff,DC=acme\","
+						+ "\"type\":\"group\",\"sAMAccountName\":[\"staff \\\"all\\\"\"],\"member\":[\"CN=arthur,DC=acme\"]}",
+				"{\"objectGUID\":\"03020100-0504-0706-0809-0a0b0c0d0e0f\",\"distinguishedName\":\"CN=arthur,DC=acme\","
+						+ "\"type\":\"user\",\"sAMAccountName\":[\"arthur\"]}"),
+				Files.readAllLines(file));
+
+		assertTrue(end.isCompleted());
+		assertEquals(2, end.getObjectCount());
+		assertEquals(Files.size(file), end.getBytes());
+		// a checkpoint after the first window, then the end
+		assertEquals(2, progress.size());
+		assertEquals(100, progress.get(0).getNextUsn());
+		assertFalse(Files.exists(directory.resolve("directory.jsonl.checkpoint")));
+	}
+
+	@Test
+	void testFailedGzipCsvExportResumesFromItsCheckpoint() throws Exception {
+		when(pagedContext.search(nullable(String.class), eq(FIRST_WINDOW), any(SearchControls.class)))
+				.thenReturn(enumeration(result("CN=Smith\\, John,DC=acme", "user", "smith", null)));
+		when(pagedContext.search(nullable(String.class), eq(SECOND_WINDOW), any(SearchControls.class)))
+				.thenThrow(new NamingException("[LDAP: error code 51 - 00002024: LdapErr: DSID-0C060810, comment: "
+						+ "The server is busy, data 0, v3839]"));
+
+		ExportConfig config = new ExportConfig();
+		config.setFormat(ExportFormat.CSV);
+		config.setGzip(true);
+		config.setAttributes(asList("sAMAccountName"));
+
+		Path file = directory.resolve("directory.csv.gz");
+		assertThrows(NamingException.class, () -> export(config).export(file));
+		assertTrue(Files.exists(directory.resolve("directory.csv.gz.checkpoint")));
+
+		// the next export reads only the second window
+		when(pagedContext.search(nullable(String.class), eq(FIRST_WINDOW), any(SearchControls.class)))
+				.thenThrow(new AssertionError("the first window is read again"));
+		when(pagedContext.search(nullable(String.class), eq(SECOND_WINDOW), any(SearchControls.class)))
+				.thenReturn(enumeration(result("CN=staff,DC=acme", "group", "staff", "CN=Smith\\, John,DC=acme")));
+
+		assertEquals(2, export(config).export(file).getObjectCount());
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+			assertEquals(asList("objectGUID,distinguishedName,type,sAMAccountName,member",
+					"03020100-0504-0706-0809-0a0b0c0d0e0f,\"CN=Smith\\, John,DC=acme\",user,smith,",
+					"03020100-0504-0706-0809-0a0b0c0d0e0f,\"CN=staff,DC=acme\",group,staff,\"CN=Smith\\, John,DC=acme\""),
+					reader.lines().collect(Collectors.toList()));
+		}
+	}
+
+	private static String window(long first, long last) {
+		return "(&" + DirectorySync.OBJECTS + "(uSNChanged>=" + first + ")(uSNChanged<=" + last + "))";
+	}
+
+	private static byte[] guidBytes() {
+		byte[] guid = new byte[16];
+		for (int index = 0; index < guid.length; index++)
+			guid[index] = (byte) index;
+		return guid;
+	}
+
+	private static SearchResult result(String dn, String objectClass, String name, String member) {
+		BasicAttributes attributes = new BasicAttributes(true);
+		attributes.put("objectGUID", guidBytes());
+		attributes.put("objectClass", objectClass);
+		attributes.put("sAMAccountName", name);
+		if (member != null)
+			attributes.put(new BasicAttribute("member", member));
+
+		SearchResult result = new SearchResult(dn, null, attributes);
+		result.setNameInNamespace(dn);
+		return result;
+	}
+
+	private static NamingEnumeration<SearchResult> enumeration(SearchResult... results) {
+		return new NamingEnumeration<SearchResult>() {
+			private int next;
+
+			@Override
+			public boolean hasMoreElements() {
+				return next < results.length;
+			}
+
+			@Override
+			public SearchResult nextElement() {
+				return results[next++];
+			}
+
+			@Override
+			public boolean hasMore() throws NamingException {
+				return hasMoreElements();
+			}
+
+			@Override
+			public SearchResult next() throws NamingException {
+				return nextElement();
+			}
+
+			@Override
+			public void close() throws NamingException {
+			}
+		};
+	}
+}
@@ -0,0 +1,73 @@
+package com.quazzom.active_directory;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DirectorySnapshotTest {
+
+	@TempDir
+	Path directory;
+
+	private static DirectorySnapshot snapshot() {
+		DirectorySnapshot.Builder builder = new DirectorySnapshot.Builder(1234);
+		builder.addUser("John", asList("sales", "inf"));
+		builder.addUser("marie", asList("inf"));
+		builder.addUser("Ödön", asList());
+		builder.addGroup("sales", asList("John Lennon"));
+		// the second range of a large group
+		builder.addGroup("sales", asList("Paul McCartney"));
+		builder.addGroup("inf", asList("John Lennon", "marie"));
+		return builder.build();
+	}
+
+	@Test
+	void testLookupsAfterWritingAndMappingTheFile() throws IOException {
+		Path file = directory.resolve("snapshot.bin");
+		snapshot().write(file);
+
+		DirectorySnapshot mapped = DirectorySnapshot.open(file);
+
+		assertEquals(1234, mapped.getCreatedMillis());
+		assertEquals(3, mapped.userCount());
+		assertEquals(2, mapped.groupCount());
+		assertEquals(asList("sales", "inf"), mapped.userGroups("JOHN"));
+		assertEquals(asList("inf"), mapped.userGroups("marie"));
+		assertEquals(asList(), mapped.userGroups("ödön"));
+		assertNull(mapped.userGroups("paul"));
+		assertEquals(asList("John Lennon", "Paul McCartney"), mapped.groupMembers("SALES"));
+		assertEquals(asList("John Lennon", "marie"), mapped.groupMembers("inf"));
+		assertNull(mapped.groupMembers("john"));
+	}
+
+	@Test
+	void testCorruptFilesAreRefused() throws IOException {
+		Path file = directory.resolve("snapshot.bin");
+		snapshot().write(file);
+		byte[] bytes = Files.readAllBytes(file);
+
+		// truncated
+		Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+		assertThrows(IOException.class, () -> DirectorySnapshot.open(file));
+
+		// an edge out of the string table, the last int before the string data
+		byte[] badEdge = bytes.clone();
+		int stringBytes = ((bytes[36] & 0xff) << 24) | ((bytes[37] & 0xff) << 16) | ((bytes[38] & 0xff) << 8)
+				| (bytes[39] & 0xff);
+		badEdge[bytes.length - stringBytes - 4] = 0x7f;
+		Files.write(file, badEdge);
+		assertThrows(IOException.class, () -> DirectorySnapshot.open(file));
+
+		Files.write(file, "not a snapshot, not a snapshot, not a snapshot".getBytes("UTF-8"));
+		assertThrows(IOException.class, () -> DirectorySnapshot.open(file));
+	}
+}
@@ -0,0 +1,253 @@
+package com.quazzom.active_directory;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.BasicControl;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.PagedResultsControl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class DirectorySyncTest {
+
+	private static final String OBJECTS = "(|(objectClass=user)(objectClass=group))(!(objectClass=computer))";
+	private static final String DS_SERVICE_NAME = "CN=NTDS Settings,CN=DC01,CN=Servers,DC=acme";
+
+	private final LdapContext context = mock(LdapContext.class);
+	private final LdapContext controlsContext = mock(LdapContext.class);
+	private final ActiveDirectory ad = new ActiveDirectory("a", "b", "0000", "LAB01", "ACME");
+	private final List<DirectoryChange> changes = new ArrayList<DirectoryChange>();
+
+	@TempDir
+	Path directory;
+
+	@BeforeEach
+	void setUp() throws NamingException {
+		ReflectionTestUtils.setField(ad, "isHandShakeMade", true);
+		ReflectionTestUtils.setField(ad, "dirContextPool", new DirContextPool(() -> context, new ConnectionPoolConfig()));
+
+		// the identity of the domain controller
+		BasicAttributes invocationId = new BasicAttributes(true);
+		invocationId.put("invocationId", guidBytes());
+		when(context.getAttributes(new LdapName(DS_SERVICE_NAME), new String[] { "invocationId" }))
+				.thenReturn(invocationId);
+	}
+
+	private DirectorySync sync() {
+		return new DirectorySync(ad, new FileSyncStateStore(directory.resolve("sync.properties")), changes::add);
+	}
+
+	@Test
+	void testUsnFullResyncThenIncrementalChanges() throws Exception {
+		when(context.getAttributes("", new String[] { "highestCommittedUSN", "dsServiceName" }))
+				.thenReturn(rootDse("100"), rootDse("150"));
+		// the searches are paged even without a page size in the Active Directory
+		when(context.newInstance(any(Control[].class))).thenReturn(controlsContext);
+
+		// the full resync, the members of the staff group come in two ranges
+		SearchResult staff = result("CN=staff,DC=acme", "group", "10", members("member;range=0-1", "CN=arthur,DC=acme",
+				"CN=marie,DC=acme"));
+		when(context.getAttributes(new LdapName("CN=staff,DC=acme"), new String[] { "member;range=2-*" }))
+				.thenReturn(attributes(members("member;range=2-*", "CN=ford,DC=acme")));
+		when(controlsContext.search(nullable(String.class), eq("(&" + OBJECTS + ")"), any(SearchControls.class)))
+				.thenReturn(enumeration(staff, result("CN=arthur,DC=acme", "user", "20", null)));
+
+		DirectorySync sync = sync();
+		assertEquals(2, sync.sync());
+
+		assertEquals(DirectoryChange.Type.ADDED, changes.get(0).getType());
+		assertEquals("CN=staff,DC=acme", changes.get(0).getDistinguishedName());
+		assertEquals(asList("CN=arthur,DC=acme", "CN=marie,DC=acme", "CN=ford,DC=acme"), changes.get(0).getMembers());
+		assertEquals("03020100-0504-0706-0809-0a0b0c0d0e0f", changes.get(0).getObjectGuid());
+		assertEquals("arthur", changes.get(1).getAttribute("sAMAccountName"));
+		assertNull(changes.get(1).getMembers());
+
+		// the changes between the USN 101 and 150, read by a new sync from the saved
+		// state
+		changes.clear();
+		String range = "(uSNChanged>=101)(uSNChanged<=150)";
+		when(controlsContext.search(nullable(String.class), eq("(&" + OBJECTS + range + ")"), any(SearchControls.class)))
+				.thenReturn(enumeration(result("CN=staff,DC=acme", "group", "10", null),
+						result("CN=zaphod,DC=acme", "user", "120", null)));
+
+		// the deleted objects are read with the Show Deleted control
+		when(controlsContext.search(nullable(String.class), eq("(&(isDeleted=TRUE)" + OBJECTS + range + ")"),
+				any(SearchControls.class))).thenReturn(enumeration(result("CN=marie\\0ADEL:1,CN=Deleted Objects,DC=acme",
+						"user", "30", null)));
+
+		assertEquals(3, sync().sync());
+		assertEquals(DirectoryChange.Type.MODIFIED, changes.get(0).getType());
+		assertEquals(asList(), changes.get(0).getMembers());
+		assertEquals(DirectoryChange.Type.ADDED, changes.get(1).getType());
+		assertEquals(DirectoryChange.Type.DELETED, changes.get(2).getType());
+		verify(context).newInstance(argThat(controls -> controls.length == 2
+				&& "1.2.840.113556.1.4.417".equals(controls[0].getID()) && controls[1] instanceof PagedResultsControl));
+
+		SyncState state = new FileSyncStateStore(directory.resolve("sync.properties")).load();
+		assertEquals(SyncState.Mode.USN, state.getMode());
+		assertEquals(150, state.getHighestUsn());
+		assertEquals("03020100-0504-0706-0809-0a0b0c0d0e0f", state.getServer());
+	}
+
+	@Test
+	void testDirSyncPublishesTheMemberChangesAndSavesTheCookie() throws Exception {
+		when(context.getAttributes("", new String[] { "dsServiceName" })).thenReturn(rootDse(null));
+
+		SearchResult staff = result("CN=staff,DC=acme", "group", null,
+				members("member;range=1-1", "CN=ford,DC=acme"));
+		staff.getAttributes().put(members("member;range=0-0", "CN=marie,DC=acme"));
+		when(context.newInstance(any(Control[].class))).thenReturn(controlsContext);
+		when(controlsContext.search(nullable(String.class), eq("(&" + OBJECTS + ")"), any(SearchControls.class)))
+				.thenReturn(enumeration(staff));
+		when(controlsContext.getResponseControls()).thenReturn(new Control[] { new BasicControl(DirSyncControl.OID,
+				false, BerCodec.sequence(BerCodec.integer(0), BerCodec.integer(0),
+						BerCodec.octetString(new byte[] { 1, 2, 3 }))) });
+
+		DirectorySync sync = sync();
+		sync.setUseDirSync(true);
+		assertEquals(1, sync.sync());
+
+		DirectoryChange change = changes.get(0);
+		assertEquals(DirectoryChange.Type.ADDED, change.getType());
+		assertNull(change.getMembers());
+		assertEquals(asList("CN=ford,DC=acme"), change.getAddedMembers());
+		assertEquals(asList("CN=marie,DC=acme"), change.getRemovedMembers());
+
+		SyncState state = new FileSyncStateStore(directory.resolve("sync.properties")).load();
+		assertEquals(SyncState.Mode.DIRSYNC, state.getMode());
+		assertArrayEquals(new byte[] { 1, 2, 3 }, state.getCookie());
+
+		// the next cycle sends the saved cookie
+		changes.clear();
+		byte[] cookieControl = new DirSyncControl(DirSyncControl.OBJECT_SECURITY | DirSyncControl.INCREMENTAL_VALUES,
+				0, new byte[] { 1, 2, 3 }).getEncodedValue();
+		when(context.newInstance(argThat(controls -> controls != null && controls.length == 1
+				&& Arrays.equals(cookieControl, controls[0].getEncodedValue())))).thenReturn(controlsContext);
+		when(controlsContext.search(nullable(String.class), eq("(&" + OBJECTS + ")"), any(SearchControls.class)))
+				.thenReturn(enumeration(staff));
+
+		assertEquals(1, sync.sync());
+		assertEquals(DirectoryChange.Type.MODIFIED, changes.get(0).getType());
+	}
+
+	@Test
+	void testRefusedDirSyncFallsBackToTheUsn() throws Exception {
+		when(context.getAttributes("", new String[] { "dsServiceName" })).thenReturn(rootDse(null));
+		when(context.getAttributes("", new String[] { "highestCommittedUSN", "dsServiceName" }))
+				.thenReturn(rootDse("100"));
+		when(context.newInstance(any(Control[].class))).thenReturn(controlsContext);
+		when(context.newInstance(argThat(controls -> controls.length == 1
+				&& DirSyncControl.OID.equals(controls[0].getID())))).thenThrow(new NamingException(
+						"[LDAP: error code 12 - 00000057: LdapErr: DSID-0C090A5E, comment: Error processing control, data 0, v3839]"));
+		when(controlsContext.search(nullable(String.class), eq("(&" + OBJECTS + ")"), any(SearchControls.class)))
+				.thenReturn(enumeration(result("CN=arthur,DC=acme", "user", "20", null)));
+
+		DirectorySync sync = sync();
+		sync.setUseDirSync(true);
+
+		assertEquals(1, sync.sync());
+		assertFalse(sync.isUsingDirSync());
+		assertEquals(SyncState.Mode.USN, new FileSyncStateStore(directory.resolve("sync.properties")).load().getMode());
+	}
+
+	private static byte[] guidBytes() {
+		byte[] guid = new byte[16];
+		for (int index = 0; index < guid.length; index++)
+			guid[index] = (byte) index;
+		return guid;
+	}
+
+	private static BasicAttributes rootDse(String highestCommittedUsn) {
+		BasicAttributes attributes = new BasicAttributes(true);
+		if (highestCommittedUsn != null)
+			attributes.put("highestCommittedUSN", highestCommittedUsn);
+		attributes.put("dsServiceName", DS_SERVICE_NAME);
+		return attributes;
+	}
+
+	private static Attribute members(String id, String... members) {
+		Attribute attribute = new BasicAttribute(id, true);
+		for (String member : members)
+			attribute.add(member);
+		return attribute;
+	}
+
+	private static BasicAttributes attributes(Attribute attribute) {
+		BasicAttributes attributes = new BasicAttributes(true);
+		attributes.put(attribute);
+		return attributes;
+	}
+
+	private static SearchResult result(String dn, String objectClass, String usnCreated, Attribute member) {
+		BasicAttributes attributes = new BasicAttributes(true);
+		attributes.put("objectGUID", guidBytes());
+		attributes.put("objectClass", objectClass);
+		attributes.put("sAMAccountName", dn.substring(3, dn.indexOf(',')));
+		if (usnCreated != null)
+			attributes.put("uSNCreated", usnCreated);
+		if (member != null)
+			attributes.put(member);
+
+		SearchResult result = new SearchResult(dn, null, attributes);
+		result.setNameInNamespace(dn);
+		return result;
+	}
+
+	private static NamingEnumeration<SearchResult> enumeration(SearchResult... results) {
+		return new NamingEnumeration<SearchResult>() {
+			private int next;
+
+			@Override
+			public boolean hasMoreElements() {
+				return next < results.length;
+			}
+
+			@Override
+			public SearchResult nextElement() {
+				return results[next++];
+			}
+
+			@Override
+			public boolean hasMore() throws NamingException {
+				return hasMoreElements();
+			}
+
+			@Override
+			public SearchResult next() throws NamingException {
+				return nextElement();
+			}
+
+			@Override
+			public void close() throws NamingException {
+			}
+		};
+	}
+}
@@ -0,0 +1,54 @@
+package com.quazzom.active_directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import javax.naming.InvalidNameException;
+
+import org.junit.jupiter.api.Test;
+
+public class DnParserTest {
+
+	@Test
+	void testCommonName() throws InvalidNameException {
+		assertEquals("paul", DnParser.commonName("CN=paul,CN=Users,DC=mydomain,DC=LOCAL"));
+		assertEquals("Domain Admins", DnParser.commonName("cn=Domain Admins,CN=Users,DC=LAB01,DC=ACME"));
+		// no comma
+		assertEquals("paul", DnParser.commonName("CN=paul"));
+		// the spaces around the type and the value
+		assertEquals("paul", DnParser.commonName(" CN = paul , DC=acme"));
+		// a CharSequence other than a String
+		assertEquals("paul", DnParser.commonName(new StringBuilder("CN=paul,DC=acme")));
+	}
+
+	@Test
+	void testEscapedValues() throws InvalidNameException {
+		assertEquals("Smith, John", DnParser.commonName("CN=Smith\\, John,OU=Sales,DC=acme"));
+		assertEquals("a+b;c\\d", DnParser.commonName("CN=a\\+b\\;c\\\\d,DC=acme"));
+		// hex pairs, é is C3 A9 in UTF-8
+		assertEquals("José", DnParser.commonName("CN=Jos\\C3\\A9,DC=acme"));
+		assertEquals("a,b", DnParser.commonName("CN=a\\2Cb,DC=acme"));
+		// an escaped space at the end is part of the value
+		assertEquals("paul ", DnParser.commonName("CN=paul\\ ,DC=acme"));
+		// quoted values
+		assertEquals("Smith, John", DnParser.commonName("CN=\"Smith, John\",DC=acme"));
+	}
+
+	@Test
+	void testMultiValuedRdnAndAttributeTypes() throws InvalidNameException {
+		assertEquals("paul", DnParser.commonName("OU=Sales+CN=paul,DC=acme"));
+		assertEquals("paul", DnParser.commonName("2.5.4.3=paul,DC=acme"));
+		assertEquals("paul", DnParser.commonName("OID.2.5.4.3=paul,DC=acme"));
+		// without a common name, the first value of the RDN
+		assertEquals("Sales", DnParser.commonName("OU=Sales,DC=acme"));
+		// cn only in a later RDN is not the common name of the object
+		assertEquals("Sales", DnParser.commonName("OU=Sales,CN=paul,DC=acme"));
+	}
+
+	@Test
+	void testInvalidDn() {
+		assertThrows(InvalidNameException.class, () -> DnParser.commonName("paul"));
+		assertThrows(InvalidNameException.class, () -> DnParser.commonName("CN=paul\\"));
+		assertThrows(InvalidNameException.class, () -> DnParser.commonName("CN=\"paul,DC=acme"));
+	}
+}
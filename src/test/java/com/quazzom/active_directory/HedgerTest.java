@@ -0,0 +1,96 @@
+package com.quazzom.active_directory;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.InterruptedNamingException;
+import javax.naming.NamingException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class HedgerTest {
+
+	private final long[] now = new long[1];
+	private Hedger hedger;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		hedger = new Hedger(new HedgingConfig(), 4, () -> now[0]);
+
+		// the usual searches take 20 milliseconds, nothing is copied while they are
+		// measured
+		for (int count = 0; count < Hedger.MIN_SAMPLES; count++)
+			hedger.execute(Operation.USER_GROUPS, () -> {
+				now[0] += TimeUnit.MILLISECONDS.toNanos(20);
+				return asList("sales");
+			}, () -> {
+				throw new AssertionError("no copy before the durations are known");
+			});
+		assertEquals(0, hedger.stats().getHedgeCount());
+	}
+
+	@AfterEach
+	void tearDown() {
+		hedger.close();
+	}
+
+	@Test
+	void testTheCopyAnswersAStalledSearch() throws Exception {
+		List<String> groups = hedger.execute(Operation.USER_GROUPS, HedgerTest::stall, () -> asList("copy"));
+
+		assertEquals(asList("copy"), groups);
+		assertEquals(1, hedger.stats().getHedgeCount());
+		assertEquals(1, hedger.stats().getHedgeWinCount());
+		// the interruption of the stalled search doesn't reach the next request
+		assertFalse(Thread.currentThread().isInterrupted());
+	}
+
+	@Test
+	void testTheCopyIsAbandonedWhenTheSearchAnswersFirst() throws Exception {
+		CountDownLatch copyAbandoned = new CountDownLatch(1);
+		CountDownLatch copyStarted = new CountDownLatch(1);
+
+		List<String> groups = hedger.execute(Operation.USER_GROUPS, () -> {
+			await(copyStarted);
+			return asList("search");
+		}, () -> {
+			copyStarted.countDown();
+			try {
+				return stall();
+			} finally {
+				copyAbandoned.countDown();
+			}
+		});
+
+		assertEquals(asList("search"), groups);
+		assertTrue(copyAbandoned.await(5, TimeUnit.SECONDS));
+		assertEquals(1, hedger.stats().getHedgeCount());
+		assertEquals(0, hedger.stats().getHedgeWinCount());
+	}
+
+	// a server that never answers, the wait ends with an interruption
+	private static List<String> stall() throws NamingException {
+		try {
+			Thread.sleep(60000);
+		} catch (InterruptedException e) {
+			throw new InterruptedNamingException("interrupted");
+		}
+		throw new AssertionError("the search must be interrupted");
+	}
+
+	private static void await(CountDownLatch latch) throws NamingException {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			throw new InterruptedNamingException("interrupted");
+		}
+	}
+}
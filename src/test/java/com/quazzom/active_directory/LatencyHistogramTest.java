@@ -0,0 +1,63 @@
+package com.quazzom.active_directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	void testSmallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 100; value++)
+			histogram.record(value);
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(50, histogram.getValueAtPercentile(50));
+		assertEquals(99, histogram.getValueAtPercentile(99));
+		assertEquals(100, histogram.getValueAtPercentile(100));
+		assertEquals(50.5, histogram.getMean(), 0.0001);
+	}
+
+	@Test
+	void testPercentilesOfLargeValues() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		// 1 to 10000 microseconds, in nanoseconds
+		for (long value = 1; value <= 10_000; value++)
+			histogram.record(value * 1_000);
+
+		assertWithin(5_000_000, histogram.getValueAtPercentile(50));
+		assertWithin(9_900_000, histogram.getValueAtPercentile(99));
+		assertWithin(9_990_000, histogram.getValueAtPercentile(99.9));
+		assertEquals(10_000_000, histogram.getMax());
+		assertEquals(10_000_000, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	void testBuckets() {
+		// every value is in a bucket whose highest value is not below it
+		long[] values = { 0, 127, 128, 129, 255, 256, 1_000_000, Long.MAX_VALUE };
+		for (long value : values) {
+			int bucket = LatencyHistogram.bucket(value);
+			assertTrue(LatencyHistogram.highestValue(bucket) >= value);
+			assertTrue(bucket == 0 || LatencyHistogram.highestValue(bucket - 1) < value);
+		}
+	}
+
+	@Test
+	void testReset() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(1_000);
+		histogram.record(-5);
+		histogram.reset();
+
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getValueAtPercentile(99));
+	}
+
+	private static void assertWithin(long expected, long actual) {
+		assertTrue(Math.abs(actual - expected) <= expected * 0.016, expected + " != " + actual);
+	}
+}
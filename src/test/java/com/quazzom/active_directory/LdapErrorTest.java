@@ -0,0 +1,61 @@
+package com.quazzom.active_directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Locale;
+
+import javax.naming.AuthenticationException;
+import javax.naming.CommunicationException;
+import javax.naming.NamingException;
+
+import org.junit.jupiter.api.Test;
+
+public class LdapErrorTest {
+
+	@Test
+	void testTheParts() {
+		LdapError error = LdapError.parse(
+				"[LDAP: error code 49 - 80090308: LdapErr: DSID-0C090439, comment: AcceptSecurityContext error, data 775, v4563]");
+
+		assertEquals(49, error.getResultCode());
+		assertEquals("LDAP_INVALID_CREDENTIALS", error.getName());
+		assertEquals("775", error.getSubCode());
+		assertEquals("DSID-0C090439", error.getDsid());
+		assertEquals(LdapErrorCategory.LOCKOUT, error.getCategory());
+		assertTrue(error.isAuthenticationFailure());
+		assertTrue(error.isLockout());
+		assertEquals(AuthenticationStatus.ACCOUNT_LOCKED, error.getAuthenticationStatus());
+
+		assertEquals("The account is locked.", error.getMessage(Locale.ENGLISH));
+		assertEquals("A sua conta está bloqueada.", error.getMessage(new Locale("pt", "BR")));
+	}
+
+	@Test
+	void testOtherFormatsAreNeverRejected() {
+		// no sub-code: the message is the name of the code
+		LdapError busy = LdapError.parse("[LDAP: error code 51 - 00002024: SvcErr: DSID-0C090A3B, problem 5001 (BUSY)]");
+		assertEquals(51, busy.getResultCode());
+		assertNull(busy.getSubCode());
+		assertTrue(busy.isRetryable());
+		assertEquals("LDAP_BUSY", busy.getMessage(Locale.ENGLISH));
+
+		LdapError none = LdapError.parse(null);
+		assertEquals(-1, none.getResultCode());
+		assertNull(none.getMessage(Locale.ENGLISH));
+		assertEquals(LdapErrorCategory.OTHER, LdapError.parse("LDAP: error code").getCategory());
+		assertEquals(LdapErrorCategory.OTHER, LdapError.parse("error code 999").getCategory());
+	}
+
+	@Test
+	void testTheExceptionsWithoutResultCode() {
+		assertEquals(LdapErrorCategory.RETRYABLE, LdapError.of(new CommunicationException("connection refused")).getCategory());
+		assertEquals(LdapErrorCategory.RETRYABLE,
+				LdapError.of(new NamingException("LDAP response read timed out, timeout used:120000ms.")).getCategory());
+		assertEquals(LdapErrorCategory.AUTHENTICATION_FAILURE,
+				LdapError.of(new AuthenticationException("bad credentials")).getCategory());
+		assertFalse(LdapError.of(new NamingException("other")).isRetryable());
+	}
+}
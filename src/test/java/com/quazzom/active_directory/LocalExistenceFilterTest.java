@@ -0,0 +1,75 @@
+package com.quazzom.active_directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class LocalExistenceFilterTest {
+
+	private final long[] now = new long[1];
+	private final AtomicInteger loads = new AtomicInteger();
+	private final List<Runnable> background = new ArrayList<Runnable>();
+
+	private void runBackground() {
+		List<Runnable> tasks = new ArrayList<Runnable>(background);
+		background.clear();
+		tasks.forEach(Runnable::run);
+	}
+
+	private LocalExistenceFilter filter(ExistenceFilterConfig config) {
+		return new LocalExistenceFilter(config, names -> {
+			loads.incrementAndGet();
+			names.accept("John");
+			names.accept("paul");
+		}, background::add, () -> now[0]);
+	}
+
+	@Test
+	void testAbsentNamesAreAnsweredAfterTheLoad() {
+		ExistenceFilterConfig config = new ExistenceFilterConfig();
+		config.setRefreshIntervalMillis(1000);
+		LocalExistenceFilter filter = filter(config);
+
+		// nothing is absent until the load ends
+		assertFalse(filter.isAbsent("ringo"));
+		assertEquals(0, loads.get());
+		runBackground();
+
+		assertTrue(filter.isAbsent("ringo"));
+		assertFalse(filter.isAbsent("JOHN"));
+		assertFalse(filter.isAbsent("paul"));
+		// a filter with wildcards is searched
+		assertFalse(filter.isAbsent("ri*"));
+
+		// not loaded again before the refresh interval
+		assertTrue(background.isEmpty());
+		now[0] = TimeUnit.SECONDS.toNanos(1);
+		filter.isAbsent("ringo");
+		assertEquals(1, background.size());
+	}
+
+	@Test
+	void testAddedNamesArePresentAndInvalidateAllLoadsAgain() {
+		LocalExistenceFilter filter = filter(new ExistenceFilterConfig());
+		filter.isAbsent("ringo");
+		runBackground();
+
+		filter.add("Ringo");
+		assertFalse(filter.isAbsent("ringo"));
+
+		// the names added before the start of a load are dropped with it
+		filter.invalidateAll();
+		assertFalse(filter.isAbsent("george"));
+		runBackground();
+		assertTrue(filter.isAbsent("george"));
+		assertTrue(filter.isAbsent("ringo"));
+		assertEquals(2, loads.get());
+	}
+}
@@ -0,0 +1,87 @@
+package com.quazzom.active_directory;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.SizeLimitExceededException;
+
+import org.junit.jupiter.api.Test;
+
+public class LocalObjectIndexTest {
+
+	private final SubstringIndexConfig config = new SubstringIndexConfig();
+	private final long[] now = new long[1];
+	private final AtomicInteger loads = new AtomicInteger();
+
+	@Test
+	void testLoadsOnceAndRefreshesInBackground() throws Exception {
+		config.setRefreshIntervalMillis(1000);
+		LocalObjectIndex index = new LocalObjectIndex(config, maxMemoryBytes -> {
+			SubstringIndex.Builder builder = new SubstringIndex.Builder().add("john", "john");
+			if (loads.incrementAndGet() > 1)
+				builder.add("johnny", "johnny");
+			return builder.build();
+		}, Runnable::run, () -> now[0]);
+
+		assertEquals(asList("john"), index.search("joh"));
+		assertEquals(asList("john"), index.search("oh"));
+		assertEquals(1, loads.get());
+
+		// after the interval the search that starts the refresh sees the new index
+		// only because the executor runs the refresh in the caller
+		now[0] = TimeUnit.SECONDS.toNanos(1);
+		assertEquals(asList("john", "johnny"), index.search("joh"));
+		assertEquals(2, loads.get());
+		assertEquals(2, index.size());
+	}
+
+	@Test
+	void testAboveTheBudgetGoesToTheActiveDirectory() throws Exception {
+		config.setMaxMemoryBytes(1);
+		LocalObjectIndex index = new LocalObjectIndex(config, maxMemoryBytes -> {
+			loads.incrementAndGet();
+			return null;
+		}, Runnable::run, () -> now[0]);
+
+		assertNull(index.search("john"));
+		assertNull(index.search("john"));
+		// not loaded again before the refresh interval
+		assertEquals(1, loads.get());
+		assertEquals(-1, index.size());
+	}
+
+	@Test
+	void testFailedLoadGoesToTheActiveDirectoryAndIsRetriedLater() throws Exception {
+		config.setRefreshIntervalMillis(600000);
+		LocalObjectIndex index = new LocalObjectIndex(config, maxMemoryBytes -> {
+			if (loads.incrementAndGet() == 1)
+				throw new SizeLimitExceededException("[LDAP: error code 4 - Sizelimit Exceeded]");
+			return new SubstringIndex.Builder().add("john", "john").build();
+		}, Runnable::run, () -> now[0]);
+
+		assertNull(index.search("john"));
+		assertNull(index.search("john"));
+		assertEquals(1, loads.get());
+
+		// tried again after 30 seconds, not after the refresh interval
+		now[0] = TimeUnit.SECONDS.toNanos(30);
+		assertEquals(asList("john"), index.search("john"));
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	void testFilterCharactersGoToTheActiveDirectory() throws Exception {
+		LocalObjectIndex index = new LocalObjectIndex(config, maxMemoryBytes -> {
+			loads.incrementAndGet();
+			return new SubstringIndex.Builder().add("john", "john").build();
+		}, Runnable::run, () -> now[0]);
+
+		assertNull(index.search("jo*n"));
+		assertNull(index.search("(john)"));
+		assertEquals(0, loads.get());
+	}
+}
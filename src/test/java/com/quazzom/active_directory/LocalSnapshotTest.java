@@ -0,0 +1,114 @@
+package com.quazzom.active_directory;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.CommunicationException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LocalSnapshotTest {
+
+	@TempDir
+	Path directory;
+
+	private final long[] now = new long[1];
+	private final AtomicInteger loads = new AtomicInteger();
+	private final List<Runnable> background = new ArrayList<Runnable>();
+
+	private static DirectorySnapshot snapshot(String... groups) {
+		DirectorySnapshot.Builder builder = new DirectorySnapshot.Builder();
+		builder.addUser("john", asList(groups));
+		return builder.build();
+	}
+
+	private void runBackground() {
+		List<Runnable> tasks = new ArrayList<Runnable>(background);
+		background.clear();
+		tasks.forEach(Runnable::run);
+	}
+
+	@Test
+	void testTheFileAnswersWhileTheSnapshotIsLoaded() throws Exception {
+		SnapshotConfig config = new SnapshotConfig(directory.resolve("snapshot.bin"));
+		config.setRefreshIntervalMillis(1000);
+		snapshot("sales").write(config.getFile());
+
+		LocalSnapshot local = new LocalSnapshot(config, () -> {
+			loads.incrementAndGet();
+			return snapshot("sales", "inf");
+		}, background::add, () -> now[0]);
+
+		// the old file answers at once and the load waits in background
+		assertEquals(asList("sales"), local.userGroups("JOHN"));
+		assertNull(local.userGroups("paul"));
+		assertEquals(0, loads.get());
+
+		runBackground();
+		assertEquals(asList("sales", "inf"), local.userGroups("john"));
+		assertEquals(asList("sales", "inf"), DirectorySnapshot.open(config.getFile()).userGroups("john"));
+
+		// not loaded again before the refresh interval
+		local.userGroups("john");
+		assertTrue(background.isEmpty());
+		now[0] = TimeUnit.SECONDS.toNanos(1);
+		local.userGroups("john");
+		assertEquals(1, background.size());
+	}
+
+	@Test
+	void testInvalidatedNamesGoToTheActiveDirectoryUntilTheNextLoad() throws Exception {
+		SnapshotConfig config = new SnapshotConfig(directory.resolve("snapshot.bin"));
+		LocalSnapshot local = new LocalSnapshot(config, () -> {
+			loads.incrementAndGet();
+			return snapshot("sales");
+		}, background::add, () -> now[0]);
+
+		// no file yet
+		assertNull(local.userGroups("john"));
+		runBackground();
+		assertEquals(asList("sales"), local.userGroups("john"));
+
+		local.invalidateUser("John");
+		assertNull(local.userGroups("john"));
+
+		local.invalidateAll();
+		local.userGroups("john");
+		runBackground();
+		assertEquals(asList("sales"), local.userGroups("john"));
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	void testAFailedLoadKeepsTheSnapshotAndIsTriedAgain() throws Exception {
+		SnapshotConfig config = new SnapshotConfig(directory.resolve("snapshot.bin"));
+		Files.write(config.getFile(), new byte[] { 1, 2, 3 });
+
+		LocalSnapshot local = new LocalSnapshot(config, () -> {
+			if (loads.incrementAndGet() == 1)
+				throw new CommunicationException("connection refused");
+			return snapshot("sales");
+		}, background::add, () -> now[0]);
+
+		// the corrupt file is ignored
+		assertNull(local.userGroups("john"));
+		runBackground();
+		assertNull(local.userGroups("john"));
+		assertTrue(background.isEmpty());
+
+		now[0] = TimeUnit.SECONDS.toNanos(30);
+		local.userGroups("john");
+		runBackground();
+		assertEquals(asList("sales"), local.userGroups("john"));
+	}
+}
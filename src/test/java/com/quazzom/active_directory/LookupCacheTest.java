@@ -0,0 +1,165 @@
+package com.quazzom.active_directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.CommunicationException;
+
+import org.junit.jupiter.api.Test;
+
+public class LookupCacheTest {
+
+	private final AtomicLong now = new AtomicLong();
+	private final AtomicInteger loads = new AtomicInteger();
+	private final List<Runnable> refreshes = new ArrayList<Runnable>();
+
+	private LookupCache<String, String> cache(long timeToLiveMillis, int maxEntries, double refreshAheadRatio) {
+		CacheConfig config = new CacheConfig();
+		config.setTimeToLiveMillis(timeToLiveMillis);
+		config.setMaxEntries(maxEntries);
+		config.setRefreshAheadRatio(refreshAheadRatio);
+		return new LookupCache<String, String>(config, refreshes::add, now::get);
+	}
+
+	private String load(String key) {
+		return key + "#" + loads.incrementAndGet();
+	}
+
+	private void advanceMillis(long millis) {
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+	}
+
+	@Test
+	void testHitDoesNotLoad() throws Exception {
+		LookupCache<String, String> cache = cache(1000, 10, 0);
+
+		assertEquals("john#1", cache.get("john", this::load));
+		assertEquals("john#1", cache.get("john", this::load));
+
+		CacheStats stats = cache.stats();
+		assertEquals(1, stats.getHitCount());
+		assertEquals(1, stats.getMissCount());
+		assertEquals(0.5, stats.getHitRate());
+	}
+
+	@Test
+	void testExpiredEntryIsLoadedAgain() throws Exception {
+		LookupCache<String, String> cache = cache(1000, 10, 0);
+
+		cache.get("john", this::load);
+		advanceMillis(1000);
+
+		assertEquals("john#2", cache.get("john", this::load));
+	}
+
+	@Test
+	void testLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+		LookupCache<String, String> cache = cache(60000, 32, 0);
+
+		for (int count = 0; count < 32; count++) {
+			cache.get("user" + count, this::load);
+			advanceMillis(1);
+		}
+
+		// user0 is used again, so user1, user2 and user3 are the least recently used
+		cache.get("user0", this::load);
+		advanceMillis(1);
+		cache.get("user32", this::load);
+
+		// the eviction makes room for a batch of maxEntries / 16 entries
+		CacheStats stats = cache.stats();
+		assertEquals(3, stats.getEvictionCount());
+		assertEquals(30, stats.getSize());
+		assertEquals("user0#1", cache.get("user0", this::load));
+		assertEquals("user4#5", cache.get("user4", this::load));
+		assertEquals("user1#34", cache.get("user1", this::load));
+	}
+
+	@Test
+	void testHitCloseToExpireRefreshesInBackground() throws Exception {
+		LookupCache<String, String> cache = cache(1000, 10, 0.8);
+
+		cache.get("john", this::load);
+		advanceMillis(900);
+
+		// the hit returns the current value and schedules only one refresh
+		assertEquals("john#1", cache.get("john", this::load));
+		assertEquals("john#1", cache.get("john", this::load));
+		assertEquals(1, refreshes.size());
+
+		refreshes.get(0).run();
+		advanceMillis(900);
+
+		assertEquals("john#2", cache.get("john", this::load));
+		assertEquals(1, cache.stats().getRefreshCount());
+		assertEquals(1, cache.stats().getMissCount());
+	}
+
+	@Test
+	void testInvalidate() throws Exception {
+		LookupCache<String, String> cache = cache(1000, 10, 0);
+
+		cache.get("john", this::load);
+		cache.get("mary", this::load);
+		cache.invalidate("john");
+
+		assertEquals("john#3", cache.get("john", this::load));
+		assertEquals("mary#2", cache.get("mary", this::load));
+
+		cache.invalidateAll();
+		assertEquals(0, cache.stats().getSize());
+	}
+
+	@Test
+	void testInvalidationDuringLoadWins() throws Exception {
+		LookupCache<String, String> cache = cache(1000, 10, 0);
+
+		// the value read before the invalidation is returned but not stored
+		assertEquals("john#1", cache.get("john", key -> {
+			String value = load(key);
+			cache.invalidate(key);
+			return value;
+		}));
+		assertEquals("john#2", cache.get("john", this::load));
+
+		assertEquals("mary#3", cache.get("mary", key -> {
+			String value = load(key);
+			cache.invalidateAll();
+			return value;
+		}));
+		assertEquals("mary#4", cache.get("mary", this::load));
+		assertEquals("mary#4", cache.get("mary", this::load));
+	}
+
+	@Test
+	void testFailedLoadIsNotCached() throws Exception {
+		LookupCache<String, String> cache = cache(1000, 10, 0);
+
+		assertThrows(CommunicationException.class, () -> cache.get("john", key -> {
+			throw new CommunicationException("connection closed");
+		}));
+
+		assertEquals("john#1", cache.get("john", this::load));
+		assertEquals(1, cache.stats().getLoadFailureCount());
+	}
+
+	@Test
+	void testGetIfPresentDoesNotLoad() throws Exception {
+		LookupCache<String, String> cache = cache(1000, 10, 0);
+
+		assertEquals(null, cache.getIfPresent("john"));
+		cache.put("john", "john#batch", cache.generation());
+		assertEquals("john#batch", cache.getIfPresent("john"));
+		assertEquals("john#batch", cache.get("john", this::load));
+
+		advanceMillis(1000);
+		assertEquals(null, cache.getIfPresent("john"));
+		assertEquals(0, loads.get());
+	}
+}
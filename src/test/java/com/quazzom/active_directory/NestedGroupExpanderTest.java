@@ -0,0 +1,134 @@
+package com.quazzom.active_directory;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import javax.naming.CommunicationException;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchResult;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class NestedGroupExpanderTest {
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	// member DN -> the DNs of its groups
+	private final Map<String, List<String>> memberOf = new LinkedHashMap<String, List<String>>();
+	private final List<String> filters = Collections.synchronizedList(new ArrayList<String>());
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void testNestedGroupsAreExpandedLevelByLevel() throws Exception {
+		group("CN=sales,DC=acme", "CN=all,DC=acme");
+		group("CN=sales-east,DC=acme", "CN=sales,DC=acme");
+		user("CN=paul,DC=acme", "CN=all,DC=acme");
+		user("CN=john,DC=acme", "CN=sales,DC=acme");
+		user("CN=marie,DC=acme", "CN=sales-east,DC=acme", "CN=all,DC=acme");
+
+		List<String> members = new NestedGroupExpander(this::search, executor, 50).expand(asList("CN=all,DC=acme"));
+
+		assertEquals(asList("paul", "marie", "john"), members);
+		// one search per nesting level
+		assertEquals(asList("(memberOf=CN=all,DC=acme)", "(memberOf=CN=sales,DC=acme)",
+				"(memberOf=CN=sales-east,DC=acme)"), filters);
+	}
+
+	@Test
+	void testCyclesEndTheExpansion() throws Exception {
+		group("CN=a,DC=acme", "CN=b,DC=acme");
+		group("CN=b,DC=acme", "CN=a,DC=acme");
+		user("CN=paul,DC=acme", "CN=a,DC=acme", "CN=b,DC=acme");
+
+		List<String> members = new NestedGroupExpander(this::search, executor, 50).expand(asList("CN=a,DC=acme"));
+
+		assertEquals(asList("paul"), members);
+		assertEquals(2, filters.size());
+	}
+
+	@Test
+	void testALevelIsSearchedInChunks() throws Exception {
+		for (int count = 0; count < 5; count++) {
+			group("CN=g" + count + ",DC=acme", "CN=root,DC=acme");
+			user("CN=u" + count + ",DC=acme", "CN=g" + count + ",DC=acme");
+		}
+
+		List<String> members = new NestedGroupExpander(this::search, executor, 2).expand(asList("CN=root,DC=acme"));
+
+		assertEquals(asList("u0", "u1", "u2", "u3", "u4"), members);
+		// the root, then the 5 groups in chunks of 2
+		assertEquals(4, filters.size());
+		assertTrue(filters.contains("(|(memberOf=CN=g0,DC=acme)(memberOf=CN=g1,DC=acme))"));
+		assertTrue(filters.contains("(memberOf=CN=g4,DC=acme)"));
+	}
+
+	@Test
+	void testSearchFailureIsRethrown() {
+		CommunicationException failure = new CommunicationException("connection closed");
+		NestedGroupExpander expander = new NestedGroupExpander((filter, action) -> {
+			throw failure;
+		}, executor, 50);
+
+		assertSame(failure, assertThrows(CommunicationException.class, () -> expander.expand(asList("CN=a,DC=acme"))));
+	}
+
+	@Test
+	void testFilterValuesAreEscaped() {
+		assertEquals("CN=Smith\\5c, John\\28ext\\29\\2a,DC=acme", LdapFilter.escape("CN=Smith\\, John(ext)*,DC=acme"));
+		assertEquals("CN=plain,DC=acme", LdapFilter.escape("CN=plain,DC=acme"));
+	}
+
+	private void group(String distinguishedName, String... groups) {
+		memberOf.put(distinguishedName, asList(groups));
+	}
+
+	private void user(String distinguishedName, String... groups) {
+		memberOf.put("user:" + distinguishedName, asList(groups));
+	}
+
+	// answers (memberOf=...) and (|(memberOf=...)...) filters from the memberOf map
+	private void search(String filter, Consumer<SearchResult> action) {
+		filters.add(filter);
+
+		for (Map.Entry<String, List<String>> entry : memberOf.entrySet()) {
+			boolean matches = false;
+			for (String group : entry.getValue())
+				if (filter.contains("(memberOf=" + group + ")"))
+					matches = true;
+
+			if (!matches)
+				continue;
+
+			boolean user = entry.getKey().startsWith("user:");
+			String distinguishedName = user ? entry.getKey().substring(5) : entry.getKey();
+
+			BasicAttributes attributes = new BasicAttributes(true);
+			attributes.put("cn", distinguishedName.substring(3, distinguishedName.indexOf(',')));
+			BasicAttribute objectClass = new BasicAttribute("objectClass", "top");
+			objectClass.add(user ? "user" : "group");
+			attributes.put(objectClass);
+
+			SearchResult searchResult = new SearchResult(distinguishedName, null, attributes);
+			searchResult.setNameInNamespace(distinguishedName);
+			action.accept(searchResult);
+		}
+	}
+}
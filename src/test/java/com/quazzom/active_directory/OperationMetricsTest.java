@@ -0,0 +1,70 @@
+package com.quazzom.active_directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.openmbean.TabularData;
+
+import org.junit.jupiter.api.Test;
+
+public class OperationMetricsTest {
+
+	@Test
+	void testStatsPerOperationAndServer() {
+		OperationMetrics metrics = new OperationMetrics();
+		metrics.operationFinished(event("searchUserGroups", "dc1", 2_000_000, 0));
+		metrics.operationFinished(event("searchUserGroups", "dc2", 4_000_000, 0));
+		metrics.operationFinished(event("authenticate", "dc1", 1_000_000, 49));
+
+		OperationStats searches = metrics.getOperationStats("searchUserGroups");
+		assertEquals(2, searches.getCount());
+		assertEquals(0, searches.getErrorCount());
+		assertEquals(3.0, searches.getMeanMillis(), 0.0001);
+		assertEquals(4.0, searches.getMaxMillis(), 0.0001);
+		assertEquals(6, searches.getEntries());
+		assertEquals("(sAMAccountName=?)", searches.getFilterTemplate());
+
+		OperationStats authentications = metrics.getOperationStats("authenticate");
+		assertEquals(1, authentications.getErrorCount());
+		assertEquals(1L, authentications.getErrorCounts().get("LDAP_INVALID_CREDENTIALS"));
+
+		assertEquals(2, metrics.getServerStats().get("dc1").getCount());
+		assertEquals(1, metrics.getServerStats().get("dc2").getCount());
+		assertNull(metrics.getOperationStats("searchUsersGroup"));
+
+		metrics.reset();
+		assertEquals(0, searches.getCount());
+		assertTrue(authentications.getErrorCounts().isEmpty());
+	}
+
+	@Test
+	void testMBeans() throws Exception {
+		MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+		OperationMetrics metrics = new OperationMetrics();
+		metrics.operationFinished(event("searchUserGroups", "dc1", 2_000_000, 0));
+
+		metrics.registerMBeans(mBeanServer);
+		// registered on its first request
+		metrics.operationFinished(event("authenticate", "dc1", 1_000_000, 49));
+
+		assertEquals(1L,
+				mBeanServer.getAttribute(OperationMetrics.objectName("Operation", "searchUserGroups"), "Count"));
+		assertEquals(2L, mBeanServer.getAttribute(OperationMetrics.objectName("Server", "dc1"), "Count"));
+		TabularData errorCounts = (TabularData) mBeanServer
+				.getAttribute(OperationMetrics.objectName("Operation", "authenticate"), "ErrorCounts");
+		assertEquals(1, errorCounts.size());
+
+		metrics.unregisterMBeans();
+		assertFalse(mBeanServer.isRegistered(OperationMetrics.objectName("Operation", "searchUserGroups")));
+		assertFalse(mBeanServer.isRegistered(OperationMetrics.objectName("Server", "dc1")));
+	}
+
+	private static OperationEvent event(String operation, String server, long durationNanos, int errorCode) {
+		return new OperationEvent(operation, "(sAMAccountName=?)", server, null, durationNanos, 1_000, 3, 10, 200,
+				errorCode, null);
+	}
+}
@@ -0,0 +1,133 @@
+package com.quazzom.active_directory;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import javax.naming.CommunicationException;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class PartitionedSearchTest {
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void testNameRangesSplitTheLettersAndKeepTheObjectsWithoutAName() {
+		List<String> filters = new ArrayList<String>();
+		for (PartitionedSearch.Partition partition : PartitionedSearch.nameRanges("DC=acme", 2)) {
+			assertEquals("DC=acme", partition.base);
+			assertEquals(SearchControls.SUBTREE_SCOPE, partition.scope);
+			filters.add(partition.filter("(objectClass=user)"));
+		}
+
+		assertEquals(asList("(&(objectClass=user)(sAMAccountName=*)(!(sAMAccountName>=n)))",
+				"(&(objectClass=user)(sAMAccountName=*)(sAMAccountName>=n))",
+				"(&(objectClass=user)(!(sAMAccountName=*)))"), filters);
+		assertEquals(27, PartitionedSearch.nameRanges("DC=acme", 26).size());
+	}
+
+	@Test
+	void testPartitionsAreSearchedInParallelAndMergedOnce() throws Exception {
+		List<PartitionedSearch.Partition> partitions = PartitionedSearch.children("DC=acme",
+				asList("OU=sales,DC=acme", "OU=staff,DC=acme", "CN=LostAndFound,DC=acme"));
+		assertEquals(SearchControls.OBJECT_SCOPE, partitions.get(0).scope);
+		assertEquals(SearchControls.SUBTREE_SCOPE, partitions.get(3).scope);
+
+		// the four partitions wait for each other, so they run at the same time
+		CountDownLatch running = new CountDownLatch(4);
+		PartitionedSearch.Search search = (partition, action) -> {
+			running.countDown();
+			try {
+				assertTrue(running.await(5, TimeUnit.SECONDS));
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+
+			if (partition.base.startsWith("OU=sales")) {
+				result("CN=zoe,OU=sales,DC=acme", action);
+				result("CN=paul,OU=sales,DC=acme", action);
+			} else if (partition.base.startsWith("OU=staff")) {
+				// the same object twice, e.g.: in two overlapping partitions
+				result("cn=Paul,ou=Sales,dc=acme", action);
+				result("CN=paul,OU=staff,DC=acme", action);
+			} else if (partition.base.startsWith("CN=LostAndFound")) {
+				result("CN=orphan,CN=LostAndFound,DC=acme", action);
+			}
+		};
+
+		assertEquals(asList("zoe", "paul", "paul", "orphan"),
+				new PartitionedSearch(search, executor, 4, false).search(partitions));
+
+		assertEquals(asList("orphan", "paul", "paul", "zoe"),
+				new PartitionedSearch(search, executor, 4, true).search(partitions));
+	}
+
+	@Test
+	void testSearchFailureIsRethrown() {
+		CommunicationException failure = new CommunicationException("connection closed");
+		PartitionedSearch search = new PartitionedSearch((partition, action) -> {
+			throw failure;
+		}, executor, 2, false);
+
+		assertSame(failure, assertThrows(CommunicationException.class,
+				() -> search.search(PartitionedSearch.nameRanges("DC=acme", 8))));
+	}
+
+	@Test
+	void testFailureWaitsForThePartitionsInProgress() throws Exception {
+		Thread caller = Thread.currentThread();
+		CountDownLatch started = new CountDownLatch(1);
+		AtomicBoolean inProgress = new AtomicBoolean();
+		CommunicationException failure = new CommunicationException("connection closed");
+
+		// the partition of the calling thread fails while another one is searched
+		PartitionedSearch search = new PartitionedSearch((partition, action) -> {
+			try {
+				if (Thread.currentThread() == caller) {
+					assertTrue(started.await(5, TimeUnit.SECONDS));
+					throw failure;
+				}
+				inProgress.set(true);
+				started.countDown();
+				Thread.sleep(200);
+				inProgress.set(false);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		}, executor, 2, false);
+
+		assertSame(failure, assertThrows(CommunicationException.class,
+				() -> search.search(PartitionedSearch.nameRanges("DC=acme", 8))));
+		assertFalse(inProgress.get());
+	}
+
+	private static void result(String distinguishedName, Consumer<SearchResult> action) {
+		BasicAttributes attributes = new BasicAttributes(true);
+		attributes.put("cn", distinguishedName.substring(3, distinguishedName.indexOf(',')));
+		SearchResult searchResult = new SearchResult(distinguishedName, null, attributes);
+		searchResult.setNameInNamespace(distinguishedName);
+		action.accept(searchResult);
+	}
+}
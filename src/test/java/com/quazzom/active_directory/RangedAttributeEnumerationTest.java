@@ -0,0 +1,155 @@
+package com.quazzom.active_directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.naming.Name;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapName;
+
+import org.junit.jupiter.api.Test;
+
+public class RangedAttributeEnumerationTest {
+
+	private final DirContext context = mock(DirContext.class);
+	private final SearchControls controls = new SearchControls();
+
+	private RangedAttributeEnumeration open(SearchResult... results) throws Exception {
+		when(context.search("DC=acme", "(cn=staff)", controls)).thenReturn(enumeration(results));
+
+		ConnectionPoolConfig config = new ConnectionPoolConfig();
+		config.setMaxSize(1);
+		DirContextPool pool = new DirContextPool(() -> context, config);
+
+		return new RangedAttributeEnumeration(SearchCursor.open(pool, "DC=acme", "(cn=staff)", controls, 0),
+				"member");
+	}
+
+	@Test
+	void testEachRangeIsReadWhenTheLastOneIsConsumed() throws Exception {
+		SearchResult staff = result("CN=staff,DC=acme", range("member;range=0-1499", 0, 1500));
+
+		when(context.getAttributes(new LdapName("CN=staff,DC=acme"), new String[] { "member;range=1500-*" }))
+				.thenReturn(attributes(range("member;range=1500-2999", 1500, 3000)));
+		when(context.getAttributes(new LdapName("CN=staff,DC=acme"), new String[] { "member;range=3000-*" }))
+				.thenReturn(attributes(range("member;range=3000-*", 3000, 3200)));
+
+		RangedAttributeEnumeration enumeration = open(staff);
+
+		List<Integer> rangeSizes = new ArrayList<Integer>();
+		List<Object> members = new ArrayList<Object>();
+		while (enumeration.hasMore()) {
+			Attribute member = enumeration.next().getAttributes().get("member");
+			rangeSizes.add(member.size());
+			for (int count = 0; count < member.size(); count++)
+				members.add(member.get(count));
+		}
+
+		assertEquals(3, rangeSizes.size());
+		assertEquals(1500, (int) rangeSizes.get(0));
+		assertEquals(1500, (int) rangeSizes.get(1));
+		assertEquals(200, (int) rangeSizes.get(2));
+		assertEquals("CN=user0,DC=acme", members.get(0));
+		assertEquals("CN=user3199,DC=acme", members.get(3199));
+	}
+
+	@Test
+	void testPlainAttributeIsReturnedAsItIs() throws Exception {
+		SearchResult small = result("CN=small,DC=acme", range("member", 0, 3));
+
+		RangedAttributeEnumeration enumeration = open(small);
+
+		assertTrue(enumeration.hasMore());
+		assertSame(small, enumeration.next());
+		assertFalse(enumeration.hasMore());
+		verify(context, never()).getAttributes(any(Name.class), any(String[].class));
+	}
+
+	@Test
+	void testCloseStopsRequestingRanges() throws Exception {
+		SearchResult staff = result("CN=staff,DC=acme", range("member;range=0-1499", 0, 1500));
+
+		RangedAttributeEnumeration enumeration = open(staff);
+		enumeration.next();
+		enumeration.close();
+
+		assertFalse(enumeration.hasMore());
+		verify(context, never()).getAttributes(any(Name.class), any(String[].class));
+	}
+
+	@Test
+	void testRangeOfAnotherAttributeIsIgnored() throws Exception {
+		SearchResult other = result("CN=other,DC=acme", range("memberOf;range=0-1499", 0, 2));
+
+		RangedAttributeEnumeration enumeration = open(other);
+
+		assertSame(other, enumeration.next());
+		verify(context, never()).getAttributes(any(Name.class), any(String[].class));
+	}
+
+	private static Attribute range(String id, int from, int to) {
+		Attribute attribute = new BasicAttribute(id, true);
+		for (int count = from; count < to; count++)
+			attribute.add("CN=user" + count + ",DC=acme");
+		return attribute;
+	}
+
+	private static BasicAttributes attributes(Attribute attribute) {
+		BasicAttributes attributes = new BasicAttributes(true);
+		attributes.put(attribute);
+		return attributes;
+	}
+
+	private static SearchResult result(String dn, Attribute attribute) {
+		SearchResult result = new SearchResult(dn, null, attributes(attribute));
+		result.setNameInNamespace(dn);
+		return result;
+	}
+
+	private static NamingEnumeration<SearchResult> enumeration(SearchResult... results) {
+		return new NamingEnumeration<SearchResult>() {
+			private int next;
+
+			@Override
+			public boolean hasMoreElements() {
+				return next < results.length;
+			}
+
+			@Override
+			public SearchResult nextElement() {
+				return results[next++];
+			}
+
+			@Override
+			public boolean hasMore() throws NamingException {
+				return hasMoreElements();
+			}
+
+			@Override
+			public SearchResult next() throws NamingException {
+				return nextElement();
+			}
+
+			@Override
+			public void close() throws NamingException {
+			}
+		};
+	}
+}
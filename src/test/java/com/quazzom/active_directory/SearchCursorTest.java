@@ -0,0 +1,249 @@
+package com.quazzom.active_directory;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.OperationNotSupportedException;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+public class SearchCursorTest {
+
+	private final SearchControls controls = new SearchControls();
+
+	private DirContextPool pool(DirContext... contexts) {
+		ConnectionPoolConfig config = new ConnectionPoolConfig();
+		config.setMaxSize(1);
+		config.setBorrowTimeoutMillis(100);
+		int[] next = new int[1];
+		return new DirContextPool(() -> contexts[next[0]++], config);
+	}
+
+	@Test
+	void testPagedSearchReadsAllThePages() throws Exception {
+		LdapContext pooledContext = mock(LdapContext.class);
+		LdapContext pagedContext = mock(LdapContext.class);
+
+		SearchResult first = new SearchResult("CN=a", null, null);
+		SearchResult second = new SearchResult("CN=b", null, null);
+		SearchResult third = new SearchResult("CN=c", null, null);
+
+		when(pooledContext.newInstance(any(Control[].class))).thenReturn(pagedContext);
+		when(pagedContext.search(eq("DC=acme"), eq("(cn=*)"), eq(controls)))
+				.thenReturn(enumeration(first, second), enumeration(third));
+		when(pagedContext.getResponseControls())
+				.thenReturn(new Control[] { pagedResponse(new byte[] { 7, 7 }) })
+				.thenReturn(new Control[] { pagedResponse(new byte[0]) });
+
+		DirContextPool pool = pool(pooledContext);
+		SearchCursor cursor = SearchCursor.open(pool, "DC=acme", "(cn=*)", controls, 2);
+
+		List<SearchResult> results = new ArrayList<SearchResult>();
+		while (cursor.hasMore())
+			results.add(cursor.next());
+
+		assertEquals(3, results.size());
+		assertSame(third, results.get(2));
+
+		// the first page has no cookie, the second one sends the cookie of the first
+		ArgumentCaptor<Control[]> firstControls = ArgumentCaptor.forClass(Control[].class);
+		verify(pooledContext).newInstance(firstControls.capture());
+		assertEquals(PagedResultsControl.OID, firstControls.getValue()[0].getID());
+
+		ArgumentCaptor<Control[]> nextControls = ArgumentCaptor.forClass(Control[].class);
+		verify(pagedContext).setRequestControls(nextControls.capture());
+		assertArrayEquals(new PagedResultsControl(2, new byte[] { 7, 7 }, Control.CRITICAL).getEncodedValue(),
+				nextControls.getValue()[0].getEncodedValue());
+
+		// the last page gives back the context
+		verify(pagedContext).close();
+		assertEquals(1, pool.getIdleCount());
+	}
+
+	@Test
+	void testUnpagedSearchUsesThePooledContext() throws Exception {
+		DirContext pooledContext = mock(DirContext.class);
+		SearchResult result = new SearchResult("CN=a", null, null);
+		when(pooledContext.search("DC=acme", "(cn=*)", controls)).thenReturn(enumeration(result));
+
+		DirContextPool pool = pool(pooledContext);
+		SearchCursor cursor = SearchCursor.open(pool, "DC=acme", "(cn=*)", controls, 0);
+
+		assertTrue(cursor.hasMore());
+		assertSame(result, cursor.next());
+		assertFalse(cursor.hasMore());
+		assertEquals(1, pool.getIdleCount());
+	}
+
+	@Test
+	void testPagedSearchNeedsALdapContext() {
+		DirContextPool pool = pool(mock(DirContext.class));
+
+		assertThrows(OperationNotSupportedException.class,
+				() -> SearchCursor.open(pool, "DC=acme", "(cn=*)", controls, 100));
+		assertEquals(1, pool.getIdleCount());
+	}
+
+	@Test
+	void testBrokenConnectionIsReplacedBeforeTheFirstResult() throws Exception {
+		DirContext brokenContext = mock(DirContext.class);
+		DirContext newContext = mock(DirContext.class);
+		when(brokenContext.search("DC=acme", "(cn=*)", controls))
+				.thenThrow(new CommunicationException("connection closed"));
+		when(newContext.search("DC=acme", "(cn=*)", controls)).thenReturn(enumeration());
+
+		DirContextPool pool = pool(brokenContext, newContext);
+		SearchCursor cursor = SearchCursor.open(pool, "DC=acme", "(cn=*)", controls, 0);
+
+		assertFalse(cursor.hasMore());
+		verify(brokenContext).close();
+		verify(newContext, times(1)).search("DC=acme", "(cn=*)", controls);
+		assertEquals(1, pool.getSize());
+	}
+
+	@Test
+	void testCloseAbandonsTheSearch() throws Exception {
+		DirContext pooledContext = mock(DirContext.class);
+		@SuppressWarnings("unchecked")
+		NamingEnumeration<SearchResult> answer = mock(NamingEnumeration.class);
+		when(pooledContext.search("DC=acme", "(cn=*)", controls)).thenReturn(answer);
+
+		DirContextPool pool = pool(pooledContext);
+		SearchCursor cursor = SearchCursor.open(pool, "DC=acme", "(cn=*)", controls, 0);
+		cursor.close();
+		cursor.close();
+
+		verify(answer, times(1)).close();
+		assertEquals(1, pool.getIdleCount());
+		assertFalse(cursor.hasMore());
+	}
+
+	@Test
+	void testNextAfterCloseFails() throws Exception {
+		DirContext pooledContext = mock(DirContext.class);
+		when(pooledContext.search("DC=acme", "(cn=*)", controls)).thenReturn(enumeration());
+
+		SearchCursor cursor = SearchCursor.open(pool(pooledContext), "DC=acme", "(cn=*)", controls, 0);
+		cursor.close();
+
+		assertThrows(NoSuchElementException.class, cursor::next);
+	}
+
+	@Test
+	void testTraceReportsTheSearch() throws Exception {
+		DirContext pooledContext = mock(DirContext.class);
+		BasicAttributes attributes = new BasicAttributes("member", "CN=a,DC=acme");
+		attributes.get("member").add("CN=é,DC=acme");
+		when(pooledContext.search("DC=acme", "(cn=*)", controls))
+				.thenReturn(enumeration(new SearchResult("CN=g", null, attributes)));
+
+		List<OperationEvent> events = new ArrayList<OperationEvent>();
+		OperationTrace trace = OperationTrace.start(events::add, Operation.USERS_GROUP, "server001");
+
+		SearchCursor cursor = SearchCursor.open(pool(pooledContext), "DC=acme", "(cn=*)", controls, 0, trace);
+		while (cursor.hasMore())
+			cursor.next();
+		cursor.close();
+
+		assertEquals(1, events.size());
+		OperationEvent event = events.get(0);
+		assertEquals("searchUsersGroup", event.getOperation());
+		assertEquals("CN=?", event.getFilterTemplate());
+		assertEquals("server001", event.getServer());
+		assertEquals(1, event.getEntries());
+		assertEquals(2, event.getValues());
+		// é is 2 bytes in UTF-8
+		assertEquals(25, event.getBytesDecoded());
+		assertTrue(event.isSuccess());
+		assertTrue(event.getDurationNanos() >= event.getConnectionAcquireNanos());
+	}
+
+	@Test
+	void testTraceReportsTheErrorCode() throws Exception {
+		DirContext pooledContext = mock(DirContext.class);
+		when(pooledContext.search("DC=acme", "(cn=*)", controls))
+				.thenThrow(new NamingException("[LDAP: error code 32 - 0000208D: NameErr: DSID-03100241]"));
+
+		List<OperationEvent> events = new ArrayList<OperationEvent>();
+		OperationTrace trace = OperationTrace.start(events::add, Operation.USERS_GROUP, "server001");
+
+		assertThrows(NamingException.class,
+				() -> SearchCursor.open(pool(pooledContext), "DC=acme", "(cn=*)", controls, 0, trace));
+
+		assertEquals(1, events.size());
+		assertFalse(events.get(0).isSuccess());
+		assertEquals(32, events.get(0).getErrorCode());
+		assertEquals("LDAP_NO_SUCH_OBJECT", events.get(0).getErrorName());
+	}
+
+	private static PagedResultsResponseControl pagedResponse(byte[] cookie) throws IOException {
+		// SEQUENCE { size INTEGER, cookie OCTET STRING }
+		byte[] value = new byte[7 + cookie.length];
+		value[0] = 0x30;
+		value[1] = (byte) (5 + cookie.length);
+		value[2] = 0x02;
+		value[3] = 0x01;
+		value[4] = 0x00;
+		value[5] = 0x04;
+		value[6] = (byte) cookie.length;
+		System.arraycopy(cookie, 0, value, 7, cookie.length);
+		return new PagedResultsResponseControl(PagedResultsResponseControl.OID, false, value);
+	}
+
+	private static NamingEnumeration<SearchResult> enumeration(SearchResult... results) {
+		return new NamingEnumeration<SearchResult>() {
+			private int next;
+
+			@Override
+			public boolean hasMoreElements() {
+				return next < results.length;
+			}
+
+			@Override
+			public SearchResult nextElement() {
+				return results[next++];
+			}
+
+			@Override
+			public boolean hasMore() throws NamingException {
+				return hasMoreElements();
+			}
+
+			@Override
+			public SearchResult next() throws NamingException {
+				return nextElement();
+			}
+
+			@Override
+			public void close() throws NamingException {
+			}
+		};
+	}
+}
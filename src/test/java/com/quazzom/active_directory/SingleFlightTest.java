@@ -0,0 +1,156 @@
+package com.quazzom.active_directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.CommunicationException;
+import javax.naming.InterruptedNamingException;
+import javax.naming.NamingException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class SingleFlightTest {
+
+	private final SingleFlight<String, List<String>> flights = new SingleFlight<String, List<String>>(
+			ArrayList::new);
+	private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void testIdenticalRequestsShareOneCall() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger calls = new AtomicInteger();
+		List<String> groups = new ArrayList<String>(Arrays.asList("sales", "inf"));
+
+		SingleFlight.Call<List<String>> call = () -> {
+			calls.incrementAndGet();
+			started.countDown();
+			await(release);
+			return groups;
+		};
+
+		Future<List<String>> leader = executor.submit(() -> flights.execute("jdoe", call));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		List<Future<List<String>>> followers = new ArrayList<Future<List<String>>>();
+		for (int count = 0; count < 7; count++)
+			followers.add(executor.submit(() -> flights.execute("jdoe", call)));
+
+		// the followers are waiting when all the requests are counted
+		while (flights.stats().getRequestCount() < 8)
+			Thread.sleep(1);
+		release.countDown();
+
+		assertSame(groups, leader.get(5, TimeUnit.SECONDS));
+		for (Future<List<String>> follower : followers) {
+			List<String> shared = follower.get(5, TimeUnit.SECONDS);
+			assertEquals(groups, shared);
+			assertNotSame(groups, shared);
+		}
+
+		assertEquals(1, calls.get());
+		CoalescingStats stats = flights.stats();
+		assertEquals(7, stats.getCoalescedCount());
+		assertEquals(1, stats.getSearchCount());
+		assertEquals(0.875, stats.getDedupRatio(), 1e-9);
+
+		// the flight is over, the next request makes a new call
+		flights.execute("jdoe", call);
+		assertEquals(2, calls.get());
+	}
+
+	@Test
+	void testTheFailureIsSharedAndOtherKeysAreNotCoalesced() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CommunicationException failure = new CommunicationException("connection reset");
+
+		Future<List<String>> leader = executor.submit(() -> flights.execute("all-staff", () -> {
+			started.countDown();
+			await(release);
+			throw failure;
+		}));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		Future<List<String>> follower = executor.submit(() -> flights.execute("all-staff", () -> {
+			fail("the search in flight must be used");
+			return null;
+		}));
+		while (flights.stats().getRequestCount() < 2)
+			Thread.sleep(1);
+
+		// another key doesn't wait
+		assertEquals(Arrays.asList("arthur"), flights.execute("admins", () -> Arrays.asList("arthur")));
+
+		release.countDown();
+		for (Future<List<String>> future : Arrays.asList(leader, follower)) {
+			try {
+				future.get(5, TimeUnit.SECONDS);
+				fail("the failure must be shared");
+			} catch (ExecutionException e) {
+				assertSame(failure, e.getCause());
+			}
+		}
+		assertEquals(1, flights.stats().getCoalescedCount());
+	}
+
+	@Test
+	void testCancelledLeaderIsNotSharedAndAWaitingRequestLeads() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		AtomicInteger calls = new AtomicInteger();
+
+		// e.g.: an asynchronous search cancelled while the server is slow
+		Future<List<String>> leader = executor.submit(() -> flights.execute("jdoe", () -> {
+			calls.incrementAndGet();
+			started.countDown();
+			await(new CountDownLatch(1));
+			return null;
+		}));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		Future<List<String>> follower = executor.submit(() -> flights.execute("jdoe", () -> {
+			calls.incrementAndGet();
+			return Arrays.asList("sales");
+		}));
+		while (flights.stats().getRequestCount() < 2)
+			Thread.sleep(1);
+
+		leader.cancel(true);
+		assertEquals(Arrays.asList("sales"), follower.get(5, TimeUnit.SECONDS));
+		assertEquals(2, calls.get());
+		assertEquals(0, flights.stats().getCoalescedCount());
+	}
+
+	@Test
+	void testNoRequests() {
+		assertEquals(0.0, flights.stats().getDedupRatio());
+	}
+
+	private static void await(CountDownLatch latch) throws NamingException {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			throw new InterruptedNamingException();
+		}
+	}
+}
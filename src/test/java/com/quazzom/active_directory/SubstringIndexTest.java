@@ -0,0 +1,47 @@
+package com.quazzom.active_directory;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class SubstringIndexTest {
+
+	private final SubstringIndex index = new SubstringIndex.Builder()
+			.add("arthur", "arthur")
+			.add("Paul", "Paul McCartney")
+			.add("john", "john")
+			.add("Marie", "marie")
+			.add("oscar", "oscar")
+			.add("aaaaaa", "aaaaaa")
+			.build();
+
+	@Test
+	void testSearch() {
+		assertEquals(asList("arthur", "marie", "oscar"), index.search("ar"));
+		assertEquals(asList("arthur"), index.search("rthu"));
+		assertEquals(asList("Paul McCartney"), index.search("pAuL"));
+		assertEquals(asList(), index.search("paulo"));
+		assertEquals(asList(), index.search("xyz"));
+		// a trigram repeated in a name gives the name once
+		assertEquals(asList("aaaaaa"), index.search("aaaa"));
+	}
+
+	@Test
+	void testShortAndEmptyParts() {
+		assertEquals(asList("john", "oscar"), index.search("o"));
+		assertEquals(6, index.search("").size());
+		assertEquals(6, index.size());
+	}
+
+	@Test
+	void testEstimatedBytes() {
+		SubstringIndex.Builder builder = new SubstringIndex.Builder();
+		long empty = builder.getEstimatedBytes();
+		builder.add("a.very.long.account.name", "a.very.long.account.name");
+
+		assertTrue(builder.getEstimatedBytes() > empty);
+		assertTrue(builder.build().getEstimatedBytes() > 0);
+	}
+}
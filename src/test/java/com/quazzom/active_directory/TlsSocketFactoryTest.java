@@ -0,0 +1,302 @@
+package com.quazzom.active_directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TlsSocketFactoryTest {
+
+	private static final char[] PASSWORD = "changeit".toCharArray();
+
+	// a TLS server with a self-signed certificate for localhost, the stand-in of a
+	// domain controller
+	private SSLServerSocket server;
+	private SSLContext serverContext;
+	private Path keyStore;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		keyStore = Paths.get(TlsSocketFactoryTest.class.getResource("localhost.p12").toURI());
+
+		KeyStore keys = KeyStore.getInstance("PKCS12");
+		try (InputStream in = TlsSocketFactoryTest.class.getResourceAsStream("localhost.p12")) {
+			keys.load(in, PASSWORD);
+		}
+		KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		keyManagers.init(keys, PASSWORD);
+		SSLContext context = SSLContext.getInstance("TLS");
+		context.init(keyManagers.getKeyManagers(), null, null);
+		serverContext = context;
+
+		server = (SSLServerSocket) context.getServerSocketFactory().createServerSocket(0, 50,
+				InetAddress.getLoopbackAddress());
+		Thread acceptor = new Thread(() -> {
+			while (!server.isClosed()) {
+				try (Socket client = server.accept()) {
+					// a byte after the handshake, the client then has the session ticket
+					client.getOutputStream().write(1);
+					client.getOutputStream().flush();
+					client.getInputStream().read();
+				} catch (IOException e) {
+					// the client failed the handshake or the server is closed
+				}
+			}
+		});
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		server.close();
+	}
+
+	private TlsConfig config() {
+		TlsConfig config = new TlsConfig();
+		config.setTrustStore(keyStore);
+		config.setTrustStorePassword(PASSWORD);
+		config.setTrustStoreType("PKCS12");
+		return config;
+	}
+
+	private void connect(TlsSocketFactory factory, String host) throws IOException {
+		try (SSLSocket socket = (SSLSocket) factory.createSocket(host, server.getLocalPort())) {
+			socket.startHandshake();
+			socket.getInputStream().read();
+			socket.getOutputStream().write(1);
+		}
+	}
+
+	private static TlsStats awaitHandshakes(TlsSocketFactory factory, int handshakes) throws InterruptedException {
+		// the handshakes are counted by a listener called in another thread
+		for (int wait = 0; wait < 500 && factory.stats().getHandshakeCount() < handshakes; wait++)
+			Thread.sleep(10);
+		return factory.stats();
+	}
+
+	@Test
+	void testTheSecondConnectionResumesTheSession() throws Exception {
+		TlsSocketFactory factory = new TlsSocketFactory(config());
+
+		connect(factory, "localhost");
+		connect(factory, "localhost");
+
+		TlsStats stats = awaitHandshakes(factory, 2);
+		assertEquals(2, stats.getHandshakeCount());
+		assertEquals(1, stats.getResumedCount());
+		assertEquals(1, stats.getFullHandshakeCount());
+	}
+
+	@Test
+	void testTheHostnameVerification() throws Exception {
+		// the certificate is for localhost only
+		TlsSocketFactory verifying = new TlsSocketFactory(config());
+		assertThrows(SSLHandshakeException.class, () -> connect(verifying, "127.0.0.1"));
+
+		TlsConfig config = config();
+		config.setHostnameVerification(false);
+		TlsSocketFactory notVerifying = new TlsSocketFactory(config);
+		connect(notVerifying, "127.0.0.1");
+		assertEquals(1, awaitHandshakes(notVerifying, 1).getHandshakeCount());
+
+		// without the trust store the self-signed certificate is rejected
+		config.setTrustStore(null);
+		TlsSocketFactory untrusted = new TlsSocketFactory(config);
+		assertThrows(SSLHandshakeException.class, () -> connect(untrusted, "localhost"));
+	}
+
+	@Test
+	void testJndiGetsTheFactoryOfTheConnectionBeingOpened() throws Exception {
+		TlsSocketFactory factory = new TlsSocketFactory(config());
+
+		assertThrows(IllegalStateException.class, TlsSocketFactory::getDefault);
+		factory.open(() -> {
+			assertSame(factory, TlsSocketFactory.getDefault());
+			return null;
+		});
+		assertThrows(IllegalStateException.class, TlsSocketFactory::getDefault);
+	}
+
+	@Test
+	void testStartTlsBindIsNeverSentOverAPlainConnection() throws Exception {
+		try (StartTlsServer ldap = new StartTlsServer(serverContext.getSocketFactory())) {
+			TlsConfig config = config();
+			config.setTransportSecurity(TransportSecurity.START_TLS);
+			// the idle connection is not checked, the bind finds it closed
+			ConnectionPoolConfig bindPoolConfig = new ConnectionPoolConfig();
+			bindPoolConfig.setValidateOnBorrow(false);
+
+			ActiveDirectory ad = new ActiveDirectory("localhost", String.valueOf(ldap.getPort()), "svc", "secret",
+					"acme.local");
+			ad.setTlsConfig(config);
+			ad.setBindPoolConfig(bindPoolConfig);
+			ad.handShake();
+			try {
+				assertTrue(ad.authenticate("john", "password").isAuthenticated());
+
+				// e.g.: the server closed the idle connections
+				ldap.dropConnections();
+				Thread.sleep(200);
+
+				assertTrue(ad.authenticate("john", "password").isAuthenticated());
+				assertEquals(0, ldap.plainBinds.get());
+				assertTrue(ldap.tlsBinds.get() >= 4);
+			} finally {
+				ad.close();
+			}
+		}
+	}
+
+	/**
+	 * An LDAP server answering StartTLS, the binds and the searches (with no
+	 * entry), that counts the binds received before and after the upgrade.
+	 */
+	private static final class StartTlsServer implements Closeable {
+		final AtomicInteger plainBinds = new AtomicInteger();
+		final AtomicInteger tlsBinds = new AtomicInteger();
+
+		private final ServerSocket serverSocket;
+		private final SSLSocketFactory tls;
+		private final List<Socket> connections = new ArrayList<Socket>();
+
+		StartTlsServer(SSLSocketFactory tls) throws IOException {
+			this.tls = tls;
+			serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+			Thread acceptor = new Thread(() -> {
+				while (!serverSocket.isClosed()) {
+					try {
+						Socket socket = serverSocket.accept();
+						Thread connection = new Thread(() -> serve(socket));
+						connection.setDaemon(true);
+						connection.start();
+					} catch (IOException e) {
+						// the server is closed
+					}
+				}
+			});
+			acceptor.setDaemon(true);
+			acceptor.start();
+		}
+
+		int getPort() {
+			return serverSocket.getLocalPort();
+		}
+
+		void dropConnections() throws IOException {
+			synchronized (connections) {
+				for (Socket socket : connections)
+					socket.close();
+				connections.clear();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			serverSocket.close();
+			dropConnections();
+		}
+
+		private void serve(Socket socket) {
+			synchronized (connections) {
+				connections.add(socket);
+			}
+
+			boolean upgraded = false;
+			try {
+				while (true) {
+					byte[] message = read(socket.getInputStream());
+					// SEQUENCE { messageID INTEGER, protocolOp, ... }
+					byte[] id = new byte[message[1]];
+					System.arraycopy(message, 2, id, 0, id.length);
+					int operation = message[2 + id.length] & 0xff;
+
+					if (operation == 0x60) { // BindRequest
+						(upgraded ? tlsBinds : plainBinds).incrementAndGet();
+						write(socket.getOutputStream(), id, 0x61);
+					} else if (operation == 0x63) { // SearchRequest
+						write(socket.getOutputStream(), id, 0x65);
+					} else if (operation == 0x77) { // ExtendedRequest, StartTLS
+						write(socket.getOutputStream(), id, 0x78);
+						SSLSocket sslSocket = (SSLSocket) tls.createSocket(socket, null, socket.getPort(), true);
+						sslSocket.setUseClientMode(false);
+						synchronized (connections) {
+							connections.add(sslSocket);
+						}
+						socket = sslSocket;
+						upgraded = true;
+					} else if (operation == 0x42) { // UnbindRequest
+						return;
+					}
+				}
+			} catch (IOException e) {
+				// the connection is closed
+			} finally {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// already closed
+				}
+			}
+		}
+
+		private static byte[] read(InputStream in) throws IOException {
+			DataInputStream data = new DataInputStream(in);
+			if (data.read() != 0x30)
+				throw new EOFException();
+
+			int length = data.readUnsignedByte();
+			if (length > 0x7f) {
+				int bytes = length & 0x7f;
+				length = 0;
+				for (int count = 0; count < bytes; count++)
+					length = (length << 8) | data.readUnsignedByte();
+			}
+			byte[] content = new byte[length];
+			data.readFully(content);
+			return content;
+		}
+
+		// a response with the result code success and no matched DN or message
+		private static void write(OutputStream out, byte[] id, int operation) throws IOException {
+			ByteArrayOutputStream message = new ByteArrayOutputStream();
+			message.write(0x02);
+			message.write(id.length);
+			message.write(id);
+			message.write(new byte[] { (byte) operation, 0x07, 0x0a, 0x01, 0x00, 0x04, 0x00, 0x04, 0x00 });
+
+			out.write(0x30);
+			out.write(message.size());
+			message.writeTo(out);
+			out.flush();
+		}
+	}
+}